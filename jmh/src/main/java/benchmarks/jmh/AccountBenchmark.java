@@ -0,0 +1,62 @@
+package benchmarks.jmh;
+
+import modules.Account;
+import org.openjdk.jmh.annotations.*;
+import services.AccountManager;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Account.deposit and withdraw from several threads over a few or many
+ * accounts: with one account every thread contends on its balance and on the
+ * bank total. Vary the thread count with -t.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class AccountBenchmark {
+
+    @Param({"1", "16", "1024"})
+    int accounts;
+
+    Account[] all;
+
+    @Setup
+    public void setup() {
+        all = Fixtures.accounts(accounts);
+        // Registered accounts also update the bank's running total
+        AccountManager manager = new AccountManager();
+        for (Account account : all) manager.addAccount(account);
+    }
+
+    private Account pick() {
+        return all[accounts == 1 ? 0 : ThreadLocalRandom.current().nextInt(accounts)];
+    }
+
+    @Benchmark
+    public boolean deposit() {
+        return pick().deposit(1.00);
+    }
+
+    @Benchmark
+    public boolean withdraw() {
+        return pick().withdraw(1.00);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    public boolean mixedDeposit() {
+        return pick().deposit(1.00);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    public boolean mixedWithdraw() {
+        return pick().withdraw(1.00);
+    }
+}
@@ -0,0 +1,53 @@
+package benchmarks.jmh;
+
+import modules.Account;
+import org.openjdk.jmh.annotations.*;
+import services.AccountManager;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AccountManager.findAccount and getTotalBalance at different account counts,
+ * and the full recomputation the running bank total replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountManagerBenchmark {
+
+    @Param({"1000", "100000"})
+    int accounts;
+
+    AccountManager manager;
+    String[] numbers;
+
+    @Setup
+    public void setup() {
+        manager = new AccountManager();
+        numbers = new String[accounts];
+        Account[] all = Fixtures.accounts(accounts);
+        for (int i = 0; i < accounts; i++) {
+            manager.addAccount(all[i]);
+            numbers[i] = all[i].getAccountNumber();
+        }
+    }
+
+    @Benchmark
+    public Account findAccount() {
+        return manager.findAccount(numbers[ThreadLocalRandom.current().nextInt(accounts)]);
+    }
+
+    @Benchmark
+    public double getTotalBalance() {
+        return manager.getTotalBalance();
+    }
+
+    @Benchmark
+    public long recomputeTotalBalance() {
+        return manager.recomputeTotalBalanceCents();
+    }
+}
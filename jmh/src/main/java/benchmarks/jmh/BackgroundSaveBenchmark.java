@@ -0,0 +1,97 @@
+package benchmarks.jmh;
+
+import modules.Transaction;
+import modules.TransactionType;
+import org.openjdk.jmh.annotations.*;
+import services.AccountManager;
+import services.BinaryStorage;
+import services.PersistenceService;
+import services.StorageFormat;
+import services.TransactionManager;
+import services.TransactionStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transaction appends over a large loaded history, idle and while one thread
+ * keeps writing background snapshots of it through PersistenceService, in a
+ * temporary directory. The saver's score is the rate of completed saves.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BackgroundSaveBenchmark {
+
+    @Param({"1000000", "5000000"})
+    int transactions;
+
+    Path dir;
+    TransactionManager manager;
+    PersistenceService persistence;
+
+    @Setup
+    public void setup() throws IOException {
+        Fixtures.silenceConsole();
+        dir = Files.createTempDirectory("bank-jmh");
+        TransactionStore store = new TransactionStore();
+        int handle = store.handleFor(Fixtures.accountNumber(0));
+        for (int i = 0; i < transactions; i++) {
+            store.append(i + 1, handle, TransactionType.DEPOSIT, 100, 100L * (i + 1), 1_765_793_749L + i / 1000);
+        }
+        BinaryStorage.writeTransactions(dir.resolve("history.bin"), store);
+    }
+
+    /** Reloads the saved history each iteration, so the appends do not pile up across iterations. */
+    @Setup(Level.Iteration)
+    public void load() throws IOException {
+        Path file = dir.resolve("transactions.bin");
+        Files.copy(dir.resolve("history.bin"), file, StandardCopyOption.REPLACE_EXISTING);
+        manager = new TransactionManager(file);
+        manager.loadTransaction(StorageFormat.BINARY);
+        persistence = new PersistenceService(new AccountManager(16, dir.resolve("accounts.bin")), manager);
+    }
+
+    @TearDown(Level.Iteration)
+    public void closePersistence() {
+        persistence.close();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Fixtures.delete(dir);
+    }
+
+    private Transaction add() {
+        Transaction t = new Transaction(Fixtures.accountNumber(0), "WITHDRAW", 0.01, 0);
+        manager.addTransaction(t);
+        return t;
+    }
+
+    @Benchmark
+    @Group("idle")
+    @GroupThreads(3)
+    public Transaction appendIdle() {
+        return add();
+    }
+
+    @Benchmark
+    @Group("saving")
+    @GroupThreads(3)
+    public Transaction append() {
+        return add();
+    }
+
+    @Benchmark
+    @Group("saving")
+    @GroupThreads(1)
+    public PersistenceService.SaveResult save() {
+        return persistence.saveAsync().join();
+    }
+}
@@ -0,0 +1,77 @@
+package benchmarks.jmh;
+
+import modules.Account;
+import modules.Transaction;
+import org.openjdk.jmh.annotations.*;
+import services.AccountManager;
+import services.PartitionedEngine;
+import services.TransactionManager;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Many more callers than the engine's two partitions can serve, depositing into
+ * a few hot accounts, with unbounded queues and with bounded queues under each
+ * backpressure policy. Sample time shows how the policies trade refused requests
+ * for the latency of the ones served.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Threads(64)
+public class BackpressureBenchmark {
+
+    static final int ACCOUNTS = 16;
+    static final int PARTITIONS = 2;
+
+    /** "UNBOUNDED", or the policy applied to queues of the given capacity. */
+    @Param({"UNBOUNDED", "REJECT", "BLOCK", "SHED"})
+    String policy;
+
+    @Param({"64"})
+    int capacity;
+
+    AccountManager manager;
+    String[] numbers;
+    PartitionedEngine engine;
+
+    @Setup
+    public void setup() {
+        manager = new AccountManager();
+        numbers = new String[ACCOUNTS];
+        Account[] all = Fixtures.accounts(ACCOUNTS);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            manager.addAccount(all[i]);
+            numbers[i] = all[i].getAccountNumber();
+        }
+    }
+
+    /** A new log (and engine) each iteration, so the recorded deposits do not pile up across iterations. */
+    @Setup(Level.Iteration)
+    public void newEngine() {
+        TransactionManager transactions = new TransactionManager();
+        engine = policy.equals("UNBOUNDED") ? new PartitionedEngine(manager, transactions, PARTITIONS)
+                : new PartitionedEngine(manager, transactions, PARTITIONS, capacity,
+                        PartitionedEngine.Backpressure.valueOf(policy));
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeEngine() {
+        engine.close();
+    }
+
+    /** Returns null for a request the policy refused. */
+    @Benchmark
+    public Transaction deposit() {
+        try {
+            return engine.deposit(numbers[ThreadLocalRandom.current().nextInt(ACCOUNTS)], 1_00).join();
+        } catch (CompletionException e) {
+            return null;
+        }
+    }
+}
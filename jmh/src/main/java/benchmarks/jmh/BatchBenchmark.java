@@ -0,0 +1,68 @@
+package benchmarks.jmh;
+
+import modules.Account;
+import org.openjdk.jmh.annotations.*;
+import services.AccountManager;
+import services.BatchTransactionService;
+import services.TransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A payroll-style file of deposits and withdrawals over many accounts, applied
+ * one operation at a time (lock, Transaction, log append each) and as a batch.
+ * Each invocation applies the whole file to fresh accounts and a fresh log.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BatchBenchmark {
+
+    static final int OPERATIONS = 200_000;
+
+    @Param({"1000", "50000"})
+    int accounts;
+
+    List<BatchTransactionService.Operation> operations;
+    AccountManager manager;
+    TransactionManager transactions;
+
+    @Setup
+    public void setup() {
+        operations = new ArrayList<>(OPERATIONS);
+        SplittableRandom random = new SplittableRandom(11);
+        for (int i = 0; i < OPERATIONS; i++) {
+            String number = Fixtures.accountNumber(random.nextInt(accounts));
+            double amount = 1 + random.nextInt(1000);
+            operations.add(random.nextInt(4) == 0 ? BatchTransactionService.Operation.withdraw(number, amount)
+                    : BatchTransactionService.Operation.deposit(number, amount));
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void freshAccounts() {
+        manager = new AccountManager();
+        for (Account account : Fixtures.accounts(accounts)) manager.addAccount(account);
+        transactions = new TransactionManager();
+    }
+
+    @Benchmark
+    public int oneAtATime() {
+        for (BatchTransactionService.Operation operation : operations) {
+            transactions.apply(manager.findAccount(operation.getAccountNumber()), operation.getType(),
+                    operation.getAmountCents());
+        }
+        return transactions.getTransactionCount();
+    }
+
+    @Benchmark
+    public BatchTransactionService.Result batch() {
+        return new BatchTransactionService(manager, transactions).apply(operations);
+    }
+}
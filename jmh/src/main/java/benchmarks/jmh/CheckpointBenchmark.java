@@ -0,0 +1,80 @@
+package benchmarks.jmh;
+
+import modules.Account;
+import org.openjdk.jmh.annotations.*;
+import services.AccountManager;
+import services.StorageFormat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binary account saves after a fraction of the accounts changed: a full snapshot
+ * of every account against the incremental checkpoint of the changed ones, in a
+ * temporary directory. Like the application, the incremental save still compacts
+ * once its checkpoints add up to half the accounts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CheckpointBenchmark {
+
+    static final int ACCOUNTS = 1_000_000;
+
+    /** The fraction of accounts changed before each save. */
+    @Param({"0.001", "0.01", "0.1"})
+    double rate;
+
+    Path dir;
+    AccountManager manager;
+    List<Account> accounts;
+    SplittableRandom random;
+
+    @Setup
+    public void setup() throws IOException {
+        Fixtures.silenceConsole();
+        dir = Files.createTempDirectory("bank-jmh");
+        manager = new AccountManager(64, dir.resolve("accounts.bin"));
+        accounts = Arrays.asList(Fixtures.accounts(ACCOUNTS));
+        for (Account account : accounts) manager.addAccount(account);
+        // Only the checkpoints' size may trigger a compaction, not their number
+        manager.getCheckpoints().setMaxCheckpoints(Integer.MAX_VALUE);
+        random = new SplittableRandom(5);
+    }
+
+    /** Starts every iteration from a fresh base, so checkpoints do not pile up across iterations. */
+    @Setup(Level.Iteration)
+    public void compact() throws IOException {
+        manager.getCheckpoints().compact(accounts);
+    }
+
+    @Setup(Level.Invocation)
+    public void change() {
+        int changed = (int) (ACCOUNTS * rate);
+        for (int i = 0; i < changed; i++) accounts.get(random.nextInt(ACCOUNTS)).depositCents(100);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Fixtures.delete(dir);
+    }
+
+    @Benchmark
+    public List<Account> full() throws IOException {
+        manager.getCheckpoints().compact(accounts);
+        return accounts;
+    }
+
+    @Benchmark
+    public boolean checkpoint() {
+        return manager.saveAccounts(StorageFormat.BINARY);
+    }
+}
@@ -0,0 +1,82 @@
+package benchmarks.jmh;
+
+import modules.Account;
+import modules.TransactionType;
+import org.openjdk.jmh.annotations.*;
+import services.AccountManager;
+import services.PartitionedEngine;
+import services.TransactionManager;
+import services.TransferService;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The lock-based path against the partitioned single-writer engine, with the load
+ * generator's mix: 40% deposits, 40% withdrawals, 20% transfers. Operations go to
+ * a few hot accounts or spread over many; each caller waits for its result.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Threads(16)
+public class EngineBenchmark {
+
+    @Param({"16", "10000"})
+    int accounts;
+
+    /** "locks" for TransferService and TransactionManager.apply, or "engine". */
+    @Param({"locks", "engine"})
+    String path;
+
+    Account[] all;
+    AccountManager manager;
+    TransactionManager transactions;
+    TransferService transfers;
+    PartitionedEngine engine;
+
+    @Setup
+    public void setup() {
+        all = Fixtures.accounts(accounts);
+        manager = new AccountManager();
+        for (Account account : all) manager.addAccount(account);
+    }
+
+    /** A new log (and engine) each iteration, so the recorded legs do not pile up across iterations. */
+    @Setup(Level.Iteration)
+    public void newLog() {
+        transactions = new TransactionManager();
+        transfers = new TransferService(transactions);
+        if (path.equals("engine")) {
+            engine = new PartitionedEngine(manager, transactions, Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeEngine() {
+        if (engine != null) engine.close();
+        engine = null;
+    }
+
+    @Benchmark
+    public Object operation() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int r = random.nextInt(10);
+        int from = random.nextInt(accounts);
+        Account account = all[from];
+        long cents = 100 + random.nextInt(100_00);
+        if (r < 8) {
+            TransactionType type = r < 4 ? TransactionType.DEPOSIT : TransactionType.WITHDRAW;
+            if (engine == null) return transactions.apply(account, type, cents);
+            return type == TransactionType.DEPOSIT ? engine.deposit(account.getAccountNumber(), cents).join()
+                    : engine.withdraw(account.getAccountNumber(), cents).join();
+        }
+        int to = random.nextInt(accounts - 1);
+        if (to >= from) to++;
+        if (engine == null) return transfers.transfer(account, all[to], cents / 100.0);
+        return engine.transfer(account.getAccountNumber(), all[to].getAccountNumber(), cents).join();
+    }
+}
@@ -0,0 +1,73 @@
+package benchmarks.jmh;
+
+import modules.Account;
+import modules.CheckingAccount;
+import modules.Customer;
+import modules.RegularCustomer;
+import modules.Transaction;
+import services.TransactionManager;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+/** Accounts and transactions shared by the benchmarks, created the same way on every run. */
+final class Fixtures {
+
+    static final long INITIAL_BALANCE_CENTS = 1_000_000_000_00L;
+
+    private Fixtures() {
+    }
+
+    static String accountNumber(int i) {
+        return Account.ACCOUNT_IDS.format(i + 1);
+    }
+
+    /** Checking accounts with a balance no benchmark can run out of. */
+    static Account[] accounts(int count) {
+        return accounts(count, 0);
+    }
+
+    /** The same accounts, numbered from the given index on. */
+    static Account[] accounts(int count, int first) {
+        Customer customer = new RegularCustomer("Bench", 30, "000", "Nowhere");
+        Account[] accounts = new Account[count];
+        for (int i = 0; i < count; i++) {
+            accounts[i] = new CheckingAccount(accountNumber(first + i), customer, INITIAL_BALANCE_CENTS, 0, 0,
+                    "ACTIVE");
+        }
+        return accounts;
+    }
+
+    /** Deposits and withdrawals spread at random over the accounts, with a fixed seed. */
+    static TransactionManager transactions(TransactionManager manager, int count, int accounts) {
+        SplittableRandom random = new SplittableRandom(42);
+        long[] balances = new long[accounts];
+        for (int i = 0; i < count; i++) {
+            int account = random.nextInt(accounts);
+            long cents = 100 + random.nextInt(100_00);
+            boolean deposit = random.nextInt(3) > 0 || balances[account] < cents;
+            balances[account] += deposit ? cents : -cents;
+            manager.addTransaction(Transaction.ofCents(accountNumber(account), deposit ? "DEPOSIT" : "WITHDRAW",
+                    cents, balances[account]));
+        }
+        return manager;
+    }
+
+    /** The services report saves and loads on stdout; that is not what is measured. */
+    static void silenceConsole() {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    /** Removes a benchmark's temporary directory and everything in it. */
+    static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) Files.delete(path);
+        }
+    }
+}
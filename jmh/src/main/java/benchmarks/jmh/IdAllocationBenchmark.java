@@ -0,0 +1,41 @@
+package benchmarks.jmh;
+
+import modules.IdAllocator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IdAllocator from several threads: block size 1 is the strictly sequential
+ * mode, where every value comes from the shared counter; larger blocks are
+ * leased per thread. Vary the thread count with -t.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class IdAllocationBenchmark {
+
+    @Param({"1", "64", "1024"})
+    int blockSize;
+
+    IdAllocator ids;
+
+    @Setup
+    public void setup() {
+        ids = new IdAllocator("TXN", 4, blockSize);
+    }
+
+    @Benchmark
+    public long nextValue() {
+        return ids.nextValue();
+    }
+
+    @Benchmark
+    public String next() {
+        return ids.next();
+    }
+}
@@ -0,0 +1,69 @@
+package benchmarks.jmh;
+
+import modules.Transaction;
+import org.openjdk.jmh.annotations.*;
+import services.TransactionJournal;
+import services.TransactionJournal.SyncPolicy;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Journal commits from several threads under each fsync policy, in a temporary
+ * directory. With SyncPolicy.always() the commits of threads arriving together
+ * share one fsync. Vary the thread count with -t.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class JournalBenchmark {
+
+    /** "always", "never", or "batched-<records>-<millis>". */
+    @Param({"always", "batched-64-10", "batched-1000-100", "never"})
+    String policy;
+
+    Transaction transaction;
+    Path dir;
+    TransactionJournal journal;
+
+    @Setup
+    public void setup() throws IOException {
+        transaction = Transaction.fromString("TXN0001,ACC001,DEPOSIT,500.00,5500.00,2025-12-15 10:15:49");
+        dir = Files.createTempDirectory("bank-jmh");
+    }
+
+    /** A new journal each iteration, so the file does not grow across iterations. */
+    @Setup(Level.Iteration)
+    public void openJournal() throws IOException {
+        journal = new TransactionJournal(dir.resolve("journal.log"), syncPolicy());
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeJournal() throws IOException {
+        journal.close();
+        Files.delete(dir.resolve("journal.log"));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Fixtures.delete(dir);
+    }
+
+    private SyncPolicy syncPolicy() {
+        if (policy.equals("always")) return SyncPolicy.always();
+        if (policy.equals("never")) return SyncPolicy.never();
+        String[] parts = policy.split("-");
+        return SyncPolicy.batched(Integer.parseInt(parts[1]), Long.parseLong(parts[2]));
+    }
+
+    @Benchmark
+    public void appendTransaction() {
+        journal.appendTransaction(transaction);
+    }
+}
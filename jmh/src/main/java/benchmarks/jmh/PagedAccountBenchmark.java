@@ -0,0 +1,65 @@
+package benchmarks.jmh;
+
+import modules.Account;
+import org.openjdk.jmh.annotations.*;
+import services.PagedAccountStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deposits through the paged account store over many more accounts than it
+ * caches, with 90% of them going to the first 10% of the accounts. Misses read
+ * the account's slot from the file and may write an evicted one back.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx512m")
+public class PagedAccountBenchmark {
+
+    @Param({"2000000"})
+    int accounts;
+
+    @Param({"250000"})
+    int cached;
+
+    Path dir;
+    PagedAccountStore store;
+    String[] numbers;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("bank-jmh");
+        store = new PagedAccountStore(dir.resolve("accounts.paged"), cached, PagedAccountStore.DEFAULT_SLOT_SIZE);
+        numbers = new String[accounts];
+        for (int i = 0; i < accounts; i++) numbers[i] = Fixtures.accountNumber(i);
+        // In slices, so the accounts are not all on the heap the store is meant to spare
+        for (int from = 0; from < accounts; from += cached) {
+            Account[] slice = Fixtures.accounts(Math.min(cached, accounts - from), from);
+            for (Account account : slice) store.put(account);
+            store.flush();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        store.close();
+        Fixtures.delete(dir);
+    }
+
+    @Benchmark
+    public Account deposit() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int hot = accounts / 10;
+        int n = random.nextInt(10) < 9 ? random.nextInt(hot) : hot + random.nextInt(accounts - hot);
+        Account account = store.get(numbers[n]);
+        account.depositCents(1);
+        return account;
+    }
+}
@@ -0,0 +1,59 @@
+package benchmarks.jmh;
+
+import org.openjdk.jmh.annotations.*;
+import services.StorageFormat;
+import services.TransactionManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * saveTransaction and loadTransaction of binary snapshots of different sizes,
+ * in a temporary directory. Text files are not measured: their path is fixed to
+ * the application's data directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PersistenceBenchmark {
+
+    static final int ACCOUNTS = 1000;
+
+    @Param({"10000", "100000", "1000000"})
+    int transactions;
+
+    Path dir;
+    TransactionManager saved;
+    TransactionManager loaded;
+
+    @Setup
+    public void setup() throws IOException {
+        Fixtures.silenceConsole();
+        dir = Files.createTempDirectory("bank-jmh");
+        Path file = dir.resolve("transactions.bin");
+        saved = Fixtures.transactions(new TransactionManager(file), transactions, ACCOUNTS);
+        if (!saved.saveTransaction(StorageFormat.BINARY)) throw new IOException("Could not write " + file);
+        loaded = new TransactionManager(file);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Fixtures.delete(dir);
+    }
+
+    @Benchmark
+    public boolean saveTransaction() {
+        return saved.saveTransaction(StorageFormat.BINARY);
+    }
+
+    @Benchmark
+    public int loadTransaction() {
+        loaded.loadTransaction(StorageFormat.BINARY);
+        return loaded.getTransactionCount();
+    }
+}
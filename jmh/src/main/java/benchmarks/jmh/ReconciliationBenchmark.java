@@ -0,0 +1,96 @@
+package benchmarks.jmh;
+
+import modules.Account;
+import modules.Transaction;
+import org.openjdk.jmh.annotations.*;
+import services.AccountManager;
+import services.ReconciliationService;
+import services.TransactionManager;
+import services.TransactionSegmentLog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A reconciliation run over a history of deposits spread at random over many
+ * accounts, with one thread and with several. The history is either loaded in
+ * memory or opened from a segment log and streamed from disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ReconciliationBenchmark {
+
+    static final int ACCOUNTS = 100_000;
+
+    @Param({"2000000"})
+    int transactions;
+
+    @Param({"1", "4"})
+    int parallelism;
+
+    /** "memory" for a loaded history, "disk" for one opened from the segment log. */
+    @Param({"memory", "disk"})
+    String history;
+
+    Path dir;
+    TransactionSegmentLog log;
+    ReconciliationService reconciliation;
+
+    @Setup
+    public void setup() throws IOException {
+        Fixtures.silenceConsole();
+        AccountManager accounts = new AccountManager();
+        Account[] all = Fixtures.accounts(ACCOUNTS);
+        for (Account account : all) accounts.addAccount(account);
+        TransactionManager saved = new TransactionManager();
+        if (history.equals("disk")) {
+            dir = Files.createTempDirectory("bank-jmh");
+            log = openLog();
+            saved = new TransactionManager(dir.resolve("transactions.bin"));
+            saved.setSegmentLog(log);
+        }
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < transactions; i++) {
+            Account account = all[random.nextInt(ACCOUNTS)];
+            account.depositCents(100);
+            saved.addTransaction(Transaction.ofCents(account.getAccountNumber(), "DEPOSIT", 100,
+                    account.getBalanceCents()));
+        }
+        TransactionManager replayed = saved;
+        if (history.equals("disk")) {
+            if (!saved.saveTransaction()) throw new IOException("Could not save the history to " + dir);
+            log.close();
+            log = openLog();
+            replayed = new TransactionManager(dir.resolve("transactions.bin"));
+            replayed.setSegmentLog(log);
+            replayed.openSavedHistory();
+        }
+        reconciliation = new ReconciliationService(accounts, replayed);
+        reconciliation.setParallelism(parallelism);
+    }
+
+    private TransactionSegmentLog openLog() throws IOException {
+        return new TransactionSegmentLog(dir.resolve("log"), 8 << 20, Duration.ofDays(1),
+                TransactionSegmentLog.RetentionPolicy.keepAll());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (log == null) return;
+        log.close();
+        Fixtures.delete(dir);
+    }
+
+    @Benchmark
+    public ReconciliationService.Report reconcile() throws IOException {
+        return reconciliation.reconcile();
+    }
+}
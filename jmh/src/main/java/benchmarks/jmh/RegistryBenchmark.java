@@ -0,0 +1,50 @@
+package benchmarks.jmh;
+
+import modules.Account;
+import org.openjdk.jmh.annotations.*;
+import services.AccountRegistry;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AccountRegistry lookups and inserts from several threads at different shard
+ * counts: 95% gets of registered accounts, 5% puts of accounts created up front,
+ * so only the map is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Threads(8)
+public class RegistryBenchmark {
+
+    static final int ACCOUNTS = 1_000_000;
+
+    @Param({"1", "16", "64"})
+    int shards;
+
+    AccountRegistry registry;
+    String[] numbers;
+    Account[] extra;
+
+    @Setup
+    public void setup() {
+        Account[] all = Fixtures.accounts(ACCOUNTS + ACCOUNTS / 2);
+        numbers = new String[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) numbers[i] = all[i].getAccountNumber();
+        extra = Arrays.copyOfRange(all, ACCOUNTS, all.length);
+        registry = new AccountRegistry(shards);
+        registry.replaceAll(Arrays.asList(all).subList(0, ACCOUNTS));
+    }
+
+    @Benchmark
+    public Account getOrPut() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextInt(100) < 5) return registry.put(extra[random.nextInt(extra.length)]);
+        return registry.get(numbers[random.nextInt(ACCOUNTS)]);
+    }
+}
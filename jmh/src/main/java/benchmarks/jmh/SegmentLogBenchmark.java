@@ -0,0 +1,82 @@
+package benchmarks.jmh;
+
+import modules.Transaction;
+import modules.TransactionType;
+import org.openjdk.jmh.annotations.*;
+import services.AccountStatistics;
+import services.TransactionSegmentLog;
+import services.TransactionStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queries on a saved segment log, in a temporary directory: one account's
+ * transactions, which read only the blocks its segments index for it, and its
+ * totals, which come from the segment footers, against loading the whole log.
+ * Accounts are written in runs, as they are when customers join over time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SegmentLogBenchmark {
+
+    static final int ACCOUNTS = 1000;
+
+    @Param({"2000000"})
+    int transactions;
+
+    Path dir;
+    TransactionSegmentLog log;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("bank-jmh");
+        TransactionStore store = new TransactionStore();
+        int[] handles = new int[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) handles[i] = store.handleFor(Fixtures.accountNumber(i));
+        int perAccount = Math.max(1, transactions / ACCOUNTS);
+        for (int i = 0; i < transactions; i++) {
+            store.append(i + 1, handles[Math.min(i / perAccount, ACCOUNTS - 1)],
+                    (i & 1) == 0 ? TransactionType.DEPOSIT : TransactionType.WITHDRAW,
+                    10_000, 500_000 + i, 1_765_793_749L + i);
+        }
+        log = new TransactionSegmentLog(dir.resolve("log"), 8 << 20, Duration.ofDays(1),
+                TransactionSegmentLog.RetentionPolicy.keepAll());
+        log.append(store, 0, store.size());
+        log.roll();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        log.close();
+        Fixtures.delete(dir);
+    }
+
+    private String anyAccount() {
+        return Fixtures.accountNumber(ThreadLocalRandom.current().nextInt(ACCOUNTS));
+    }
+
+    @Benchmark
+    public List<Transaction> findByAccount() throws IOException {
+        return log.findByAccount(anyAccount());
+    }
+
+    @Benchmark
+    public AccountStatistics statisticsOf() throws IOException {
+        return log.statisticsOf(anyAccount());
+    }
+
+    @Benchmark
+    public TransactionStore load() throws IOException {
+        return log.load();
+    }
+}
@@ -0,0 +1,90 @@
+package benchmarks.jmh;
+
+import modules.Transaction;
+import modules.TransactionType;
+import org.openjdk.jmh.annotations.*;
+import services.TransactionManager;
+import services.TransactionSegmentLog;
+import services.TransactionStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup and one-account statements over a history saved in a segment log:
+ * opening it through the per-account index against loading all of it. Accounts
+ * are interleaved at random, the worst case for the index, since each account's
+ * records are then spread over every block.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class StatementBenchmark {
+
+    static final int ACCOUNTS = 100_000;
+
+    @Param({"2000000"})
+    int transactions;
+
+    /** "index" for openSavedHistory, "load" for loadTransaction. */
+    @Param({"index", "load"})
+    String history;
+
+    Path dir;
+    TransactionSegmentLog log;
+    TransactionManager manager;
+
+    @Setup
+    public void setup() throws IOException {
+        Fixtures.silenceConsole();
+        dir = Files.createTempDirectory("bank-jmh");
+        TransactionStore store = new TransactionStore();
+        int[] handles = new int[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) handles[i] = store.handleFor(Fixtures.accountNumber(i));
+        SplittableRandom random = new SplittableRandom(17);
+        for (int i = 0; i < transactions; i++) {
+            store.append(i + 1, handles[random.nextInt(ACCOUNTS)], TransactionType.DEPOSIT, 10_000, 500_000 + i,
+                    1_765_793_749L + i);
+        }
+        try (TransactionSegmentLog saved = new TransactionSegmentLog(dir.resolve("log"), 8 << 20,
+                Duration.ofDays(1), TransactionSegmentLog.RetentionPolicy.keepAll())) {
+            saved.append(store, 0, store.size());
+            saved.roll();
+        }
+        log = new TransactionSegmentLog(dir.resolve("log"));
+        manager = open();
+    }
+
+    private TransactionManager open() {
+        TransactionManager opened = new TransactionManager(dir.resolve("transactions.bin"));
+        opened.setSegmentLog(log);
+        if (history.equals("index")) opened.openSavedHistory();
+        else opened.loadTransaction();
+        return opened;
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        log.close();
+        Fixtures.delete(dir);
+    }
+
+    @Benchmark
+    public TransactionManager startup() {
+        return open();
+    }
+
+    @Benchmark
+    public List<Transaction> statement() {
+        return manager.getTransactionsByAccount(Fixtures.accountNumber(ThreadLocalRandom.current().nextInt(ACCOUNTS)));
+    }
+}
@@ -0,0 +1,119 @@
+package benchmarks.jmh;
+
+import modules.Account;
+import modules.TransactionType;
+import org.openjdk.jmh.annotations.*;
+import services.BinaryStorage;
+import services.ParallelTransactionLoader;
+import services.TransactionStore;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading accounts and transactions from the text files against the binary
+ * format, in a temporary directory. Text accounts are parsed line by line with
+ * Account.fromString; text transactions go through ParallelTransactionLoader
+ * with one thread or several. Run with -prof gc for the bytes allocated per load.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class StorageFormatBenchmark {
+
+    @Param({"1000000"})
+    int accounts;
+
+    @Param({"5000000"})
+    int transactions;
+
+    Path dir;
+
+    /** The pool of the text transaction loader. */
+    @State(Scope.Benchmark)
+    public static class Loader {
+
+        @Param({"1", "4"})
+        int threads;
+
+        ForkJoinPool pool;
+
+        @Setup
+        public void setup() {
+            pool = new ForkJoinPool(threads);
+        }
+
+        @TearDown
+        public void tearDown() {
+            pool.shutdown();
+        }
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("bank-jmh");
+        List<Account> all = Arrays.asList(Fixtures.accounts(accounts));
+        try (BufferedWriter out = Files.newBufferedWriter(dir.resolve("accounts.txt"))) {
+            for (Account account : all) out.append(account.toString()).append('\n');
+        }
+        BinaryStorage.writeAccounts(dir.resolve("accounts.bin"), all);
+
+        TransactionStore store = new TransactionStore();
+        int[] handles = new int[Math.min(accounts, 100_000)];
+        for (int i = 0; i < handles.length; i++) handles[i] = store.handleFor(Fixtures.accountNumber(i));
+        for (int i = 0; i < transactions; i++) {
+            store.append(i + 1, handles[i % handles.length],
+                    (i & 1) == 0 ? TransactionType.DEPOSIT : TransactionType.WITHDRAW,
+                    10_000, 500_000 + i, 1_765_793_749L + i / 1000);
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(dir.resolve("transactions.txt"))) {
+            for (int row = 0; row < store.size(); row++) out.append(store.get(row).toString()).append('\n');
+        }
+        BinaryStorage.writeTransactions(dir.resolve("transactions.bin"), store);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Fixtures.delete(dir);
+    }
+
+    @Benchmark
+    public List<Account> accountsText() throws IOException {
+        List<Account> loaded = new ArrayList<>(accounts);
+        try (BufferedReader in = Files.newBufferedReader(dir.resolve("accounts.txt"))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                Account account = Account.fromString(line);
+                if (account != null) loaded.add(account);
+            }
+        }
+        return loaded;
+    }
+
+    @Benchmark
+    public List<Account> accountsBinary() throws IOException {
+        return BinaryStorage.readAccounts(dir.resolve("accounts.bin"));
+    }
+
+    @Benchmark
+    public TransactionStore transactionsText(Loader loader) throws IOException {
+        return new ParallelTransactionLoader(loader.pool, ParallelTransactionLoader.DEFAULT_CHUNK_BYTES)
+                .load(dir.resolve("transactions.txt"));
+    }
+
+    @Benchmark
+    public TransactionStore transactionsBinary() throws IOException {
+        return BinaryStorage.readTransactions(dir.resolve("transactions.bin"));
+    }
+}
@@ -0,0 +1,49 @@
+package benchmarks.jmh;
+
+import modules.Transaction;
+import org.openjdk.jmh.annotations.*;
+import services.TransactionStore;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lock-free TransactionStore.append from several threads, with the transactions
+ * built up front so only the append is measured. Each thread appends a fixed
+ * batch per iteration, so the store's size is bounded. Vary the thread count with -t.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, batchSize = StoreAppendBenchmark.BATCH)
+@Measurement(iterations = 5, batchSize = StoreAppendBenchmark.BATCH)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Threads(8)
+public class StoreAppendBenchmark {
+
+    static final int TRANSACTIONS = 10_000;
+    static final int BATCH = 1_000_000;
+
+    Transaction[] input;
+    TransactionStore store;
+
+    @Setup
+    public void setup() {
+        input = new Transaction[TRANSACTIONS];
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            input[i] = Transaction.ofCents(Fixtures.accountNumber(i % 1000), (i & 1) == 0 ? "DEPOSIT" : "WITHDRAW",
+                    100, 10_000);
+        }
+    }
+
+    /** A new store each iteration, so the appended rows do not pile up across iterations. */
+    @Setup(Level.Iteration)
+    public void newStore() {
+        store = new TransactionStore();
+    }
+
+    @Benchmark
+    public int append() {
+        return store.append(input[ThreadLocalRandom.current().nextInt(TRANSACTIONS)]);
+    }
+}
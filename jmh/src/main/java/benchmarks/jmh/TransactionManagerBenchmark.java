@@ -0,0 +1,66 @@
+package benchmarks.jmh;
+
+import modules.Transaction;
+import org.openjdk.jmh.annotations.*;
+import services.TransactionManager;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TransactionManager.addTransaction, and getTransactionsByAccount and
+ * calculateTotalDeposit over histories of different lengths spread over
+ * 1,000 accounts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class TransactionManagerBenchmark {
+
+    static final int ACCOUNTS = 1000;
+
+    @Param({"10000", "1000000"})
+    int transactions;
+
+    TransactionManager history;
+    TransactionManager appended;
+    Transaction[] pending;
+
+    @Setup
+    public void setup() {
+        history = Fixtures.transactions(new TransactionManager(), transactions, ACCOUNTS);
+        pending = new Transaction[1 << 16];
+        for (int i = 0; i < pending.length; i++) {
+            pending[i] = Transaction.ofCents(Fixtures.accountNumber(i % ACCOUNTS), "DEPOSIT", 100, 100L * (i + 1));
+        }
+    }
+
+    /** Appends start from an empty manager each iteration. */
+    @Setup(Level.Iteration)
+    public void newManager() {
+        appended = new TransactionManager();
+    }
+
+    private static String randomAccount() {
+        return Fixtures.accountNumber(ThreadLocalRandom.current().nextInt(ACCOUNTS));
+    }
+
+    @Benchmark
+    public void addTransaction() {
+        appended.addTransaction(pending[ThreadLocalRandom.current().nextInt(pending.length)]);
+    }
+
+    @Benchmark
+    public List<Transaction> getTransactionsByAccount() {
+        return history.getTransactionsByAccount(randomAccount());
+    }
+
+    @Benchmark
+    public double calculateTotalDeposit() {
+        return history.calculateTotalDeposit(randomAccount());
+    }
+}
@@ -0,0 +1,52 @@
+package benchmarks.jmh;
+
+import modules.Account;
+import modules.Transaction;
+import org.openjdk.jmh.annotations.*;
+import services.TransactionManager;
+import services.TransferService;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transfers between random pairs of accounts, as Functions.handleTransfer does
+ * them: both accounts locked, both legs recorded. With two accounts every
+ * transfer contends for the same pair of locks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Threads(4)
+public class TransferBenchmark {
+
+    @Param({"2", "64", "4096"})
+    int accounts;
+
+    Account[] all;
+    TransferService transfers;
+
+    @Setup
+    public void setup() {
+        all = Fixtures.accounts(accounts);
+    }
+
+    /** A new log each iteration, so the recorded legs do not pile up across iterations. */
+    @Setup(Level.Iteration)
+    public void newLog() {
+        transfers = new TransferService(new TransactionManager());
+    }
+
+    @Benchmark
+    public List<Transaction> transfer() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int from = random.nextInt(accounts);
+        int to = random.nextInt(accounts - 1);
+        if (to >= from) to++;
+        return transfers.transfer(all[from], all[to], 1.00);
+    }
+}
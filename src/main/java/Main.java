@@ -47,6 +47,7 @@ public class Main {
                         functions.runConcurrentSimulation();
                         break;
                     case 6:
+                        functions.handleExit();
                         System.out.println("\nThank you for using the Bank Account Management System. Goodbye!");
                         break;
                     default:
@@ -0,0 +1,8 @@
+package interfaces;
+
+import modules.Account;
+
+//notified after every balance change
+public interface BalanceListener {
+    void onBalanceChanged(Account account, long deltaCents);
+}
@@ -0,0 +1,12 @@
+package interfaces;
+
+import modules.Customer;
+
+//resolves the customer of an account record to one shared instance
+public interface CustomerLookup {
+    /**
+     * @param customerId the customer ID in the record, or null in records written before IDs were saved
+     * @param name       the customer name in the record
+     */
+    Customer resolve(String customerId, String name);
+}
@@ -1,63 +1,172 @@
 package modules;
 
 import exceptions.InsufficientFundException;
+import exceptions.InvalidAmountException;
+import exceptions.OverdraftExceededException;
+import interfaces.BalanceListener;
+import interfaces.CustomerLookup;
 import interfaces.Depositable;
 import interfaces.Transactable;
 import interfaces.Withdrawable;
 
 import java.io.Serializable;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 
 public abstract class Account implements Transactable, Depositable, Withdrawable, Serializable {
     private static final long serialVersionUID = 1L;
 
-    private static int accountCounter = 0;
+    /** Account numbers (ACC001, ...); strictly sequential since accounts are rare. */
+    public static final IdAllocator ACCOUNT_IDS = new IdAllocator("ACC", 3, 1);
+
+    /** Returned by {@link #debit} when the floor refuses it; below any floor an account can have. */
+    protected static final long REFUSED = Long.MIN_VALUE;
+
+    /** CAS handle over {@link #balanceCents}; replaces the per-account monitor. */
+    private static final VarHandle BALANCE;
+
+    static {
+        try {
+            BALANCE = MethodHandles.lookup().findVarHandle(Account.class, "balanceCents", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
 
     private String accountNumber;
     private Customer customer;
-    protected double balance;
+    // Balance in minor units (cents), only updated through BALANCE
+    private volatile long balanceCents;
     private String status;
+    // Told about every balance change (bank total, dirty tracking); may be null
+    private transient volatile BalanceListener balanceListener;
 
     // Constructor for NEW accounts
     public Account(Customer customer, double initialBalance) {
-        accountCounter++;
-        this.accountNumber = String.format("ACC%03d", accountCounter);
+        this.accountNumber = ACCOUNT_IDS.next();
         this.customer = customer;
-        this.balance = initialBalance;
+        this.balanceCents = Money.ofDouble(initialBalance);
         this.status = "ACTIVE";
     }
 
-    // Constructor for loading from file
-    protected Account(String accNo, Customer c, double balance, String status) {
+    // Constructor for loading from file (amounts in cents)
+    protected Account(String accNo, Customer c, long balanceCents, String status) {
         this.accountNumber = accNo;
         this.customer = c;
-        this.balance = balance;
+        this.balanceCents = balanceCents;
         this.status = status;
     }
 
     //getter
     public String getStatus() { return status; }
-    public double getBalance() { return balance; }
+    public double getBalance() { return Money.toDouble(balanceCents); }
+    public long getBalanceCents() { return balanceCents; }
     public Customer getCustomer() { return customer; }
     public String getAccountNumber() { return accountNumber; }
 
+    public void setBalanceListener(BalanceListener balanceListener) { this.balanceListener = balanceListener; }
+
     //abstracts
     public abstract void displayAccountDetails();
     public abstract String getAccountType();
-    public abstract boolean withdraw(double amount);
 
-    public  synchronized boolean deposit(double amount) {
-        if (amount <= 0) return false;
-        this.balance += amount;
+    /**
+     * Withdraws an amount, enforcing the account's minimum balance or overdraft limit.
+     *
+     * @param cents amount in minor units
+     * @return the balance this withdrawal produced, to record as its balance-after
+     */
+    public abstract long withdrawCents(long cents);
+
+    public boolean withdraw(double amount) {
+        withdrawCents(Money.ofDouble(amount));
+        return true;
+    }
+
+    public boolean deposit(double amount) {
+        long cents = Money.ofDouble(amount);
+        if (cents <= 0) return false;
+        depositCents(cents);
         return true;
     }
 
+    /**
+     * Deposits an amount.
+     *
+     * @param cents amount in minor units, must be positive
+     * @return the balance this deposit produced, to record as its balance-after;
+     *         a later read may already include other threads' updates
+     */
+    public long depositCents(long cents) {
+        if (cents <= 0) throw new InvalidAmountException("Deposit amount must be positive.");
+        return credit(cents);
+    }
+
+    /**
+     * Adds to the balance with a compare-and-set loop.
+     *
+     * @param cents amount in minor units
+     * @return the balance in cents after the update
+     */
+    protected final long credit(long cents) {
+        long current;
+        long next;
+        do {
+            current = (long) BALANCE.getVolatile(this);
+            next = current + cents;
+        } while (!BALANCE.compareAndSet(this, current, next));
+        notifyChange(cents);
+        return next;
+    }
+
+    /**
+     * Subtracts from the balance with a compare-and-set loop, refusing the update
+     * if the result would drop below the given floor (minimum balance or -overdraft).
+     *
+     * @param cents      amount in minor units
+     * @param floorCents lowest balance the account may reach
+     * @return the balance in cents after the update, or {@link #REFUSED} if it would drop below the floor
+     */
+    protected final long debit(long cents, long floorCents) {
+        long current;
+        long next;
+        do {
+            current = (long) BALANCE.getVolatile(this);
+            next = current - cents;
+            if (next < floorCents) return REFUSED;
+        } while (!BALANCE.compareAndSet(this, current, next));
+        notifyChange(-cents);
+        return next;
+    }
+
+    /**
+     * Sets the balance to a previously recorded value, e.g. when replaying a journal.
+     * Listeners are told the difference, so running totals stay correct.
+     *
+     * @param cents the recorded balance in minor units
+     */
+    public final void restoreBalanceCents(long cents) {
+        long previous = (long) BALANCE.getAndSet(this, cents);
+        notifyChange(cents - previous);
+    }
+
+    private void notifyChange(long deltaCents) {
+        BalanceListener listener = balanceListener;
+        if (listener != null) listener.onBalanceChanged(this, deltaCents);
+    }
+
+    /** Subtracts from the balance without a floor (fees). */
+    protected final long debitUnchecked(long cents) {
+        return credit(-cents);
+    }
+
     @Override
     public boolean processTransaction(double amount, String type) {
         try {
             if (type.equalsIgnoreCase("DEPOSIT")) return deposit(amount);
             else if (type.equalsIgnoreCase("WITHDRAW")) return withdraw(amount);
             else return false;
-        } catch (InsufficientFundException e) {
+        } catch (InsufficientFundException | OverdraftExceededException e) {
             System.out.println(e.getMessage());
             return false;
         }
@@ -67,33 +176,52 @@ public abstract class Account implements Transactable, Depositable, Withdrawable
     public String toString() {
         return accountNumber + "," +
                 customer.getName() + "," +
-                balance + "," +
+                Money.toString(balanceCents) + "," +
                 getClass().getSimpleName() + "," +
                 status;
     }
 
+    // The customer ID goes last, after the fields of the account type; older files have none
+    protected final String customerIdField() {
+        String id = customer.getCustomerId();
+        return id == null ? "" : "," + id;
+    }
+
     public static Account fromString(String line) {
+        return fromString(line, null);
+    }
+
+    /**
+     * Parses an account record, taking its customer from a lookup so accounts of
+     * the same customer share one instance (and keep e.g. Premium status).
+     *
+     * @param customers resolves the record's customer ID, or null to create a Regular customer per record
+     */
+    public static Account fromString(String line, CustomerLookup customers) {
         try {
             String[] p = line.split(",");
             if (p.length < 5) return null;
 
             String accNo = p[0];
             String customerName = p[1];
-            double balance = Double.parseDouble(p[2]);
+            long balance = Money.parse(p[2]);
             String type = p[3];
             String status = p[4];
 
-            Customer c = new RegularCustomer(customerName); // Adjust if you store more customer info
+            String customerId = p.length > 7 ? p[7] : null;
+            Customer c = customers != null ? customers.resolve(customerId, customerName)
+                    : customerId != null ? new RegularCustomer(customerId, customerName, 0, null, null)
+                    : new RegularCustomer(customerName);
 
             switch (type) {
                 case "SavingsAccount" -> {
                     double rate = Double.parseDouble(p[5]);
-                    double minBalance = Double.parseDouble(p[6]);
+                    long minBalance = Money.parse(p[6]);
                     return new SavingsAccount(accNo, c, balance, rate, minBalance, status);
                 }
                 case "CheckingAccount" -> {
-                    double overdraft = Double.parseDouble(p[5]);
-                    double fee = Double.parseDouble(p[6]);
+                    long overdraft = Money.parse(p[5]);
+                    long fee = Money.parse(p[6]);
                     return new CheckingAccount(accNo, c, balance, overdraft, fee, status);
                 }
                 default -> {
@@ -8,19 +8,20 @@ import java.io.Serializable;
 public class CheckingAccount extends Account implements Serializable {
     private static final long serialVersionUID = 1L;
 
-    private double overdraftLimit;
-    private double monthlyFee;
+    // Limits in cents
+    private long overdraftLimit;
+    private long monthlyFee;
 
     // Constructor for NEW account
     public CheckingAccount(Customer customer, double balance) {
         super(customer, balance);
-        this.overdraftLimit = 1000;
-        this.monthlyFee = 10;
+        this.overdraftLimit = Money.ofDouble(1000);
+        this.monthlyFee = Money.ofDouble(10);
     }
 
     // Constructor for loading from file
-    public CheckingAccount(String accNo, Customer c, double balance,
-                           double overdraft, double fee, String status) {
+    public CheckingAccount(String accNo, Customer c, long balance,
+                           long overdraft, long fee, String status) {
         super(accNo, c, balance, status);
         this.overdraftLimit = overdraft;
         this.monthlyFee = fee;
@@ -33,8 +34,8 @@ public class CheckingAccount extends Account implements Serializable {
                 " | TYPE: " + getAccountType() +
                 " | BALANCE: " + getBalance() +
                 " | STATUS: " + getStatus());
-        System.out.println("    | Overdraft Limit: $" + overdraftLimit +
-                " | Monthly Fee: $" + monthlyFee +
+        System.out.println("    | Overdraft Limit: $" + getOverdraftLimit() +
+                " | Monthly Fee: $" + getMonthlyFee() +
                 " | Balance after Fee: $" + applyMonthlyFee());
     }
 
@@ -44,28 +45,33 @@ public class CheckingAccount extends Account implements Serializable {
     }
 
     @Override
-    public synchronized boolean withdraw(double amount) throws OverdraftExceededException {
-        double newBalance = balance - amount;
-        if (newBalance < -overdraftLimit)
+    public long withdrawCents(long cents) throws OverdraftExceededException {
+        long balance = debit(cents, -overdraftLimit);
+        if (balance == REFUSED)
             throw new OverdraftExceededException(
-                    "Withdrawal denied! Overdraft limit $" + overdraftLimit + " exceeded."
+                    "Withdrawal denied! Overdraft limit $" + getOverdraftLimit() + " exceeded."
             );
-        balance = newBalance;
-        return true;
+        return balance;
     }
 
+    public double getOverdraftLimit() { return Money.toDouble(overdraftLimit); }
+    public double getMonthlyFee() { return Money.toDouble(monthlyFee); }
+    public long getOverdraftLimitCents() { return overdraftLimit; }
+    public long getMonthlyFeeCents() { return monthlyFee; }
+
     public String applyMonthlyFee() {
         if (getCustomer() instanceof PremiumCustomer &&
                 ((PremiumCustomer)getCustomer()).hasWaivedFees()) {
-            return "No fee for premium $" +balance;
+            return "No fee for premium $" + getBalance();
         }
-        balance -= monthlyFee;
-        return "fee for Regular $" + balance;
+        debitUnchecked(monthlyFee);
+        return "fee for Regular $" + getBalance();
     }
 
 
     @Override
     public String toString() {
-        return super.toString() + "," + overdraftLimit + "," + monthlyFee;
+        return super.toString() + "," + Money.toString(overdraftLimit) + "," + Money.toString(monthlyFee)
+                + customerIdField();
     }
 }
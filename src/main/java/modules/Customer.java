@@ -5,8 +5,8 @@ import java.io.Serializable;
 public abstract class Customer implements Serializable {
     private static final long serialVersionUID = 1L;
 
-    // Static field for generating unique customer IDs (e.g., CUS001)
-    public static int customerCounter=0;
+    // Static allocator for generating unique customer IDs (e.g., CUS001)
+    public static final IdAllocator CUSTOMER_IDS = new IdAllocator("CUS", 3, 1);
 
     // Private fields (Encapsulation)
     private String customerId;
@@ -17,8 +17,7 @@ public abstract class Customer implements Serializable {
 
     //constructors
     public Customer(String name, int age, String contact, String address) {
-        customerCounter++;
-        this.customerId =String.format("CUS%03d",customerCounter) ;
+        this.customerId = CUSTOMER_IDS.next();
         this.contact = contact;
         this.name = name;
         this.age = age;
@@ -27,6 +26,14 @@ public abstract class Customer implements Serializable {
     public Customer(String name){
         this.name = name;
     }
+    // Constructor for loading from file: keeps the saved ID
+    protected Customer(String customerId, String name, int age, String contact, String address) {
+        this.customerId = customerId;
+        this.name = name;
+        this.age = age;
+        this.contact = contact;
+        this.address = address;
+    }
 
     // Abstract methods for polymorphism
     public abstract void displayCustomerDetails();
@@ -39,5 +46,28 @@ public abstract class Customer implements Serializable {
     public int getAge() {return age;}
     public String getCustomerId() {return customerId;}
 
+    @Override
+    public String toString() {
+        return customerId + "," + name + "," + age + "," + contact + "," + address + "," + getCustomerType();
+    }
+
+    public static Customer fromString(String line) {
+        String[] p = line.split(",");
+        if (p.length < 6) return null;
+        try {
+            String contact = p[3].equals("null") ? null : p[3];
+            String address = p[4].equals("null") ? null : p[4];
+            int age = Integer.parseInt(p[2]);
+            return switch (p[5]) {
+                case "Premium" -> new PremiumCustomer(p[0], p[1], age, contact, address);
+                case "Regular" -> new RegularCustomer(p[0], p[1], age, contact, address);
+                default -> null;
+            };
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid customer record: " + line);
+            return null;
+        }
+    }
+
 }
 
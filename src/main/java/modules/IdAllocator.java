@@ -0,0 +1,141 @@
+package modules;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe generator for prefixed IDs such as ACC001 or TXN0001.
+ * <p>
+ * Sequences are 64-bit. The number is zero-padded to a minimum width and simply
+ * grows past it (ACC999, ACC1000, ...). With a block size above 1 each thread
+ * leases a block of numbers and hands them out without touching shared state,
+ * so allocation does not contend; IDs are then unique but not ordered across threads.
+ * </p>
+ */
+public class IdAllocator {
+
+    private final String prefix;
+    private final int minDigits;
+    private final int blockSize;
+
+    /** First number that has not been leased yet. */
+    private final AtomicLong nextUnleased = new AtomicLong(1);
+    /** Bumped by observe() so threads drop leases that may contain loaded IDs. */
+    private final AtomicInteger epoch = new AtomicInteger();
+    /** Per-thread lease: {next, end (exclusive), epoch}. */
+    private final ThreadLocal<long[]> lease = ThreadLocal.withInitial(() -> new long[]{0, 0, -1});
+
+    /**
+     * @param prefix    text placed before the number, e.g. "ACC"
+     * @param minDigits minimum zero-padded width of the number
+     * @param blockSize numbers leased per thread at a time (1 = strictly sequential)
+     */
+    public IdAllocator(String prefix, int minDigits, int blockSize) {
+        if (blockSize < 1) throw new IllegalArgumentException("Block size must be at least 1.");
+        this.prefix = prefix;
+        this.minDigits = minDigits;
+        this.blockSize = blockSize;
+    }
+
+    /** Returns the next free sequence number. */
+    public long nextValue() {
+        if (blockSize == 1) return nextUnleased.getAndIncrement();
+
+        long[] current = lease.get();
+        int currentEpoch = epoch.get();
+        if (current[0] >= current[1] || current[2] != currentEpoch) {
+            long start = nextUnleased.getAndAdd(blockSize);
+            current[0] = start;
+            current[1] = start + blockSize;
+            current[2] = currentEpoch;
+        }
+        return current[0]++;
+    }
+
+    /**
+     * Reserves a run of consecutive sequence numbers, e.g. for the transactions
+     * of one batch. The run never overlaps numbers leased to threads.
+     *
+     * @param count how many numbers to reserve
+     * @return the first number of the run
+     */
+    public long nextValues(int count) {
+        if (count < 1) throw new IllegalArgumentException("At least one number is required.");
+        return nextUnleased.getAndAdd(count);
+    }
+
+    /** Returns the next free ID, e.g. "TXN0042". */
+    public String next() {
+        return format(nextValue());
+    }
+
+    /** Formats a sequence number with this allocator's prefix and padding. */
+    public String format(long value) {
+        String digits = Long.toString(value);
+        StringBuilder sb = new StringBuilder(prefix.length() + Math.max(minDigits, digits.length()));
+        sb.append(prefix);
+        for (int i = digits.length(); i < minDigits; i++) sb.append('0');
+        return sb.append(digits).toString();
+    }
+
+    /**
+     * Records an ID that already exists (e.g. read from a file), so later
+     * allocations continue after it. IDs with another prefix are ignored.
+     *
+     * @param id an existing ID such as "ACC006"
+     */
+    public void observe(String id) {
+        observe(parse(id));
+    }
+
+    /**
+     * Records a sequence number that is already in use, so later allocations
+     * continue after it. Negative values are ignored.
+     *
+     * @param value an existing sequence number
+     */
+    public void observe(long value) {
+        if (value < 0) return;
+        long previous = nextUnleased.getAndAccumulate(value + 1, Math::max);
+        // Below nextUnleased the number may sit in a block a thread has leased and not used up yet
+        if (value < previous) epoch.incrementAndGet();
+    }
+
+    /**
+     * Extracts the sequence number from an ID.
+     *
+     * @return the number, or -1 if the ID does not carry this prefix
+     */
+    public long parse(String id) {
+        if (id == null || id.length() <= prefix.length() || !id.regionMatches(true, 0, prefix, 0, prefix.length())) {
+            return -1;
+        }
+        int digits = id.length() - prefix.length();
+        if (digits > 18) return -1;
+        long value = 0;
+        for (int i = prefix.length(); i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Extracts the sequence number from an ID written exactly as {@link #format}
+     * would write it, so that formatting the number gives the same ID back.
+     *
+     * @return the number, or -1 for any other ID (other case, extra leading zeros, ...)
+     */
+    public long sequenceOf(String id) {
+        if (id == null || !id.startsWith(prefix)) return -1;
+        long value = parse(id);
+        if (value < 0) return -1;
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) digits++;
+        return id.length() - prefix.length() == Math.max(minDigits, digits) ? value : -1;
+    }
+
+    public String getPrefix() { return prefix; }
+    public int getMinDigits() { return minDigits; }
+}
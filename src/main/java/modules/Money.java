@@ -0,0 +1,108 @@
+package modules;
+
+/**
+ * Fixed-point money helpers. Amounts are plain {@code long} values in minor
+ * units (cents), so sums are exact and nothing is allocated on the hot paths.
+ * Doubles only appear at the edges (console input, display).
+ */
+public final class Money {
+
+    public static final long CENTS_PER_UNIT = 100;
+
+    private Money() {
+    }
+
+    /** Converts a double amount to cents, rounding half away from zero. */
+    public static long ofDouble(double amount) {
+        return Math.round(amount * CENTS_PER_UNIT);
+    }
+
+    /** Converts cents back to a double amount, for display and legacy callers. */
+    public static double toDouble(long cents) {
+        return cents / (double) CENTS_PER_UNIT;
+    }
+
+    /** Adds two amounts, failing instead of silently overflowing. */
+    public static long add(long a, long b) {
+        return Math.addExact(a, b);
+    }
+
+    /** Subtracts two amounts, failing instead of silently overflowing. */
+    public static long subtract(long a, long b) {
+        return Math.subtractExact(a, b);
+    }
+
+    /** Returns percent% of an amount, e.g. interest at 3.5%, rounded to the cent. */
+    public static long percentOf(long cents, double percent) {
+        return Math.round(cents * percent / 100);
+    }
+
+    /** Parses a decimal amount such as "5500.0" or "-12.34" into cents. */
+    public static long parse(CharSequence text) {
+        return parse(text, 0, text.length());
+    }
+
+    /**
+     * Parses the decimal amount in text[start, end) into cents without creating
+     * any intermediate String. Digits after the second decimal are rounded half-up.
+     * Exponent notation ("1.157E7", written by Double.toString) falls back to Double.
+     *
+     * @throws NumberFormatException if the range is not a number
+     */
+    public static long parse(CharSequence text, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+        if (i == end) throw new NumberFormatException("Empty amount");
+
+        long units = 0;
+        long cents = 0;
+        int decimals = 0;
+        boolean roundUp = false;
+        boolean seenDot = false;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '.' && !seenDot) {
+                seenDot = true;
+            } else if (c >= '0' && c <= '9') {
+                if (!seenDot) {
+                    units = Math.addExact(Math.multiplyExact(units, 10), c - '0');
+                } else if (decimals < 2) {
+                    cents = cents * 10 + (c - '0');
+                    decimals++;
+                } else if (decimals == 2) {
+                    roundUp = c >= '5';
+                    decimals++;
+                }
+            } else if (c == 'E' || c == 'e') {
+                return ofDouble(Double.parseDouble(text.subSequence(start, end).toString()));
+            } else {
+                throw new NumberFormatException("Invalid amount: " + text.subSequence(start, end));
+            }
+        }
+        if (decimals == 1) cents *= 10;
+        long value = Math.addExact(Math.multiplyExact(units, CENTS_PER_UNIT), cents);
+        if (roundUp) value++;
+        return negative ? -value : value;
+    }
+
+    /** Formats cents as a plain decimal with two places, e.g. "5500.00" or "-0.50". */
+    public static String toString(long cents) {
+        return appendTo(new StringBuilder(24), cents).toString();
+    }
+
+    /** Appends cents as a plain decimal with two places. */
+    public static StringBuilder appendTo(StringBuilder sb, long cents) {
+        if (cents < 0) {
+            sb.append('-');
+            cents = Math.negateExact(cents);
+        }
+        long fraction = cents % CENTS_PER_UNIT;
+        sb.append(cents / CENTS_PER_UNIT).append('.');
+        if (fraction < 10) sb.append('0');
+        return sb.append(fraction);
+    }
+}
@@ -13,6 +13,11 @@ public class PremiumCustomer extends Customer implements Serializable {
         super(name, age, contact, address);
         this.minimumBalance = 10000;
     }
+    // Constructor for loading from file
+    public PremiumCustomer(String customerId, String name, int age, String contact, String address) {
+        super(customerId, name, age, contact, address);
+        this.minimumBalance = 10000;
+    }
 
     // Special method for benefits (waived fees)
     public boolean hasWaivedFees() {
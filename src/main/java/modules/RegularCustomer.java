@@ -12,6 +12,10 @@ public class RegularCustomer extends Customer implements Serializable {
     public  RegularCustomer(String name){
         super(name);
     }
+    // Constructor for loading from file
+    public RegularCustomer(String customerId, String name, int age, String contact, String address) {
+        super(customerId, name, age, contact, address);
+    }
 
     // Override the abstract method to display customer details
     @Override
@@ -8,7 +8,7 @@ public class SavingsAccount extends Account implements Serializable {
     private static final long serialVersionUID = 1L;
 
     private double interestRate;
-    private double minimumBalance;
+    private long minimumBalance; // in cents
 
     // Constructor for NEW accounts
     public SavingsAccount(Customer customer, double balance) {
@@ -16,16 +16,16 @@ public class SavingsAccount extends Account implements Serializable {
         // GOOD: Set rates ONCE during creation
         if (customer instanceof PremiumCustomer) {
             this.interestRate = 5.0;
-            this.minimumBalance = 100;
+            this.minimumBalance = Money.ofDouble(100);
         } else {
             this.interestRate = 3.5;
-            this.minimumBalance = 500;
+            this.minimumBalance = Money.ofDouble(500);
         }
     }
 
     // Constructor for loading from files
-    public SavingsAccount(String accNo, Customer c, double balance,
-                          double rate, double minBalance, String status) {
+    public SavingsAccount(String accNo, Customer c, long balance,
+                          double rate, long minBalance, String status) {
         super(accNo, c, balance, status);
         this.interestRate = rate;
         this.minimumBalance = minBalance;
@@ -39,7 +39,7 @@ public class SavingsAccount extends Account implements Serializable {
                 " | BALANCE: " + getBalance() +
                 " | STATUS: " + getStatus());
         System.out.println("    | Interest Rate: " + interestRate +
-                "% | Minimum Balance: $" + minimumBalance +
+                "% | Minimum Balance: $" + getMinimumBalance() +
                 " | Interest Earned: $" + calculateInterestEarned());
     }
 
@@ -49,29 +49,25 @@ public class SavingsAccount extends Account implements Serializable {
     }
 
     @Override
-    public synchronized boolean withdraw(double amount) {
-        try {
-            if (balance - amount >= minimumBalance) {
-                balance -= amount;
-                return true;
-            } else {
-                System.out.println("Insufficient Fund please try again");
-                return false;
-            }
-
-        } catch (InsufficientFundException e) {
-            System.out.println("Insufficient Fund please try again" + e.getMessage());
-            return false;
-        }
-
+    public long withdrawCents(long cents) throws InsufficientFundException {
+        long balance = debit(cents, minimumBalance);
+        if (balance == REFUSED)
+            throw new InsufficientFundException(
+                    "Withdrawal denied! Minimum balance $" + getMinimumBalance() + " must be maintained."
+            );
+        return balance;
     }
 
+    public double getMinimumBalance() { return Money.toDouble(minimumBalance); }
+    public long getMinimumBalanceCents() { return minimumBalance; }
+    public double getInterestRate() { return interestRate; }
+
     public double calculateInterestEarned() {
-        return this.balance * interestRate / 100;
+        return Money.toDouble(Money.percentOf(getBalanceCents(), interestRate));
     }
 
     @Override
     public String toString() {
-        return super.toString() + "," + interestRate + "," + minimumBalance;
+        return super.toString() + "," + interestRate + "," + Money.toString(minimumBalance) + customerIdField();
     }
 }
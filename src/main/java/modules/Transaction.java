@@ -10,36 +10,40 @@ import java.time.format.DateTimeFormatter;
 public class Transaction implements Serializable {
     private static final long serialVersionUID = 1L;
 
-    // Static field for generating unique transaction IDs (e.g., TXN001)
-    private static int transactionCounter = 0;
+    // Static allocator for unique transaction IDs (e.g., TXN0001), leased in blocks per thread
+    public static final IdAllocator TRANSACTION_IDS = new IdAllocator("TXN", 4, 64);
+
+    public static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
     // Fields
     private String transactionId;
     private String accountNumber;
     private String type;        // DEPOSIT or WITHDRAWAL
-    private double amount;
-    private double balanceAfter;
+    private long amount;        // in cents
+    private long balanceAfter;  // in cents
     private String timestamp;
 
     // Constructor
     public Transaction(String accountNumber, String type, double amount, double balanceAfter) {
-        // Auto-generate unique ID
-        transactionCounter++;
-        this.transactionId = String.format("TXN%04d", transactionCounter);
+        this(TRANSACTION_IDS.next(), accountNumber, type,
+                Money.ofDouble(amount), Money.ofDouble(balanceAfter),
+                LocalDateTime.now().format(TIMESTAMP_FORMAT));
+    }
 
-        // Record details
-        this.accountNumber = accountNumber;
-        this.type = type;
-        this.amount = amount;
-        this.balanceAfter = balanceAfter;
+    /** Creates a new transaction from amounts already in cents. */
+    public static Transaction ofCents(String accountNumber, String type, long amountCents, long balanceAfterCents) {
+        return ofCents(TRANSACTION_IDS, accountNumber, type, amountCents, balanceAfterCents);
+    }
 
-        // Record timestamp (Date/Time formatting)
-        LocalDateTime now = LocalDateTime.now();
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-        this.timestamp = now.format(formatter);
+    /** Creates a new transaction from amounts already in cents, with an ID from the given allocator. */
+    public static Transaction ofCents(IdAllocator ids, String accountNumber, String type, long amountCents,
+                                      long balanceAfterCents) {
+        return new Transaction(ids.next(), accountNumber, type, amountCents, balanceAfterCents,
+                LocalDateTime.now().format(TIMESTAMP_FORMAT));
     }
 
-    public Transaction(String id, String acc, String type, double amount, double balanceAfter, String time) {
+    // Constructor for loading from file (amounts in cents)
+    public Transaction(String id, String acc, String type, long amount, long balanceAfter, String time) {
         this.transactionId = id;
         this.accountNumber = acc;
         this.type = type;
@@ -54,15 +58,17 @@ public class Transaction implements Serializable {
         String sign = type.equalsIgnoreCase("DEPOSIT") ? "+" : "-";
         System.out.printf("| %-7s | %-19s | %-12s | %-10s | %s%.2f | %s%.2f |\n",
                 transactionId, timestamp, accountNumber, type,
-                sign, amount, "", balanceAfter);
+                sign, getAmount(), "", getBalanceAfter());
     }
 
     // Getters
     public String getTransactionId() { return transactionId; }
     public String getAccountNumber() { return accountNumber; }
     public String getType() { return type; }
-    public double getAmount() { return amount; }
-    public double getBalanceAfter() { return balanceAfter; }
+    public double getAmount() { return Money.toDouble(amount); }
+    public double getBalanceAfter() { return Money.toDouble(balanceAfter); }
+    public long getAmountCents() { return amount; }
+    public long getBalanceAfterCents() { return balanceAfter; }
     public String getTimestamp() { return timestamp; }
 
     @Override
@@ -70,8 +76,8 @@ public class Transaction implements Serializable {
         return transactionId + "," +
                 accountNumber + "," +
                 type + "," +
-                amount + "," +
-                balanceAfter + "," +
+                Money.toString(amount) + "," +
+                Money.toString(balanceAfter) + "," +
                 timestamp;
     }
 
@@ -84,8 +90,8 @@ public class Transaction implements Serializable {
         String id = p[0];
         String acc = p[1];
         String type = p[2];
-        double amount = Double.parseDouble(p[3]);
-        double balanceAfter = Double.parseDouble(p[4]);
+        long amount = Money.parse(p[3]);
+        long balanceAfter = Money.parse(p[4]);
         String time = p[5];
 
         return new Transaction(id, acc, type, amount, balanceAfter, time);
@@ -0,0 +1,229 @@
+package services;
+
+import interfaces.BalanceListener;
+import interfaces.CustomerLookup;
+import modules.Account;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Binary account snapshot kept as a full base file plus incremental checkpoints.
+ * <p>
+ * Accounts are marked dirty as their balance changes (deposits, withdrawals, fees)
+ * or when they are added. A save writes only the dirty accounts to a small
+ * checkpoint file next to the base (accounts.bin.1, accounts.bin.2, ...), so its
+ * cost follows the amount of change instead of the number of accounts. Loading
+ * reads the base and folds the checkpoints over it in order. When too many
+ * checkpoints or records pile up they are compacted into a new base.
+ * </p>
+ * <p>
+ * Every file records the checkpoint sequence it covers in its header. A base written
+ * by compaction covers all checkpoints up to its own sequence, so checkpoints left
+ * behind by a crash before they were deleted are ignored instead of applied over
+ * newer balances.
+ * </p>
+ */
+public class AccountCheckpoints implements BalanceListener {
+
+    public static final int DEFAULT_MAX_CHECKPOINTS = 8;
+
+    private final Path base;
+    private final String prefix;
+
+    /** Accounts changed since the last save; Account keeps identity equality. */
+    private final Set<Account> dirty = ConcurrentHashMap.newKeySet();
+
+    private volatile int maxCheckpoints = DEFAULT_MAX_CHECKPOINTS;
+
+    // Guarded by this; saves and loads are serialized
+    private int sequence;
+    private int checkpointCount;
+    private long checkpointRecords;
+    private boolean fullRequired = true;
+
+    /**
+     * @param base the full snapshot file; checkpoints are written next to it
+     */
+    public AccountCheckpoints(Path base) {
+        this.base = base;
+        this.prefix = base.getFileName() + ".";
+    }
+
+    @Override
+    public void onBalanceChanged(Account account, long deltaCents) {
+        if (deltaCents != 0) dirty.add(account);
+    }
+
+    /** Marks an account to be written by the next save, e.g. a new account. */
+    public void markDirty(Account account) {
+        dirty.add(account);
+    }
+
+    /** Makes the next save write a full snapshot, e.g. after importing text data. */
+    public synchronized void requireFull() {
+        fullRequired = true;
+    }
+
+    /**
+     * Sets after how many checkpoints a save compacts them into a new base.
+     *
+     * @param maxCheckpoints at least 1
+     */
+    public void setMaxCheckpoints(int maxCheckpoints) {
+        if (maxCheckpoints < 1) throw new IllegalArgumentException("At least one checkpoint is required.");
+        this.maxCheckpoints = maxCheckpoints;
+    }
+
+    /**
+     * Saves the changes since the previous save as a checkpoint, or compacts
+     * everything into a new base when there is none yet or enough checkpoints
+     * (or more records than half the accounts) have accumulated.
+     *
+     * @param accounts     supplies every current account, only called when compacting
+     * @param accountCount the current number of accounts
+     * @return the number of account records written
+     * @throws IOException if a file cannot be written; the changes stay dirty
+     */
+    public synchronized int save(Supplier<? extends Collection<Account>> accounts, int accountCount)
+            throws IOException {
+        if (fullRequired || !Files.exists(base) || checkpointCount >= maxCheckpoints
+                || checkpointRecords + dirty.size() > accountCount / 2) {
+            Collection<Account> all = accounts.get();
+            compact(all);
+            return all.size();
+        }
+        return checkpoint();
+    }
+
+    /**
+     * Writes only the dirty accounts to a new checkpoint file.
+     *
+     * @return the number of account records written (0 writes no file)
+     * @throws IOException if the file cannot be written; the changes stay dirty
+     */
+    public synchronized int checkpoint() throws IOException {
+        // Each account is unmarked before its balance is read, so a change racing
+        // with the save is either in this checkpoint or marked for the next one
+        List<Account> changed = new ArrayList<>();
+        for (Iterator<Account> it = dirty.iterator(); it.hasNext(); ) {
+            changed.add(it.next());
+            it.remove();
+        }
+        if (changed.isEmpty()) return 0;
+        try {
+            BinaryStorage.writeAccounts(checkpointPath(sequence + 1), changed, sequence + 1);
+        } catch (IOException | RuntimeException e) {
+            dirty.addAll(changed);
+            throw e;
+        }
+        sequence++;
+        checkpointCount++;
+        checkpointRecords += changed.size();
+        return changed.size();
+    }
+
+    /**
+     * Writes every account to a new base and deletes the checkpoints it replaces.
+     *
+     * @throws IOException if the base cannot be written; the changes stay dirty
+     */
+    public synchronized void compact(Collection<Account> accounts) throws IOException {
+        // The new base must cover every checkpoint on disk, even ones this instance never loaded
+        TreeMap<Integer, Path> obsolete = checkpoints(Integer.MIN_VALUE);
+        if (!obsolete.isEmpty()) sequence = Math.max(sequence, obsolete.lastKey());
+        List<Account> pending = new ArrayList<>(dirty);
+        dirty.removeAll(pending);
+        try {
+            BinaryStorage.writeAccounts(base, accounts, sequence);
+        } catch (IOException | RuntimeException e) {
+            dirty.addAll(pending);
+            throw e;
+        }
+        for (Path file : obsolete.values()) Files.deleteIfExists(file);
+        fullRequired = false;
+        checkpointCount = 0;
+        checkpointRecords = 0;
+    }
+
+    /**
+     * Reads the base and applies the newer checkpoints in order; a later record
+     * replaces an earlier one with the same account number.
+     *
+     * @param customers resolves the records' customer IDs, or null to create a Regular customer per record
+     * @return the accounts in base order, followed by accounts added in checkpoints
+     * @throws IOException if a file cannot be read
+     */
+    public synchronized List<Account> load(CustomerLookup customers) throws IOException {
+        Map<String, Account> byNumber = new LinkedHashMap<>();
+        for (Account account : BinaryStorage.readAccounts(base, customers)) {
+            byNumber.put(AccountRegistry.key(account.getAccountNumber()), account);
+        }
+        int loadedSequence = BinaryStorage.readAccountsSequence(base);
+        int applied = 0;
+        long records = 0;
+        for (Map.Entry<Integer, Path> checkpoint : checkpoints(loadedSequence).entrySet()) {
+            for (Account account : BinaryStorage.readAccounts(checkpoint.getValue(), customers)) {
+                byNumber.put(AccountRegistry.key(account.getAccountNumber()), account);
+                records++;
+            }
+            loadedSequence = checkpoint.getKey();
+            applied++;
+        }
+        dirty.clear();
+        sequence = loadedSequence;
+        checkpointCount = applied;
+        checkpointRecords = records;
+        fullRequired = false;
+        return new ArrayList<>(byNumber.values());
+    }
+
+    /** Returns the checkpoint files newer than a sequence, ordered by sequence. */
+    private TreeMap<Integer, Path> checkpoints(int after) throws IOException {
+        TreeMap<Integer, Path> found = new TreeMap<>();
+        Path dir = base.toAbsolutePath().getParent();
+        if (dir == null || !Files.isDirectory(dir)) return found;
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(file -> {
+                String name = file.getFileName().toString();
+                if (!name.startsWith(prefix) || name.length() == prefix.length() || name.length() - prefix.length() > 9) {
+                    return;
+                }
+                for (int i = prefix.length(); i < name.length(); i++) {
+                    if (name.charAt(i) < '0' || name.charAt(i) > '9') return;
+                }
+                int seq = Integer.parseInt(name.substring(prefix.length()));
+                if (seq > after) found.put(seq, file);
+            });
+        }
+        return found;
+    }
+
+    private Path checkpointPath(int seq) {
+        return base.resolveSibling(prefix + seq);
+    }
+
+    /** Returns the number of accounts changed since the last save. */
+    public int getDirtyCount() {
+        return dirty.size();
+    }
+
+    /** Returns the number of checkpoints written since the base. */
+    public synchronized int getCheckpointCount() {
+        return checkpointCount;
+    }
+
+    public Path getBasePath() { return base; }
+}
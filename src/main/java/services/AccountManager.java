@@ -1,25 +1,87 @@
 package services;
 
 import modules.Account;
+import modules.Customer;
+import modules.Money;
 
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.*;
 
 /**
- * Service class to manage bank accounts using HashMap.
+ * Service class to manage bank accounts using a sharded concurrent registry.
  * Demonstrates use of Streams for totals, listing, and filtering.
+ * <p>
+ * For account bases too large for the heap, a manager built on a
+ * {@link PagedAccountStore} keeps the accounts on disk instead and pages them
+ * into a bounded cache as they are looked up.
+ * </p>
  */
 public class AccountManager {
 
-    /** Stores accounts by account number for fast lookup */
-    private Map<String, Account> accountsMap;
+    /** Stores accounts by account number for fast, lock-free lookup */
+    private final AccountRegistry accountsMap;
+
+    /** Accounts changed since the last binary save, and the checkpoint files */
+    private final AccountCheckpoints checkpoints;
+
+    /** Bank total maintained from balance changes, swapped on reload with the accounts */
+    private volatile BankTotal bankTotal;
+
+    /** Write-ahead journal for new accounts, or null if not journaling */
+    private volatile TransactionJournal journal;
+
+    /** On-disk store the accounts are paged from, or null when they are all in the registry */
+    private final PagedAccountStore pagedStore;
+
+    /** Customers by ID, shared by their accounts and saved beside them */
+    private final CustomerRegistry customers;
 
     /** Constructor */
     public AccountManager() {
-        accountsMap = new HashMap<>();
+        this(AccountRegistry.DEFAULT_SHARDS);
+    }
+
+    /**
+     * Constructor with a configurable number of registry shards.
+     *
+     * @param shards number of shards (rounded up to a power of two)
+     */
+    public AccountManager(int shards) {
+        this(shards, StorageFormat.BINARY.getAccountsPath());
+    }
+
+    /**
+     * Constructor with a configurable binary snapshot location.
+     *
+     * @param shards       number of shards (rounded up to a power of two)
+     * @param snapshotPath base binary account file; checkpoints are written next to it
+     */
+    public AccountManager(int shards, Path snapshotPath) {
+        this(shards, snapshotPath, null);
+    }
+
+    /**
+     * Constructor for the paged mode: accounts stay in the store and only the
+     * recently used ones are on the heap. Saves flush the store; loads import into it.
+     *
+     * @param pagedStore the on-disk account store
+     */
+    public AccountManager(PagedAccountStore pagedStore) {
+        this(AccountRegistry.DEFAULT_SHARDS, StorageFormat.BINARY.getAccountsPath(),
+                Objects.requireNonNull(pagedStore));
+        pagedStore.setCustomers(customers);
+    }
+
+    private AccountManager(int shards, Path snapshotPath, PagedAccountStore pagedStore) {
+        accountsMap = new AccountRegistry(shards);
+        checkpoints = new AccountCheckpoints(snapshotPath);
+        bankTotal = new BankTotal(checkpoints);
+        this.pagedStore = pagedStore;
+        // Customers are saved beside the accounts that refer to them
+        Path dir = (pagedStore != null ? pagedStore.getPath() : snapshotPath).toAbsolutePath().getParent();
+        customers = new CustomerRegistry(dir.resolve("customers.txt"));
     }
 
     /**
@@ -29,48 +91,119 @@ public class AccountManager {
      * @param newAccount the Account object to be added
      */
     public void addAccount(Account newAccount) {
-        accountsMap.put(newAccount.getAccountNumber(), newAccount);
+        // Registered before journaled, so a snapshot holds every account before its journal
+        // position; the account's monitor keeps its transactions from being journaled first
+        synchronized (newAccount) {
+            TransactionJournal current = journal;
+            boolean newCustomer = current != null && customers.isNew(newAccount.getCustomer());
+            restoreAccount(newAccount);
+            if (current != null) {
+                if (newCustomer) current.appendCustomer(newAccount.getCustomer());
+                current.appendAccount(newAccount);
+            }
+        }
+    }
+
+    /** Adds a customer replayed from the journal. */
+    void restoreCustomer(Customer customer) {
+        customers.register(customer);
+    }
+
+    /** Adds an account replayed from the journal, without journaling it again. */
+    void restoreAccount(Account newAccount) {
+        customers.register(newAccount.getCustomer());
+        if (pagedStore != null) {
+            pagedStore.put(newAccount);
+            return;
+        }
+        Account previous = accountsMap.put(newAccount);
+        if (previous == newAccount) return; // already tracked
+        checkpoints.markDirty(newAccount);
+        BankTotal total = bankTotal;
+        total.track(newAccount);
+        if (previous != null) total.untrack(previous);
+    }
+
+    /**
+     * Journals every account added from now on.
+     *
+     * @param journal the journal, or null to stop journaling
+     */
+    public void setJournal(TransactionJournal journal) {
+        this.journal = journal;
     }
 
     /**
-     * Finds an account by its account number.
+     * Finds an account by its account number (case-insensitive).
      *
      * @param accountNumber the account number to search for
      * @return the Account object if found, otherwise null
      */
     public Account findAccount(String accountNumber) {
+        if (pagedStore != null) return pagedStore.get(accountNumber);
         return accountsMap.get(accountNumber);
     }
 
     /**
-     * Calculates the total balance of all accounts using Stream API.
+     * Returns the total balance of all accounts.
+     * Maintained incrementally as balances change, so reading it does not visit any account.
      *
      * @return the sum of balances of all accounts
      */
     public double getTotalBalance() {
-        return accountsMap.values()
-                .stream()
-                .mapToDouble(Account::getBalance)
+        return Money.toDouble(getTotalBalanceCents());
+    }
+
+    private long getTotalBalanceCents() {
+        return pagedStore != null ? pagedStore.getTotalBalanceCents() : bankTotal.getTotalCents();
+    }
+
+    /**
+     * Recalculates the total balance from every account using Stream API, in cents.
+     *
+     * @return the exact sum of all current balances
+     */
+    public long recomputeTotalBalanceCents() {
+        if (pagedStore != null) {
+            long[] sum = new long[1];
+            pagedStore.forEach(account -> sum[0] += account.getBalanceCents());
+            return sum[0];
+        }
+        return accountsMap.stream()
+                .mapToLong(Account::getBalanceCents)
                 .sum();
     }
 
+    /**
+     * Checks the incremental total against a full recomputation.
+     * Only meaningful while no balances are changing.
+     *
+     * @return true if both totals agree
+     */
+    public boolean verifyTotalBalance() {
+        return getTotalBalanceCents() == recomputeTotalBalanceCents();
+    }
+
     /**
      * Displays all accounts in a formatted manner using Stream API.
      * Also prints the total number of accounts and total bank balance.
      */
     public void viewAllAccounts() {
-        if (accountsMap.isEmpty()) {
+        if (getTotalAccounts() == 0) {
             System.out.println("No accounts in the bank.");
             return;
         }
 
         System.out.println("----- All Bank Accounts -----");
 
-        // Stream to display all accounts
-        accountsMap.values()
-                .stream()
-                .filter(Objects::nonNull)
-                .forEach(Account::displayAccountDetails);
+        if (pagedStore != null) {
+            pagedStore.forEach(Account::displayAccountDetails);
+        } else {
+            // Stream to display all accounts
+            accountsMap.stream()
+                    .filter(Objects::nonNull)
+                    .forEach(Account::displayAccountDetails);
+        }
 
         System.out.println("Total accounts: " + getTotalAccounts());
         System.out.println("Total Bank balance: $" + getTotalBalance());
@@ -78,54 +211,161 @@ public class AccountManager {
 
     /** Returns the total number of accounts managed. */
     public int getTotalAccounts() {
-        return accountsMap.size();
+        return pagedStore != null ? (int) pagedStore.size() : accountsMap.size();
+    }
+
+    /** Returns the store accounts are paged from, or null when they are all on the heap. */
+    public PagedAccountStore getPagedStore() {
+        return pagedStore;
+    }
+
+    /** Returns the customers of the accounts, by ID. */
+    public CustomerRegistry getCustomers() {
+        return customers;
+    }
+
+    /** Returns the checkpoint store behind binary saves and loads. */
+    public AccountCheckpoints getCheckpoints() {
+        return checkpoints;
     }
 
     /**
-     * Saves all accounts to a text file using Stream API.
+     * Saves the accounts in the binary format: only those changed since the last
+     * save as a checkpoint, or all of them when the checkpoints are due for compaction.
+     *
+     * @return true if the file was written
      */
-    public void saveAccounts() {
-        String filePath = "src/main/java/data/accounts.txt";
-        File file = new File(filePath);
-        File parentDir = file.getParentFile();
-        try {
-            if (parentDir != null && !parentDir.exists()) {
-                if (!parentDir.mkdirs()) {
-                    System.out.println("Failed to create directory structure: " + parentDir.getAbsolutePath());
-                    return;
-                }
-            }
-
-            List<String> lines = accountsMap.values()
-                    .stream()
-                    .map(Account::toString)
-                    .toList();
+    public boolean saveAccounts() {
+        return saveAccounts(StorageFormat.BINARY);
+    }
 
-            Files.write(Paths.get(filePath), lines);
-            System.out.println("Accounts saved (text format).");
+    /**
+     * Saves accounts to a file in the given format. Binary saves are incremental
+     * (see {@link AccountCheckpoints}); text always writes every account (export).
+     * Every file is replaced atomically, so a crash mid-save leaves the previous one.
+     *
+     * @return true if the file was written
+     */
+    public boolean saveAccounts(StorageFormat format) {
+        try {
+            writeAccounts(format);
+            return true;
         } catch (Exception e) {
             System.out.println("Error saving accounts: " + e.getMessage());
+            return false;
         }
     }
 
     /**
-     * Loads accounts from a text file and populates the internal map using simple logic.
+     * Saves accounts like {@link #saveAccounts(StorageFormat)}, but reports a failure
+     * by throwing its cause (for background saves, whose future carries it).
+     *
+     * @throws IOException if a file cannot be written
+     */
+    void writeAccounts(StorageFormat format) throws IOException {
+        Path path = format == StorageFormat.BINARY ? checkpoints.getBasePath() : format.getAccountsPath();
+        File parentDir = path.toFile().getParentFile();
+        if (parentDir != null && !parentDir.exists()) {
+            if (!parentDir.mkdirs()) {
+                throw new IOException("Failed to create directory structure: " + parentDir.getAbsolutePath());
+            }
+        }
+
+        // Accounts refer to their customers by ID, so the customers are saved first
+        if (customers.isChanged() || format == StorageFormat.TEXT) customers.save();
+        if (pagedStore != null && format == StorageFormat.BINARY) {
+            int written = pagedStore.flush();
+            System.out.println("Accounts saved (paged store, " + written + " records).");
+            return;
+        } else if (pagedStore != null) {
+            AtomicFiles.writeLines(path, out -> {
+                try {
+                    pagedStore.forEach(account -> {
+                        try {
+                            out.write(account.toString());
+                            out.newLine();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            });
+        } else if (format == StorageFormat.BINARY) {
+            int written = checkpoints.save(accountsMap::values, accountsMap.size());
+            System.out.println("Accounts saved (binary format, " + written + " records).");
+            return;
+        } else {
+            List<Account> accounts = accountsMap.values();
+            AtomicFiles.writeLines(path, out -> {
+                for (Account account : accounts) {
+                    out.write(account.toString());
+                    out.newLine();
+                }
+            });
+        }
+        System.out.println("Accounts saved (" + format.name().toLowerCase() + " format).");
+    }
+
+    /**
+     * Loads accounts from the binary file, or from the text file if there is no
+     * binary one yet (e.g. data from an older version).
      */
     public void loadAccounts() {
+        if (pagedStore != null && pagedStore.size() > 0) {
+            // The store is the data; new numbers continue after its highest slot
+            Account.ACCOUNT_IDS.observe(pagedStore.getHighestSequence());
+            try {
+                customers.load();
+            } catch (IOException e) {
+                System.out.println("Error loading customers: " + e.getMessage());
+            }
+            System.out.println("Accounts opened (" + pagedStore.size() + " in the paged store).");
+            return;
+        }
+        loadAccounts(Files.exists(checkpoints.getBasePath()) ? StorageFormat.BINARY : StorageFormat.TEXT);
+    }
+
+    /**
+     * Loads accounts from a file in the given format (text for import). Binary
+     * loads apply the checkpoints written since the base snapshot.
+     * The loaded accounts replace the current ones in one atomic swap, so concurrent
+     * lookups never see a partially loaded map. In the paged mode they are imported
+     * into the store instead, replacing its contents.
+     */
+    public void loadAccounts(StorageFormat format) {
         try {
-            String filePath = "src/main/java/data/accounts.txt";
-            Path path = Paths.get(filePath);
+            Path path = format == StorageFormat.BINARY ? checkpoints.getBasePath() : format.getAccountsPath();
             if (!Files.exists(path)) return;
 
-            accountsMap.clear();
+            customers.load();
+            List<Account> loaded = format == StorageFormat.BINARY
+                    ? checkpoints.load(customers)
+                    : Files.readAllLines(path)
+                            .stream()
+                            .map(line -> Account.fromString(line, customers))
+                            .filter(Objects::nonNull)
+                            .toList();
 
-            Files.readAllLines(path)
-                    .stream()
-                    .map(Account::fromString)
-                    .filter(Objects::nonNull)
-                    .forEach(account -> accountsMap.put(account.getAccountNumber(), account));
+            // New accounts must continue after the loaded numbers
+            BankTotal total = new BankTotal(checkpoints);
+            if (pagedStore != null) {
+                loaded.forEach(account -> Account.ACCOUNT_IDS.observe(account.getAccountNumber()));
+                pagedStore.replaceAll(loaded);
+                System.out.println("Accounts imported into the paged store (" + format.name().toLowerCase() + " format).");
+                return;
+            }
+            loaded.forEach(account -> {
+                Account.ACCOUNT_IDS.observe(account.getAccountNumber());
+                total.track(account);
+            });
+            accountsMap.replaceAll(loaded);
+            bankTotal = total;
+            // Imported text is not in the binary base, so the next save rewrites it whole
+            if (format == StorageFormat.TEXT) checkpoints.requireFull();
 
-            System.out.println("Accounts loaded (text format).");
+            System.out.println("Accounts loaded (" + format.name().toLowerCase() + " format).");
         } catch (Exception e) {
             System.out.println("Error loading accounts: " + e.getMessage());
         }
@@ -0,0 +1,139 @@
+package services;
+
+import modules.Account;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Concurrent account lookup table split into a fixed number of shards.
+ * <p>
+ * Lookups never lock. A reload builds a complete new generation off to the side
+ * and swaps it in with one volatile write, so readers see either the old set of
+ * accounts or the new one, never a half-empty map.
+ * Account numbers are matched case-insensitively (acc001 finds ACC001).
+ * </p>
+ */
+public class AccountRegistry {
+
+    public static final int DEFAULT_SHARDS = 16;
+
+    /** One complete, independently readable set of shards. */
+    private static final class Generation {
+        final ConcurrentHashMap<String, Account>[] shards;
+        final int mask;
+
+        @SuppressWarnings("unchecked")
+        Generation(int shardCount, int expectedSize) {
+            shards = (ConcurrentHashMap<String, Account>[]) new ConcurrentHashMap<?, ?>[shardCount];
+            int perShard = Math.max(16, expectedSize / shardCount);
+            for (int i = 0; i < shardCount; i++) shards[i] = new ConcurrentHashMap<>(perShard);
+            mask = shardCount - 1;
+        }
+
+        ConcurrentHashMap<String, Account> shardFor(String key) {
+            // Not the low bits the map itself indexes with, or each shard would only fill 1/shards of its bins
+            int h = key.hashCode() * 0x9E3779B9;
+            return shards[(h >>> 16) & mask];
+        }
+    }
+
+    private final int shardCount;
+    private volatile Generation current;
+
+    /** Creates a registry with {@link #DEFAULT_SHARDS} shards. */
+    public AccountRegistry() {
+        this(DEFAULT_SHARDS);
+    }
+
+    /**
+     * @param shards number of shards, rounded up to a power of two
+     */
+    public AccountRegistry(int shards) {
+        if (shards < 1) throw new IllegalArgumentException("Shard count must be at least 1.");
+        int n = 1;
+        while (n < shards) n <<= 1;
+        this.shardCount = n;
+        this.current = new Generation(shardCount, 0);
+    }
+
+    /** Looks up an account, or returns null. */
+    public Account get(String accountNumber) {
+        if (accountNumber == null) return null;
+        String key = key(accountNumber);
+        return current.shardFor(key).get(key);
+    }
+
+    /**
+     * Adds or replaces an account. If a reload swaps generations at the same time,
+     * the account is written again into the new generation so it is not lost.
+     *
+     * @return the account previously stored under that number, or null
+     */
+    public Account put(Account account) {
+        String key = key(account.getAccountNumber());
+        Generation gen;
+        Account previous;
+        do {
+            gen = current;
+            previous = gen.shardFor(key).put(key, account);
+        } while (gen != current);
+        return previous;
+    }
+
+    /**
+     * Replaces every account with the given ones in a single atomic swap.
+     *
+     * @param accounts the complete new set of accounts
+     */
+    public void replaceAll(Collection<Account> accounts) {
+        Generation next = new Generation(shardCount, accounts.size());
+        for (Account account : accounts) {
+            String key = key(account.getAccountNumber());
+            next.shardFor(key).put(key, account);
+        }
+        current = next;
+    }
+
+    /** Returns the number of accounts in the current generation. */
+    public int size() {
+        int size = 0;
+        for (ConcurrentHashMap<String, Account> shard : current.shards) size += shard.size();
+        return size;
+    }
+
+    public boolean isEmpty() {
+        for (ConcurrentHashMap<String, Account> shard : current.shards) {
+            if (!shard.isEmpty()) return false;
+        }
+        return true;
+    }
+
+    /** Streams the accounts of the current generation (weakly consistent). */
+    public Stream<Account> stream() {
+        return Stream.of(current.shards).flatMap(shard -> shard.values().stream());
+    }
+
+    /** Returns a copy of all accounts in the current generation. */
+    public List<Account> values() {
+        List<Account> all = new ArrayList<>(size());
+        for (ConcurrentHashMap<String, Account> shard : current.shards) all.addAll(shard.values());
+        return all;
+    }
+
+    public int getShardCount() { return shardCount; }
+
+    /** Upper-cases the account number, without allocating when it already is. */
+    static String key(String accountNumber) {
+        for (int i = 0; i < accountNumber.length(); i++) {
+            if (Character.isLowerCase(accountNumber.charAt(i))) {
+                return accountNumber.toUpperCase(Locale.ROOT);
+            }
+        }
+        return accountNumber;
+    }
+}
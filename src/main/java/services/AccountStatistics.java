@@ -0,0 +1,56 @@
+package services;
+
+import modules.Money;
+import modules.Transaction;
+
+/**
+ * Immutable snapshot of the totals of one account's transaction history.
+ * The running totals themselves are kept by the store's per-account row list,
+ * under its monitor, and by the segment log's footers; a snapshot is built on
+ * read, so its four values come from the same point in the history. Totals of
+ * consecutive parts of the history combine with {@link #plus(AccountStatistics)}.
+ */
+public final class AccountStatistics {
+
+    public static final AccountStatistics EMPTY = new AccountStatistics(0, 0, 0, 0);
+
+    private final long totalDepositCents;
+    private final long totalWithdrawCents;
+    private final long transactionCount;
+    private final long lastBalanceCents;
+
+    AccountStatistics(long totalDepositCents, long totalWithdrawCents,
+                              long transactionCount, long lastBalanceCents) {
+        this.totalDepositCents = totalDepositCents;
+        this.totalWithdrawCents = totalWithdrawCents;
+        this.transactionCount = transactionCount;
+        this.lastBalanceCents = lastBalanceCents;
+    }
+
+    /** Returns the totals with one more transaction applied. */
+    public AccountStatistics plus(Transaction t) {
+        long deposits = totalDepositCents;
+        long withdrawals = totalWithdrawCents;
+        if (t.getType().equalsIgnoreCase("DEPOSIT")) deposits = Money.add(deposits, t.getAmountCents());
+        else if (t.getType().equalsIgnoreCase("WITHDRAW")) withdrawals = Money.add(withdrawals, t.getAmountCents());
+        return new AccountStatistics(deposits, withdrawals, transactionCount + 1, t.getBalanceAfterCents());
+    }
+
+    /** Returns these totals followed by those of a later part of the history. */
+    public AccountStatistics plus(AccountStatistics later) {
+        if (later.transactionCount == 0) return this;
+        return new AccountStatistics(Money.add(totalDepositCents, later.totalDepositCents),
+                Money.add(totalWithdrawCents, later.totalWithdrawCents),
+                transactionCount + later.transactionCount, later.lastBalanceCents);
+    }
+
+    public long getTotalDepositCents() { return totalDepositCents; }
+    public long getTotalWithdrawCents() { return totalWithdrawCents; }
+    public long getTransactionCount() { return transactionCount; }
+    public long getLastBalanceCents() { return lastBalanceCents; }
+
+    public double getTotalDeposit() { return Money.toDouble(totalDepositCents); }
+    public double getTotalWithdraw() { return Money.toDouble(totalWithdrawCents); }
+    public double getNetChange() { return Money.toDouble(totalDepositCents - totalWithdrawCents); }
+    public double getLastBalance() { return Money.toDouble(lastBalanceCents); }
+}
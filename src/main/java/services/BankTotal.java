@@ -0,0 +1,54 @@
+package services;
+
+import interfaces.BalanceListener;
+import modules.Account;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bank-wide balance total kept up to date from account balance changes.
+ * Backed by a LongAdder, so concurrent deposits on different accounts update
+ * separate cells instead of contending on one shared counter.
+ */
+public class BankTotal implements BalanceListener {
+
+    private final LongAdder totalCents = new LongAdder();
+    /** Also told about every change, since an account has a single listener; may be null */
+    private final BalanceListener next;
+
+    public BankTotal() {
+        this(null);
+    }
+
+    /**
+     * @param next listener to forward every balance change to (e.g. dirty tracking), or null
+     */
+    public BankTotal(BalanceListener next) {
+        this.next = next;
+    }
+
+    @Override
+    public void onBalanceChanged(Account account, long deltaCents) {
+        totalCents.add(deltaCents);
+        if (next != null) next.onBalanceChanged(account, deltaCents);
+    }
+
+    /**
+     * Starts tracking an account and counts its current balance.
+     * Must be called before the account is shared with other threads.
+     */
+    public void track(Account account) {
+        account.setBalanceListener(this);
+        totalCents.add(account.getBalanceCents());
+    }
+
+    /** Stops tracking an account and removes its balance from the total. */
+    public void untrack(Account account) {
+        account.setBalanceListener(null);
+        totalCents.add(-account.getBalanceCents());
+    }
+
+    public long getTotalCents() {
+        return totalCents.sum();
+    }
+}
@@ -0,0 +1,225 @@
+package services;
+
+import exceptions.InsufficientFundException;
+import exceptions.OverdraftExceededException;
+import modules.Account;
+import modules.Money;
+import modules.Transaction;
+import modules.TransactionType;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Applies large batches of deposits and withdrawals, such as payroll and
+ * settlement files, with the per-operation overhead paid once per account or
+ * once per batch.
+ * <p>
+ * The operations are grouped by account, keeping their order within each account.
+ * Each account is locked once (the monitor transfers use) and its whole group is
+ * applied and recorded under that lock; groups run in parallel for large batches.
+ * The transactions of the batch share one timestamp. Each account's transactions
+ * get consecutive IDs and go to the log and the journal in one bulk call, without
+ * a Transaction object each, before its lock is released. Nothing else is recorded for the
+ * account between them, and they are journaled in the order of its balances.
+ * Every operation gets its own outcome: an operation that breaks an account
+ * rule is rejected on its own and the rest of the batch still applies.
+ * </p>
+ */
+public class BatchTransactionService {
+
+    /** Batches at least this large apply their account groups in parallel. */
+    static final int PARALLEL_THRESHOLD = 10_000;
+
+    /** One deposit or withdrawal of a batch. */
+    public static final class Operation {
+        private final String accountNumber;
+        private final TransactionType type;
+        private final long amountCents;
+
+        private Operation(String accountNumber, TransactionType type, long amountCents) {
+            this.accountNumber = accountNumber;
+            this.type = type;
+            this.amountCents = amountCents;
+        }
+
+        public static Operation deposit(String accountNumber, double amount) {
+            return ofCents(accountNumber, TransactionType.DEPOSIT, Money.ofDouble(amount));
+        }
+
+        public static Operation withdraw(String accountNumber, double amount) {
+            return ofCents(accountNumber, TransactionType.WITHDRAW, Money.ofDouble(amount));
+        }
+
+        public static Operation ofCents(String accountNumber, TransactionType type, long amountCents) {
+            return new Operation(accountNumber, type, amountCents);
+        }
+
+        public String getAccountNumber() { return accountNumber; }
+        public TransactionType getType() { return type; }
+        public long getAmountCents() { return amountCents; }
+    }
+
+    /** Outcome of one operation. */
+    public enum Status {
+        APPLIED,
+        /** No account has the operation's number. */
+        UNKNOWN_ACCOUNT,
+        /** The amount is not positive. */
+        INVALID_AMOUNT,
+        /** The withdrawal would break the minimum balance or the overdraft limit. */
+        REJECTED
+    }
+
+    /** Outcomes of a batch, by the index of each operation in the batch. */
+    public static final class Result {
+        private static final Status[] STATUSES = Status.values();
+
+        private final byte[] statuses;
+        private final long[] balancesAfter;
+        private final long[] transactionIds;
+        private final int[] counts;
+
+        Result(byte[] statuses, long[] balancesAfter, long[] transactionIds) {
+            this.statuses = statuses;
+            this.balancesAfter = balancesAfter;
+            this.transactionIds = transactionIds;
+            this.counts = new int[STATUSES.length];
+            for (byte status : statuses) counts[status]++;
+        }
+
+        public int size() { return statuses.length; }
+        public Status getStatus(int index) { return STATUSES[statuses[index]]; }
+        public int getCount(Status status) { return counts[status.ordinal()]; }
+        public boolean isFullyApplied() { return counts[Status.APPLIED.ordinal()] == statuses.length; }
+
+        /** The account's balance right after the operation, or 0 if it was not applied. */
+        public long getBalanceAfterCents(int index) { return balancesAfter[index]; }
+
+        /** ID of the transaction the operation recorded, or null if it was not applied. */
+        public String getTransactionId(int index) {
+            long id = transactionIds[index];
+            return id < 0 ? null : Transaction.TRANSACTION_IDS.format(id);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("Batch of ").append(statuses.length).append(" operations:");
+            for (Status status : STATUSES) sb.append(' ').append(status).append('=').append(counts[status.ordinal()]);
+            return sb.toString();
+        }
+    }
+
+    private final AccountManager accountManager;
+    private final TransactionManager transactionManager;
+
+    public BatchTransactionService(AccountManager accountManager, TransactionManager transactionManager) {
+        this.accountManager = accountManager;
+        this.transactionManager = transactionManager;
+    }
+
+    /**
+     * Applies a batch of operations and records a transaction for each one applied.
+     *
+     * @param operations the operations, applied in this order within each account
+     * @return the outcome of every operation, by its index in the list
+     */
+    public Result apply(List<Operation> operations) {
+        int n = operations.size();
+        byte[] statuses = new byte[n];
+        long[] balancesAfter = new long[n];
+        long[] transactionIds = new long[n];
+        Arrays.fill(transactionIds, -1);
+
+        // Group by account with a stable counting sort: order[] lists the operations
+        // account by account, each group in batch order. Numbers are grouped by the
+        // registry's key, since findAccount matches them regardless of case
+        Map<String, Integer> groupByNumber = new HashMap<>();
+        int[] groupOf = new int[n];
+        int[] groupSizes = new int[16];
+        for (int i = 0; i < n; i++) {
+            String key = AccountRegistry.key(operations.get(i).accountNumber);
+            Integer group = groupByNumber.putIfAbsent(key, groupByNumber.size());
+            int g = group != null ? group : groupByNumber.size() - 1;
+            if (g == groupSizes.length) groupSizes = Arrays.copyOf(groupSizes, g * 2);
+            groupOf[i] = g;
+            groupSizes[g]++;
+        }
+        int groups = groupByNumber.size();
+        String[] numbers = new String[groups];
+        groupByNumber.forEach((number, g) -> numbers[g] = number);
+        int[] groupStart = new int[groups + 1];
+        for (int g = 0; g < groups; g++) groupStart[g + 1] = groupStart[g] + groupSizes[g];
+        int[] order = new int[n];
+        int[] fill = Arrays.copyOf(groupStart, groups);
+        for (int i = 0; i < n; i++) order[fill[groupOf[i]]++] = i;
+
+        long epochSecond = LocalDateTime.now().toEpochSecond(ZoneOffset.UTC);
+        IntStream range = IntStream.range(0, groups);
+        if (n >= PARALLEL_THRESHOLD) range = range.parallel();
+        range.forEach(g -> applyGroup(accountManager.findAccount(numbers[g]), operations, order,
+                groupStart[g], groupStart[g + 1], statuses, balancesAfter, transactionIds, epochSecond));
+        return new Result(statuses, balancesAfter, transactionIds);
+    }
+
+    /**
+     * Applies one account's operations, order[from..to), under a single acquisition of
+     * its lock, and records the applied ones before releasing it.
+     */
+    private void applyGroup(Account account, List<Operation> operations, int[] order, int from, int to,
+                            byte[] statuses, long[] balancesAfter, long[] transactionIds, long epochSecond) {
+        if (account == null) {
+            for (int k = from; k < to; k++) statuses[order[k]] = (byte) Status.UNKNOWN_ACCOUNT.ordinal();
+            return;
+        }
+        synchronized (account) {
+            int applied = 0;
+            for (int k = from; k < to; k++) {
+                int i = order[k];
+                Operation operation = operations.get(i);
+                Status status;
+                if (operation.amountCents <= 0) {
+                    status = Status.INVALID_AMOUNT;
+                } else if (operation.type == TransactionType.DEPOSIT) {
+                    balancesAfter[i] = account.depositCents(operation.amountCents);
+                    status = Status.APPLIED;
+                } else {
+                    try {
+                        balancesAfter[i] = account.withdrawCents(operation.amountCents);
+                        status = Status.APPLIED;
+                    } catch (InsufficientFundException | OverdraftExceededException e) {
+                        status = Status.REJECTED;
+                    }
+                }
+                statuses[i] = (byte) status.ordinal();
+                if (status == Status.APPLIED) applied++;
+            }
+            if (applied == 0) return;
+
+            // Logged while the lock is held, so the account's records stay in the order of its balances
+            int[] accountIndexes = new int[applied];
+            TransactionType[] types = new TransactionType[applied];
+            long[] amounts = new long[applied];
+            long[] balances = new long[applied];
+            long firstId = transactionManager.getTransactionIds().nextValues(applied);
+            int row = 0;
+            for (int k = from; k < to; k++) {
+                int i = order[k];
+                if (statuses[i] != Status.APPLIED.ordinal()) continue;
+                Operation operation = operations.get(i);
+                types[row] = operation.type;
+                amounts[row] = operation.amountCents;
+                balances[row] = balancesAfter[i];
+                transactionIds[i] = firstId + row;
+                row++;
+            }
+            transactionManager.addRows(firstId, new String[]{account.getAccountNumber()}, accountIndexes, types,
+                    amounts, balances, epochSecond, applied);
+        }
+    }
+}
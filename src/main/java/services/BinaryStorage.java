@@ -0,0 +1,397 @@
+package services;
+
+import interfaces.CustomerLookup;
+import modules.Account;
+import modules.CheckingAccount;
+import modules.Customer;
+import modules.RegularCustomer;
+import modules.SavingsAccount;
+import modules.Transaction;
+import modules.TransactionType;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Versioned binary snapshot files with fixed-width records.
+ * <p>
+ * Layout (big-endian): a 32-byte header (magic, version, record size, record
+ * count, string table offset, string count, checkpoint sequence), the records,
+ * then a string table of length-prefixed UTF-8 strings. Records refer to strings
+ * by index, so a customer name or account number shared by many records is
+ * stored, and decoded on load, only once.
+ * </p>
+ * <p>
+ * Files are read through memory-mapped windows with absolute gets, so loading
+ * allocates no String or boxed value per field; transactions go straight into
+ * the columns of a {@link TransactionStore}.
+ * </p>
+ * <pre>
+ * account (49 bytes):     number seq (8) | number ref (4) | name ref (4) | status ref (4) | kind (1)
+ *                         | balance (8) | rate bits or overdraft (8) | minimum balance or fee (8)
+ *                         | customer ID ref or -1 (4; absent in version 1 files, whose records are 45 bytes)
+ * transaction (37 bytes): id seq or -(ref + 1) (8) | account ref (4) | type (1) | amount (8)
+ *                         | balance after (8) | epoch second (8)
+ * </pre>
+ */
+public final class BinaryStorage {
+
+    public static final short VERSION = 2;
+
+    static final int ACCOUNTS_MAGIC = 0x42414343;     // "BACC"
+    static final int TRANSACTIONS_MAGIC = 0x4254584E; // "BTXN"
+    static final int HEADER_SIZE = 32;
+    static final int ACCOUNT_RECORD_SIZE = 49;
+    static final int V1_ACCOUNT_RECORD_SIZE = 45;
+    static final int TRANSACTION_RECORD_SIZE = 37;
+
+    private static final byte SAVINGS = 0;
+    private static final byte CHECKING = 1;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final TransactionType[] TYPES = TransactionType.values();
+
+    private BinaryStorage() {
+    }
+
+    /**
+     * Writes accounts to a binary file, replacing it atomically.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public static void writeAccounts(Path path, Collection<Account> accounts) throws IOException {
+        writeAccounts(path, accounts, 0);
+    }
+
+    /**
+     * Writes accounts to a binary file, replacing it atomically, and records the
+     * checkpoint sequence the file covers (see {@link AccountCheckpoints}).
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public static void writeAccounts(Path path, Collection<Account> accounts, int sequence) throws IOException {
+        StringTable strings = new StringTable();
+        try (RecordWriter out = new RecordWriter(path, ACCOUNTS_MAGIC, ACCOUNT_RECORD_SIZE, sequence)) {
+            for (Account account : accounts) {
+                ByteBuffer b = out.next();
+                String number = account.getAccountNumber();
+                long seq = Account.ACCOUNT_IDS.sequenceOf(number);
+                b.putLong(seq);
+                b.putInt(seq < 0 ? strings.ref(number) : -1);
+                b.putInt(strings.ref(account.getCustomer().getName()));
+                b.putInt(strings.ref(account.getStatus()));
+                if (account instanceof SavingsAccount savings) {
+                    b.put(SAVINGS).putLong(account.getBalanceCents())
+                            .putLong(Double.doubleToLongBits(savings.getInterestRate()))
+                            .putLong(savings.getMinimumBalanceCents());
+                } else if (account instanceof CheckingAccount checking) {
+                    b.put(CHECKING).putLong(account.getBalanceCents())
+                            .putLong(checking.getOverdraftLimitCents())
+                            .putLong(checking.getMonthlyFeeCents());
+                } else {
+                    throw new IllegalArgumentException("Unsupported account type: " + account.getClass().getSimpleName());
+                }
+                String customerId = account.getCustomer().getCustomerId();
+                b.putInt(customerId == null ? -1 : strings.ref(customerId));
+            }
+            out.finish(strings);
+        }
+    }
+
+    /**
+     * Reads accounts from a binary file.
+     *
+     * @throws IOException if the file cannot be read or is not a supported account file
+     */
+    public static List<Account> readAccounts(Path path) throws IOException {
+        return readAccounts(path, null);
+    }
+
+    /**
+     * Reads accounts from a binary file, taking their customers from a lookup.
+     *
+     * @param customers resolves each record's customer ID, or null to create a Regular customer per record
+     * @throws IOException if the file cannot be read or is not a supported account file
+     */
+    public static List<Account> readAccounts(Path path, CustomerLookup customers) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Header header = Header.read(channel, ACCOUNTS_MAGIC, ACCOUNT_RECORD_SIZE);
+            String[] strings = readStrings(channel, header);
+            List<Account> accounts = new ArrayList<>((int) header.count);
+            forEachRecord(channel, header, (b, at) -> {
+                long seq = b.getLong(at);
+                String number = seq >= 0 ? Account.ACCOUNT_IDS.format(seq) : string(strings, b.getInt(at + 8));
+                String name = string(strings, b.getInt(at + 12));
+                String status = string(strings, b.getInt(at + 16));
+                byte kind = b.get(at + 20);
+                long balance = b.getLong(at + 21);
+                long first = b.getLong(at + 29);
+                long second = b.getLong(at + 37);
+                int customerRef = header.recordSize > V1_ACCOUNT_RECORD_SIZE ? b.getInt(at + 45) : -1;
+                String customerId = customerRef < 0 ? null : string(strings, customerRef);
+                Customer customer = customers != null ? customers.resolve(customerId, name)
+                        : customerId != null ? new RegularCustomer(customerId, name, 0, null, null)
+                        : new RegularCustomer(name);
+                if (kind == SAVINGS) {
+                    accounts.add(new SavingsAccount(number, customer, balance, Double.longBitsToDouble(first),
+                            second, status));
+                } else if (kind == CHECKING) {
+                    accounts.add(new CheckingAccount(number, customer, balance, first, second, status));
+                } else {
+                    throw new IOException("Corrupt account record: unknown kind " + kind);
+                }
+            });
+            return accounts;
+        }
+    }
+
+    /**
+     * Reads the checkpoint sequence recorded in an account file's header.
+     *
+     * @throws IOException if the file cannot be read or is not a supported account file
+     */
+    public static int readAccountsSequence(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return Header.read(channel, ACCOUNTS_MAGIC, ACCOUNT_RECORD_SIZE).sequence;
+        }
+    }
+
+    /**
+     * Writes every published transaction of a store to a binary file, replacing it atomically.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public static void writeTransactions(Path path, TransactionStore store) throws IOException {
+        StringTable strings = new StringTable();
+        int[] refByHandle = new int[16];
+        Arrays.fill(refByHandle, -1);
+        int count = store.size();
+        try (RecordWriter out = new RecordWriter(path, TRANSACTIONS_MAGIC, TRANSACTION_RECORD_SIZE, 0)) {
+            for (int row = 0; row < count; row++) {
+                ByteBuffer b = out.next();
+                long id = store.idSequence(row);
+                b.putLong(id >= 0 ? id : -(strings.ref(store.transactionId(row)) + 1L));
+                int handle = store.accountHandle(row);
+                if (handle >= refByHandle.length) {
+                    int old = refByHandle.length;
+                    refByHandle = Arrays.copyOf(refByHandle, Math.max(handle + 1, old * 2));
+                    Arrays.fill(refByHandle, old, refByHandle.length, -1);
+                }
+                if (refByHandle[handle] < 0) refByHandle[handle] = strings.ref(store.accountNumber(handle));
+                b.putInt(refByHandle[handle]);
+                b.put((byte) store.type(row).ordinal());
+                b.putLong(store.amountCents(row));
+                b.putLong(store.balanceAfterCents(row));
+                b.putLong(store.epochSecond(row));
+            }
+            out.finish(strings);
+        }
+    }
+
+    /**
+     * Reads transactions from a binary file into a new store.
+     *
+     * @throws IOException if the file cannot be read or is not a supported transaction file
+     */
+    public static TransactionStore readTransactions(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Header header = Header.read(channel, TRANSACTIONS_MAGIC, TRANSACTION_RECORD_SIZE);
+            String[] strings = readStrings(channel, header);
+            TransactionStore store = new TransactionStore();
+            int[] handleByRef = new int[strings.length];
+            Arrays.fill(handleByRef, -1);
+            forEachRecord(channel, header, (b, at) -> {
+                long id = b.getLong(at);
+                int ref = b.getInt(at + 8);
+                byte type = b.get(at + 12);
+                long amount = b.getLong(at + 13);
+                long balance = b.getLong(at + 21);
+                long epochSecond = b.getLong(at + 29);
+                if (ref < 0 || ref >= strings.length || type < 0 || type >= TYPES.length) {
+                    throw new IOException("Corrupt transaction record");
+                }
+                if (id >= 0) {
+                    if (handleByRef[ref] < 0) handleByRef[ref] = store.handleFor(strings[ref]);
+                    store.append(id, handleByRef[ref], TYPES[type], amount, balance, epochSecond);
+                } else {
+                    store.append(new Transaction(string(strings, (int) (-id - 1)), strings[ref], TYPES[type].name(),
+                            amount, balance, TransactionStore.formatTimestamp(epochSecond)));
+                }
+            });
+            return store;
+        }
+    }
+
+    /** Handles the record starting at an absolute offset of a mapped window. */
+    private interface RecordVisitor {
+        void visit(ByteBuffer window, int offset) throws IOException;
+    }
+
+    /** Maps the records in windows of up to 2 GB and visits each one in order. */
+    private static void forEachRecord(FileChannel channel, Header header, RecordVisitor visitor) throws IOException {
+        long perWindow = Integer.MAX_VALUE / header.recordSize;
+        for (long first = 0; first < header.count; first += perWindow) {
+            long n = Math.min(perWindow, header.count - first);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY,
+                    HEADER_SIZE + first * header.recordSize, n * header.recordSize);
+            int end = (int) (n * header.recordSize);
+            for (int at = 0; at < end; at += header.recordSize) visitor.visit(window, at);
+        }
+    }
+
+    private static String[] readStrings(FileChannel channel, Header header) throws IOException {
+        long size = channel.size() - header.stringsOffset;
+        MappedByteBuffer table = channel.map(FileChannel.MapMode.READ_ONLY, header.stringsOffset, size);
+        String[] strings = new String[header.stringCount];
+        byte[] scratch = new byte[256];
+        for (int i = 0; i < strings.length; i++) {
+            int length = Short.toUnsignedInt(table.getShort());
+            if (length > scratch.length) scratch = new byte[length];
+            table.get(scratch, 0, length);
+            strings[i] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    private static String string(String[] strings, int ref) throws IOException {
+        if (ref < 0 || ref >= strings.length) throw new IOException("Corrupt record: bad string reference " + ref);
+        return strings[ref];
+    }
+
+    /** The fixed header at the start of every file. */
+    private static final class Header {
+        final int recordSize;
+        final long count;
+        final long stringsOffset;
+        final int stringCount;
+        final int sequence;
+
+        private Header(int recordSize, long count, long stringsOffset, int stringCount, int sequence) {
+            this.recordSize = recordSize;
+            this.count = count;
+            this.stringsOffset = stringsOffset;
+            this.stringCount = stringCount;
+            this.sequence = sequence;
+        }
+
+        static Header read(FileChannel channel, int magic, int expectedRecordSize) throws IOException {
+            ByteBuffer b = ByteBuffer.allocate(HEADER_SIZE);
+            while (b.hasRemaining()) {
+                if (channel.read(b, b.position()) < 0) throw new IOException("Truncated file header");
+            }
+            b.flip();
+            if (b.getInt() != magic) throw new IOException("Not a " + (magic == ACCOUNTS_MAGIC ? "account" : "transaction") + " file");
+            short version = b.getShort();
+            if (version > VERSION) throw new IOException("Unsupported file version " + version);
+            int recordSize = Short.toUnsignedInt(b.getShort());
+            boolean v1Accounts = magic == ACCOUNTS_MAGIC && version < 2 && recordSize == V1_ACCOUNT_RECORD_SIZE;
+            if (recordSize != expectedRecordSize && !v1Accounts) {
+                throw new IOException("Unexpected record size " + recordSize);
+            }
+            long count = b.getLong();
+            long stringsOffset = b.getLong();
+            int stringCount = b.getInt();
+            int sequence = b.getInt(); // zero in files written before checkpoints
+            if (count < 0 || stringsOffset != HEADER_SIZE + count * recordSize || stringsOffset > channel.size()) {
+                throw new IOException("Corrupt file header");
+            }
+            return new Header(recordSize, count, stringsOffset, stringCount, sequence);
+        }
+    }
+
+    /** Assigns each distinct string an index, in first-use order. */
+    private static final class StringTable {
+        private final Map<String, Integer> refs = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+
+        int ref(String s) {
+            Integer ref = refs.get(s);
+            if (ref != null) return ref;
+            refs.put(s, strings.size());
+            strings.add(s);
+            return strings.size() - 1;
+        }
+    }
+
+    /**
+     * Writes records through a direct buffer to a temporary file, then the string
+     * table and header, and finally moves it over the target.
+     */
+    private static final class RecordWriter implements Closeable {
+        private final Path path;
+        private final Path temp;
+        private final int magic;
+        private final int recordSize;
+        private final int sequence;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private long count;
+        private boolean finished;
+
+        RecordWriter(Path path, int magic, int recordSize, int sequence) throws IOException {
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null) Files.createDirectories(parent);
+            this.path = path;
+            this.temp = path.resolveSibling(path.getFileName() + ".tmp");
+            this.magic = magic;
+            this.recordSize = recordSize;
+            this.sequence = sequence;
+            this.channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            channel.position(HEADER_SIZE);
+        }
+
+        /** Returns the buffer positioned for the next record. */
+        ByteBuffer next() throws IOException {
+            if (buffer.remaining() < recordSize) flush();
+            count++;
+            return buffer;
+        }
+
+        void finish(StringTable strings) throws IOException {
+            for (String s : strings.strings) {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                if (bytes.length > 0xFFFF) throw new IOException("String too long for the string table");
+                if (buffer.remaining() < 2 + bytes.length) flush();
+                buffer.putShort((short) bytes.length).put(bytes);
+            }
+            flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(magic).putShort(VERSION).putShort((short) recordSize).putLong(count)
+                    .putLong(HEADER_SIZE + count * recordSize).putInt(strings.strings.size()).putInt(sequence);
+            header.flip();
+            while (header.hasRemaining()) channel.write(header, header.position());
+            channel.force(false);
+            channel.close();
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            finished = true;
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (finished) return;
+            channel.close();
+            Files.deleteIfExists(temp);
+        }
+    }
+}
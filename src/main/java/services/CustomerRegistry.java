@@ -0,0 +1,141 @@
+package services;
+
+import interfaces.CustomerLookup;
+import modules.Customer;
+import modules.RegularCustomer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persisted customers, keyed by customer ID, with one shared instance per customer.
+ * <p>
+ * Account records refer to their customer by ID, and loading resolves the ID here,
+ * so the accounts of one customer share a single Customer object (with its age,
+ * contact and Premium status) instead of each line creating its own Regular
+ * customer and name. Records from before IDs were saved only carry a name: their
+ * names are interned and accounts with the same name share one Regular customer.
+ * </p>
+ */
+public class CustomerRegistry implements CustomerLookup {
+
+    public static final String DEFAULT_PATH = "src/main/java/data/customers.txt";
+
+    private final Path path;
+    private final Map<String, Customer> byId = new ConcurrentHashMap<>();
+    private final Map<String, Customer> byLegacyName = new ConcurrentHashMap<>();
+    private final Map<String, String> names = new ConcurrentHashMap<>();
+    private volatile boolean changed;
+
+    public CustomerRegistry() {
+        this(Paths.get(DEFAULT_PATH));
+    }
+
+    /**
+     * @param path the customer file read by {@link #load()} and written by {@link #save()}
+     */
+    public CustomerRegistry(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Adds a customer unless one with the same ID is already known.
+     *
+     * @return the shared instance for that ID (the given customer if it has no ID)
+     */
+    public Customer register(Customer customer) {
+        String id = customer.getCustomerId();
+        if (id == null) return customer;
+        Customer shared = byId.putIfAbsent(id, customer);
+        if (shared != null) return shared;
+        changed = true;
+        return customer;
+    }
+
+    /** Returns true if no customer with this one's ID is known yet. */
+    public boolean isNew(Customer customer) {
+        return customer.getCustomerId() != null && !byId.containsKey(customer.getCustomerId());
+    }
+
+    @Override
+    public Customer resolve(String customerId, String name) {
+        if (customerId == null) {
+            return byLegacyName.computeIfAbsent(intern(name), RegularCustomer::new);
+        }
+        Customer known = byId.get(customerId);
+        if (known != null) return known;
+        // An ID missing from the customer file: keep it, the other details are lost
+        return register(new RegularCustomer(customerId, intern(name), 0, null, null));
+    }
+
+    /** Returns the customer with an ID, or null. */
+    public Customer get(String customerId) {
+        return byId.get(customerId);
+    }
+
+    /** Returns the shared copy of a name. */
+    public String intern(String name) {
+        String shared = names.putIfAbsent(name, name);
+        return shared != null ? shared : name;
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    /** Returns true if customers were added since the last load or save. */
+    public boolean isChanged() {
+        return changed;
+    }
+
+    /**
+     * Replaces the known customers with those in the customer file, if it exists.
+     * Later IDs continue after the loaded ones.
+     *
+     * @throws IOException if the file cannot be read
+     */
+    public void load() throws IOException {
+        byLegacyName.clear();
+        if (!Files.exists(path)) return;
+        byId.clear();
+        for (String line : Files.readAllLines(path)) {
+            Customer customer = Customer.fromString(line);
+            if (customer == null) continue;
+            Customer.CUSTOMER_IDS.observe(customer.getCustomerId());
+            byId.put(customer.getCustomerId(), customer);
+        }
+        changed = false;
+    }
+
+    /**
+     * Writes every known customer to the customer file, replacing it atomically.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public void save() throws IOException {
+        List<Customer> snapshot = new ArrayList<>(byId.values());
+        snapshot.sort((a, b) -> a.getCustomerId().compareTo(b.getCustomerId()));
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        changed = false;
+        try {
+            AtomicFiles.writeLines(path, out -> {
+                for (Customer customer : snapshot) {
+                    out.write(customer.toString());
+                    out.newLine();
+                }
+            });
+        } catch (IOException e) {
+            changed = true;
+            throw e;
+        }
+    }
+
+    public Path getPath() { return path; }
+}
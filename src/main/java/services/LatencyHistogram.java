@@ -0,0 +1,87 @@
+package services;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts of latencies in log-linear buckets, for percentiles without keeping
+ * every sample.
+ * <p>
+ * Values below 128 ns have a bucket each; above that every power of two is split
+ * into 64 buckets, so a percentile is off by less than 1.6% whatever its size,
+ * and the whole range of a long fits in under 4,000 counters. Recording is a
+ * single atomic increment, so threads can share a histogram, although a few of
+ * them merged with {@link #add} at the end contend less.
+ * </p>
+ */
+public class LatencyHistogram {
+
+    private static final int LINEAR = 128;
+    private static final int SUB_BUCKETS = 64;
+    private static final int BUCKETS = LINEAR + (63 - 7) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+
+    /** Records one latency in nanoseconds; negative values count as zero. */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucket(value));
+        if (value > max.get()) max.accumulateAndGet(value, Math::max);
+    }
+
+    /** Adds the counts of another histogram to this one. */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long n = other.counts.get(i);
+            if (n != 0) counts.addAndGet(i, n);
+        }
+        max.accumulateAndGet(other.getMaxNanos(), Math::max);
+    }
+
+    public long getCount() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) total += counts.get(i);
+        return total;
+    }
+
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    /**
+     * Returns the latency that the given share of the recorded values do not exceed,
+     * to within the bucket width.
+     *
+     * @param percentile between 0 and 100, e.g. 99.9
+     * @return the latency in nanoseconds, or 0 if nothing was recorded
+     */
+    public long getPercentileNanos(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100.");
+        }
+        long total = getCount();
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return Math.min(upperBound(i), getMaxNanos());
+        }
+        return getMaxNanos();
+    }
+
+    static int bucket(long value) {
+        if (value < LINEAR) return (int) value;
+        int shift = 57 - Long.numberOfLeadingZeros(value); // leaves 7 significant bits
+        return LINEAR + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /** Largest value that falls into a bucket. */
+    static long upperBound(int bucket) {
+        if (bucket < LINEAR) return bucket;
+        int shift = (bucket - LINEAR) / SUB_BUCKETS + 1;
+        long top = (long) ((bucket - LINEAR) % SUB_BUCKETS + SUB_BUCKETS);
+        return ((top + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,362 @@
+package services;
+
+import modules.Account;
+import modules.CheckingAccount;
+import modules.Customer;
+import modules.IdAllocator;
+import modules.Money;
+import modules.RegularCustomer;
+import modules.TransactionType;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Configurable load generator for the banking services, to size hardware and
+ * catch contention regressions.
+ * <p>
+ * A run creates its own accounts in a fresh AccountManager and TransactionManager,
+ * with IDs of their own that leave the application's allocators untouched, then
+ * lets N virtual or platform threads deposit, withdraw and transfer between
+ * them in the configured mix until the duration has passed or the number of
+ * operations is done, either locking accounts as TransferService does or through
+ * a {@link PartitionedEngine}. Accounts are picked with a Zipf skew, so a few hot
+ * accounts can take most of the traffic, as busy merchant accounts do. Workers
+ * print nothing; each operation's latency goes into a histogram and the report
+ * gives the throughput, p50/p99/p999 latencies and the outcome of the invariant
+ * checks: money is conserved, the running bank total agrees with the accounts,
+ * every operation left its transactions, and the transaction log reconciles.
+ * </p>
+ */
+public class LoadGenerator {
+
+    /** What a worker does in one step. */
+    public enum Operation { DEPOSIT, WITHDRAW, TRANSFER }
+
+    public static final long INITIAL_BALANCE_CENTS = 1000_00;
+    /** Amounts are drawn between $1.00 and this. */
+    public static final long MAX_AMOUNT_CENTS = 100_00;
+
+    /** Outcome of one run. */
+    public static final class Report {
+        private final String setup;
+        private final Map<Operation, Long> completed;
+        private final Map<Operation, Long> rejected;
+        private final Map<Operation, LatencyHistogram> latencies;
+        private final LatencyHistogram overall;
+        private final long durationNanos;
+        private final List<String> violations;
+
+        Report(String setup, Map<Operation, Long> completed, Map<Operation, Long> rejected,
+               Map<Operation, LatencyHistogram> latencies, LatencyHistogram overall, long durationNanos,
+               List<String> violations) {
+            this.setup = setup;
+            this.completed = completed;
+            this.rejected = rejected;
+            this.latencies = latencies;
+            this.overall = overall;
+            this.durationNanos = durationNanos;
+            this.violations = violations;
+        }
+
+        public long getCompleted(Operation operation) { return completed.get(operation); }
+        /** Operations refused by an account rule, e.g. a withdrawal beyond the overdraft. */
+        public long getRejected(Operation operation) { return rejected.get(operation); }
+        public LatencyHistogram getLatencies(Operation operation) { return latencies.get(operation); }
+        /** Latencies of every operation, completed or rejected. */
+        public LatencyHistogram getLatencies() { return overall; }
+        public long getDurationMillis() { return TimeUnit.NANOSECONDS.toMillis(durationNanos); }
+
+        public long getOperationCount() {
+            return overall.getCount();
+        }
+
+        public double getThroughput() {
+            return durationNanos == 0 ? 0 : getOperationCount() * 1e9 / durationNanos;
+        }
+
+        /** Invariants that failed; empty if the run was consistent. */
+        public List<String> getViolations() { return violations; }
+        public boolean isConsistent() { return violations.isEmpty(); }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("Load test: %s%n%,d operations in %.1f s: %,.0f ops/s%n", setup,
+                    getOperationCount(), durationNanos / 1e9, getThroughput()));
+            for (Operation operation : Operation.values()) {
+                sb.append(String.format("  %-8s %,12d done %,10d rejected  %s%n", operation,
+                        completed.get(operation), rejected.get(operation), latencies(latencies.get(operation))));
+            }
+            sb.append(String.format("  %-8s %35s  %s%n", "all", "", latencies(overall)));
+            if (violations.isEmpty()) sb.append("Invariants hold.");
+            else sb.append("Invariants violated:").append(System.lineSeparator())
+                    .append("  ").append(String.join(System.lineSeparator() + "  ", violations));
+            return sb.toString();
+        }
+
+        private static String latencies(LatencyHistogram h) {
+            return String.format("p50 %s  p99 %s  p999 %s  max %s", micros(h.getPercentileNanos(50)),
+                    micros(h.getPercentileNanos(99)), micros(h.getPercentileNanos(99.9)), micros(h.getMaxNanos()));
+        }
+
+        private static String micros(long nanos) {
+            return String.format("%,9.1f us", nanos / 1e3);
+        }
+    }
+
+    private volatile int threads = Runtime.getRuntime().availableProcessors();
+    private volatile boolean virtualThreads = true;
+    private volatile int accountCount = 1000;
+    private volatile double skew = 0.99;
+    private volatile int depositWeight = 40;
+    private volatile int withdrawWeight = 40;
+    private volatile int transferWeight = 20;
+    private volatile long durationMillis = 5000;
+    private volatile long operations;
+    private volatile long seed = 42;
+    private volatile int partitions;
+    private volatile int queueCapacity = Integer.MAX_VALUE;
+    private volatile PartitionedEngine.Backpressure backpressure = PartitionedEngine.Backpressure.BLOCK;
+
+    /** Sets how many threads generate load. */
+    public void setThreads(int threads) {
+        if (threads < 1) throw new IllegalArgumentException("At least one thread is required.");
+        this.threads = threads;
+    }
+
+    /** Chooses virtual threads (the default) or platform threads. */
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /** Sets how many accounts the run creates; transfers need at least two. */
+    public void setAccountCount(int accountCount) {
+        if (accountCount < 2) throw new IllegalArgumentException("At least two accounts are required.");
+        this.accountCount = accountCount;
+    }
+
+    /**
+     * Sets how unevenly the accounts are used: 0 is uniform, around 1 most
+     * operations go to a few hot accounts.
+     */
+    public void setSkew(double skew) {
+        if (skew < 0 || Double.isNaN(skew)) throw new IllegalArgumentException("Skew must not be negative.");
+        this.skew = skew;
+    }
+
+    /** Sets the relative weights of deposits, withdrawals and transfers, e.g. 40/40/20. */
+    public void setMix(int deposit, int withdraw, int transfer) {
+        if (deposit < 0 || withdraw < 0 || transfer < 0 || deposit + withdraw + transfer == 0) {
+            throw new IllegalArgumentException("Weights must not be negative and at least one must be positive.");
+        }
+        this.depositWeight = deposit;
+        this.withdrawWeight = withdraw;
+        this.transferWeight = transfer;
+    }
+
+    /** Runs for a fixed time; clears any operation count. */
+    public void setDurationMillis(long durationMillis) {
+        if (durationMillis < 1) throw new IllegalArgumentException("Duration must be positive.");
+        this.durationMillis = durationMillis;
+        this.operations = 0;
+    }
+
+    /** Runs until this many operations are done, however long it takes. */
+    public void setOperations(long operations) {
+        if (operations < 1) throw new IllegalArgumentException("Operation count must be positive.");
+        this.operations = operations;
+    }
+
+    /**
+     * Runs the operations through a partitioned single-writer engine with this many
+     * partitions, each worker waiting for its result; 0 (the default) locks accounts.
+     */
+    public void setPartitions(int partitions) {
+        if (partitions < 0) throw new IllegalArgumentException("Partition count must not be negative.");
+        this.partitions = partitions;
+    }
+
+    /**
+     * Bounds the engine's partition queues; requests refused by the backpressure
+     * policy count as rejected operations.
+     */
+    public void setQueueCapacity(int queueCapacity, PartitionedEngine.Backpressure backpressure) {
+        if (queueCapacity < 1) throw new IllegalArgumentException("Queue capacity must be positive.");
+        this.queueCapacity = queueCapacity;
+        this.backpressure = backpressure;
+    }
+
+    /** Seeds the account and amount choices, so runs can be repeated. */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Creates the accounts, runs the load and checks the invariants.
+     *
+     * @throws InterruptedException if interrupted while waiting for the workers
+     * @throws IOException          if the transaction log cannot be reconciled
+     */
+    public Report run() throws InterruptedException, IOException {
+        int threadCount = threads;
+        int n = accountCount;
+        long limit = operations;
+        ZipfSampler accountPicker = new ZipfSampler(n, skew);
+        int[] weights = {depositWeight, withdrawWeight, transferWeight};
+
+        AccountManager accounts = new AccountManager();
+        // Its own IDs, so a run inside the application does not use up the bank's
+        TransactionManager transactions = new TransactionManager(new IdAllocator("TXN", 4, 64));
+        TransferService transfers = new TransferService(transactions);
+        int partitionCount = partitions;
+        Customer customer = new RegularCustomer("LOAD", "Load test", 0, null, null);
+        Account[] all = new Account[n];
+        for (int i = 0; i < n; i++) {
+            all[i] = new CheckingAccount(String.format("LOAD%06d", i + 1), customer, INITIAL_BALANCE_CENTS, 0, 0,
+                    "Active");
+            accounts.addAccount(all[i]);
+        }
+
+        PartitionedEngine engine = partitionCount > 0
+                ? new PartitionedEngine(accounts, transactions, partitionCount, queueCapacity, backpressure) : null;
+
+        // Shared histograms contend on their hottest buckets, so workers spread over a few
+        int stripes = Math.min(threadCount, 4 * Runtime.getRuntime().availableProcessors());
+        LatencyHistogram[][] histograms = new LatencyHistogram[stripes][Operation.values().length];
+        for (LatencyHistogram[] stripe : histograms) {
+            for (int op = 0; op < stripe.length; op++) stripe[op] = new LatencyHistogram();
+        }
+        LongAdder[] done = adders();
+        LongAdder[] refused = adders();
+        LongAdder deposited = new LongAdder();
+        LongAdder withdrawn = new LongAdder();
+        AtomicLong remaining = new AtomicLong(limit);
+
+        CountDownLatch startGate = new CountDownLatch(1);
+        long[] deadline = new long[1];
+        SplittableRandom seeds = new SplittableRandom(seed);
+        Thread.Builder builder = virtualThreads ? Thread.ofVirtual().name("load-", 0)
+                : Thread.ofPlatform().name("load-", 0);
+        List<Thread> workers = new ArrayList<>(threadCount);
+        for (int w = 0; w < threadCount; w++) {
+            SplittableRandom random = seeds.split();
+            LatencyHistogram[] latency = histograms[w % stripes];
+            workers.add(builder.start(() -> {
+                try {
+                    startGate.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while (limit > 0 ? remaining.getAndDecrement() > 0 : System.nanoTime() < deadline[0]) {
+                    Operation operation = pick(weights, random);
+                    int from = accountPicker.next(random);
+                    Account account = all[from];
+                    long cents = 100 + random.nextLong(MAX_AMOUNT_CENTS - 99);
+                    long start = System.nanoTime();
+                    try {
+                        switch (operation) {
+                            case DEPOSIT -> {
+                                if (engine != null) engine.deposit(account.getAccountNumber(), cents).join();
+                                else transactions.apply(account, TransactionType.DEPOSIT, cents);
+                                deposited.add(cents);
+                            }
+                            case WITHDRAW -> {
+                                if (engine != null) engine.withdraw(account.getAccountNumber(), cents).join();
+                                else transactions.apply(account, TransactionType.WITHDRAW, cents);
+                                withdrawn.add(cents);
+                            }
+                            case TRANSFER -> {
+                                int to = accountPicker.next(random);
+                                if (to == from) to = (from + 1) % n;
+                                if (engine != null) {
+                                    engine.transfer(account.getAccountNumber(), all[to].getAccountNumber(), cents)
+                                            .join();
+                                } else {
+                                    transfers.transfer(account, all[to], Money.toDouble(cents));
+                                }
+                            }
+                        }
+                        done[operation.ordinal()].increment();
+                    } catch (RuntimeException e) {
+                        refused[operation.ordinal()].increment();
+                    }
+                    latency[operation.ordinal()].record(System.nanoTime() - start);
+                }
+            }));
+        }
+
+        long start = System.nanoTime();
+        deadline[0] = start + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        startGate.countDown();
+        for (Thread worker : workers) worker.join();
+        long duration = System.nanoTime() - start;
+        if (engine != null) engine.close();
+
+        Map<Operation, Long> completed = new EnumMap<>(Operation.class);
+        Map<Operation, Long> rejected = new EnumMap<>(Operation.class);
+        Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+        LatencyHistogram overall = new LatencyHistogram();
+        for (Operation operation : Operation.values()) {
+            completed.put(operation, done[operation.ordinal()].sum());
+            rejected.put(operation, refused[operation.ordinal()].sum());
+            LatencyHistogram merged = new LatencyHistogram();
+            for (LatencyHistogram[] stripe : histograms) merged.add(stripe[operation.ordinal()]);
+            latencies.put(operation, merged);
+            overall.add(merged);
+        }
+
+        List<String> violations = new ArrayList<>();
+        long expected = n * INITIAL_BALANCE_CENTS + deposited.sum() - withdrawn.sum();
+        long actual = 0;
+        for (Account account : all) actual += account.getBalanceCents();
+        if (actual != expected) {
+            violations.add("Money not conserved: the accounts hold " + Money.toString(actual) + ", expected "
+                    + Money.toString(expected));
+        }
+        if (!accounts.verifyTotalBalance()) violations.add("The running bank total disagrees with the accounts.");
+        long legs = completed.get(Operation.DEPOSIT) + completed.get(Operation.WITHDRAW)
+                + 2 * completed.get(Operation.TRANSFER);
+        if (transactions.getTransactionCount() != legs) {
+            violations.add(transactions.getTransactionCount() + " transactions recorded for " + legs + " legs.");
+        }
+        ReconciliationService.Report reconciliation = new ReconciliationService(accounts, transactions).reconcile();
+        if (!reconciliation.isClean()) violations.add(reconciliation.toString());
+
+        String mode = "account locks";
+        if (engine != null) {
+            mode = partitionCount + " partitions";
+            if (engine.getQueueCapacity() < Integer.MAX_VALUE) {
+                int deepest = 0;
+                for (int p = 0; p < partitionCount; p++) deepest = Math.max(deepest, engine.getMaxQueueDepth(p));
+                mode += String.format(" (queues of %d, %s, deepest %d, %d shed)", engine.getQueueCapacity(),
+                        engine.getBackpressure(), deepest, engine.getShedCount());
+            }
+        }
+        String setup = String.format("%d %s threads, %s, %,d accounts, skew %.2f, mix %d/%d/%d", threadCount,
+                virtualThreads ? "virtual" : "platform", mode, n, skew, weights[0], weights[1], weights[2]);
+        return new Report(setup, completed, rejected, latencies, overall, duration,
+                Collections.unmodifiableList(violations));
+    }
+
+    private static Operation pick(int[] weights, SplittableRandom random) {
+        int r = random.nextInt(weights[0] + weights[1] + weights[2]);
+        if (r < weights[0]) return Operation.DEPOSIT;
+        return r < weights[0] + weights[1] ? Operation.WITHDRAW : Operation.TRANSFER;
+    }
+
+    private static LongAdder[] adders() {
+        LongAdder[] adders = new LongAdder[Operation.values().length];
+        for (int i = 0; i < adders.length; i++) adders[i] = new LongAdder();
+        return adders;
+    }
+}
@@ -0,0 +1,672 @@
+package services;
+
+import interfaces.BalanceListener;
+import interfaces.CustomerLookup;
+import modules.Account;
+import modules.Money;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Accounts kept in a file and paged into a size-bounded cache, so the heap holds
+ * only the accounts in use however many there are.
+ * <p>
+ * Each account has a fixed-width slot at the position of its number's sequence
+ * (ACC000042 is slot 42), holding its text record, so a lookup that misses the
+ * cache is one positional read and needs no index on the heap. The cache is split
+ * into shards, each a least-recently-used map with its own lock. An evicted
+ * account that has changed is written back to its slot first; it is still
+ * remembered weakly, so a caller that kept a reference and looks it up again gets
+ * the same instance back instead of a second copy, and changes made through such
+ * a reference mark it dirty again for the next {@link #flush()}.
+ * </p>
+ * <p>
+ * The header keeps the account count and the total balance of the slots. It is
+ * marked unclean before the first write after a flush, and a store that was not
+ * flushed or closed rebuilds both by scanning the slots when it is reopened.
+ * Accounts whose numbers do not follow the ACC sequence (imported data) stay in
+ * memory and are saved to a small text file beside the store.
+ * </p>
+ * <pre>
+ * header (32 bytes): magic (4) | version (2) | slot size (2) | count (8) | total cents (8) | clean (1) | unused (7)
+ * slot:              record length (2) | UTF-8 record (Account.toString) | zero padding
+ * </pre>
+ */
+public class PagedAccountStore implements BalanceListener, Closeable {
+
+    public static final int DEFAULT_SLOT_SIZE = 128;
+    public static final int DEFAULT_MAX_CACHED = 100_000;
+
+    private static final int MAGIC = 0x50414343; // "PACC"
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int SHARDS = 16;
+    private static final long MAX_SLOT = 1L << 40;
+    private static final int SCAN_SLOTS = 1024;
+
+    /** A cached account and what its slot holds; guarded by its shard. */
+    private static final class Entry {
+        final Account account;
+        long savedCents;
+        boolean onDisk;
+
+        Entry(Account account, long savedCents, boolean onDisk) {
+            this.account = account;
+            this.savedCents = savedCents;
+            this.onDisk = onDisk;
+        }
+    }
+
+    /** An evicted account, remembered until nothing else refers to it; guarded by its shard. */
+    private static final class Evicted extends WeakReference<Account> {
+        final String key;
+        long savedCents;
+        boolean onDisk;
+
+        Evicted(String key, Entry entry, ReferenceQueue<Account> queue) {
+            super(entry.account, queue);
+            this.key = key;
+            this.savedCents = entry.savedCents;
+            this.onDisk = entry.onDisk;
+        }
+    }
+
+    /** One least-recently-used part of the cache. */
+    private final class Shard {
+        final int capacity;
+        /** In access order, so the least recently used entry comes first. */
+        final LinkedHashMap<String, Entry> cached = new LinkedHashMap<>(16, 0.75f, true);
+        final Map<String, Evicted> evicted = new HashMap<>();
+        final ReferenceQueue<Account> collected = new ReferenceQueue<>();
+
+        Shard(int capacity) {
+            this.capacity = capacity;
+        }
+
+        Entry get(String key) {
+            return cached.get(key);
+        }
+
+        /** Caches an entry, evicting the least recently used one if the shard is full. */
+        void put(String key, Entry entry) {
+            cached.put(key, entry);
+            if (cached.size() <= capacity) return;
+            Iterator<Map.Entry<String, Entry>> eldest = cached.entrySet().iterator();
+            Map.Entry<String, Entry> first = eldest.next();
+            evict(this, first.getKey(), first.getValue());
+            eldest.remove();
+        }
+
+        void purge() {
+            Evicted ref;
+            while ((ref = (Evicted) collected.poll()) != null) evicted.remove(ref.key, ref);
+        }
+    }
+
+    private final Path path;
+    private final Path othersPath;
+    private final FileChannel channel;
+    private final int slotSize;
+    private final Shard[] shards = new Shard[SHARDS];
+
+    /** Accounts changed since they were last written; Account keeps identity equality. */
+    private final Set<Account> dirty = ConcurrentHashMap.newKeySet();
+    /** Accounts without a slot, always resident; read through {@link #others()}. */
+    private final Map<String, Account> others = new ConcurrentHashMap<>();
+    /** Records of the .other file not parsed yet, or null once they are; written under others. */
+    private volatile List<String> unparsedOthers = new ArrayList<>();
+    private volatile boolean othersChanged;
+
+    /** Resolves the customer IDs of the records read, or null. */
+    private volatile CustomerLookup customers;
+
+    private final AtomicLong count = new AtomicLong();
+    private final LongAdder totalCents = new LongAdder();
+
+    // What the slots hold, guarded by fileLock
+    private final Object fileLock = new Object();
+    private long diskCount;
+    private long diskTotalCents;
+    private boolean fileClean;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder writeBacks = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+    private final AtomicLong maxLoadNanos = new AtomicLong();
+
+    /** Opens or creates a store with {@link #DEFAULT_SLOT_SIZE} and {@link #DEFAULT_MAX_CACHED}. */
+    public PagedAccountStore(Path path) throws IOException {
+        this(path, DEFAULT_MAX_CACHED, DEFAULT_SLOT_SIZE);
+    }
+
+    /**
+     * Opens a store, or creates it if the file does not exist.
+     *
+     * @param path      the store file
+     * @param maxCached how many accounts the cache holds at most
+     * @param slotSize  bytes per account for a new file (an existing file keeps its own)
+     * @throws IOException if the file cannot be opened or is not an account store
+     */
+    public PagedAccountStore(Path path, int maxCached, int slotSize) throws IOException {
+        if (maxCached < 1) throw new IllegalArgumentException("The cache must hold at least one account.");
+        if (slotSize < 16 || slotSize > 0xFFFF) throw new IllegalArgumentException("Invalid slot size " + slotSize);
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        this.path = path;
+        this.othersPath = path.resolveSibling(path.getFileName() + ".other");
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        for (int i = 0; i < SHARDS; i++) shards[i] = new Shard(Math.max(1, maxCached / SHARDS));
+        try {
+            this.slotSize = open(slotSize);
+            // Parsed on first use: the customers they refer to are not known yet
+            if (Files.exists(othersPath)) {
+                for (String line : Files.readAllLines(othersPath)) {
+                    try {
+                        totalCents.add(balanceOf(line));
+                        unparsedOthers.add(line);
+                    } catch (RuntimeException e) {
+                        System.out.println("Invalid account record: " + line);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        count.set(diskCount + unparsedOthers.size());
+        totalCents.add(diskTotalCents);
+    }
+
+    /** Reads or writes the header, rebuilding the totals if the store was not closed cleanly. */
+    private int open(int newSlotSize) throws IOException {
+        if (channel.size() == 0) {
+            synchronized (fileLock) {
+                writeHeader(newSlotSize, true);
+            }
+            return newSlotSize;
+        }
+        ByteBuffer header = read(0, HEADER_SIZE);
+        if (header.getInt() != MAGIC) throw new IOException("Not an account store: " + path);
+        short version = header.getShort();
+        if (version > VERSION) throw new IOException("Unsupported account store version " + version);
+        int size = Short.toUnsignedInt(header.getShort());
+        long storedCount = header.getLong();
+        long storedTotal = header.getLong();
+        boolean clean = header.get() != 0;
+        synchronized (fileLock) {
+            fileClean = clean;
+            if (clean) {
+                diskCount = storedCount;
+                diskTotalCents = storedTotal;
+                return size;
+            }
+        }
+        // A crash after slots were written: count what they actually hold
+        long rebuiltCount = 0;
+        long rebuiltTotal = 0;
+        long slots = (channel.size() - HEADER_SIZE) / size;
+        for (long slot = 0; slot < slots; slot++) {
+            String line = readLine(read(HEADER_SIZE + slot * size, size));
+            if (line == null) continue;
+            rebuiltCount++;
+            rebuiltTotal += balanceOf(line);
+        }
+        synchronized (fileLock) {
+            diskCount = rebuiltCount;
+            diskTotalCents = rebuiltTotal;
+        }
+        System.out.println("Account store was not closed cleanly; " + rebuiltCount + " accounts recounted.");
+        return size;
+    }
+
+    /**
+     * Makes accounts read from now on share their customers through a lookup. The
+     * accounts without a slot are read at their first use too, so they share them
+     * as long as it is set before then.
+     *
+     * @param customers resolves customer IDs, or null to create a Regular customer per record
+     */
+    public void setCustomers(CustomerLookup customers) {
+        this.customers = customers;
+    }
+
+    /** Returns the accounts without a slot, parsing the records read at open on the first call. */
+    private Map<String, Account> others() {
+        if (unparsedOthers == null) return others;
+        synchronized (others) {
+            List<String> lines = unparsedOthers;
+            if (lines != null) {
+                for (String line : lines) {
+                    Account account = Account.fromString(line, customers);
+                    if (account == null) {
+                        count.decrementAndGet();
+                        totalCents.add(-balanceOf(line));
+                        continue;
+                    }
+                    account.setBalanceListener(this);
+                    others.put(AccountRegistry.key(account.getAccountNumber()), account);
+                }
+                unparsedOthers = null;
+            }
+        }
+        return others;
+    }
+
+    @Override
+    public void onBalanceChanged(Account account, long deltaCents) {
+        totalCents.add(deltaCents);
+        if (deltaCents != 0) dirty.add(account);
+    }
+
+    /**
+     * Looks up an account, reading it from its slot if it is not cached.
+     *
+     * @return the account, or null if there is none with that number
+     * @throws UncheckedIOException if the slot cannot be read
+     */
+    public Account get(String accountNumber) {
+        if (accountNumber == null) return null;
+        String key = AccountRegistry.key(accountNumber);
+        long slot = slotOf(key);
+        if (slot < 0) return others().get(key);
+        Shard shard = shardFor(key);
+        synchronized (shard) {
+            Entry entry = resident(shard, key);
+            if (entry != null) {
+                hits.increment();
+                return entry.account;
+            }
+            misses.increment();
+            long start = System.nanoTime();
+            Account loaded = readSlot(slot);
+            long nanos = System.nanoTime() - start;
+            loadNanos.add(nanos);
+            maxLoadNanos.accumulateAndGet(nanos, Math::max);
+            if (loaded == null) return null;
+            adopt(shard, key, loaded);
+            return loaded;
+        }
+    }
+
+    /**
+     * Adds an account, or replaces the one with the same number. It is written to
+     * its slot by the next flush or when it is evicted.
+     */
+    public void put(Account account) {
+        String key = AccountRegistry.key(account.getAccountNumber());
+        long slot = slotOf(key);
+        if (slot < 0) {
+            Account previous = others().put(key, account);
+            replace(previous, account);
+            othersChanged = true;
+            return;
+        }
+        Shard shard = shardFor(key);
+        synchronized (shard) {
+            Entry entry = resident(shard, key);
+            Account previous = entry != null ? entry.account : readSlot(slot);
+            if (previous == account) return;
+            long saved = entry != null ? entry.savedCents : previous != null ? previous.getBalanceCents() : 0;
+            boolean onDisk = entry != null ? entry.onDisk : previous != null;
+            replace(previous, account);
+            shard.put(key, new Entry(account, saved, onDisk));
+            dirty.add(account);
+        }
+    }
+
+    private void replace(Account previous, Account account) {
+        if (previous != null) {
+            previous.setBalanceListener(null);
+            dirty.remove(previous);
+            totalCents.add(-previous.getBalanceCents());
+        } else {
+            count.incrementAndGet();
+        }
+        account.setBalanceListener(this);
+        totalCents.add(account.getBalanceCents());
+    }
+
+    /** Returns the cached entry, bringing back an evicted account that is still in use. */
+    private Entry resident(Shard shard, String key) {
+        Entry entry = shard.get(key);
+        if (entry != null) return entry;
+        shard.purge();
+        Evicted ref = shard.evicted.remove(key);
+        Account account = ref != null ? ref.get() : null;
+        if (account == null) return null;
+        entry = new Entry(account, ref.savedCents, ref.onDisk);
+        shard.put(key, entry);
+        return entry;
+    }
+
+    private void adopt(Shard shard, String key, Account account) {
+        account.setBalanceListener(this);
+        shard.put(key, new Entry(account, account.getBalanceCents(), true));
+    }
+
+    /** Called under the shard lock as the least recently used entry leaves the cache. */
+    private void evict(Shard shard, String key, Entry entry) {
+        evictions.increment();
+        if (dirty.remove(entry.account)) {
+            try {
+                write(key, entry.account, entry);
+            } catch (IOException e) {
+                // Stays dirty (and so reachable); the next flush retries and reports it
+                dirty.add(entry.account);
+            }
+        }
+        shard.evicted.put(key, new Evicted(key, entry, shard.collected));
+    }
+
+    /**
+     * Writes every changed account to its slot and marks the file clean.
+     *
+     * @return the number of accounts written
+     * @throws IOException if the file cannot be written; unwritten accounts stay dirty
+     */
+    public synchronized int flush() throws IOException {
+        int written = 0;
+        // Each account is unmarked before it is read, so a racing change marks it again
+        for (Iterator<Account> it = dirty.iterator(); it.hasNext(); ) {
+            Account account = it.next();
+            it.remove();
+            try {
+                if (writeBack(account)) written++;
+            } catch (IOException | RuntimeException e) {
+                dirty.add(account);
+                throw e;
+            }
+        }
+        if (othersChanged) {
+            othersChanged = false;
+            try {
+                List<Account> snapshot = new ArrayList<>(others().values());
+                AtomicFiles.writeLines(othersPath, out -> {
+                    for (Account account : snapshot) {
+                        out.write(account.toString());
+                        out.newLine();
+                    }
+                });
+            } catch (IOException e) {
+                othersChanged = true;
+                throw e;
+            }
+        }
+        synchronized (fileLock) {
+            channel.force(false);
+            writeHeader(slotSize, true);
+            channel.force(false);
+        }
+        return written;
+    }
+
+    private boolean writeBack(Account account) throws IOException {
+        String key = AccountRegistry.key(account.getAccountNumber());
+        long slot = slotOf(key);
+        if (slot < 0) {
+            othersChanged = true;
+            return others().get(key) == account;
+        }
+        Shard shard = shardFor(key);
+        synchronized (shard) {
+            Entry entry = shard.get(key);
+            if (entry != null && entry.account == account) {
+                write(key, account, entry);
+                return true;
+            }
+            Evicted ref = shard.evicted.get(key);
+            if (ref != null && ref.get() == account) {
+                Entry state = new Entry(account, ref.savedCents, ref.onDisk);
+                write(key, account, state);
+                ref.savedCents = state.savedCents;
+                ref.onDisk = true;
+                return true;
+            }
+            return false; // replaced since it changed
+        }
+    }
+
+    /** Writes an account's record to its slot and updates what the slots hold. */
+    private void write(String key, Account account, Entry state) throws IOException {
+        String line = account.toString();
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length + 2 > slotSize) {
+            throw new IOException("Account record too long for a " + slotSize + "-byte slot: " + key);
+        }
+        // The total follows the record actually written, not a balance read separately
+        long written = balanceOf(line);
+        ByteBuffer slot = ByteBuffer.allocate(slotSize);
+        slot.putShort((short) bytes.length).put(bytes);
+        slot.clear();
+        synchronized (fileLock) {
+            if (fileClean) writeHeader(slotSize, false);
+            long position = HEADER_SIZE + slotOf(key) * slotSize;
+            while (slot.hasRemaining()) channel.write(slot, position + slot.position());
+            diskTotalCents += written - (state.onDisk ? state.savedCents : 0);
+            if (!state.onDisk) diskCount++;
+        }
+        state.savedCents = written;
+        state.onDisk = true;
+        writeBacks.increment();
+    }
+
+    private void writeHeader(int size, boolean clean) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putShort(VERSION).putShort((short) size).putLong(diskCount).putLong(diskTotalCents)
+                .put((byte) (clean ? 1 : 0));
+        header.clear();
+        while (header.hasRemaining()) channel.write(header, header.position());
+        fileClean = clean;
+    }
+
+    /**
+     * Visits every account after flushing. Accounts not in the cache are paged in
+     * as they are visited, so changes made through them are kept; the scan does
+     * not count towards the hit rate. Accounts added meanwhile may be missed.
+     *
+     * @throws UncheckedIOException if the file cannot be read
+     */
+    public void forEach(Consumer<Account> action) {
+        try {
+            flush();
+            long slots = (channel.size() - HEADER_SIZE) / slotSize;
+            for (long first = 0; first < slots; first += SCAN_SLOTS) {
+                int n = (int) Math.min(SCAN_SLOTS, slots - first);
+                ByteBuffer chunk = read(HEADER_SIZE + first * slotSize, n * slotSize);
+                for (int i = 0; i < n; i++) {
+                    String line = readLine(chunk.position(i * slotSize));
+                    if (line == null) continue;
+                    Account parsed = Account.fromString(line, customers);
+                    if (parsed == null) continue;
+                    String key = AccountRegistry.key(parsed.getAccountNumber());
+                    Shard shard = shardFor(key);
+                    Account account;
+                    synchronized (shard) {
+                        Entry entry = resident(shard, key);
+                        if (entry == null) adopt(shard, key, parsed);
+                        account = entry != null ? entry.account : parsed;
+                    }
+                    action.accept(account);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read account store " + path, e);
+        }
+        others().values().forEach(action);
+    }
+
+    /**
+     * Replaces every account with the given ones (e.g. an import) and flushes.
+     * Must not run while other threads use the store.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized void replaceAll(Collection<Account> accounts) throws IOException {
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                for (Entry entry : shard.cached.values()) entry.account.setBalanceListener(null);
+                shard.cached.clear();
+                shard.evicted.clear();
+            }
+        }
+        dirty.clear();
+        others().values().forEach(account -> account.setBalanceListener(null));
+        others.clear();
+        othersChanged = true;
+        synchronized (fileLock) {
+            channel.truncate(HEADER_SIZE);
+            diskCount = 0;
+            diskTotalCents = 0;
+            writeHeader(slotSize, false);
+        }
+        count.set(0);
+        totalCents.reset();
+        for (Account account : accounts) put(account);
+        flush();
+    }
+
+    private Shard shardFor(String key) {
+        int h = key.hashCode();
+        return shards[(h ^ (h >>> 16)) & (SHARDS - 1)];
+    }
+
+    private static long slotOf(String key) {
+        long seq = Account.ACCOUNT_IDS.sequenceOf(key);
+        return seq > MAX_SLOT ? -1 : seq;
+    }
+
+    private Account readSlot(long slot) {
+        try {
+            long position = HEADER_SIZE + slot * slotSize;
+            if (position + slotSize > channel.size()) return null;
+            String line = readLine(read(position, slotSize));
+            return line == null ? null : Account.fromString(line, customers);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read account store " + path, e);
+        }
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(length);
+        while (b.hasRemaining()) {
+            if (channel.read(b, position + b.position()) < 0) throw new IOException("Truncated account store " + path);
+        }
+        return b.flip();
+    }
+
+    /** Decodes the record at the buffer's position, or returns null for an empty slot. */
+    private static String readLine(ByteBuffer slot) {
+        int at = slot.position();
+        int length = Short.toUnsignedInt(slot.getShort(at));
+        if (length == 0) return null;
+        return new String(slot.array(), slot.arrayOffset() + at + 2, length, StandardCharsets.UTF_8);
+    }
+
+    /** Returns the balance field (the third) of an account record. */
+    private static long balanceOf(String line) {
+        int first = line.indexOf(',');
+        int second = line.indexOf(',', first + 1);
+        return Money.parse(line, second + 1, line.indexOf(',', second + 1));
+    }
+
+    /** Returns the number of accounts. */
+    public long size() { return count.get(); }
+
+    /** Returns the sum of all balances, kept up to date as they change. */
+    public long getTotalBalanceCents() { return totalCents.sum(); }
+
+    /** Returns the highest account sequence with a slot, so new numbers can continue after it. */
+    public long getHighestSequence() {
+        try {
+            return (channel.size() - HEADER_SIZE) / slotSize - 1;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Returns how many accounts are in the cache now. */
+    public int getCachedCount() {
+        int cached = 0;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                cached += shard.cached.size();
+            }
+        }
+        return cached;
+    }
+
+    /** Returns the number of changed accounts not written yet. */
+    public int getDirtyCount() { return dirty.size(); }
+
+    /** Returns how many account records have been written, on eviction or by flushes. */
+    public long getWriteBackCount() { return writeBacks.sum(); }
+
+    public long getHitCount() { return hits.sum(); }
+
+    public long getMissCount() { return misses.sum(); }
+
+    /** Returns the share of lookups answered from the cache, between 0 and 1. */
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    public long getEvictionCount() { return evictions.sum(); }
+
+    /** Returns the mean time to read an account on a miss, in microseconds. */
+    public double getAverageLoadMicros() {
+        long m = misses.sum();
+        return m == 0 ? 0 : loadNanos.sum() / 1e3 / m;
+    }
+
+    /** Returns the longest time to read an account on a miss, in microseconds. */
+    public double getMaxLoadMicros() { return maxLoadNanos.get() / 1e3; }
+
+    public int getSlotSize() { return slotSize; }
+
+    public Path getPath() { return path; }
+
+    /** Flushes and closes the file. */
+    @Override
+    public void close() throws IOException {
+        if (!channel.isOpen()) return;
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d accounts, %d cached, hit rate %.1f%%, %d evictions, %d write-backs, load %.1f us avg",
+                size(), getCachedCount(), getHitRate() * 100, getEvictionCount(), getWriteBackCount(),
+                getAverageLoadMicros());
+    }
+}
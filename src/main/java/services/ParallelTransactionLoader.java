@@ -0,0 +1,437 @@
+package services;
+
+import modules.IdAllocator;
+import modules.Money;
+import modules.Transaction;
+import modules.TransactionType;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Loads a transactions text file (one "id,account,type,amount,balance,timestamp"
+ * line per transaction) on a fork-join pool.
+ * <p>
+ * The file is split into byte ranges that end on a newline. Each range is mapped
+ * and scanned byte by byte into primitive columns, without a String per line or
+ * per field; only account numbers (once per range) and irregular IDs become Strings.
+ * Ranges are joined in file order and appended to a new {@link TransactionStore},
+ * which maintains the per-account index and totals as rows arrive. Only a few
+ * ranges are in flight at a time, so memory stays bounded for multi-GB files.
+ * </p>
+ */
+public class ParallelTransactionLoader {
+
+    /** Default size of one parsed range. */
+    public static final int DEFAULT_CHUNK_BYTES = 32 << 20;
+
+    private static final TransactionType[] TYPES = TransactionType.values();
+
+    private final ForkJoinPool pool;
+    private final int chunkBytes;
+
+    /** Creates a loader on the common pool with {@link #DEFAULT_CHUNK_BYTES} ranges. */
+    public ParallelTransactionLoader() {
+        this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_BYTES);
+    }
+
+    /**
+     * @param pool       the pool the ranges are parsed on
+     * @param chunkBytes approximate size of one range in bytes
+     */
+    public ParallelTransactionLoader(ForkJoinPool pool, int chunkBytes) {
+        if (chunkBytes < 1) throw new IllegalArgumentException("Chunk size must be positive.");
+        this.pool = pool;
+        this.chunkBytes = chunkBytes;
+    }
+
+    /**
+     * Parses a transactions text file into a new store, in file order.
+     *
+     * @throws IOException              if the file cannot be read
+     * @throws IllegalArgumentException if a line is not a valid transaction
+     */
+    public TransactionStore load(Path path) throws IOException {
+        TransactionStore store = new TransactionStore();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long[] bounds = split(channel);
+            int ahead = Math.max(2, pool.getParallelism() * 2);
+            ArrayDeque<ForkJoinTask<Chunk>> inFlight = new ArrayDeque<>();
+            try {
+                int next = 0;
+                while (next < bounds.length - 1 || !inFlight.isEmpty()) {
+                    while (next < bounds.length - 1 && inFlight.size() < ahead) {
+                        inFlight.add(pool.submit(new ParseTask(channel, bounds[next], bounds[next + 1])));
+                        next++;
+                    }
+                    merge(join(inFlight.poll()), store);
+                }
+            } finally {
+                for (ForkJoinTask<Chunk> task : inFlight) task.cancel(true);
+            }
+        }
+        return store;
+    }
+
+    /** Joins a parse task, rethrowing what it threw rather than the pool's wrapper copy. */
+    private static Chunk join(ForkJoinTask<Chunk> task) throws IOException {
+        try {
+            return task.join();
+        } catch (RuntimeException e) {
+            Throwable cause = e;
+            while (cause.getCause() != null && cause.getCause().getClass() == cause.getClass()) cause = cause.getCause();
+            if (cause instanceof UncheckedIOException io) throw io.getCause();
+            throw (RuntimeException) cause;
+        }
+    }
+
+    /** Returns range boundaries: 0, the offset after a newline near each chunk size, and the file size. */
+    long[] split(FileChannel channel) throws IOException {
+        long size = channel.size();
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long start = 0;
+        while (size - start > chunkBytes) {
+            long at = start + chunkBytes;
+            long end = -1;
+            while (end < 0 && at < size) {
+                probe.clear();
+                int read = channel.read(probe, at);
+                if (read <= 0) break;
+                for (int i = 0; i < read; i++) {
+                    if (probe.get(i) == '\n') {
+                        end = at + i + 1;
+                        break;
+                    }
+                }
+                at += read;
+            }
+            if (end < 0 || end >= size) break;
+            bounds.add(end);
+            start = end;
+        }
+        bounds.add(size);
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) result[i] = bounds.get(i);
+        return result;
+    }
+
+    /** Appends a parsed range to the store, mapping its account numbers to store handles once. */
+    private static void merge(Chunk chunk, TransactionStore store) {
+        int[] handles = new int[chunk.accounts.size()];
+        for (int ref = 0; ref < handles.length; ref++) handles[ref] = store.handleFor(chunk.accounts.get(ref));
+        for (int i = 0; i < chunk.count; i++) {
+            if (chunk.ids[i] >= 0) {
+                store.append(chunk.ids[i], handles[chunk.refs[i]], TYPES[chunk.types[i]], chunk.amounts[i],
+                        chunk.balances[i], chunk.epochSeconds[i]);
+            } else {
+                store.append(new Transaction(chunk.irregularIds.get(i), chunk.accounts.get(chunk.refs[i]),
+                        TYPES[chunk.types[i]].name(), chunk.amounts[i], chunk.balances[i],
+                        TransactionStore.formatTimestamp(chunk.epochSeconds[i])));
+            }
+        }
+    }
+
+    /** Parsed columns of one range, with its own account dictionary. */
+    private static final class Chunk {
+        long[] ids;
+        int[] refs;
+        byte[] types;
+        long[] amounts;
+        long[] balances;
+        long[] epochSeconds;
+        int count;
+        final List<String> accounts = new ArrayList<>();
+        final Map<Integer, String> irregularIds = new HashMap<>();
+
+        Chunk(int capacity) {
+            ids = new long[capacity];
+            refs = new int[capacity];
+            types = new byte[capacity];
+            amounts = new long[capacity];
+            balances = new long[capacity];
+            epochSeconds = new long[capacity];
+        }
+
+        int add() {
+            if (count == ids.length) {
+                int n = count * 2;
+                ids = Arrays.copyOf(ids, n);
+                refs = Arrays.copyOf(refs, n);
+                types = Arrays.copyOf(types, n);
+                amounts = Arrays.copyOf(amounts, n);
+                balances = Arrays.copyOf(balances, n);
+                epochSeconds = Arrays.copyOf(epochSeconds, n);
+            }
+            return count++;
+        }
+    }
+
+    /** Parses one newline-aligned byte range. */
+    private static final class ParseTask extends RecursiveTask<Chunk> {
+        private static final long serialVersionUID = 1L;
+
+        /** Tasks only run in this process; ForkJoinTask is Serializable, the channel is not. */
+        private final transient FileChannel channel;
+        private final long start;
+        private final long end;
+
+        ParseTask(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected Chunk compute() {
+            MappedByteBuffer buf;
+            try {
+                buf = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            int limit = (int) (end - start);
+            Chunk chunk = new Chunk(Math.max(16, limit / 48));
+            AccountTable accounts = new AccountTable(buf, chunk.accounts);
+            AsciiView view = new AsciiView(buf);
+            int[] fields = new int[6];
+
+            int lineStart = 0;
+            while (lineStart < limit) {
+                int lineEnd = lineStart;
+                while (lineEnd < limit && buf.get(lineEnd) != '\n') lineEnd++;
+                int contentEnd = lineEnd > lineStart && buf.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+                if (contentEnd > lineStart) parseLine(buf, lineStart, contentEnd, fields, chunk, accounts, view);
+                lineStart = lineEnd + 1;
+            }
+            return chunk;
+        }
+
+        private void parseLine(ByteBuffer buf, int from, int to, int[] fields, Chunk chunk,
+                               AccountTable accounts, AsciiView view) {
+            // fields[k] = start of field k; field k ends at the comma before fields[k + 1]
+            int n = 0;
+            fields[n++] = from;
+            for (int i = from; i < to && n < 6; i++) {
+                if (buf.get(i) == ',') fields[n++] = i + 1;
+            }
+            if (n < 6) throw invalid(buf, from, to);
+
+            int row = chunk.add();
+            try {
+                long id = idSequence(buf, fields[0], fields[1] - 1);
+                chunk.ids[row] = id;
+                if (id < 0) chunk.irregularIds.put(row, view.reset(fields[0], fields[1] - 1).toString());
+                chunk.refs[row] = accounts.ref(fields[1], fields[2] - 1);
+                chunk.types[row] = (byte) type(buf, fields[2], fields[3] - 1).ordinal();
+                chunk.amounts[row] = Money.parse(view.reset(fields[3], fields[4] - 1));
+                chunk.balances[row] = Money.parse(view.reset(fields[4], fields[5] - 1));
+                chunk.epochSeconds[row] = epochSecond(buf, fields[5], to, view);
+            } catch (RuntimeException e) {
+                throw invalid(buf, from, to);
+            }
+        }
+
+        private IllegalArgumentException invalid(ByteBuffer buf, int from, int to) {
+            byte[] line = new byte[to - from];
+            buf.get(from, line);
+            return new IllegalArgumentException("Invalid transaction record at byte " + (start + from) + ": "
+                    + new String(line, StandardCharsets.UTF_8));
+        }
+    }
+
+    /** Returns the sequence of an ID written exactly as TRANSACTION_IDS formats it, or -1. */
+    static long idSequence(ByteBuffer buf, int from, int to) {
+        IdAllocator ids = Transaction.TRANSACTION_IDS;
+        String prefix = ids.getPrefix();
+        int p = prefix.length();
+        if (to - from <= p || to - from - p > 18) return -1;
+        for (int i = 0; i < p; i++) {
+            if (buf.get(from + i) != prefix.charAt(i)) return -1;
+        }
+        long value = 0;
+        for (int i = from + p; i < to; i++) {
+            byte c = buf.get(i);
+            if (c < '0' || c > '9') return -1;
+            value = value * 10 + (c - '0');
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) digits++;
+        // Extra leading zeros would not format back to the same ID
+        return to - from - p == Math.max(ids.getMinDigits(), digits) ? value : -1;
+    }
+
+    static TransactionType type(ByteBuffer buf, int from, int to) {
+        for (TransactionType type : TYPES) {
+            String name = type.name();
+            if (name.length() != to - from) continue;
+            int i = 0;
+            while (i < name.length() && Character.toUpperCase((char) buf.get(from + i)) == name.charAt(i)) i++;
+            if (i == name.length()) return type;
+        }
+        throw new IllegalArgumentException("Unknown transaction type");
+    }
+
+    /**
+     * Parses "yyyy-MM-dd HH:mm:ss" as UTC epoch seconds, like the store does, with
+     * plain arithmetic. Any other shape goes through the regular formatter.
+     */
+    static long epochSecond(ByteBuffer buf, int from, int to, AsciiView view) {
+        if (to - from == 19 && buf.get(from + 4) == '-' && buf.get(from + 7) == '-' && buf.get(from + 10) == ' '
+                && buf.get(from + 13) == ':' && buf.get(from + 16) == ':') {
+            int year = digits(buf, from, 4);
+            int month = digits(buf, from + 5, 2);
+            int day = digits(buf, from + 8, 2);
+            int hour = digits(buf, from + 11, 2);
+            int minute = digits(buf, from + 14, 2);
+            int second = digits(buf, from + 17, 2);
+            if (year >= 0 && month >= 1 && month <= 12 && day >= 1 && day <= lengthOfMonth(year, month)
+                    && hour >= 0 && hour < 24 && minute >= 0 && minute < 60 && second >= 0 && second < 60) {
+                return daysFromCivil(year, month, day) * 86_400L + hour * 3_600L + minute * 60L + second;
+            }
+        }
+        return LocalDateTime.parse(view.reset(from, to), Transaction.TIMESTAMP_FORMAT).toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static int digits(ByteBuffer buf, int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            byte c = buf.get(i);
+            if (c < '0' || c > '9') return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        if (month == 2) return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    /** Days since 1970-01-01 of a proleptic Gregorian date (H. Hinnant's algorithm). */
+    private static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146_097L + dayOfEra - 719_468;
+    }
+
+    /** Account dictionary of one range, keyed by the raw bytes of the number. */
+    private static final class AccountTable {
+        private final ByteBuffer buf;
+        private final List<String> numbers;
+        private final List<byte[]> keys = new ArrayList<>();
+        private int[] slots = new int[64]; // ref + 1, 0 = empty
+        private int[] hashes = new int[64];
+
+        AccountTable(ByteBuffer buf, List<String> numbers) {
+            this.buf = buf;
+            this.numbers = numbers;
+        }
+
+        int ref(int from, int to) {
+            int hash = 1;
+            for (int i = from; i < to; i++) hash = 31 * hash + buf.get(i);
+            int mask = slots.length - 1;
+            for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+                int entry = slots[slot];
+                if (entry == 0) return insert(slot, hash, from, to);
+                if (hashes[slot] == hash && matches(keys.get(entry - 1), from, to)) return entry - 1;
+            }
+        }
+
+        private boolean matches(byte[] key, int from, int to) {
+            if (key.length != to - from) return false;
+            for (int i = 0; i < key.length; i++) {
+                if (key[i] != buf.get(from + i)) return false;
+            }
+            return true;
+        }
+
+        private int insert(int slot, int hash, int from, int to) {
+            byte[] key = new byte[to - from];
+            buf.get(from, key);
+            int ref = keys.size();
+            keys.add(key);
+            numbers.add(new String(key, StandardCharsets.UTF_8));
+            slots[slot] = ref + 1;
+            hashes[slot] = hash;
+            if (keys.size() * 2 > slots.length) rehash();
+            return ref;
+        }
+
+        private void rehash() {
+            int[] oldSlots = slots;
+            int[] oldHashes = hashes;
+            slots = new int[oldSlots.length * 2];
+            hashes = new int[oldSlots.length * 2];
+            int mask = slots.length - 1;
+            for (int i = 0; i < oldSlots.length; i++) {
+                if (oldSlots[i] == 0) continue;
+                int slot = oldHashes[i] & mask;
+                while (slots[slot] != 0) slot = (slot + 1) & mask;
+                slots[slot] = oldSlots[i];
+                hashes[slot] = oldHashes[i];
+            }
+        }
+    }
+
+    /** Reusable CharSequence over a byte range of ASCII text, so field parsers need no String. */
+    static final class AsciiView implements CharSequence {
+        private final ByteBuffer buf;
+        private int from;
+        private int to;
+
+        AsciiView(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        AsciiView reset(int from, int to) {
+            this.from = from;
+            this.to = to;
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return to - from;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (buf.get(from + index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().substring(start, end);
+        }
+
+        @Override
+        public String toString() {
+            byte[] bytes = new byte[to - from];
+            buf.get(from, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package services;
+
+import exceptions.InvalidAmountException;
+import modules.Account;
+import modules.Transaction;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-writer execution engine: accounts are partitioned by number onto a
+ * fixed set of single-threaded executors, and every operation on an account runs
+ * on its partition's thread, one after the other, so no account is ever locked.
+ * <p>
+ * A transfer between accounts of the same partition runs as one step. Across
+ * partitions it is two messages: the source partition debits the source and
+ * records the withdrawal, then sends the credit to the target partition, which
+ * deposits and records it and completes the transfer. Between the two steps the
+ * amount is in flight, counted by {@link #getInFlightCents()}: the accounts and
+ * the running bank total both drop by it when the source is debited and regain it
+ * when the credit lands, so the money held is their total plus the amount in flight.
+ * </p>
+ * <p>
+ * This is an alternative to the lock-based path (TransferService and callers
+ * locking accounts), not an addition to it: while an engine runs, its accounts
+ * must only change through it. Results come back as futures, completed on the
+ * partition thread; account rule violations complete them exceptionally.
+ * </p>
+ * <p>
+ * Each partition's queue of client requests can be bounded, so a burst cannot
+ * grow it, and every request's wait, without limit. When a request finds its
+ * partition's queue full, the {@link Backpressure} policy decides: fail it, make
+ * the caller wait for room, or drop the oldest queued request in its favour.
+ * Credits of transfers already debited are never refused; they do not take room
+ * in the queue.
+ * </p>
+ */
+public class PartitionedEngine implements Closeable {
+
+    /** What a request does when its partition's queue is full. */
+    public enum Backpressure {
+        /** The request fails at once with a RejectedExecutionException. */
+        REJECT,
+        /** The caller waits until the partition takes a queued request. */
+        BLOCK,
+        /** The oldest queued request fails with a RejectedExecutionException and the new one takes its place. */
+        SHED
+    }
+
+    private final AccountManager accountManager;
+    private final TransactionManager transactionManager;
+    private final ThreadPoolExecutor[] partitions;
+    private final int queueCapacity;
+    private final Backpressure backpressure;
+    /** Free places in each partition's queue. */
+    private final Semaphore[] room;
+    private final AtomicInteger[] maxQueueDepth;
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+    private final LongAdder inFlight = new LongAdder();
+    /** Operations accepted and not completed yet, including both steps of a transfer. */
+    private final AtomicLong pending = new AtomicLong();
+    private volatile boolean closed;
+
+    /**
+     * Creates an engine whose queues are unbounded.
+     *
+     * @param partitions number of single-threaded partitions, e.g. one per core
+     */
+    public PartitionedEngine(AccountManager accountManager, TransactionManager transactionManager, int partitions) {
+        this(accountManager, transactionManager, partitions, Integer.MAX_VALUE, Backpressure.BLOCK);
+    }
+
+    /**
+     * @param partitions    number of single-threaded partitions, e.g. one per core
+     * @param queueCapacity most client requests each partition holds waiting
+     * @param backpressure  what a request does when its partition's queue is full
+     */
+    public PartitionedEngine(AccountManager accountManager, TransactionManager transactionManager, int partitions,
+                             int queueCapacity, Backpressure backpressure) {
+        if (partitions < 1) throw new IllegalArgumentException("At least one partition is required.");
+        if (queueCapacity < 1) throw new IllegalArgumentException("Queue capacity must be positive.");
+        this.accountManager = accountManager;
+        this.transactionManager = transactionManager;
+        this.queueCapacity = queueCapacity;
+        this.backpressure = backpressure;
+        this.partitions = new ThreadPoolExecutor[partitions];
+        this.room = new Semaphore[partitions];
+        this.maxQueueDepth = new AtomicInteger[partitions];
+        for (int i = 0; i < partitions; i++) {
+            String name = "partition-" + i;
+            // The executor's own queue is unbounded: room limits client requests only
+            this.partitions[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                    task -> {
+                        Thread thread = new Thread(task, name);
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            this.room[i] = new Semaphore(queueCapacity);
+            this.maxQueueDepth[i] = new AtomicInteger();
+        }
+    }
+
+    public int getPartitionCount() {
+        return partitions.length;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public Backpressure getBackpressure() {
+        return backpressure;
+    }
+
+    /** Client requests waiting in a partition's queue. */
+    public int getQueueDepth(int partition) {
+        return queueCapacity - room[partition].availablePermits();
+    }
+
+    /** The deepest a partition's queue has been. */
+    public int getMaxQueueDepth(int partition) {
+        return maxQueueDepth[partition].get();
+    }
+
+    /** Requests failed because their partition's queue was full. */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /** Queued requests dropped to make room for newer ones. */
+    public long getShedCount() {
+        return shed.sum();
+    }
+
+    /** Returns the partition that owns an account. */
+    public int partitionOf(Account account) {
+        int h = account.getAccountNumber().hashCode() * 0x9E3779B9;
+        return (int) (((h >>> 1) * (long) partitions.length) >>> 31);
+    }
+
+    /** Deposits into an account on its partition. */
+    public CompletableFuture<Transaction> deposit(String accountNumber, long cents) {
+        return submitSingle(accountNumber, cents, true);
+    }
+
+    /** Withdraws from an account on its partition. */
+    public CompletableFuture<Transaction> withdraw(String accountNumber, long cents) {
+        return submitSingle(accountNumber, cents, false);
+    }
+
+    private CompletableFuture<Transaction> submitSingle(String accountNumber, long cents, boolean deposit) {
+        CompletableFuture<Transaction> result = accept();
+        if (result.isDone()) return result;
+        Account account = accountManager.findAccount(accountNumber);
+        if (account == null) return failed(result, new IllegalArgumentException("Account not found: " + accountNumber));
+        if (cents <= 0) return failed(result, new InvalidAmountException("Amount must be positive."));
+        submit(partitionOf(account), result, () -> {
+            long balance = deposit ? account.depositCents(cents) : account.withdrawCents(cents);
+            Transaction t = transactionManager.newTransaction(account.getAccountNumber(),
+                    deposit ? "DEPOSIT" : "WITHDRAW", cents, balance);
+            transactionManager.addTransaction(t);
+            result.complete(t);
+        });
+        return result;
+    }
+
+    /**
+     * Moves an amount between two accounts; completes with the withdrawal and deposit
+     * legs once the target is credited.
+     */
+    public CompletableFuture<List<Transaction>> transfer(String sourceNumber, String targetNumber, long cents) {
+        CompletableFuture<List<Transaction>> result = accept();
+        if (result.isDone()) return result;
+        Account source = accountManager.findAccount(sourceNumber);
+        Account target = accountManager.findAccount(targetNumber);
+        if (source == null || target == null) {
+            return failed(result, new IllegalArgumentException("Account not found: "
+                    + (source == null ? sourceNumber : targetNumber)));
+        }
+        if (source == target) {
+            return failed(result, new IllegalArgumentException("Cannot transfer funds to the same account."));
+        }
+        if (cents <= 0) return failed(result, new InvalidAmountException("Transfer amount must be positive."));
+
+        int from = partitionOf(source);
+        int to = partitionOf(target);
+        submit(from, result, () -> {
+            Transaction withdrawal = transactionManager.newTransaction(source.getAccountNumber(), "WITHDRAW", cents,
+                    source.withdrawCents(cents));
+            if (from == to) {
+                List<Transaction> legs = List.of(withdrawal, transactionManager.newTransaction(
+                        target.getAccountNumber(), "DEPOSIT", cents, target.depositCents(cents)));
+                transactionManager.addTransactions(legs);
+                result.complete(legs);
+                return;
+            }
+            transactionManager.addTransaction(withdrawal);
+            inFlight.add(cents);
+            // Second step: the credit is a message to the target's partition
+            execute(to, result, () -> {
+                long balance = target.depositCents(cents);
+                inFlight.add(-cents);
+                Transaction deposit = transactionManager.newTransaction(target.getAccountNumber(), "DEPOSIT", cents,
+                        balance);
+                transactionManager.addTransaction(deposit);
+                result.complete(List.of(withdrawal, deposit));
+            });
+        });
+        return result;
+    }
+
+    /** Reads an account's balance on its partition, after everything queued before it. */
+    public CompletableFuture<Long> balance(String accountNumber) {
+        CompletableFuture<Long> result = accept();
+        if (result.isDone()) return result;
+        Account account = accountManager.findAccount(accountNumber);
+        if (account == null) return failed(result, new IllegalArgumentException("Account not found: " + accountNumber));
+        submit(partitionOf(account), result, () -> result.complete(account.getBalanceCents()));
+        return result;
+    }
+
+    /** Money debited by a cross-partition transfer and not yet credited. */
+    public long getInFlightCents() {
+        return inFlight.sum();
+    }
+
+    /** Counts a new operation until its result completes, unless the engine is closed. */
+    private <T> CompletableFuture<T> accept() {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        pending.incrementAndGet();
+        result.whenComplete((value, error) -> pending.decrementAndGet());
+        if (closed) result.completeExceptionally(new IllegalStateException("The engine is closed."));
+        return result;
+    }
+
+    /** Queues a client request on a partition, applying the backpressure policy if the queue is full. */
+    private void submit(int partition, CompletableFuture<?> result, Runnable step) {
+        if (!admit(partition, result)) return;
+        maxQueueDepth[partition].accumulateAndGet(getQueueDepth(partition), Math::max);
+        Request request = new Request(partition, result, step);
+        try {
+            partitions[partition].execute(request);
+        } catch (RejectedExecutionException e) {
+            if (request.claim()) room[partition].release();
+            result.completeExceptionally(new IllegalStateException("The engine is closed.", e));
+        }
+    }
+
+    /** Takes a place in a partition's queue; false if the request failed instead. */
+    private boolean admit(int partition, CompletableFuture<?> result) {
+        Semaphore places = room[partition];
+        if (places.tryAcquire()) return true;
+        switch (backpressure) {
+            case REJECT -> {
+                rejected.increment();
+                result.completeExceptionally(new RejectedExecutionException(
+                        "The queue of partition " + partition + " is full."));
+                return false;
+            }
+            case BLOCK -> {
+                try {
+                    places.acquire();
+                    return true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    result.completeExceptionally(new RejectedExecutionException(
+                            "Interrupted waiting for room in the queue of partition " + partition + ".", e));
+                    return false;
+                }
+            }
+            default -> {
+                // The shed request's place passes to this one; none may be queued if the
+                // partition just took them all, and then a place frees up
+                while (!shedOldest(partition)) {
+                    if (places.tryAcquire()) return true;
+                    Thread.onSpinWait();
+                }
+                return true;
+            }
+        }
+    }
+
+    private boolean shedOldest(int partition) {
+        for (Iterator<Runnable> it = partitions[partition].getQueue().iterator(); it.hasNext(); ) {
+            if (it.next() instanceof Request request && request.claim()) {
+                it.remove();
+                shed.increment();
+                request.result.completeExceptionally(new RejectedExecutionException(
+                        "Shed from the full queue of partition " + partition + "."));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Runs a step on a partition without taking queue room, e.g. the credit of a debited transfer. */
+    private void execute(int partition, CompletableFuture<?> result, Runnable step) {
+        try {
+            partitions[partition].execute(() -> run(result, step));
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(new IllegalStateException("The engine is closed.", e));
+        }
+    }
+
+    private static void run(CompletableFuture<?> result, Runnable step) {
+        try {
+            step.run();
+        } catch (Throwable e) {
+            // Completed whatever went wrong, or close() would wait for it forever
+            result.completeExceptionally(e);
+            if (e instanceof Error error) throw error;
+        }
+    }
+
+    /**
+     * A client request in a partition's queue. It holds one place in the queue until
+     * the partition starts it or it is shed, whichever claims it first.
+     */
+    private final class Request implements Runnable {
+        private final int partition;
+        private final CompletableFuture<?> result;
+        private final Runnable step;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        Request(int partition, CompletableFuture<?> result, Runnable step) {
+            this.partition = partition;
+            this.result = result;
+            this.step = step;
+        }
+
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+
+        @Override
+        public void run() {
+            if (!claim()) return;
+            room[partition].release();
+            PartitionedEngine.run(result, step);
+        }
+    }
+
+    private static <T> CompletableFuture<T> failed(CompletableFuture<T> result, RuntimeException e) {
+        result.completeExceptionally(e);
+        return result;
+    }
+
+    /**
+     * Stops accepting operations and waits for the accepted ones, including the
+     * second steps of transfers already debited, before stopping the partitions.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        // Partitions still send credits to each other until the last operation completes
+        while (pending.get() > 0) LockSupport.parkNanos(100_000);
+        for (ThreadPoolExecutor partition : partitions) partition.shutdown();
+        for (ThreadPoolExecutor partition : partitions) {
+            try {
+                partition.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
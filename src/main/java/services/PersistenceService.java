@@ -0,0 +1,181 @@
+package services;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes snapshots of the accounts and transactions on a background thread, so
+ * the caller (and every thread still depositing, withdrawing or transferring)
+ * keeps running while millions of records go to disk.
+ * <p>
+ * A save captures the journal position, then writes the account checkpoint and
+ * the transactions; appends are lock-free and never wait for it. Accounts and
+ * transactions are stored before they are journaled, and the save first waits for
+ * the transaction appends already started to be published, so every record before
+ * the captured position is in the snapshot and can be dropped. Balances that
+ * change while the snapshot is being written are covered by the journal records
+ * after the captured position, which are kept and replayed on recovery, so
+ * snapshot plus journal always give the exact state. Each file is
+ * written to a temporary sibling, forced to disk and atomically renamed over the
+ * old one, so a crash mid-save never corrupts the last good snapshot.
+ * </p>
+ * <p>
+ * Saves run one at a time. A request made while another is still waiting to start
+ * shares that save and its future, since it would write the same data.
+ * </p>
+ */
+public class PersistenceService implements Closeable {
+
+    /** Outcome of one completed save. */
+    public static final class SaveResult {
+        private final long durationNanos;
+        private final int transactionCount;
+        private final int accountCount;
+
+        SaveResult(long durationNanos, int transactionCount, int accountCount) {
+            this.durationNanos = durationNanos;
+            this.transactionCount = transactionCount;
+            this.accountCount = accountCount;
+        }
+
+        public long getDurationMillis() { return TimeUnit.NANOSECONDS.toMillis(durationNanos); }
+        public long getDurationNanos() { return durationNanos; }
+        /** Transactions in the snapshot (those published when the save started). */
+        public int getTransactionCount() { return transactionCount; }
+        public int getAccountCount() { return accountCount; }
+
+        @Override
+        public String toString() {
+            return "Snapshot of " + accountCount + " accounts and " + transactionCount + " transactions saved in "
+                    + getDurationMillis() + " ms";
+        }
+    }
+
+    private final AccountManager accounts;
+    private final TransactionManager transactions;
+    private final ExecutorService executor;
+
+    /** Journal trimmed after each successful save, or null. */
+    private volatile TransactionJournal journal;
+
+    /** Save requested but not started yet; guarded by this. */
+    private CompletableFuture<SaveResult> queued;
+
+    private final AtomicLong saveCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private volatile long lastNanos;
+    private volatile boolean saving;
+
+    public PersistenceService(AccountManager accounts, TransactionManager transactions) {
+        this.accounts = accounts;
+        this.transactions = transactions;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "persistence");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Sets the journal whose records are dropped once a snapshot covers them.
+     *
+     * @param journal the journal, or null if not journaling
+     */
+    public void setJournal(TransactionJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Requests a snapshot and returns immediately.
+     *
+     * @return completes when the snapshot is on disk, or exceptionally if it could not be written
+     */
+    public synchronized CompletableFuture<SaveResult> saveAsync() {
+        if (queued != null) return queued;
+        CompletableFuture<SaveResult> future = new CompletableFuture<>();
+        queued = future;
+        try {
+            executor.execute(this::runQueued);
+        } catch (RuntimeException e) {
+            queued = null;
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private void runQueued() {
+        CompletableFuture<SaveResult> future;
+        synchronized (this) {
+            future = queued;
+            queued = null;
+        }
+        saving = true;
+        long start = System.nanoTime();
+        try {
+            SaveResult result = save(start);
+            saveCount.incrementAndGet();
+            record(result.durationNanos);
+            future.complete(result);
+        } catch (IOException | RuntimeException e) {
+            failureCount.incrementAndGet();
+            record(System.nanoTime() - start);
+            future.completeExceptionally(e);
+        } finally {
+            saving = false;
+        }
+    }
+
+    private SaveResult save(long start) throws IOException {
+        TransactionJournal current = journal;
+        long covered = current != null ? current.position() : 0;
+        int transactionCount = transactions.getTransactionCount();
+        // Records reach the store before the journal, and the write waits for the appends
+        // claimed by then to be published, so everything before covered is in the snapshot
+        accounts.writeAccounts(StorageFormat.BINARY);
+        transactions.writeTransactions();
+        if (current != null) current.truncateBefore(covered);
+        return new SaveResult(System.nanoTime() - start, transactionCount, accounts.getTotalAccounts());
+    }
+
+    private void record(long nanos) {
+        lastNanos = nanos;
+        totalNanos.addAndGet(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /** Returns true while a save is being written. */
+    public boolean isSaving() { return saving; }
+
+    public long getSaveCount() { return saveCount.get(); }
+
+    public long getFailureCount() { return failureCount.get(); }
+
+    /** Returns the duration of the last save attempt in milliseconds. */
+    public long getLastDurationMillis() { return TimeUnit.NANOSECONDS.toMillis(lastNanos); }
+
+    public long getMaxDurationMillis() { return TimeUnit.NANOSECONDS.toMillis(maxNanos.get()); }
+
+    /** Returns the mean duration of all save attempts in milliseconds. */
+    public double getAverageDurationMillis() {
+        long attempts = saveCount.get() + failureCount.get();
+        return attempts == 0 ? 0 : totalNanos.get() / 1e6 / attempts;
+    }
+
+    /** Finishes the saves already requested, then stops the background thread. */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
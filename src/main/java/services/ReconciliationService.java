@@ -0,0 +1,495 @@
+package services;
+
+import modules.Account;
+import modules.Money;
+import modules.Transaction;
+import modules.TransactionType;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * Checks the account balances against the transaction log, and rebuilds them
+ * from it after a crash.
+ * <p>
+ * The log is replayed in parallel, one account at a time, using the store's
+ * per-account row index, so accounts never share state and the work spreads over
+ * every core. For each account the balance-after of every transaction must equal
+ * the previous one plus the deposit or minus the withdrawal, and the account's
+ * current balance must equal the last one. Appends from concurrent threads can
+ * reach the log slightly out of order, so when the next row does not continue
+ * the chain, a row that does is looked for among the next few before the chain
+ * is reported broken.
+ * </p>
+ * <p>
+ * When the saved history stays on disk (see {@link TransactionManager#openSavedHistory()}),
+ * it is never loaded whole: the segment log is streamed once, one segment at a
+ * time, and its rows are handed out by account to as many workers, each following
+ * the chains of its own accounts as their rows go past. Neither the transaction
+ * manager's monitor nor the log's is held during the pass.
+ * </p>
+ */
+public class ReconciliationService {
+
+    /** Rows ahead of a break searched for the one that continues the chain. */
+    static final int REORDER_WINDOW = 8;
+    public static final int DEFAULT_MAX_DETAILS = 1000;
+
+    /** Streamed lines handed to a worker at a time, and batches queued per worker. */
+    private static final int STREAM_BATCH = 1024;
+    private static final int QUEUED_BATCHES = 4;
+    /** Sent to the workers once the stream is complete, or when it failed. */
+    private static final List<String> END = new ArrayList<>(0);
+    private static final List<String> ABORT = new ArrayList<>(0);
+
+    /** What a discrepancy is about. */
+    public enum Kind {
+        /** A transaction's balance-after does not follow from the previous one and its amount. */
+        BROKEN_CHAIN,
+        /** The account's balance differs from the last balance in the log. */
+        BALANCE_MISMATCH,
+        /** The log has transactions for an account that does not exist. */
+        UNKNOWN_ACCOUNT
+    }
+
+    /** One disagreement between the accounts and the log. */
+    public static final class Discrepancy {
+        private final Kind kind;
+        private final String accountNumber;
+        private final String transactionId;
+        private final long expectedCents;
+        private final long actualCents;
+
+        Discrepancy(Kind kind, String accountNumber, String transactionId, long expectedCents, long actualCents) {
+            this.kind = kind;
+            this.accountNumber = accountNumber;
+            this.transactionId = transactionId;
+            this.expectedCents = expectedCents;
+            this.actualCents = actualCents;
+        }
+
+        public Kind getKind() { return kind; }
+        public String getAccountNumber() { return accountNumber; }
+        /** The transaction where the chain breaks, or null for the other kinds. */
+        public String getTransactionId() { return transactionId; }
+        /** The balance the log implies. */
+        public long getExpectedCents() { return expectedCents; }
+        /** The balance recorded (BROKEN_CHAIN) or held by the account (BALANCE_MISMATCH). */
+        public long getActualCents() { return actualCents; }
+
+        @Override
+        public String toString() {
+            return switch (kind) {
+                case BROKEN_CHAIN -> accountNumber + ": " + transactionId + " records " + Money.toString(actualCents)
+                        + ", the chain gives " + Money.toString(expectedCents);
+                case BALANCE_MISMATCH -> accountNumber + ": balance " + Money.toString(actualCents)
+                        + ", the log ends at " + Money.toString(expectedCents);
+                case UNKNOWN_ACCOUNT -> accountNumber + ": transactions for an unknown account, last balance "
+                        + Money.toString(expectedCents);
+            };
+        }
+    }
+
+    /** Outcome of one reconciliation. */
+    public static final class Report {
+        private final long accountCount;
+        private final long transactionCount;
+        private final Map<Kind, Long> counts;
+        private final List<Discrepancy> details;
+        /** The log's last balance of every existing account that disagreed with it, even past the detail limit. */
+        private final Map<String, Long> logBalances;
+        private final long durationNanos;
+
+        Report(long accountCount, long transactionCount, Map<Kind, Long> counts, List<Discrepancy> details,
+               Map<String, Long> logBalances, long durationNanos) {
+            this.accountCount = accountCount;
+            this.transactionCount = transactionCount;
+            this.counts = counts;
+            this.details = details;
+            this.logBalances = logBalances;
+            this.durationNanos = durationNanos;
+        }
+
+        /** Accounts with at least one transaction. */
+        public long getAccountCount() { return accountCount; }
+        public long getTransactionCount() { return transactionCount; }
+        public long getCount(Kind kind) { return counts.get(kind); }
+
+        public long getDiscrepancyCount() {
+            return counts.values().stream().mapToLong(Long::longValue).sum();
+        }
+
+        public boolean isClean() { return getDiscrepancyCount() == 0; }
+
+        /** The discrepancies found, up to the detail limit, in no particular order. */
+        public List<Discrepancy> getDiscrepancies() { return details; }
+
+        public long getDurationMillis() { return TimeUnit.NANOSECONDS.toMillis(durationNanos); }
+
+        @Override
+        public String toString() {
+            return "Reconciled " + transactionCount + " transactions of " + accountCount + " accounts in "
+                    + getDurationMillis() + " ms: " + getDiscrepancyCount() + " discrepancies " + counts;
+        }
+    }
+
+    private final AccountManager accounts;
+    private final TransactionManager transactions;
+    private volatile int parallelism = Runtime.getRuntime().availableProcessors();
+    private volatile int maxDetails = DEFAULT_MAX_DETAILS;
+
+    public ReconciliationService(AccountManager accounts, TransactionManager transactions) {
+        this.accounts = accounts;
+        this.transactions = transactions;
+    }
+
+    /** Sets how many threads replay the log. */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("At least one thread is required.");
+        this.parallelism = parallelism;
+    }
+
+    /** Sets how many discrepancies a report lists; all of them are counted. */
+    public void setMaxDetails(int maxDetails) {
+        this.maxDetails = maxDetails;
+    }
+
+    /**
+     * Replays the log and reports every disagreement with the accounts. Balances
+     * should not change meanwhile, or they may be reported as mismatches.
+     *
+     * @throws IOException if saved history kept on disk cannot be read
+     */
+    public Report reconcile() throws IOException {
+        long start = System.nanoTime();
+        Tally tally = new Tally();
+        TransactionStore store = transactions.loadedHistory();
+        if (store == null) {
+            replayStreamed(tally);
+        } else {
+            replayLoaded(store, tally);
+        }
+        return tally.report(System.nanoTime() - start);
+    }
+
+    /**
+     * Reconciles, then sets every existing account whose balance disagrees with
+     * the log to the log's last balance. Accounts the log refers to but that do
+     * not exist cannot be rebuilt from it and stay in the report.
+     *
+     * @return the report of what was found before the balances were restored
+     * @throws IOException if saved history kept on disk cannot be read
+     */
+    public Report rebuildBalances() throws IOException {
+        Report report = reconcile();
+        restoreBalances(report);
+        return report;
+    }
+
+    /**
+     * Sets the accounts a report found disagreeing with the log to the log's last
+     * balance, without replaying the log again. Balances should not have changed
+     * since the report.
+     *
+     * @return the number of balances restored
+     */
+    public int restoreBalances(Report report) {
+        int restored = 0;
+        for (Map.Entry<String, Long> entry : report.logBalances.entrySet()) {
+            Account account = accounts.findAccount(entry.getKey());
+            if (account == null) continue;
+            account.restoreBalanceCents(entry.getValue());
+            restored++;
+        }
+        return restored;
+    }
+
+    /** Replays a history held in memory in parallel, one account per task, through the row index. */
+    private void replayLoaded(TransactionStore store, Tally tally) throws IOException {
+        int handles = store.accountCount();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.submit(() -> IntStream.range(0, handles).parallel().forEach(handle -> {
+                int[] accountRows = store.rowsOf(handle);
+                if (accountRows.length == 0) return;
+                List<Discrepancy> found = new ArrayList<>(0);
+                long last = replay(store, handle, accountRows, found);
+                tally.finish(store.accountNumber(handle), last, accountRows.length, found);
+            })).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Reconciliation interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) throw runtime;
+            throw new IOException("Reconciliation failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Replays a history kept on disk as it streams out of the segment log, one
+     * segment at a time, followed by the unsaved rows. Only each account's running
+     * balance and the rows inside its reorder window are held, so memory grows with
+     * the number of accounts rather than the length of the history.
+     */
+    private void replayStreamed(Tally tally) throws IOException {
+        Fanout fanout = new Fanout(parallelism, tally);
+        boolean complete = false;
+        try {
+            transactions.forEachLineInHistory(fanout::route);
+            complete = true;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            fanout.finish(complete);
+        }
+    }
+
+    /**
+     * Hands streamed lines to worker threads in batches, by account, so every row of
+     * an account goes to the same worker in log order. The reading thread only picks
+     * out the account number; the workers parse the lines and follow the chains.
+     */
+    private final class Fanout {
+        private final ExecutorService pool;
+        private final List<BlockingQueue<List<String>>> queues = new ArrayList<>();
+        private final List<List<String>> batches = new ArrayList<>();
+        private final List<Future<?>> workers = new ArrayList<>();
+
+        Fanout(int threads, Tally tally) {
+            pool = Executors.newFixedThreadPool(threads);
+            for (int i = 0; i < threads; i++) {
+                BlockingQueue<List<String>> queue = new ArrayBlockingQueue<>(QUEUED_BATCHES);
+                queues.add(queue);
+                batches.add(new ArrayList<>(STREAM_BATCH));
+                workers.add(pool.submit(() -> work(queue, tally)));
+            }
+        }
+
+        void route(String line) {
+            int comma = line.indexOf(',');
+            String key = AccountRegistry.key(line.substring(comma + 1, line.indexOf(',', comma + 1)));
+            int worker = Math.floorMod(key.hashCode(), queues.size());
+            List<String> batch = batches.get(worker);
+            batch.add(line);
+            if (batch.size() == STREAM_BATCH) {
+                put(worker, batch);
+                batches.set(worker, new ArrayList<>(STREAM_BATCH));
+            }
+        }
+
+        private void put(int worker, List<String> batch) {
+            try {
+                queues.get(worker).put(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UncheckedIOException(new InterruptedIOException("Reconciliation interrupted"));
+            }
+        }
+
+        /**
+         * Follows the chains of one worker's accounts until the stream ends, then
+         * counts them. After a failed batch the rest are only drained, so the
+         * reading thread never waits on a full queue.
+         */
+        private Void work(BlockingQueue<List<String>> queue, Tally tally) throws InterruptedException {
+            Map<String, Chain> chains = new HashMap<>();
+            RuntimeException failure = null;
+            while (true) {
+                List<String> batch = queue.take();
+                if (batch == ABORT) return null;
+                if (batch == END) break;
+                if (failure != null) continue;
+                try {
+                    for (String line : batch) {
+                        Transaction t = Transaction.fromString(line);
+                        chains.computeIfAbsent(AccountRegistry.key(t.getAccountNumber()), Chain::new).add(t);
+                    }
+                } catch (RuntimeException e) {
+                    failure = e;
+                }
+            }
+            if (failure != null) throw failure;
+            for (Chain chain : chains.values()) {
+                long last = chain.finish();
+                tally.finish(chain.accountNumber, last, chain.rows, chain.found);
+            }
+            return null;
+        }
+
+        /** Sends the last batches and waits for the workers; if the stream failed, they stop without counting. */
+        void finish(boolean complete) throws IOException {
+            try {
+                for (int worker = 0; worker < queues.size(); worker++) {
+                    if (complete && !batches.get(worker).isEmpty()) put(worker, batches.get(worker));
+                    queues.get(worker).put(complete ? END : ABORT);
+                }
+                for (Future<?> worker : workers) worker.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Reconciliation interrupted", e);
+            } catch (ExecutionException e) {
+                if (!complete) return; // the stream's own failure is reported
+                if (e.getCause() instanceof RuntimeException runtime) throw runtime;
+                throw new IOException("Reconciliation failed", e.getCause());
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    /** Counts what the replays find and checks each account against the balance its chain ends at. */
+    private final class Tally {
+        private final Map<Kind, LongAdder> counts = new EnumMap<>(Kind.class);
+        private final Queue<Discrepancy> details = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger detailCount = new AtomicInteger();
+        private final Map<String, Long> logBalances = new ConcurrentHashMap<>();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder accountCount = new LongAdder();
+
+        Tally() {
+            for (Kind kind : Kind.values()) counts.put(kind, new LongAdder());
+        }
+
+        void finish(String number, long last, int accountRows, List<Discrepancy> found) {
+            Account account = accounts.findAccount(number);
+            if (account == null) {
+                found.add(new Discrepancy(Kind.UNKNOWN_ACCOUNT, number, null, last, 0));
+            } else if (account.getBalanceCents() != last) {
+                found.add(new Discrepancy(Kind.BALANCE_MISMATCH, number, null, last, account.getBalanceCents()));
+                logBalances.put(number, last);
+            }
+            rows.add(accountRows);
+            accountCount.increment();
+            for (Discrepancy d : found) {
+                counts.get(d.getKind()).increment();
+                if (detailCount.incrementAndGet() <= maxDetails) details.add(d);
+            }
+        }
+
+        Report report(long durationNanos) {
+            Map<Kind, Long> totals = new EnumMap<>(Kind.class);
+            counts.forEach((kind, adder) -> totals.put(kind, adder.sum()));
+            return new Report(accountCount.sum(), rows.sum(), totals,
+                    Collections.unmodifiableList(new ArrayList<>(details)), Map.copyOf(logBalances), durationNanos);
+        }
+    }
+
+    /**
+     * One account's chain while the log streams past: the balance reached so far and
+     * the rows not yet placed. A row is placed once the window is full, with the same
+     * look-ahead as {@link #replay}.
+     */
+    private static final class Chain {
+        private final String accountNumber;
+        private final ArrayDeque<Transaction> window = new ArrayDeque<>(REORDER_WINDOW);
+        private final List<Discrepancy> found = new ArrayList<>(0);
+        private boolean started;
+        private long balance;
+        private int rows;
+
+        Chain(String accountNumber) {
+            this.accountNumber = accountNumber;
+        }
+
+        void add(Transaction t) {
+            rows++;
+            if (!started) {
+                started = true;
+                balance = t.getBalanceAfterCents();
+                return;
+            }
+            window.addLast(t);
+            if (window.size() == REORDER_WINDOW) step();
+        }
+
+        /** Places the rows left in the window and returns the balance the chain ends at. */
+        long finish() {
+            while (!window.isEmpty()) step();
+            return balance;
+        }
+
+        private void step() {
+            Transaction next = null;
+            for (Iterator<Transaction> it = window.iterator(); it.hasNext(); ) {
+                Transaction t = it.next();
+                if (t.getBalanceAfterCents() - signedAmount(t) == balance) {
+                    next = t;
+                    it.remove();
+                    break;
+                }
+            }
+            if (next == null) {
+                next = window.removeFirst();
+                found.add(new Discrepancy(Kind.BROKEN_CHAIN, accountNumber, next.getTransactionId(),
+                        balance + signedAmount(next), next.getBalanceAfterCents()));
+            }
+            balance = next.getBalanceAfterCents();
+        }
+
+        private static long signedAmount(Transaction t) {
+            return t.getType().equalsIgnoreCase("DEPOSIT") ? t.getAmountCents() : -t.getAmountCents();
+        }
+    }
+
+    /**
+     * Walks one account's chain of balances.
+     *
+     * @return the balance the chain ends at
+     */
+    static long replay(TransactionStore store, int handle, int[] rows, List<Discrepancy> found) {
+        long balance = store.balanceAfterCents(rows[0]);
+        for (int i = 1; i < rows.length; i++) {
+            int match = -1;
+            for (int j = i; j < rows.length && j < i + REORDER_WINDOW; j++) {
+                if (balanceBefore(store, rows[j]) == balance) {
+                    match = j;
+                    break;
+                }
+            }
+            if (match > i) {
+                // Logged after a concurrent one it preceded: take it first
+                int row = rows[match];
+                System.arraycopy(rows, i, rows, i + 1, match - i);
+                rows[i] = row;
+            } else if (match < 0) {
+                found.add(new Discrepancy(Kind.BROKEN_CHAIN, store.accountNumber(handle), store.transactionId(rows[i]),
+                        balance + signedAmount(store, rows[i]), store.balanceAfterCents(rows[i])));
+            }
+            balance = store.balanceAfterCents(rows[i]);
+        }
+        return balance;
+    }
+
+    private static long balanceBefore(TransactionStore store, int row) {
+        return store.balanceAfterCents(row) - signedAmount(store, row);
+    }
+
+    private static long signedAmount(TransactionStore store, int row) {
+        return store.type(row) == TransactionType.DEPOSIT ? store.amountCents(row) : -store.amountCents(row);
+    }
+}
@@ -0,0 +1,27 @@
+package services;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * On-disk format of the account and transaction snapshot files.
+ */
+public enum StorageFormat {
+
+    /** Comma-separated text, one record per line; kept for import and export. */
+    TEXT("src/main/java/data/accounts.txt", "src/main/java/data/transactions.txt"),
+
+    /** Versioned fixed-width binary records, see {@link BinaryStorage}. */
+    BINARY("src/main/java/data/accounts.bin", "src/main/java/data/transactions.bin");
+
+    private final String accountsPath;
+    private final String transactionsPath;
+
+    StorageFormat(String accountsPath, String transactionsPath) {
+        this.accountsPath = accountsPath;
+        this.transactionsPath = transactionsPath;
+    }
+
+    public Path getAccountsPath() { return Paths.get(accountsPath); }
+    public Path getTransactionsPath() { return Paths.get(transactionsPath); }
+}
@@ -0,0 +1,413 @@
+package services;
+
+import modules.Account;
+import modules.Customer;
+import modules.IdAllocator;
+import modules.Money;
+import modules.Transaction;
+import modules.TransactionType;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only write-ahead journal of everything committed since the last snapshot
+ * (the binary account checkpoints and the saved transaction history, in its binary
+ * file or segment log).
+ * <p>
+ * Every committed transaction and every new account is written to the end of the
+ * file as it happens, one text line each ("T,...", "A,..." or "C,..." for the
+ * customer of a new account), so saving no longer needs to rewrite the whole
+ * history and a crash loses nothing that was journaled.
+ * When the data actually reaches the disk is set by a {@link SyncPolicy}.
+ * On startup {@link #recover} replays the journal on top of the loaded snapshot;
+ * after a successful snapshot {@link #truncateBefore} drops what it covers.
+ * </p>
+ * <p>
+ * Records of different accounts interleave freely, but one account's records must
+ * be journaled in the order of its balance changes: whoever changes a balance holds
+ * the account's monitor until the transaction is journaled
+ * ({@link TransactionManager#apply}, {@link TransferService},
+ * {@link BatchTransactionService}), or runs on the account's partition
+ * ({@link PartitionedEngine}).
+ * </p>
+ */
+public final class TransactionJournal implements Closeable {
+
+    public static final String DEFAULT_PATH = "src/main/java/data/journal.log";
+
+    /**
+     * When journaled records are forced to disk with fsync.
+     */
+    public static final class SyncPolicy {
+        private final boolean waitForSync;
+        private final int maxRecords;
+        private final long maxDelayMillis;
+
+        private SyncPolicy(boolean waitForSync, int maxRecords, long maxDelayMillis) {
+            this.waitForSync = waitForSync;
+            this.maxRecords = maxRecords;
+            this.maxDelayMillis = maxDelayMillis;
+        }
+
+        /**
+         * Every commit returns only once it is on disk. Commits that arrive while
+         * an fsync is running share the next one (group commit).
+         */
+        public static SyncPolicy always() {
+            return new SyncPolicy(true, 0, 0);
+        }
+
+        /**
+         * Commits return once written to the OS; an fsync runs after every
+         * maxRecords records or maxDelayMillis milliseconds, whichever comes first.
+         * A power failure can lose at most that window. Use 0 to disable either limit.
+         */
+        public static SyncPolicy batched(int maxRecords, long maxDelayMillis) {
+            if (maxRecords < 0 || maxDelayMillis < 0) throw new IllegalArgumentException("Limits cannot be negative.");
+            return new SyncPolicy(false, maxRecords, maxDelayMillis);
+        }
+
+        /** Never fsyncs; the OS writes the data back when it chooses. */
+        public static SyncPolicy never() {
+            return new SyncPolicy(false, 0, 0);
+        }
+
+        boolean syncs() {
+            return waitForSync || maxRecords > 0 || maxDelayMillis > 0;
+        }
+
+        @Override
+        public String toString() {
+            if (waitForSync) return "always";
+            if (!syncs()) return "never";
+            return "batched(" + maxRecords + " records, " + maxDelayMillis + " ms)";
+        }
+    }
+
+    private static final byte TRANSACTION = 'T';
+    private static final byte ACCOUNT = 'A';
+    private static final byte CUSTOMER = 'C';
+
+    private final Path path;
+    private final SyncPolicy policy;
+    /** Replaced by truncateBefore(); only used while holding writeLock or syncLock. */
+    private FileChannel channel;
+    private final ScheduledExecutorService syncTimer;
+
+    /** Guards writes to the channel and the written counter. */
+    private final Object writeLock = new Object();
+    /** Held while an fsync runs; commits queued on it are covered by the next one. */
+    private final Object syncLock = new Object();
+
+    private long written;
+    private volatile long synced;
+    private volatile long syncCount;
+
+    /**
+     * Opens (or creates) a journal file and appends to its end.
+     *
+     * @param path   the journal file
+     * @param policy when records are forced to disk
+     * @throws IOException if the file cannot be opened
+     */
+    public TransactionJournal(Path path, SyncPolicy policy) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        this.path = path;
+        this.policy = policy;
+        this.channel = open(path);
+        if (policy.maxDelayMillis > 0) {
+            syncTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "journal-sync");
+                t.setDaemon(true);
+                return t;
+            });
+            syncTimer.scheduleWithFixedDelay(this::syncQuietly, policy.maxDelayMillis, policy.maxDelayMillis,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            syncTimer = null;
+        }
+    }
+
+    /** Opens the file for writing at its end; only this instance writes to it. */
+    private static FileChannel open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        return channel;
+    }
+
+    /** Journals one committed transaction. */
+    public void appendTransaction(Transaction t) {
+        commit(encode(new StringBuilder(64), TRANSACTION, t.toString()), 1);
+    }
+
+    /** Journals several transactions with one write, e.g. both legs of a transfer. */
+    public void appendTransactions(List<Transaction> transactions) {
+        if (transactions.isEmpty()) return;
+        StringBuilder sb = new StringBuilder(64 * transactions.size());
+        for (Transaction t : transactions) encode(sb, TRANSACTION, t.toString());
+        commit(sb, transactions.size());
+    }
+
+    /**
+     * Journals rows given as columns with one write, as the records of
+     * {@link #appendTransactions} but without a Transaction object each.
+     *
+     * @param accountIndexes index into accountNumbers of each row's account
+     */
+    void appendRows(IdAllocator ids, long firstId, String[] accountNumbers, int[] accountIndexes,
+                    TransactionType[] types, long[] amountsCents, long[] balancesAfterCents, String timestamp, int n) {
+        if (n == 0) return;
+        StringBuilder sb = new StringBuilder(64 * n);
+        for (int k = 0; k < n; k++) {
+            sb.append((char) TRANSACTION).append(',').append(ids.format(firstId + k)).append(',')
+                    .append(accountNumbers[accountIndexes[k]]).append(',').append(types[k].name()).append(',');
+            Money.appendTo(sb, amountsCents[k]).append(',');
+            Money.appendTo(sb, balancesAfterCents[k]).append(',').append(timestamp).append('\n');
+        }
+        commit(sb, n);
+    }
+
+    /** Journals a new (or replaced) account. */
+    public void appendAccount(Account account) {
+        commit(encode(new StringBuilder(64), ACCOUNT, account.toString()), 1);
+    }
+
+    /** Journals a new customer, ahead of the account that refers to it. */
+    public void appendCustomer(Customer customer) {
+        commit(encode(new StringBuilder(64), CUSTOMER, customer.toString()), 1);
+    }
+
+    private static StringBuilder encode(StringBuilder sb, byte kind, String record) {
+        return sb.append((char) kind).append(',').append(record).append('\n');
+    }
+
+    private void commit(StringBuilder records, int count) {
+        ByteBuffer bytes = ByteBuffer.wrap(records.toString().getBytes(StandardCharsets.UTF_8));
+        long sequence;
+        try {
+            synchronized (writeLock) {
+                while (bytes.hasRemaining()) channel.write(bytes);
+                written += count;
+                sequence = written;
+            }
+            if (policy.waitForSync) {
+                syncUpTo(sequence);
+            } else if (policy.maxRecords > 0 && sequence - synced >= policy.maxRecords) {
+                syncUpTo(sequence);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write to journal " + path, e);
+        }
+    }
+
+    /** Forces every record written so far to disk. */
+    public void sync() throws IOException {
+        long target;
+        synchronized (writeLock) {
+            target = written;
+        }
+        syncUpTo(target);
+    }
+
+    private void syncUpTo(long sequence) throws IOException {
+        synchronized (syncLock) {
+            if (synced >= sequence) return; // an fsync that started after our write covered it
+            long target;
+            synchronized (writeLock) {
+                target = written;
+            }
+            channel.force(false);
+            synced = target;
+            syncCount++;
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException e) {
+            System.out.println("Error syncing journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the current end of the journal. Take it before writing a snapshot and
+     * pass it to {@link #truncateBefore} afterwards.
+     */
+    public long position() throws IOException {
+        synchronized (writeLock) {
+            return channel.size();
+        }
+    }
+
+    /**
+     * Drops the records before a position once a snapshot that contains them is
+     * safely written. Records journaled while the snapshot was being written are kept.
+     *
+     * @param position a value returned by {@link #position()}
+     */
+    public void truncateBefore(long position) throws IOException {
+        synchronized (syncLock) {
+            synchronized (writeLock) {
+                long size = channel.size();
+                if (position <= 0 || position > size) return;
+                // The kept tail goes to a new file that replaces the journal atomically,
+                // so a crash at any point leaves either the old journal or the new one
+                Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+                try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                    long copied = 0;
+                    while (copied < size - position) {
+                        copied += channel.transferTo(position + copied, size - position - copied, out);
+                    }
+                    out.force(false);
+                }
+                channel.close();
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                channel = open(path);
+                synced = written;
+            }
+        }
+    }
+
+    /**
+     * Replays the journal on top of the accounts and transactions loaded from the
+     * last snapshot. Accounts are added or replaced; transactions not already in the
+     * snapshot are added, and each one sets its account's balance.
+     * A torn last line (from a crash mid-write) is ignored.
+     *
+     * @return the number of records applied
+     * @throws IOException if the journal cannot be read
+     */
+    public int recover(AccountManager accounts, TransactionManager transactions) throws IOException {
+        byte[] data;
+        synchronized (writeLock) {
+            data = Files.readAllBytes(path);
+        }
+        Set<String> known = null;
+        int applied = 0;
+        int start = 0;
+        for (int end = 0; end < data.length; end++) {
+            if (data[end] != '\n') continue;
+            int lineStart = start;
+            String line = new String(data, start, end - start, StandardCharsets.UTF_8);
+            start = end + 1;
+            if (line.length() < 2 || line.charAt(1) != ',') {
+                System.out.println("Skipping invalid journal record: " + line);
+                continue;
+            }
+            String record = line.substring(2);
+            if (line.charAt(0) == CUSTOMER) {
+                Customer customer = Customer.fromString(record);
+                if (customer == null) continue;
+                Customer.CUSTOMER_IDS.observe(customer.getCustomerId());
+                accounts.restoreCustomer(customer);
+                applied++;
+            } else if (line.charAt(0) == ACCOUNT) {
+                Account account = Account.fromString(record, accounts.getCustomers());
+                if (account == null) continue;
+                Account.ACCOUNT_IDS.observe(account.getAccountNumber());
+                accounts.restoreAccount(account);
+                applied++;
+            } else if (line.charAt(0) == TRANSACTION) {
+                Transaction t = parseTransaction(record);
+                if (t == null) {
+                    System.out.println("Skipping invalid journal record: " + line);
+                    continue;
+                }
+                if (known == null) {
+                    // Only saved history as old as the journal can hold one of its records
+                    known = transactions.transactionIds(transactions.hasLazyHistory()
+                            ? oldestTransactionEpoch(data, lineStart) : Long.MIN_VALUE);
+                }
+                if (known.add(t.getTransactionId())) {
+                    Transaction.TRANSACTION_IDS.observe(t.getTransactionId());
+                    transactions.restoreTransaction(t);
+                    applied++;
+                }
+                // Each account's records are in the order of its balance changes, since every writer
+                // holds the account's monitor (or runs on its partition) from the change until it is
+                // journaled; so the balance follows them, even for snapshotted records
+                Account account = accounts.findAccount(t.getAccountNumber());
+                if (account != null) account.restoreBalanceCents(t.getBalanceAfterCents());
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Parses a transaction record, or returns null if it is malformed: missing
+     * fields, an amount, type or timestamp that does not parse. Checked before the
+     * record reaches the store, whose append cannot fail halfway.
+     */
+    private static Transaction parseTransaction(String record) {
+        try {
+            Transaction t = Transaction.fromString(record);
+            TransactionStore.typeOf(t.getType());
+            TransactionStore.epochSecondOf(t.getTimestamp());
+            return t;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /** Returns the oldest timestamp of the transaction records from the given offset on. */
+    private static long oldestTransactionEpoch(byte[] data, int from) {
+        long oldest = Long.MAX_VALUE;
+        int start = from;
+        for (int end = from; end < data.length; end++) {
+            if (data[end] != '\n') continue;
+            if (end - start > 2 && data[start] == TRANSACTION && data[start + 1] == ',') {
+                Transaction t = parseTransaction(new String(data, start + 2, end - start - 2, StandardCharsets.UTF_8));
+                if (t != null) oldest = Math.min(oldest, TransactionStore.epochSecondOf(t.getTimestamp()));
+            }
+            start = end + 1;
+        }
+        return oldest;
+    }
+
+    /** Returns the number of records journaled through this instance. */
+    public long getRecordCount() {
+        synchronized (writeLock) {
+            return written;
+        }
+    }
+
+    /** Returns the number of fsyncs performed so far. */
+    public long getSyncCount() {
+        return syncCount;
+    }
+
+    public SyncPolicy getPolicy() { return policy; }
+
+    public Path getPath() { return path; }
+
+    /** Forces outstanding records to disk and closes the file. */
+    @Override
+    public void close() throws IOException {
+        if (syncTimer != null) syncTimer.shutdownNow();
+        synchronized (syncLock) {
+            synchronized (writeLock) {
+                if (!channel.isOpen()) return;
+                if (policy.syncs()) channel.force(false);
+                channel.close();
+            }
+        }
+    }
+}
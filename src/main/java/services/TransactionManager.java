@@ -3,39 +3,227 @@ package services;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
+import modules.Account;
+import modules.IdAllocator;
+import modules.Money;
 import modules.Transaction;
+import modules.TransactionType;
 
 /**
  * Service class to manage transactions in the banking system.
  * Provides functionality to add, retrieve, view, calculate totals,
  * and persist transactions to a file.
  * <p>
- * Thread-safe for adding transactions using synchronized methods.
+ * Thread-safe: transactions are appended without locking, from any number of
+ * threads, and readers never block writers. Transactions are kept in a columnar {@link TransactionStore} with a per-account
+ * row index, so one account's history costs O(k) in that account's transaction
+ * count instead of a full scan, and per-account running totals kept beside the
+ * index make deposit/withdrawal sums O(1). Transaction objects are only created when read.
+ * </p>
+ * <p>
+ * With a segment log, {@link #openSavedHistory()} starts without reading the saved
+ * history at all: only the transactions added since are kept in memory, and an
+ * account's statement reads its saved records from disk through the log's
+ * per-account index when it is asked for.
  * </p>
  */
 public class TransactionManager  {
 
-    /** List to hold all transactions in memory. */
-    private List<Transaction> transactions;
+    /** Columnar storage for all transactions in memory, with the per-account index and totals. */
+    private volatile TransactionStore store;
+
+    /** Write-ahead journal for committed transactions, or null if not journaling. */
+    private volatile TransactionJournal journal;
+
+    /** Segmented history that saves append to, or null to save full binary snapshots. */
+    private volatile TransactionSegmentLog segmentLog;
+
+    /**
+     * The store whose rows up to loggedRows are in the segment log; guarded by this.
+     * Saves move loggedRows while holding the log's monitor too, so a reader holding
+     * only the log's sees it match what the log holds.
+     */
+    private TransactionStore loggedStore;
+    private volatile int loggedRows;
+
+    /** True when the saved history is read from the segment log on demand rather than held in the store. */
+    private volatile boolean lazyHistory;
+
+    /** Binary snapshot file used by saveTransaction() and loadTransaction(). */
+    private final Path snapshotPath;
+
+    /** Hands out the IDs of the transactions recorded here. */
+    private final IdAllocator transactionIds;
 
     /**
-     * Constructs a new TransactionManager with an empty transaction list.
+     * Constructs a new TransactionManager with an empty transaction store.
      */
     public TransactionManager() {
-        this.transactions = new ArrayList<>();
+        this(StorageFormat.BINARY.getTransactionsPath());
+    }
+
+    /**
+     * Constructs a new TransactionManager with a configurable binary snapshot location.
+     *
+     * @param snapshotPath the binary transaction file
+     */
+    public TransactionManager(Path snapshotPath) {
+        this(snapshotPath, Transaction.TRANSACTION_IDS);
+    }
+
+    /**
+     * Constructs a TransactionManager whose transactions take their IDs from their own
+     * allocator, e.g. for a load test that must not use up the bank's IDs. It should
+     * format IDs as {@link Transaction#TRANSACTION_IDS} does, so the store keeps them compact.
+     *
+     * @param transactionIds allocator for the IDs of recorded transactions
+     */
+    TransactionManager(IdAllocator transactionIds) {
+        this(StorageFormat.BINARY.getTransactionsPath(), transactionIds);
+    }
+
+    private TransactionManager(Path snapshotPath, IdAllocator transactionIds) {
+        this.store = new TransactionStore();
+        this.snapshotPath = snapshotPath;
+        this.transactionIds = transactionIds;
     }
 
     /**
      * Adds a new transaction to the manager in a thread-safe manner.
+     * A caller recording its own balance change must hold the account's monitor from
+     * the change until this returns, as {@link #apply} does, so the account's records
+     * are journaled in the order of its balances.
      *
      * @param newTransaction the Transaction object to be added
      */
-    public synchronized void addTransaction(Transaction newTransaction) {
-        this.transactions.add(newTransaction);
+    public void addTransaction(Transaction newTransaction) {
+        // Stored before journaled: a snapshot holds every record before its journal position
+        store.append(newTransaction);
+        TransactionJournal current = journal;
+        if (current != null) current.appendTransaction(newTransaction);
+    }
+
+    /**
+     * Deposits into or withdraws from an account and records the transaction, holding
+     * the account's monitor (the one transfers and batches take) throughout. The change
+     * therefore never lands between the two legs of a transfer, and it is recorded in
+     * the same order as the account's other recorded changes.
+     *
+     * @param account the account to change
+     * @param type    deposit or withdrawal
+     * @param cents   amount in minor units, must be positive
+     * @return the recorded transaction, with the balance this change produced
+     */
+    public Transaction apply(Account account, TransactionType type, long cents) {
+        synchronized (account) {
+            long balance = type == TransactionType.DEPOSIT ? account.depositCents(cents)
+                    : account.withdrawCents(cents);
+            Transaction transaction = newTransaction(account.getAccountNumber(), type.name(), cents, balance);
+            addTransaction(transaction);
+            return transaction;
+        }
+    }
+
+    /** Creates a transaction with the next ID of this manager's allocator, without recording it. */
+    Transaction newTransaction(String accountNumber, String type, long cents, long balanceAfterCents) {
+        return Transaction.ofCents(transactionIds, accountNumber, type, cents, balanceAfterCents);
+    }
+
+    /** Returns the allocator the IDs of transactions recorded here come from. */
+    IdAllocator getTransactionIds() {
+        return transactionIds;
+    }
+
+    /**
+     * Adds several transactions as consecutive entries, published together,
+     * so no other transaction is recorded between them (e.g. both legs of a transfer).
+     *
+     * @param newTransactions the transactions to be added, in order
+     */
+    public void addTransactions(List<Transaction> newTransactions) {
+        store.appendAll(newTransactions);
+        TransactionJournal current = journal;
+        if (current != null) current.appendTransactions(newTransactions);
+    }
+
+    /**
+     * Adds a batch of transactions given as columns, without a Transaction object
+     * per row. IDs are consecutive from firstId and every row has the same
+     * timestamp. They are journaled in one write and published together.
+     *
+     * @param accountNumbers the distinct accounts of the batch
+     * @param accountIndexes index into accountNumbers of each row's account
+     */
+    void addRows(long firstId, String[] accountNumbers, int[] accountIndexes, TransactionType[] types,
+                 long[] amountsCents, long[] balancesAfterCents, long epochSecond, int n) {
+        if (n == 0) return;
+        TransactionStore target = store;
+        int[] handleOf = new int[accountNumbers.length];
+        for (int a = 0; a < accountNumbers.length; a++) handleOf[a] = target.handleFor(accountNumbers[a]);
+        int[] handles = new int[n];
+        for (int k = 0; k < n; k++) handles[k] = handleOf[accountIndexes[k]];
+        target.appendRows(firstId, handles, types, amountsCents, balancesAfterCents, epochSecond, n);
+
+        TransactionJournal current = journal;
+        if (current != null) {
+            current.appendRows(transactionIds, firstId, accountNumbers, accountIndexes, types, amountsCents,
+                    balancesAfterCents, TransactionStore.formatTimestamp(epochSecond), n);
+        }
+    }
+
+    /**
+     * Journals every transaction added from now on, right after it is stored.
+     *
+     * @param journal the journal, or null to stop journaling
+     */
+    public void setJournal(TransactionJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Keeps the saved history in a segmented log: saves append only the transactions
+     * added since the previous save, and loads read the retained segments.
+     *
+     * @param segmentLog the log, or null to save full binary snapshots again
+     */
+    public synchronized void setSegmentLog(TransactionSegmentLog segmentLog) {
+        if (lazyHistory) throw new IllegalStateException("The saved history is read from the current segment log.");
+        this.segmentLog = segmentLog;
+        loggedStore = null;
+        loggedRows = 0;
+    }
+
+    /** Adds a transaction replayed from the journal, without journaling it again. */
+    void restoreTransaction(Transaction t) {
+        store.append(t);
+    }
+
+    /** Returns true if the saved history stays on disk until asked for. */
+    boolean hasLazyHistory() {
+        return lazyHistory;
+    }
+
+    /**
+     * Returns the IDs of the stored transactions. With the history on disk, only
+     * those saved at or after the given time are read from it.
+     *
+     * @param sinceEpochSecond the oldest timestamp whose IDs are needed from disk
+     */
+    Set<String> transactionIds(long sinceEpochSecond) throws IOException {
+        TransactionStore current = store;
+        int count = current.size();
+        Set<String> ids = new HashSet<>(count * 2);
+        for (int row = 0; row < count; row++) ids.add(current.transactionId(row));
+        if (lazyHistory) {
+            for (Transaction t : segmentLog.findBetween(sinceEpochSecond, Long.MAX_VALUE)) ids.add(t.getTransactionId());
+        }
+        return ids;
     }
 
     /**
@@ -47,13 +235,23 @@ public class TransactionManager  {
      * @return the total sum of amounts for the filtered transactions
      */
     private double calculateTotal(String accountNumber, String requiredType) {
-        return transactions.stream()
-                .filter(t ->
-                        t.getAccountNumber().equalsIgnoreCase(accountNumber) &&
-                                t.getType().equalsIgnoreCase(requiredType)
-                )
-                .mapToDouble(Transaction::getAmount)
-                .sum();
+        AccountStatistics stats = getAccountStatistics(accountNumber);
+        return requiredType.equalsIgnoreCase("DEPOSIT") ? stats.getTotalDeposit() : stats.getTotalWithdraw();
+    }
+
+    /**
+     * Returns the running totals for an account without reading its transactions.
+     * With the saved history on disk they are the totals kept in the segment log's
+     * footers plus those of the unsaved rows.
+     *
+     * @param accountNumber the account number
+     * @return deposits, withdrawals, count and last balance; EMPTY if no transactions
+     */
+    public AccountStatistics getAccountStatistics(String accountNumber) {
+        if (lazyHistory) return savedStatistics(accountNumber);
+        TransactionStore current = store;
+        int handle = current.findHandle(accountNumber);
+        return handle < 0 ? AccountStatistics.EMPTY : current.statisticsOf(handle);
     }
 
     /**
@@ -77,15 +275,69 @@ public class TransactionManager  {
     }
 
     /**
-     * Retrieves a list of transactions filtered by account number.
+     * Retrieves a list of transactions filtered by account number, from the index.
      *
      * @param accountNumber the account number to filter
      * @return a list of transactions for the specified account
      */
     public List<Transaction> getTransactionsByAccount(String accountNumber) {
-        return transactions.stream()
-                .filter(t -> t.getAccountNumber().equalsIgnoreCase(accountNumber))
-                .toList();
+        if (lazyHistory) return readHistory(accountNumber);
+        TransactionStore current = store;
+        int handle = current.findHandle(accountNumber);
+        if (handle < 0) return List.of();
+        int[] rows = current.rowsOf(handle);
+        List<Transaction> history = new ArrayList<>(rows.length);
+        for (int row : rows) history.add(current.get(row));
+        return history;
+    }
+
+    /**
+     * Reads an account's saved records from the segment log, then adds the unsaved
+     * ones from memory. Only the log's monitor is held, not this one.
+     */
+    private List<Transaction> readHistory(String accountNumber) {
+        TransactionSegmentLog log = segmentLog;
+        TransactionStore current = store;
+        List<Transaction> history;
+        int logged;
+        try {
+            synchronized (log) {
+                history = log.findByAccount(accountNumber);
+                logged = loggedRows;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading transaction history", e);
+        }
+        int handle = current.findHandle(accountNumber);
+        if (handle >= 0) {
+            for (int row : current.rowsOf(handle)) {
+                if (row >= logged) history.add(current.get(row));
+            }
+        }
+        return history;
+    }
+
+    /** Adds the totals of an account's unsaved rows to those in the segment log's footers. */
+    private AccountStatistics savedStatistics(String accountNumber) {
+        TransactionSegmentLog log = segmentLog;
+        TransactionStore current = store;
+        AccountStatistics stats;
+        int logged;
+        try {
+            synchronized (log) {
+                stats = log.statisticsOf(accountNumber);
+                logged = loggedRows;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading transaction totals", e);
+        }
+        int handle = current.findHandle(accountNumber);
+        if (handle >= 0) {
+            for (int row : current.rowsOf(handle)) {
+                if (row >= logged) stats = stats.plus(current.get(row));
+            }
+        }
+        return stats;
     }
 
     /**
@@ -113,9 +365,10 @@ public class TransactionManager  {
 
         System.out.println("------------------------------------------------------------------------------------");
 
-        double totalDeposits = calculateTotalDeposit(accountNumber);
-        double totalWithdrawals = calculateTotalWithdraw(accountNumber);
-        double netChange = totalDeposits - totalWithdrawals;
+        AccountStatistics stats = getAccountStatistics(accountNumber);
+        double totalDeposits = stats.getTotalDeposit();
+        double totalWithdrawals = stats.getTotalWithdraw();
+        double netChange = stats.getNetChange();
 
         System.out.printf("SUMMARY: Total Deposits: $%,.2f | Total Withdrawals: $%,.2f | Net Change: %s$%,.2f\n",
                 totalDeposits, totalWithdrawals, (netChange >= 0 ? "+" : ""), netChange);
@@ -128,49 +381,213 @@ public class TransactionManager  {
      * @return the count of transactions
      */
     public int getTransactionCount() {
-        return this.transactions.size();
+        if (lazyHistory) {
+            synchronized (this) {
+                return (int) (segmentLog.getTransactionCount() + store.size() - loggedRows);
+            }
+        }
+        return store.size();
     }
 
     /**
-     * Saves all transactions to a file in plain text format.
-     * Creates necessary directories if they do not exist.
+     * Saves the transactions: appends those added since the previous save to the
+     * segment log if one is set, otherwise writes a full binary snapshot.
+     *
+     * @return true if the transactions were written
      */
-    public void saveTransaction() {
-        String filePath = "src/main/java/data/transactions.txt";
-        File file = new File(filePath);
-        File parentDir = file.getParentFile();
+    public boolean saveTransaction() {
         try {
-            if (parentDir != null && !parentDir.exists()) {
-                if (!parentDir.mkdirs()) {
-                    System.out.println("Failed to create directory structure: " + parentDir.getAbsolutePath());
-                    return;
-                }
+            writeTransactions();
+            return true;
+        } catch (Exception e) {
+            System.out.println("Error saving transactions: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Saves like {@link #saveTransaction()}, but reports a failure by throwing its
+     * cause (for background saves, whose future carries it). It first waits for the
+     * appends already started to be published, so every transaction stored before
+     * the call is saved.
+     *
+     * @throws IOException if the transactions cannot be written
+     */
+    void writeTransactions() throws IOException {
+        store.awaitClaimed();
+        TransactionSegmentLog log = segmentLog;
+        if (log == null) writeTransactions(StorageFormat.BINARY);
+        else saveToSegmentLog(log);
+    }
+
+    private synchronized void saveToSegmentLog(TransactionSegmentLog log) throws IOException {
+        TransactionStore current = store;
+        int count = current.size();
+        int from;
+        synchronized (log) {
+            if (current != loggedStore) {
+                // A different history was loaded or imported; the log is rewritten from it
+                log.reset();
+                loggedStore = current;
+                loggedRows = 0;
             }
-            List<String> lines = transactions.stream()
-                    .map(Transaction::toString)
-                    .toList();
-            Files.write(Paths.get(filePath), lines);
-            System.out.println("Transactions saved.");
+            from = loggedRows;
+            log.append(current, from, count);
+            loggedRows = count;
+        }
+        System.out.println("Transactions saved (" + (count - from) + " new).");
+    }
+
+    /**
+     * Saves all transactions to a file in the given format (text for export).
+     * Creates necessary directories if they do not exist. The file is replaced
+     * atomically, so a crash mid-save leaves the previous one intact. Only the
+     * transactions published when the save starts are written; appends continue
+     * meanwhile.
+     *
+     * @return true if the file was written
+     */
+    public boolean saveTransaction(StorageFormat format) {
+        try {
+            writeTransactions(format);
+            return true;
         } catch (Exception e) {
             System.out.println("Error saving transactions: " + e.getMessage());
+            return false;
         }
     }
 
+    private void writeTransactions(StorageFormat format) throws IOException {
+        Path path = snapshotPathFor(format);
+        File parentDir = path.toFile().getParentFile();
+        if (parentDir != null && !parentDir.exists()) {
+            if (!parentDir.mkdirs()) {
+                throw new IOException("Failed to create directory structure: " + parentDir.getAbsolutePath());
+            }
+        }
+        TransactionStore current = lazyHistory ? fullHistory() : store;
+        if (format == StorageFormat.BINARY) {
+            BinaryStorage.writeTransactions(path, current);
+        } else {
+            int count = current.size();
+            AtomicFiles.writeLines(path, out -> {
+                for (int row = 0; row < count; row++) {
+                    out.write(current.get(row).toString());
+                    out.newLine();
+                }
+            });
+        }
+        System.out.println("Transactions saved.");
+    }
+
+    /** Returns the store holding every transaction, or null if the saved history stays on disk. */
+    TransactionStore loadedHistory() {
+        TransactionStore current = store;
+        return lazyHistory ? null : current;
+    }
+
     /**
-     * Loads transactions from a file and populates the internal list.
-     * Existing transactions are replaced by the loaded transactions.
+     * Visits every transaction recorded so far as a line in the transactions.txt
+     * format, oldest first: the saved ones straight from the segment log, one
+     * segment at a time, then the unsaved ones in memory. The segments are listed
+     * under the log's monitor and read without it, and this one is not taken, so
+     * transactions, saves and statements go on during the pass. Only used while
+     * the saved history stays on disk.
+     *
+     * @throws IOException if a segment cannot be read
+     */
+    void forEachLineInHistory(Consumer<String> action) throws IOException {
+        TransactionSegmentLog log = segmentLog;
+        TransactionStore current = store;
+        List<TransactionSegmentLog.SegmentInfo> segments;
+        int logged;
+        synchronized (log) {
+            segments = log.snapshot();
+            logged = loggedRows;
+        }
+        int count = current.size();
+        log.forEachLine(segments, action);
+        for (int row = logged; row < count; row++) action.accept(current.get(row).toString());
+    }
+
+    /** Reads the saved history back into one store, followed by the unsaved transactions. */
+    private synchronized TransactionStore fullHistory() throws IOException {
+        TransactionStore full = segmentLog.load();
+        TransactionStore current = store;
+        int count = current.size();
+        for (int row = loggedRows; row < count; row++) full.append(current.get(row));
+        return full;
+    }
+
+    /**
+     * Opens the history saved in the segment log without loading it: nothing but the
+     * segment footers is read, so startup takes the same time however long the
+     * history is. Transactions added from now on are kept in memory and appended to
+     * the log by saves; statements read an account's saved records on demand.
+     * Falls back to {@link #loadTransaction()} if the log is empty.
+     */
+    public void openSavedHistory() {
+        TransactionSegmentLog log = segmentLog;
+        if (log == null || log.isEmpty()) {
+            loadTransaction();
+            return;
+        }
+        synchronized (this) {
+            TransactionStore empty = new TransactionStore();
+            transactionIds.observe(log.getMaxIdSequence());
+            store = empty;
+            loggedStore = empty;
+            loggedRows = 0;
+            lazyHistory = true;
+        }
+        System.out.println("Transaction history opened (" + log.getTransactionCount() + " transactions in "
+                + log.segments().size() + " segments).");
+    }
+
+    /**
+     * Loads transactions from the segment log if it has any, otherwise from the
+     * binary file, or from the text file if there is no binary one yet.
      */
     public void loadTransaction() {
+        TransactionSegmentLog log = segmentLog;
+        if (log != null && !log.isEmpty()) {
+            try {
+                TransactionStore loaded = log.load();
+                install(loaded);
+                synchronized (this) {
+                    loggedStore = loaded;
+                    loggedRows = loaded.size();
+                }
+                System.out.println("Transactions loaded (" + log.segments().size() + " segments).");
+            } catch (Exception e) {
+                System.out.println("Error loading transactions: " + e.getMessage());
+            }
+            return;
+        }
+        loadTransaction(Files.exists(snapshotPath) ? StorageFormat.BINARY : StorageFormat.TEXT);
+    }
+
+    private Path snapshotPathFor(StorageFormat format) {
+        return format == StorageFormat.BINARY ? snapshotPath : format.getTransactionsPath();
+    }
+
+    /**
+     * Loads transactions from a file in the given format (text for import).
+     * Existing transactions are replaced by the loaded transactions.
+     */
+    public void loadTransaction(StorageFormat format) {
         try {
-            String filePath = "src/main/java/data/transactions.txt";
-            Path path = Paths.get(filePath);
+            Path path = snapshotPathFor(format);
             if (!Files.exists(path)) return;
 
-            transactions = new ArrayList<>(
-                    Files.readAllLines(path).stream()
-                            .map(Transaction::fromString)
-                            .toList()
-            );
+            // Store, index and totals are rebuilt in the same single pass
+            TransactionStore loaded;
+            if (format == StorageFormat.BINARY) {
+                loaded = BinaryStorage.readTransactions(path);
+            } else {
+                loaded = new ParallelTransactionLoader().load(path);
+            }
+            install(loaded);
 
             System.out.println("Transactions loaded.");
         } catch (Exception e) {
@@ -178,4 +595,19 @@ public class TransactionManager  {
         }
     }
 
+    /** Makes a loaded store current; new IDs continue after the highest loaded one. */
+    private void install(TransactionStore loaded) {
+        long highest = -1;
+        for (int row = 0; row < loaded.size(); row++) {
+            long id = loaded.idSequence(row);
+            if (id < 0) id = Transaction.TRANSACTION_IDS.parse(loaded.transactionId(row));
+            highest = Math.max(highest, id);
+        }
+        transactionIds.observe(highest);
+        synchronized (this) {
+            lazyHistory = false;
+            store = loaded;
+        }
+    }
+
 }
@@ -0,0 +1,912 @@
+package services;
+
+import modules.Money;
+import modules.Transaction;
+import modules.TransactionType;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Transaction history kept as a directory of segments instead of one ever-growing file.
+ * <p>
+ * New transactions are appended as text lines (the transactions.txt format) to the
+ * active segment, 000001.log, 000002.log, ... When it reaches a size or age limit it
+ * is sealed into a .seg file: the lines are compressed in blocks of about 64 KB, each
+ * a separate gzip member, followed by a footer with the record count, the oldest and
+ * newest timestamp, the lowest and highest account number and the highest ID, then
+ * the offset of every block and a sparse index from each account to the blocks that
+ * hold its records and to its totals in the segment. Queries read the footers first
+ * and skip segments that cannot match. A sealed segment's index is parsed the first
+ * time it is queried and kept, and accounts are found in it by binary search; one
+ * account's history then decompresses only its own blocks (and, in the active
+ * segment, reads its lines at offsets kept in memory). A statement's cost grows with
+ * the account's own records and the number of segments, not with the records of
+ * other accounts. An account's totals come from the same indexes, without reading
+ * any record. Segments sealed before the footers held totals are resealed once, when
+ * the log is opened. A {@link RetentionPolicy} deletes or archives old
+ * sealed segments, so disk use and load time stay bounded as history grows.
+ * </p>
+ * <pre>
+ * sealed segment: gzip(lines) gzip(lines) ...
+ *                 | summary: count (8) | min epoch (8) | max epoch (8) | max ID (8)
+ *                            | min account (2 + n) | max account (2 + n)
+ *                 | blocks: block count (4) | block offsets (8 each, block count + 1)
+ *                 | index: account count (4) | per account: number (2 + n) | blocks k (4) | block numbers (4 each)
+ *                                | deposits (8) | withdrawals (8) | count (8) | last balance (8), in cents
+ *                 | summary length (4) | footer length (4) | magic (4)
+ * </pre>
+ */
+public class TransactionSegmentLog implements Closeable {
+
+    public static final String DEFAULT_DIR = "src/main/java/data/transactions";
+    public static final long DEFAULT_SEGMENT_BYTES = 64L << 20;
+    public static final Duration DEFAULT_SEGMENT_AGE = Duration.ofDays(1);
+
+    private static final int MAGIC = 0x54534732; // "TSG2"
+    private static final int MAGIC_WITHOUT_TOTALS = 0x54534547; // "TSEG", resealed on open
+    private static final int TAIL_SIZE = 12;
+    private static final int BLOCK_BYTES = 64 << 10;
+    private static final String ACTIVE_SUFFIX = ".log";
+    private static final String SEALED_SUFFIX = ".seg";
+
+    /**
+     * Which sealed segments are kept; the active segment is never removed.
+     */
+    public static final class RetentionPolicy {
+        private final int maxSegments;
+        private final long maxBytes;
+        private final long maxAgeSeconds;
+        private final Path archiveDir;
+
+        private RetentionPolicy(int maxSegments, long maxBytes, long maxAgeSeconds, Path archiveDir) {
+            this.maxSegments = maxSegments;
+            this.maxBytes = maxBytes;
+            this.maxAgeSeconds = maxAgeSeconds;
+            this.archiveDir = archiveDir;
+        }
+
+        /** Keeps every segment. */
+        public static RetentionPolicy keepAll() {
+            return new RetentionPolicy(0, 0, 0, null);
+        }
+
+        /** Keeps the newest sealed segments, at most the given number. */
+        public static RetentionPolicy keepSegments(int maxSegments) {
+            if (maxSegments < 1) throw new IllegalArgumentException("At least one segment must be kept.");
+            return new RetentionPolicy(maxSegments, 0, 0, null);
+        }
+
+        /** Keeps the newest sealed segments that together fit in the given size. */
+        public static RetentionPolicy keepBytes(long maxBytes) {
+            if (maxBytes < 1) throw new IllegalArgumentException("The size limit must be positive.");
+            return new RetentionPolicy(0, maxBytes, 0, null);
+        }
+
+        /** Keeps sealed segments whose newest transaction is younger than the given age. */
+        public static RetentionPolicy keepAge(Duration maxAge) {
+            if (maxAge.isNegative() || maxAge.isZero()) throw new IllegalArgumentException("The age must be positive.");
+            return new RetentionPolicy(0, 0, maxAge.getSeconds(), null);
+        }
+
+        /** Moves expired segments to a directory instead of deleting them. */
+        public RetentionPolicy archiveTo(Path archiveDir) {
+            return new RetentionPolicy(maxSegments, maxBytes, maxAgeSeconds, archiveDir);
+        }
+
+        @Override
+        public String toString() {
+            if (maxSegments == 0 && maxBytes == 0 && maxAgeSeconds == 0) return "keep all";
+            String limit = maxSegments > 0 ? maxSegments + " segments"
+                    : maxBytes > 0 ? maxBytes + " bytes" : maxAgeSeconds + " seconds";
+            return "keep " + limit + (archiveDir != null ? ", archive to " + archiveDir : ", delete");
+        }
+    }
+
+    /** What is known about a segment without reading its records. */
+    public static final class SegmentInfo {
+        private final long sequence;
+        private final Path path;
+        private final boolean sealed;
+        private long count;
+        private long minEpoch = Long.MAX_VALUE;
+        private long maxEpoch = Long.MIN_VALUE;
+        private String minAccount;
+        private String maxAccount;
+        private long maxIdSequence = -1;
+        // Sealed segments: where the footer starts and its parts' lengths
+        private long footerStart;
+        private int summaryLength;
+        private int footerLength;
+        private boolean withTotals = true;
+        private SegmentIndex index; // parsed on the first query; guarded by the log
+        // Active segment listed by snapshot(): the bytes to read, or -1 for all of them
+        private long length = -1;
+        // Active segment: byte offset of every line and the totals, by account
+        private final Map<String, AccountLines> lineOffsets;
+
+        SegmentInfo(long sequence, Path path, boolean sealed) {
+            this.sequence = sequence;
+            this.path = path;
+            this.sealed = sealed;
+            this.lineOffsets = sealed ? null : new HashMap<>();
+        }
+
+        void add(long epochSecond, String accountKey, long idSequence, long lineOffset, TransactionType type,
+                 long amountCents, long balanceAfterCents) {
+            count++;
+            maxIdSequence = Math.max(maxIdSequence, idSequence);
+            minEpoch = Math.min(minEpoch, epochSecond);
+            maxEpoch = Math.max(maxEpoch, epochSecond);
+            if (minAccount == null || accountKey.compareTo(minAccount) < 0) minAccount = accountKey;
+            if (maxAccount == null || accountKey.compareTo(maxAccount) > 0) maxAccount = accountKey;
+            lineOffsets.computeIfAbsent(accountKey, k -> new AccountLines())
+                    .add(lineOffset, type, amountCents, balanceAfterCents);
+        }
+
+        /** Returns a copy of an active segment's summary that stops reading at the given length. */
+        private SegmentInfo upTo(long length) {
+            SegmentInfo copy = new SegmentInfo(sequence, path, false);
+            copy.count = count;
+            copy.minEpoch = minEpoch;
+            copy.maxEpoch = maxEpoch;
+            copy.minAccount = minAccount;
+            copy.maxAccount = maxAccount;
+            copy.maxIdSequence = maxIdSequence;
+            copy.length = length;
+            return copy;
+        }
+
+        /** Returns false only if the segment certainly has no transaction of the account. */
+        public boolean mayContain(String accountNumber) {
+            if (count == 0) return false;
+            String key = AccountRegistry.key(accountNumber);
+            return key.compareTo(minAccount) >= 0 && key.compareTo(maxAccount) <= 0;
+        }
+
+        /** Returns false only if the segment certainly has no transaction in the time range. */
+        public boolean overlaps(long fromEpochSecond, long toEpochSecond) {
+            return count > 0 && maxEpoch >= fromEpochSecond && minEpoch <= toEpochSecond;
+        }
+
+        public long getSequence() { return sequence; }
+        public Path getPath() { return path; }
+        public boolean isSealed() { return sealed; }
+        public long getCount() { return count; }
+        public long getMinEpochSecond() { return minEpoch; }
+        public long getMaxEpochSecond() { return maxEpoch; }
+        public String getMinAccount() { return minAccount; }
+        public String getMaxAccount() { return maxAccount; }
+        /** Returns the highest regular transaction ID sequence in the segment, or -1. */
+        public long getMaxIdSequence() { return maxIdSequence; }
+    }
+
+    /**
+     * A sealed segment's block offsets and account index, parsed from its footer.
+     * Accounts are sorted as written, with their block numbers and four totals each.
+     */
+    private static final class SegmentIndex {
+        private final long[] blockOffsets;
+        private final String[] accounts;
+        private final int[][] blocks;
+        private final long[] totals;
+
+        SegmentIndex(ByteBuffer footer) {
+            blockOffsets = new long[footer.getInt() + 1];
+            for (int i = 0; i < blockOffsets.length; i++) blockOffsets[i] = footer.getLong();
+            int count = footer.getInt();
+            accounts = new String[count];
+            blocks = new int[count][];
+            totals = new long[4 * count];
+            for (int a = 0; a < count; a++) {
+                accounts[a] = readString(footer);
+                blocks[a] = new int[footer.getInt()];
+                for (int i = 0; i < blocks[a].length; i++) blocks[a][i] = footer.getInt();
+                for (int i = 0; i < 4; i++) totals[4 * a + i] = footer.getLong();
+            }
+        }
+
+        /** Returns the position of an account, or a negative number if the segment has none of its records. */
+        int find(String key) {
+            return Arrays.binarySearch(accounts, key);
+        }
+
+        AccountStatistics statistics(int account) {
+            int at = 4 * account;
+            return new AccountStatistics(totals[at], totals[at + 1], totals[at + 2], totals[at + 3]);
+        }
+    }
+
+    /** One account's lines in the active segment: a growable list of offsets, and their totals. */
+    private static final class AccountLines {
+        private long[] offsets = new long[4];
+        private int size;
+        private long totalDepositCents;
+        private long totalWithdrawCents;
+        private long lastBalanceCents;
+
+        void add(long offset, TransactionType type, long amountCents, long balanceAfterCents) {
+            if (size == offsets.length) offsets = Arrays.copyOf(offsets, size * 2);
+            offsets[size++] = offset;
+            if (type == TransactionType.DEPOSIT) totalDepositCents = Money.add(totalDepositCents, amountCents);
+            else totalWithdrawCents = Money.add(totalWithdrawCents, amountCents);
+            lastBalanceCents = balanceAfterCents;
+        }
+
+        AccountStatistics statistics() {
+            return new AccountStatistics(totalDepositCents, totalWithdrawCents, size, lastBalanceCents);
+        }
+    }
+
+    private final Path dir;
+    private final long maxSegmentBytes;
+    private final long maxSegmentAgeMillis;
+    private final RetentionPolicy retention;
+
+    // Guarded by this
+    private final TreeMap<Long, SegmentInfo> sealed = new TreeMap<>();
+    private SegmentInfo active;
+    private FileChannel activeChannel;
+    private OutputStream activeOut;
+    private long activeBytes;
+    private long activeOpenedMillis;
+    private long lastSequence;
+    private long segmentsRead;
+    private long blocksRead;
+
+    /** Opens a log with the default segment limits that keeps every segment. */
+    public TransactionSegmentLog(Path dir) throws IOException {
+        this(dir, DEFAULT_SEGMENT_BYTES, DEFAULT_SEGMENT_AGE, RetentionPolicy.keepAll());
+    }
+
+    /**
+     * Opens (or creates) a segment log; an active segment left by a previous run is
+     * continued, after dropping a torn last line.
+     *
+     * @param dir             directory holding the segments
+     * @param maxSegmentBytes the active segment is sealed once it reaches this size
+     * @param maxSegmentAge   ... or once it has been open this long
+     * @param retention       which sealed segments to keep
+     * @throws IOException if the directory or a segment cannot be read
+     */
+    public TransactionSegmentLog(Path dir, long maxSegmentBytes, Duration maxSegmentAge, RetentionPolicy retention)
+            throws IOException {
+        if (maxSegmentBytes < 1) throw new IllegalArgumentException("The segment size must be positive.");
+        this.dir = dir;
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.maxSegmentAgeMillis = maxSegmentAge.toMillis();
+        this.retention = retention;
+        Files.createDirectories(dir);
+
+        TreeMap<Long, Path> logs = new TreeMap<>();
+        List<SegmentInfo> withoutTotals = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                long seq = sequenceOf(name);
+                if (seq < 0) continue;
+                if (name.endsWith(SEALED_SUFFIX)) {
+                    SegmentInfo info = readFooter(seq, file);
+                    if (info.withTotals) sealed.put(seq, info);
+                    else withoutTotals.add(info);
+                } else {
+                    logs.put(seq, file);
+                }
+            }
+        }
+        for (SegmentInfo old : withoutTotals) {
+            logs.remove(old.sequence); // left by an interrupted seal; the .seg is complete
+            reseal(old);
+        }
+        for (var log : logs.entrySet()) {
+            long seq = log.getKey();
+            if (sealed.containsKey(seq)) {
+                Files.delete(log.getValue()); // sealed just before the process stopped
+            } else if (seq == logs.lastKey() && (sealed.isEmpty() || seq > sealed.lastKey())) {
+                active = reopen(seq, log.getValue());
+                openActiveWriter();
+            } else {
+                seal(reopen(seq, log.getValue()));
+            }
+        }
+        lastSequence = Math.max(sealed.isEmpty() ? 0 : sealed.lastKey(), active != null ? active.sequence : 0);
+    }
+
+    private static long sequenceOf(String name) {
+        int dot = name.indexOf('.');
+        if (dot != 6 || !(name.endsWith(ACTIVE_SUFFIX) || name.endsWith(SEALED_SUFFIX))
+                || name.length() != dot + 4) {
+            return -1;
+        }
+        for (int i = 0; i < dot; i++) {
+            if (name.charAt(i) < '0' || name.charAt(i) > '9') return -1;
+        }
+        return Long.parseLong(name.substring(0, dot));
+    }
+
+    private Path pathOf(long seq, String suffix) {
+        return dir.resolve(String.format("%06d", seq) + suffix);
+    }
+
+    /** Rewrites a segment sealed before footers held account totals, through its lines. */
+    private void reseal(SegmentInfo old) throws IOException {
+        Path lines = pathOf(old.sequence, ACTIVE_SUFFIX);
+        try (InputStream in = openSealed(old)) {
+            Files.copy(in, lines, StandardCopyOption.REPLACE_EXISTING);
+        }
+        seal(reopen(old.sequence, lines));
+    }
+
+    /** Rebuilds the metadata of an unsealed segment and cuts off a torn last line. */
+    private SegmentInfo reopen(long seq, Path file) throws IOException {
+        SegmentInfo info = new SegmentInfo(seq, file, false);
+        long size = Files.size(file);
+        long complete = 0;
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            long offset = 0;
+            while ((line = in.readLine()) != null) {
+                long start = offset;
+                offset += line.getBytes(StandardCharsets.UTF_8).length + 1;
+                if (offset > size) break; // no newline: torn by a crash
+                if (line.isBlank()) {
+                    complete = offset;
+                    continue;
+                }
+                Transaction t = Transaction.fromString(line);
+                info.add(TransactionStore.epochSecondOf(t.getTimestamp()), AccountRegistry.key(t.getAccountNumber()),
+                        Transaction.TRANSACTION_IDS.parse(t.getTransactionId()), start, TransactionStore.typeOf(t.getType()),
+                        t.getAmountCents(), t.getBalanceAfterCents());
+                complete = offset;
+            }
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            if (channel.size() > complete) channel.truncate(complete);
+        }
+        return info;
+    }
+
+    private void openActiveWriter() throws IOException {
+        activeChannel = FileChannel.open(active.path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        activeChannel.position(activeChannel.size());
+        activeBytes = activeChannel.size();
+        activeOpenedMillis = System.currentTimeMillis();
+        activeOut = new BufferedOutputStream(Channels.newOutputStream(activeChannel), 1 << 16);
+    }
+
+    /**
+     * Appends rows of a store to the active segment, sealing and rolling segments
+     * as they fill up, and forces them to disk before returning.
+     *
+     * @param store   the store to read from
+     * @param fromRow first row to append
+     * @param toRow   end of the rows to append (exclusive)
+     * @throws IOException if a segment cannot be written
+     */
+    public synchronized void append(TransactionStore store, int fromRow, int toRow) throws IOException {
+        if (fromRow >= toRow) return;
+        if (active != null && active.count > 0 && System.currentTimeMillis() - activeOpenedMillis >= maxSegmentAgeMillis) {
+            roll();
+        }
+        for (int row = fromRow; row < toRow; row++) {
+            if (active == null) {
+                long next = ++lastSequence;
+                active = new SegmentInfo(next, pathOf(next, ACTIVE_SUFFIX), false);
+                openActiveWriter();
+            }
+            byte[] line = store.get(row).toString().getBytes(StandardCharsets.UTF_8);
+            long id = store.idSequence(row);
+            if (id < 0) id = Transaction.TRANSACTION_IDS.parse(store.transactionId(row));
+            active.add(store.epochSecond(row), AccountRegistry.key(store.accountNumber(store.accountHandle(row))),
+                    id, activeBytes, store.type(row), store.amountCents(row), store.balanceAfterCents(row));
+            activeOut.write(line);
+            activeOut.write('\n');
+            activeBytes += line.length + 1;
+            if (activeBytes >= maxSegmentBytes) roll();
+        }
+        if (active != null) {
+            activeOut.flush();
+            activeChannel.force(false);
+        }
+    }
+
+    /** Seals the active segment now, e.g. before a backup; the next append starts a new one. */
+    public synchronized void roll() throws IOException {
+        if (active == null) return;
+        activeOut.flush();
+        activeChannel.close();
+        SegmentInfo finished = active;
+        active = null;
+        activeOut = null;
+        activeChannel = null;
+        if (finished.count == 0) {
+            Files.deleteIfExists(finished.path);
+            return;
+        }
+        seal(finished);
+        applyRetention();
+    }
+
+    /** Compresses a finished segment in blocks and writes its footer, replacing the .log atomically. */
+    private void seal(SegmentInfo segment) throws IOException {
+        Path target = pathOf(segment.sequence, SEALED_SUFFIX);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        SegmentInfo info = new SegmentInfo(segment.sequence, target, true);
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             BufferedReader in = Files.newBufferedReader(segment.path, StandardCharsets.UTF_8)) {
+            OutputStream raw = Channels.newOutputStream(out);
+            List<Long> blockOffsets = new ArrayList<>();
+            Map<String, List<Integer>> blocksByAccount = new TreeMap<>();
+            ByteArrayOutputStream block = new ByteArrayOutputStream(BLOCK_BYTES + 256);
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isBlank()) continue;
+                int comma = line.indexOf(',');
+                String key = AccountRegistry.key(line.substring(comma + 1, line.indexOf(',', comma + 1)));
+                List<Integer> blocks = blocksByAccount.computeIfAbsent(key, k -> new ArrayList<>());
+                if (blocks.isEmpty() || blocks.get(blocks.size() - 1) != blockOffsets.size()) blocks.add(blockOffsets.size());
+                block.write(line.getBytes(StandardCharsets.UTF_8));
+                block.write('\n');
+                if (block.size() >= BLOCK_BYTES) {
+                    blockOffsets.add(out.position());
+                    writeBlock(block, raw);
+                }
+            }
+            if (block.size() > 0) {
+                blockOffsets.add(out.position());
+                writeBlock(block, raw);
+            }
+            blockOffsets.add(out.position());
+
+            byte[] min = segment.minAccount.getBytes(StandardCharsets.UTF_8);
+            byte[] max = segment.maxAccount.getBytes(StandardCharsets.UTF_8);
+            ByteArrayOutputStream footerBytes = new ByteArrayOutputStream();
+            DataOutputStream footer = new DataOutputStream(footerBytes);
+            footer.writeLong(segment.count);
+            footer.writeLong(segment.minEpoch);
+            footer.writeLong(segment.maxEpoch);
+            footer.writeLong(segment.maxIdSequence);
+            footer.writeShort(min.length);
+            footer.write(min);
+            footer.writeShort(max.length);
+            footer.write(max);
+            int summaryLength = footer.size();
+            footer.writeInt(blockOffsets.size() - 1);
+            for (long offset : blockOffsets) footer.writeLong(offset);
+            footer.writeInt(blocksByAccount.size());
+            for (Map.Entry<String, List<Integer>> entry : blocksByAccount.entrySet()) {
+                byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                footer.writeShort(key.length);
+                footer.write(key);
+                footer.writeInt(entry.getValue().size());
+                for (int b : entry.getValue()) footer.writeInt(b);
+                AccountStatistics totals = segment.lineOffsets.get(entry.getKey()).statistics();
+                footer.writeLong(totals.getTotalDepositCents());
+                footer.writeLong(totals.getTotalWithdrawCents());
+                footer.writeLong(totals.getTransactionCount());
+                footer.writeLong(totals.getLastBalanceCents());
+            }
+            int footerLength = footer.size();
+            footer.writeInt(summaryLength);
+            footer.writeInt(footerLength);
+            footer.writeInt(MAGIC);
+            info.footerStart = out.position();
+            info.summaryLength = summaryLength;
+            info.footerLength = footerLength;
+            ByteBuffer bytes = ByteBuffer.wrap(footerBytes.toByteArray());
+            while (bytes.hasRemaining()) out.write(bytes);
+            out.force(false);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(segment.path);
+        info.count = segment.count;
+        info.minEpoch = segment.minEpoch;
+        info.maxEpoch = segment.maxEpoch;
+        info.maxIdSequence = segment.maxIdSequence;
+        info.minAccount = segment.minAccount;
+        info.maxAccount = segment.maxAccount;
+        sealed.put(segment.sequence, info);
+    }
+
+    /** Writes a block as its own gzip member and empties it. */
+    private static void writeBlock(ByteArrayOutputStream block, OutputStream out) throws IOException {
+        GZIPOutputStream gzip = new GZIPOutputStream(new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() {
+                // the segment file stays open for the next block
+            }
+        }, 1 << 16);
+        block.writeTo(gzip);
+        gzip.finish();
+        block.reset();
+    }
+
+    private static SegmentInfo readFooter(long seq, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < TAIL_SIZE) throw new IOException("Truncated segment " + file);
+            ByteBuffer tail = read(channel, size - TAIL_SIZE, TAIL_SIZE);
+            int summaryLength = tail.getInt();
+            int footerLength = tail.getInt();
+            int magic = tail.getInt();
+            if ((magic != MAGIC && magic != MAGIC_WITHOUT_TOTALS) || summaryLength < 36
+                    || footerLength < summaryLength || footerLength > size - TAIL_SIZE) {
+                throw new IOException("Corrupt segment footer in " + file);
+            }
+            SegmentInfo info = new SegmentInfo(seq, file, true);
+            info.withTotals = magic == MAGIC;
+            info.footerStart = size - TAIL_SIZE - footerLength;
+            info.summaryLength = summaryLength;
+            info.footerLength = footerLength;
+            ByteBuffer summary = read(channel, info.footerStart, summaryLength);
+            info.count = summary.getLong();
+            info.minEpoch = summary.getLong();
+            info.maxEpoch = summary.getLong();
+            info.maxIdSequence = summary.getLong();
+            info.minAccount = readString(summary);
+            info.maxAccount = readString(summary);
+            return info;
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(length);
+        while (b.hasRemaining()) {
+            if (channel.read(b, position + b.position()) < 0) throw new IOException("Truncated segment");
+        }
+        return b.flip();
+    }
+
+    private static String readString(ByteBuffer b) {
+        byte[] bytes = new byte[Short.toUnsignedInt(b.getShort())];
+        b.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Deletes or archives the oldest sealed segments the retention policy no longer
+     * keeps. The newest sealed segment is always kept.
+     *
+     * @return the number of segments removed
+     * @throws IOException if a segment cannot be deleted or moved
+     */
+    public synchronized int applyRetention() throws IOException {
+        long nowSeconds = System.currentTimeMillis() / 1000;
+        long totalBytes = 0;
+        for (SegmentInfo info : sealed.values()) totalBytes += Files.size(info.path);
+        int removed = 0;
+        while (sealed.size() > 1) {
+            SegmentInfo oldest = sealed.firstEntry().getValue();
+            boolean expired = (retention.maxSegments > 0 && sealed.size() > retention.maxSegments)
+                    || (retention.maxBytes > 0 && totalBytes > retention.maxBytes)
+                    || (retention.maxAgeSeconds > 0 && oldest.maxEpoch < nowSeconds - retention.maxAgeSeconds);
+            if (!expired) break;
+            totalBytes -= Files.size(oldest.path);
+            if (retention.archiveDir != null) {
+                Files.createDirectories(retention.archiveDir);
+                Files.move(oldest.path, retention.archiveDir.resolve(oldest.path.getFileName()),
+                        StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.delete(oldest.path);
+            }
+            sealed.pollFirstEntry();
+            removed++;
+        }
+        return removed;
+    }
+
+    /** Returns the retained segments, oldest first, the active one last. */
+    public synchronized List<SegmentInfo> segments() {
+        List<SegmentInfo> all = new ArrayList<>(sealed.values());
+        if (active != null && active.count > 0) all.add(active);
+        return all;
+    }
+
+    /** Returns true if the log holds no transaction. */
+    public synchronized boolean isEmpty() {
+        return sealed.isEmpty() && (active == null || active.count == 0);
+    }
+
+    /**
+     * Reads every retained transaction, oldest segment first, into a new store.
+     *
+     * @throws IOException if a segment cannot be read
+     */
+    public TransactionStore load() throws IOException {
+        TransactionStore store = new TransactionStore();
+        forEach(segment -> true, store::append);
+        return store;
+    }
+
+    /**
+     * Returns the transactions of one account, oldest first. Only the blocks the
+     * sparse index lists for it are decompressed, and only in segments whose account
+     * range covers it; in the active segment its lines are read at their offsets.
+     *
+     * @throws IOException if a segment cannot be read
+     */
+    public synchronized List<Transaction> findByAccount(String accountNumber) throws IOException {
+        String key = AccountRegistry.key(accountNumber);
+        List<Transaction> found = new ArrayList<>();
+        for (SegmentInfo segment : segments()) {
+            if (!segment.mayContain(key)) continue;
+            segmentsRead++;
+            if (segment.sealed) readSealedAccount(segment, key, found);
+            else readActiveAccount(segment, key, found);
+        }
+        return found;
+    }
+
+    private void readSealedAccount(SegmentInfo segment, String key, List<Transaction> found) throws IOException {
+        SegmentIndex index = indexFor(segment);
+        int account = index.find(key);
+        if (account < 0) return;
+        long[] offsets = index.blockOffsets;
+        try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.READ)) {
+            for (int block : index.blocks[account]) {
+                blocksRead++;
+                MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, offsets[block],
+                        offsets[block + 1] - offsets[block]);
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                        new GZIPInputStream(inputStreamOf(data)), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (line.isBlank()) continue;
+                        Transaction t = Transaction.fromString(line);
+                        if (AccountRegistry.key(t.getAccountNumber()).equals(key)) found.add(t);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Returns a sealed segment's index, reading it from the footer the first time. */
+    private static SegmentIndex indexFor(SegmentInfo segment) throws IOException {
+        if (segment.index == null) {
+            try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.READ)) {
+                segment.index = new SegmentIndex(read(channel, segment.footerStart + segment.summaryLength,
+                        segment.footerLength - segment.summaryLength));
+            }
+        }
+        return segment.index;
+    }
+
+    /**
+     * Returns the totals of one account over the retained segments: deposits,
+     * withdrawals, count and last balance. They are read from the sealed segments'
+     * footers and the active segment's index, never from the records.
+     *
+     * @throws IOException if a footer cannot be read
+     */
+    public synchronized AccountStatistics statisticsOf(String accountNumber) throws IOException {
+        String key = AccountRegistry.key(accountNumber);
+        AccountStatistics stats = AccountStatistics.EMPTY;
+        for (SegmentInfo segment : segments()) {
+            if (!segment.mayContain(key)) continue;
+            if (segment.sealed) {
+                SegmentIndex index = indexFor(segment);
+                int account = index.find(key);
+                if (account >= 0) stats = stats.plus(index.statistics(account));
+            } else {
+                AccountLines lines = segment.lineOffsets.get(key);
+                if (lines != null) stats = stats.plus(lines.statistics());
+            }
+        }
+        return stats;
+    }
+
+    private void readActiveAccount(SegmentInfo segment, String key, List<Transaction> found) throws IOException {
+        AccountLines lines = segment.lineOffsets.get(key);
+        if (lines == null) return;
+        activeOut.flush();
+        try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(256);
+            for (int i = 0; i < lines.size; i++) {
+                buffer.clear();
+                int end;
+                while (true) {
+                    int n = channel.read(buffer, lines.offsets[i] + buffer.position());
+                    end = indexOf(buffer, (byte) '\n');
+                    if (end >= 0 || n < 0) break;
+                    if (!buffer.hasRemaining()) buffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer.flip());
+                }
+                if (end < 0) end = buffer.position();
+                found.add(Transaction.fromString(new String(buffer.array(), 0, end, StandardCharsets.UTF_8)));
+            }
+        }
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte b) {
+        for (int i = 0; i < buffer.position(); i++) {
+            if (buffer.get(i) == b) return i;
+        }
+        return -1;
+    }
+
+    /** Returns the transactions in a time range, reading only segments that overlap it. */
+    public List<Transaction> findBetween(long fromEpochSecond, long toEpochSecond) throws IOException {
+        List<Transaction> found = new ArrayList<>();
+        forEach(segment -> segment.overlaps(fromEpochSecond, toEpochSecond), t -> {
+            long epoch = TransactionStore.epochSecondOf(t.getTimestamp());
+            if (epoch >= fromEpochSecond && epoch <= toEpochSecond) found.add(t);
+        });
+        return found;
+    }
+
+    /**
+     * Visits the transactions of the segments accepted by a filter, in log order.
+     *
+     * @throws IOException if a segment cannot be read
+     */
+    public synchronized void forEach(Predicate<SegmentInfo> filter, Consumer<Transaction> action) throws IOException {
+        if (activeOut != null) activeOut.flush();
+        for (SegmentInfo segment : segments()) {
+            if (!filter.test(segment)) continue;
+            segmentsRead++;
+            readLines(segment, line -> action.accept(Transaction.fromString(line)));
+        }
+    }
+
+    /**
+     * Lists the retained segments for {@link #forEachLine}. Sealed segments never
+     * change and the active one is listed with its current length, so they can be
+     * read without the log's monitor while appends go on.
+     *
+     * @throws IOException if the active segment cannot be flushed
+     */
+    public synchronized List<SegmentInfo> snapshot() throws IOException {
+        List<SegmentInfo> all = new ArrayList<>(sealed.values());
+        if (active != null && active.count > 0) {
+            activeOut.flush();
+            all.add(active.upTo(activeBytes));
+        }
+        return all;
+    }
+
+    /**
+     * Visits the lines of segments listed by {@link #snapshot()}, in log order and
+     * in the transactions.txt format. The log's monitor is only taken to count the
+     * reads. A segment that retention removed after it was listed cannot be read.
+     *
+     * @throws IOException if a segment cannot be read
+     */
+    public void forEachLine(List<SegmentInfo> segments, Consumer<String> action) throws IOException {
+        for (SegmentInfo segment : segments) {
+            synchronized (this) {
+                segmentsRead++;
+            }
+            readLines(segment, action);
+        }
+    }
+
+    private static void readLines(SegmentInfo segment, Consumer<String> action) throws IOException {
+        try (InputStream in = segment.sealed ? openSealed(segment) : openActive(segment);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) action.accept(line);
+            }
+        }
+    }
+
+    private static InputStream openActive(SegmentInfo segment) throws IOException {
+        if (segment.length < 0) return Files.newInputStream(segment.path);
+        try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.READ)) {
+            return inputStreamOf(channel.map(FileChannel.MapMode.READ_ONLY, 0, segment.length));
+        }
+    }
+
+    /** Opens the compressed records of a sealed segment, stopping before the footer. */
+    private static InputStream openSealed(SegmentInfo segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.READ)) {
+            // Consecutive gzip members decompress as one stream
+            return new GZIPInputStream(inputStreamOf(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    segment.footerStart)), 1 << 16);
+        }
+    }
+
+    private static InputStream inputStreamOf(ByteBuffer data) {
+        return new InputStream() {
+            @Override
+            public int read() {
+                return data.hasRemaining() ? data.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (!data.hasRemaining()) return -1;
+                int n = Math.min(len, data.remaining());
+                data.get(b, off, n);
+                return n;
+            }
+        };
+    }
+
+    /** Deletes every segment, e.g. before rewriting history imported from elsewhere. */
+    public synchronized void reset() throws IOException {
+        if (active != null) {
+            activeChannel.close();
+            Files.deleteIfExists(active.path);
+            active = null;
+            activeOut = null;
+            activeChannel = null;
+        }
+        for (SegmentInfo info : sealed.values()) Files.deleteIfExists(info.path);
+        sealed.clear();
+        lastSequence = 0;
+    }
+
+    /** Returns how many segments queries and loads have read (the rest were skipped). */
+    public synchronized long getSegmentsRead() { return segmentsRead; }
+
+    /** Returns how many compressed blocks account queries have decompressed. */
+    public synchronized long getBlocksRead() { return blocksRead; }
+
+    /** Returns the number of retained transactions, from the footers alone. */
+    public synchronized long getTransactionCount() {
+        long count = 0;
+        for (SegmentInfo segment : segments()) count += segment.count;
+        return count;
+    }
+
+    /** Returns the highest regular transaction ID sequence retained, or -1. */
+    public synchronized long getMaxIdSequence() {
+        long max = -1;
+        for (SegmentInfo segment : segments()) max = Math.max(max, segment.maxIdSequence);
+        return max;
+    }
+
+    public RetentionPolicy getRetention() { return retention; }
+
+    public Path getDirectory() { return dir; }
+
+    /** Forces the active segment to disk and closes it; it is continued when reopened. */
+    @Override
+    public synchronized void close() throws IOException {
+        if (activeChannel == null) return;
+        activeOut.flush();
+        activeChannel.force(false);
+        activeChannel.close();
+        activeChannel = null;
+        activeOut = null;
+        active = null;
+    }
+}
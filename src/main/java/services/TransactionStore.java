@@ -0,0 +1,393 @@
+package services;
+
+import modules.Money;
+import modules.Transaction;
+import modules.TransactionType;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Columnar, memory-compact storage for the transaction log.
+ * <p>
+ * Each transaction is one row spread over primitive columns: the ID sequence,
+ * an int handle for the account, the type ordinal, amount and balance-after in
+ * cents, and the timestamp as epoch seconds (~38 bytes per row, against a few
+ * hundred for a Transaction object with its Strings). Columns grow in fixed-size
+ * chunks, so appends never copy existing rows. {@link Transaction} objects are
+ * only created on demand by {@link #get(int)}.
+ * </p>
+ * <p>
+ * Appends are lock-free and may come from any number of threads: a writer claims
+ * row numbers with one atomic increment, fills its columns and marks the rows
+ * ready. Whichever writer finds the rows at the watermark ready moves it forward
+ * with a CAS, so nobody waits for a slower (or descheduled) writer. Readers only
+ * look at rows below the watermark ({@link #size()}), which are complete and never change.
+ * </p>
+ */
+public class TransactionStore {
+
+    static final int CHUNK_BITS = 16;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int MAX_CHUNKS = (Integer.MAX_VALUE >>> CHUNK_BITS) + 1;
+
+    private static final TransactionType[] TYPES = TransactionType.values();
+
+    private static final VarHandle READY = MethodHandles.arrayElementVarHandle(byte[].class);
+    private static final VarHandle PUBLISHED;
+
+    static {
+        try {
+            PUBLISHED = MethodHandles.lookup().findVarHandle(TransactionStore.class, "published", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /** One fixed-size block of every column. */
+    private static final class Chunk {
+        final long[] ids = new long[CHUNK_SIZE];
+        final int[] accounts = new int[CHUNK_SIZE];
+        final byte[] types = new byte[CHUNK_SIZE];
+        final long[] amounts = new long[CHUNK_SIZE];
+        final long[] balances = new long[CHUNK_SIZE];
+        final long[] epochSeconds = new long[CHUNK_SIZE];
+        /** 1 once the row's columns are fully written; accessed with volatile semantics. */
+        final byte[] ready = new byte[CHUNK_SIZE];
+    }
+
+    /**
+     * Row numbers and running totals for one account, guarded by its own monitor.
+     * Concurrent writers may finish out of order, so rows are inserted sorted.
+     */
+    static final class RowList {
+        private int[] rows = new int[4];
+        private int size;
+        private long totalDepositCents;
+        private long totalWithdrawCents;
+        private long lastBalanceCents;
+
+        synchronized void add(int row, TransactionType type, long amountCents, long balanceAfterCents) {
+            if (size == rows.length) rows = Arrays.copyOf(rows, size * 2);
+            int at = size;
+            while (at > 0 && rows[at - 1] > row) at--;
+            System.arraycopy(rows, at, rows, at + 1, size - at);
+            rows[at] = row;
+            size++;
+            if (type == TransactionType.DEPOSIT) totalDepositCents = Money.add(totalDepositCents, amountCents);
+            else totalWithdrawCents = Money.add(totalWithdrawCents, amountCents);
+            if (at == size - 1) lastBalanceCents = balanceAfterCents; // an older row arriving late does not
+        }
+
+        synchronized int[] toArray() {
+            return Arrays.copyOf(rows, size);
+        }
+
+        synchronized AccountStatistics statistics() {
+            return new AccountStatistics(totalDepositCents, totalWithdrawCents, size, lastBalanceCents);
+        }
+
+        synchronized int capacity() {
+            return rows.length;
+        }
+    }
+
+    private final AtomicReferenceArray<Chunk> chunks = new AtomicReferenceArray<>(MAX_CHUNKS);
+    /** Next row number to hand out. */
+    private final AtomicInteger claimed = new AtomicInteger();
+    /** Every row below this is complete and visible to readers; only moves forward, by CAS. */
+    private volatile int published;
+
+    // Account dictionary: number <-> handle, plus each handle's rows
+    private final Map<String, Integer> handleByNumber = new ConcurrentHashMap<>();
+    private volatile String[] numberByHandle = new String[16];
+    private volatile RowList[] rowsByHandle = new RowList[16];
+    private int handleCount;
+
+    /** IDs that do not follow the TXN sequence format, by row (rare). */
+    private final Map<Integer, String> irregularIds = new ConcurrentHashMap<>();
+
+    /** A timestamp string with its parsed value. */
+    private static final class ParsedTimestamp {
+        final String text;
+        final long epochSecond;
+
+        ParsedTimestamp(String text, long epochSecond) {
+            this.text = text;
+            this.epochSecond = epochSecond;
+        }
+    }
+
+    /** Last parsed timestamp; transactions in the same second share it. */
+    private volatile ParsedTimestamp lastTimestamp = new ParsedTimestamp("", 0);
+
+    /**
+     * Appends a transaction as a new row.
+     *
+     * @return the row number
+     */
+    public int append(Transaction t) {
+        int row = claim(1);
+        write(row, t);
+        publish(row, 1);
+        return row;
+    }
+
+    /**
+     * Appends several transactions as consecutive rows, published together,
+     * so no reader sees one without the others below the watermark.
+     *
+     * @return the row number of the first transaction
+     */
+    public int appendAll(List<Transaction> transactions) {
+        int n = transactions.size();
+        if (n == 0) return published;
+        int first = claim(n);
+        for (int k = 0; k < n; k++) write(first + k, transactions.get(k));
+        publish(first, n);
+        return first;
+    }
+
+    /**
+     * Appends a row from primitive values, without any Transaction object.
+     *
+     * @return the row number
+     */
+    public int append(long id, int accountHandle, TransactionType type, long amountCents,
+                      long balanceAfterCents, long epochSecond) {
+        int row = claim(1);
+        write(row, id, accountHandle, type, amountCents, balanceAfterCents, epochSecond);
+        publish(row, 1);
+        return row;
+    }
+
+    /**
+     * Appends rows from columns, numbered consecutively from firstId and all with
+     * the same timestamp, published together like {@link #appendAll}.
+     *
+     * @param accountHandles handle of each row's account, see {@link #handleFor}
+     * @return the row number of the first row
+     */
+    public int appendRows(long firstId, int[] accountHandles, TransactionType[] types, long[] amountsCents,
+                          long[] balancesAfterCents, long epochSecond, int n) {
+        if (n == 0) return published;
+        int first = claim(n);
+        for (int k = 0; k < n; k++) {
+            write(first + k, firstId + k, accountHandles[k], types[k], amountsCents[k], balancesAfterCents[k],
+                    epochSecond);
+        }
+        publish(first, n);
+        return first;
+    }
+
+    private int claim(int n) {
+        int first = claimed.getAndAdd(n);
+        if (first < 0 || first + n < 0) throw new IllegalStateException("Transaction store is full.");
+        return first;
+    }
+
+    private void write(int row, Transaction t) {
+        long id = Transaction.TRANSACTION_IDS.sequenceOf(t.getTransactionId());
+        if (id < 0) irregularIds.put(row, t.getTransactionId());
+        write(row, id, handleFor(t.getAccountNumber()), typeOf(t.getType()), t.getAmountCents(),
+                t.getBalanceAfterCents(), toEpochSecond(t.getTimestamp()));
+    }
+
+    private void write(int row, long id, int accountHandle, TransactionType type, long amountCents,
+                       long balanceAfterCents, long epochSecond) {
+        Chunk chunk = chunkFor(row);
+        int i = row & CHUNK_MASK;
+        chunk.ids[i] = id;
+        chunk.accounts[i] = accountHandle;
+        chunk.types[i] = (byte) type.ordinal();
+        chunk.amounts[i] = amountCents;
+        chunk.balances[i] = balanceAfterCents;
+        chunk.epochSeconds[i] = epochSecond;
+    }
+
+    /**
+     * Indexes the rows under their accounts, marks them ready (last first, so the
+     * watermark can only pass all of them together) and advances the watermark.
+     */
+    private void publish(int first, int n) {
+        int end = first + n;
+        for (int row = first; row < end; row++) {
+            Chunk chunk = chunks.get(row >>> CHUNK_BITS);
+            int i = row & CHUNK_MASK;
+            rowsByHandle[chunk.accounts[i]].add(row, TYPES[chunk.types[i]], chunk.amounts[i], chunk.balances[i]);
+        }
+        for (int row = end - 1; row >= first; row--) {
+            READY.setVolatile(chunks.get(row >>> CHUNK_BITS).ready, row & CHUNK_MASK, (byte) 1);
+        }
+        advance();
+    }
+
+    /**
+     * Moves the watermark over every consecutive ready row. Each writer calls this
+     * after marking its own rows, so the last one to finish a gap always closes it.
+     */
+    private void advance() {
+        int mark = published;
+        while (true) {
+            int end = mark;
+            while (end < claimed.get() && isReady(end)) end++;
+            if (end == mark) return;
+            if (PUBLISHED.compareAndSet(this, mark, end)) mark = end;
+            else mark = published;
+        }
+    }
+
+    private boolean isReady(int row) {
+        Chunk chunk = chunks.get(row >>> CHUNK_BITS);
+        return chunk != null && (byte) READY.getVolatile(chunk.ready, row & CHUNK_MASK) == 1;
+    }
+
+    /** Materializes a Transaction view of one published row. */
+    public Transaction get(int row) {
+        Chunk chunk = chunks.get(row >>> CHUNK_BITS);
+        int i = row & CHUNK_MASK;
+        return new Transaction(transactionId(row), numberByHandle[chunk.accounts[i]], TYPES[chunk.types[i]].name(),
+                chunk.amounts[i], chunk.balances[i], formatTimestamp(chunk.epochSeconds[i]));
+    }
+
+    /** Returns the ID of one published row without materializing the rest. */
+    public String transactionId(int row) {
+        long id = chunks.get(row >>> CHUNK_BITS).ids[row & CHUNK_MASK];
+        return id >= 0 ? Transaction.TRANSACTION_IDS.format(id) : irregularIds.get(row);
+    }
+
+    /** Returns the ID sequence number of one row, or -1 if its ID is irregular. */
+    long idSequence(int row) {
+        return chunks.get(row >>> CHUNK_BITS).ids[row & CHUNK_MASK];
+    }
+
+    public long amountCents(int row) { return chunks.get(row >>> CHUNK_BITS).amounts[row & CHUNK_MASK]; }
+    public long balanceAfterCents(int row) { return chunks.get(row >>> CHUNK_BITS).balances[row & CHUNK_MASK]; }
+    public long epochSecond(int row) { return chunks.get(row >>> CHUNK_BITS).epochSeconds[row & CHUNK_MASK]; }
+    public int accountHandle(int row) { return chunks.get(row >>> CHUNK_BITS).accounts[row & CHUNK_MASK]; }
+    public TransactionType type(int row) { return TYPES[chunks.get(row >>> CHUNK_BITS).types[row & CHUNK_MASK]]; }
+
+    /** Returns the number of published rows (the watermark). */
+    public int size() {
+        return published;
+    }
+
+    /**
+     * Waits until every row claimed so far is published, so the watermark covers
+     * every append that had started. Those appends only have their columns left to
+     * write, so the wait is short.
+     *
+     * @return the watermark reached
+     */
+    public int awaitClaimed() {
+        int target = claimed.get();
+        while (published < target) Thread.onSpinWait();
+        return published;
+    }
+
+    /**
+     * Returns the handle of an account number, creating one if needed.
+     * Account numbers are matched case-insensitively.
+     */
+    public int handleFor(String accountNumber) {
+        String key = AccountRegistry.key(accountNumber);
+        Integer handle = handleByNumber.get(key);
+        if (handle != null) return handle;
+        synchronized (handleByNumber) {
+            handle = handleByNumber.get(key);
+            if (handle != null) return handle;
+            int h = handleCount;
+            String[] numbers = numberByHandle;
+            RowList[] lists = rowsByHandle;
+            if (h == numbers.length) {
+                numbers = Arrays.copyOf(numbers, h * 2);
+                lists = Arrays.copyOf(lists, h * 2);
+            }
+            numbers[h] = key;
+            lists[h] = new RowList();
+            numberByHandle = numbers;
+            rowsByHandle = lists;
+            handleCount = h + 1;
+            handleByNumber.put(key, h);
+            return h;
+        }
+    }
+
+    /** Returns the handle of an account number, or -1 if it has no rows. */
+    public int findHandle(String accountNumber) {
+        Integer handle = handleByNumber.get(AccountRegistry.key(accountNumber));
+        return handle == null ? -1 : handle;
+    }
+
+    public String accountNumber(int handle) {
+        return numberByHandle[handle];
+    }
+
+    /** Returns the number of account handles; handles run from 0 to this minus one. */
+    public int accountCount() {
+        return handleByNumber.size();
+    }
+
+    /**
+     * Returns a copy of one account's row numbers, oldest first. Every returned
+     * row is fully written, even one a concurrent append has not yet published.
+     */
+    public int[] rowsOf(int handle) {
+        return rowsByHandle[handle].toArray();
+    }
+
+    /** Returns the running totals of one account. */
+    public AccountStatistics statisticsOf(int handle) {
+        return rowsByHandle[handle].statistics();
+    }
+
+    /** Rough heap footprint of the columns and index, for reporting. */
+    public long estimatedBytes() {
+        long perRow = 8 + 4 + 1 + 8 + 8 + 8 + 1;
+        long columns = (long) ((claimed.get() + CHUNK_MASK) >>> CHUNK_BITS) * CHUNK_SIZE * perRow;
+        long index = 0;
+        RowList[] lists = rowsByHandle;
+        for (int h = 0; h < lists.length && lists[h] != null; h++) index += 16 + 4L * lists[h].capacity();
+        return columns + index;
+    }
+
+    private Chunk chunkFor(int row) {
+        int c = row >>> CHUNK_BITS;
+        Chunk chunk = chunks.get(c);
+        if (chunk != null) return chunk;
+        Chunk fresh = new Chunk();
+        return chunks.compareAndSet(c, null, fresh) ? fresh : chunks.get(c);
+    }
+
+    static TransactionType typeOf(String type) {
+        if (type.equalsIgnoreCase("DEPOSIT")) return TransactionType.DEPOSIT;
+        if (type.equalsIgnoreCase("WITHDRAW")) return TransactionType.WITHDRAW;
+        throw new IllegalArgumentException("Unknown transaction type: " + type);
+    }
+
+    /** Timestamps are wall-clock "yyyy-MM-dd HH:mm:ss" strings; stored as if they were UTC. */
+    long toEpochSecond(String timestamp) {
+        ParsedTimestamp last = lastTimestamp;
+        if (last.text.equals(timestamp)) return last.epochSecond;
+        long epoch = epochSecondOf(timestamp);
+        lastTimestamp = new ParsedTimestamp(timestamp, epoch);
+        return epoch;
+    }
+
+    static long epochSecondOf(String timestamp) {
+        return LocalDateTime.parse(timestamp, Transaction.TIMESTAMP_FORMAT).toEpochSecond(ZoneOffset.UTC);
+    }
+
+    static String formatTimestamp(long epochSecond) {
+        return LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC).format(Transaction.TIMESTAMP_FORMAT);
+    }
+}
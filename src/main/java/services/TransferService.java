@@ -0,0 +1,84 @@
+package services;
+
+import exceptions.InvalidAmountException;
+import modules.Account;
+import modules.Money;
+import modules.Transaction;
+
+import java.util.List;
+
+/**
+ * Service class that moves funds between two accounts.
+ * <p>
+ * Both accounts are locked in a fixed global order (by account number), so two
+ * transfers running in opposite directions can never deadlock. The withdrawal,
+ * the deposit and the two Transaction records are all done while holding both
+ * locks.
+ * </p>
+ * <p>
+ * The transfer is atomic with respect to everything that takes those account
+ * monitors: other transfers, recorded deposits and withdrawals
+ * ({@link TransactionManager#apply}) and batches. None of them can observe or
+ * change either account between the two legs. The balance update itself is a
+ * lock-free CAS, so bare {@code depositCents}/{@code withdrawCents} calls, balance
+ * reads and the bank total take no monitor, and they can see the money in
+ * neither account for that moment.
+ * </p>
+ */
+public class TransferService {
+
+    private final TransactionManager transactionManager;
+
+    /**
+     * Constructs a TransferService that records into the given manager.
+     *
+     * @param transactionManager where both legs of every transfer are logged
+     */
+    public TransferService(TransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+
+    /**
+     * Transfers an amount from source to target.
+     * Account rule violations (minimum balance, overdraft) are thrown by the
+     * source withdrawal before anything is changed.
+     *
+     * @param source the account to debit
+     * @param target the account to credit
+     * @param amount the amount to move, must be positive
+     * @return the withdrawal and deposit transactions that were recorded
+     */
+    public List<Transaction> transfer(Account source, Account target, double amount) {
+        if (amount <= 0) {
+            throw new InvalidAmountException("Transfer amount must be positive.");
+        }
+        if (source == target || source.getAccountNumber().equalsIgnoreCase(target.getAccountNumber())) {
+            throw new IllegalArgumentException("Cannot transfer funds to the same account.");
+        }
+
+        Account first = lockOrder(source, target) < 0 ? source : target;
+        Account second = first == source ? target : source;
+
+        long cents = Money.ofDouble(amount);
+        synchronized (first) {
+            synchronized (second) {
+                long sourceBalance = source.withdrawCents(cents);
+                long targetBalance = target.depositCents(cents);
+
+                List<Transaction> legs = List.of(
+                        transactionManager.newTransaction(source.getAccountNumber(), "WITHDRAW", cents, sourceBalance),
+                        transactionManager.newTransaction(target.getAccountNumber(), "DEPOSIT", cents, targetBalance)
+                );
+                transactionManager.addTransactions(legs);
+                return legs;
+            }
+        }
+    }
+
+    /** Global lock order: account number, then identity for the (unlikely) tie. */
+    private static int lockOrder(Account a, Account b) {
+        int byNumber = a.getAccountNumber().compareTo(b.getAccountNumber());
+        if (byNumber != 0) return byNumber;
+        return Integer.compare(System.identityHashCode(a), System.identityHashCode(b));
+    }
+}
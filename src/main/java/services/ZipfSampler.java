@@ -0,0 +1,47 @@
+package services;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Draws indexes 0..n-1 with Zipf's law: index k is picked with a probability
+ * proportional to 1 / (k + 1)^skew, so a skew of 0 is uniform and around 1 a few
+ * hot indexes take most of the draws. Sampling is a binary search of the
+ * cumulative distribution, built once; the sampler is immutable and can be shared
+ * by threads that each bring their own random source.
+ */
+class ZipfSampler {
+
+    private final int n;
+    private final double[] cumulative;
+
+    ZipfSampler(int n, double skew) {
+        if (n < 1) throw new IllegalArgumentException("At least one element is required.");
+        if (skew < 0) throw new IllegalArgumentException("Skew must not be negative.");
+        this.n = n;
+        if (skew == 0) {
+            cumulative = null;
+            return;
+        }
+        cumulative = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1 / Math.pow(k + 1, skew);
+            cumulative[k] = sum;
+        }
+        for (int k = 0; k < n; k++) cumulative[k] /= sum;
+    }
+
+    int next(SplittableRandom random) {
+        if (cumulative == null) return random.nextInt(n);
+        int i = Arrays.binarySearch(cumulative, random.nextDouble());
+        return Math.min(i >= 0 ? i : -i - 1, n - 1);
+    }
+
+    /** Share of the draws that go to the first {@code count} indexes. */
+    double share(int count) {
+        if (count <= 0) return 0;
+        if (count >= n) return 1;
+        return cumulative == null ? (double) count / n : cumulative[count - 1];
+    }
+}
@@ -17,7 +17,7 @@ public class ConsoleMenu {
         System.out.println("2. Perform transactions ");
         System.out.println("3. Generate account statements ");
         System.out.println("4. Save/load");
-        System.out.println("5. Run concurrency");
+        System.out.println("5. Run load test");
         System.out.println("6. Exit ");
         System.out.println("=============================================");
 
@@ -101,10 +101,13 @@ public class ConsoleMenu {
             System.out.println("\n--- SAVE / LOAD DATA ---");
             System.out.println("1. Save All Data to File (Accounts & Transactions)");
             System.out.println("2. Load Data from File");
-            System.out.println("3. Back to Main Menu");
+            System.out.println("3. Export Data as Text");
+            System.out.println("4. Import Data from Text");
+            System.out.println("5. Reconcile Balances with Transactions");
+            System.out.println("6. Back to Main Menu");
 
             try {
-                choice = validationUtils.getIntInput("Select option (1-3): ", 1, 3);
+                choice = validationUtils.getIntInput("Select option (1-6): ", 1, 6);
                 switch (choice) {
                     case 1:
                         functions.handleSaveData(); // <-- New function to implement
@@ -113,6 +116,15 @@ public class ConsoleMenu {
                         functions.handleLoadData(); // <-- New function to implement/refactor
                         break;
                     case 3:
+                        functions.handleExportText();
+                        break;
+                    case 4:
+                        functions.handleImportText();
+                        break;
+                    case 5:
+                        functions.handleReconcile();
+                        break;
+                    case 6:
                         break; // Back to main menu
                     default:
                         System.out.println("Invalid choice.");
@@ -121,6 +133,6 @@ public class ConsoleMenu {
                 System.out.println("Invalid input. Please enter a valid number.");
                 scanner.nextLine();
             }
-        } while (choice != 3);
+        } while (choice != 6);
     }
 }
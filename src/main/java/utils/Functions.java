@@ -1,14 +1,31 @@
 package utils;
 
+import exceptions.InsufficientFundException;
+import exceptions.OverdraftExceededException;
 import modules.*;
 import services.AccountManager;
+import services.AccountStatistics;
+import services.LoadGenerator;
+import services.PersistenceService;
+import services.ReconciliationService;
+import services.StorageFormat;
+import services.TransactionJournal;
 import services.TransactionManager;
+import services.TransactionSegmentLog;
+import services.TransferService;
+
+import java.io.IOException;
+import java.nio.file.Paths;
 
 
 public class Functions {
     static ValidationUtils validationUtils = new ValidationUtils();
     static AccountManager accountManager = new AccountManager();
     static TransactionManager transactionManager = new TransactionManager();
+    static TransferService transferService = new TransferService(transactionManager);
+    static TransactionJournal journal;
+    static TransactionSegmentLog segmentLog;
+    static PersistenceService persistence = new PersistenceService(accountManager, transactionManager);
     public  void handleCreateAccount() {
 
         System.out.println("‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗");
@@ -67,7 +84,7 @@ public class Functions {
         System.out.println("PROCESS TRANSACTION");
         System.out.println("‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗\n");
 
-        String accNumber = validationUtils.getStringInput("Enter Account number (e.g., ACC001): ","^ACC\\d{3}$", "Invalid account number format.");
+        String accNumber = validationUtils.getStringInput("Enter Account number (e.g., ACC001): ",ValidationUtils.ACCOUNT_NUMBER_REGEX, "Invalid account number format.");
 
         // Retrieve account
         Account account = accountManager.findAccount(accNumber);
@@ -112,13 +129,16 @@ public class Functions {
             return;
         }
 
-        // Process transaction
-        boolean success = account.processTransaction(amount, transactionType);
+        // Process transaction under the account's lock, recording the balance it produced
+        Transaction transaction = null;
+        try {
+            transaction = transactionManager.apply(account,
+                    type == 1 ? TransactionType.DEPOSIT : TransactionType.WITHDRAW, Money.ofDouble(amount));
+        } catch (InsufficientFundException | OverdraftExceededException e) {
+            System.out.println(e.getMessage());
+        }
 
-        if (success) {
-            // Create transaction with updated balance
-            Transaction transaction = new Transaction(accNumber, transactionType, amount, account.getBalance());
-            transactionManager.addTransaction(transaction);
+        if (transaction != null) {
 
             System.out.println("\n=========== Transaction Completed Successfully ===========");
             System.out.println("Transaction ID: " + transaction.getTransactionId());
@@ -137,7 +157,7 @@ public class Functions {
         System.out.println("‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗‗\n");
 
 //        System.out.print("Enter Account (e.g,ACC001): ");
-        String accNum = validationUtils.getStringInput("Enter Account (e.g,ACC001): ","^ACC\\d{3}$", "Invalid account number format.");
+        String accNum = validationUtils.getStringInput("Enter Account (e.g,ACC001): ",ValidationUtils.ACCOUNT_NUMBER_REGEX, "Invalid account number format.");
 
         Account account = accountManager.findAccount(accNum);
         if(account==null){
@@ -150,20 +170,22 @@ public class Functions {
         System.out.println("Current balance: " + account.getBalance());
 
         transactionManager.viewTransactionsByAccount(accNum);
-        System.out.println("Total Deposit: " + transactionManager.calculateTotalDeposit(accNum));
-        System.out.println("Total withdraw: " + transactionManager.calculateTotalWithdraw(accNum));
+        // Running totals, kept per account; no transaction is read for them
+        AccountStatistics stats = transactionManager.getAccountStatistics(accNum);
+        System.out.println("Total Deposit: " + stats.getTotalDeposit());
+        System.out.println("Total withdraw: " + stats.getTotalWithdraw());
     }
     public void handleTransfer(){
         System.out.println("\n--- PROCESS ACCOUNT TRANSFER ---");
         //System.out.println("Enter Source Account (e.g ACC001)");
-        String sourceAccNum = validationUtils.getStringInput("Enter SOURCE Account Number (From): (e.g ACC001)", "^ACC\\d{3}$", "Invalid account number format.");
+        String sourceAccNum = validationUtils.getStringInput("Enter SOURCE Account Number (From): (e.g ACC001)", ValidationUtils.ACCOUNT_NUMBER_REGEX, "Invalid account number format.");
         Account sourceAccount = accountManager.findAccount(sourceAccNum);
         if (sourceAccount == null){
             System.out.println("Error: Source Account not found.");
             return;
         }
 
-        String targetAccNum = validationUtils.getStringInput("Enter TARGET Account Number (To):(e.g ACC002) ","^ACC\\d{3}$", "Invalid account number format.");
+        String targetAccNum = validationUtils.getStringInput("Enter TARGET Account Number (To):(e.g ACC002) ",ValidationUtils.ACCOUNT_NUMBER_REGEX, "Invalid account number format.");
         Account targetAccount = accountManager.findAccount(targetAccNum);
 
         if (targetAccount == null) {
@@ -184,30 +206,16 @@ public class Functions {
             return;
         }
         // --- 4. EXECUTION ---
-        // Attempt Withdrawal FIRST (Triggers all validation rules)
-        System.out.println("Attempting withdrawal from source...");
-        if (sourceAccount.withdraw(transferAmount)) {
-            // Withdrawal successful, now process deposit
-            System.out.println("Withdrawal successful. Processing deposit to target...");
-
-            if (targetAccount.deposit(transferAmount)) {
-
-                Transaction withdrawal = new Transaction(sourceAccNum, "WITHDRAW", transferAmount, sourceAccount.getBalance());
-                transactionManager.addTransaction(withdrawal);
-
-                // Record Deposit Transaction
-                Transaction deposit = new Transaction(targetAccNum, "DEPOSIT", transferAmount, targetAccount.getBalance());
-                transactionManager.addTransaction(deposit);
-
-                System.out.printf("\nSUCCESS: Transfer of $%,.2f complete.\n", transferAmount);
-                System.out.printf("  Source Balance (%s): %s\n", sourceAccNum, sourceAccount.getBalance());
-                System.out.printf("  Target Balance (%s): %s\n", targetAccNum, targetAccount.getBalance());
+        // Both legs run under the two account locks, taken in a fixed order
+        System.out.println("Processing transfer...");
+        try {
+            transferService.transfer(sourceAccount, targetAccount, transferAmount);
 
-            } else {
-                System.out.println("Withdrawal succeeded, but deposit failed. Balance restored.");
-                sourceAccount.deposit(transferAmount);
-            }
-        } else {
+            System.out.printf("\nSUCCESS: Transfer of $%,.2f complete.\n", transferAmount);
+            System.out.printf("  Source Balance (%s): %s\n", sourceAccNum, sourceAccount.getBalance());
+            System.out.printf("  Target Balance (%s): %s\n", targetAccNum, targetAccount.getBalance());
+        } catch (InsufficientFundException | OverdraftExceededException e) {
+            System.out.println(e.getMessage());
             System.out.println("TRANSFER FAILED: Withdrawal from source account was rejected (Check account rules/limits).");
         }
     }
@@ -244,47 +252,114 @@ public class Functions {
         transactionManager.addTransaction(new Transaction(acc5.getAccountNumber(), "WITHDRAW", 1500.00, acc5.getBalance()));
 
     }
+    //  Load test on its own accounts, so the bank's data is left alone
     public   void runConcurrentSimulation() {
-        System.out.println("\nRunning concurrent transaction simulation...");
-        String accNo = validationUtils.getStringInput("Enter account for simulation (ACC001): ", "^ACC\\d{3}$", "Invalid account format.");
-        Account acc = accountManager.findAccount(accNo);
-
-        if (acc == null) {System.out.println("Account not found.");
-            return;
+        System.out.println("\nRunning concurrent load test...");
+        LoadGenerator generator = new LoadGenerator();
+        generator.setThreads(validationUtils.getIntInput("Threads (1-100000): ", 1, 100_000));
+        generator.setVirtualThreads(validationUtils.getIntInput("1. Virtual threads  2. Platform threads: ", 1, 2) == 1);
+        generator.setAccountCount(validationUtils.getIntInput("Accounts (2-1000000): ", 2, 1_000_000));
+        generator.setSkew(validationUtils.getDoubleInput("Skew (0 = uniform, about 1 = a few hot accounts): ", 0));
+        int deposits = validationUtils.getIntInput("Deposits, % of operations (0-100): ", 0, 100);
+        int withdrawals = validationUtils.getIntInput("Withdrawals, % of operations (0-" + (100 - deposits) + "): ",
+                0, 100 - deposits);
+        generator.setMix(deposits, withdrawals, 100 - deposits - withdrawals);
+        if (validationUtils.getIntInput("1. Run for a time  2. Run a number of operations: ", 1, 2) == 1) {
+            generator.setDurationMillis(validationUtils.getIntInput("Seconds (1-300): ", 1, 300) * 1000L);
+        } else {
+            generator.setOperations(validationUtils.getIntInput("Operations (1-100000000): ", 1, 100_000_000));
         }
-        Thread t1 = new Thread(new TransactionConcurrencySimulator(acc, 500, TransactionType.DEPOSIT,transactionManager), "Thread-1");
-        Thread t2 = new Thread(new TransactionConcurrencySimulator(acc, 300, TransactionType.DEPOSIT,transactionManager), "Thread-2");
-        Thread t3 = new Thread(new TransactionConcurrencySimulator(acc, 200, TransactionType.WITHDRAW,transactionManager), "Thread-3");
         try {
-            t1.start();
-            t2.start();
-            t3.start();
-
-            t1.join();
-            t2.join();
-            t3.join();
-
-            System.out.println("✓ Thread-safe operations completed successfully.");
-            System.out.printf("Final Balance for %s: $%.2f%n",
-                    acc.getAccountNumber(), acc.getBalance());
-
+            System.out.println(generator.run());
         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             System.out.println("Simulation interrupted.");
+        } catch (IOException e) {
+            System.out.println("Error checking the load test: " + e.getMessage());
         }
     }
 
 
-    //  Handles saving data
+    //  Handles saving data: the snapshot is written in the background while banking continues,
+    //  then the journal records it covers are dropped
     public void handleSaveData() {
-        accountManager.saveAccounts();
-        transactionManager.saveTransaction();
+        if (persistence.isSaving()) System.out.println("A save is already running; another one will follow it.");
+        persistence.saveAsync().whenComplete((result, error) -> {
+            if (error != null) System.out.println("Error saving data: " + error.getMessage());
+            else System.out.println(result + ".");
+        });
+        System.out.println("Saving in the background...");
         validationUtils.enterToContinue();
     }
-    //  Handles load data
+    //  Waits for saves still running in the background before the program exits
+    public void handleExit() {
+        if (persistence.isSaving()) System.out.println("Waiting for the save to finish...");
+        persistence.close();
+    }
+    //  Handles load data: the last snapshot, then everything journaled since.
+    //  Saved transactions stay on disk; statements read them through the log's account index
     public void handleLoadData() {
+        openSegmentLog();
         accountManager.loadAccounts();
-        transactionManager.loadTransaction();
+        transactionManager.openSavedHistory();
+        recoverJournal();
+    }
+    //  Writes the current data as text files, e.g. to inspect or edit them
+    public void handleExportText() {
+        accountManager.saveAccounts(StorageFormat.TEXT);
+        transactionManager.saveTransaction(StorageFormat.TEXT);
+        validationUtils.enterToContinue();
+    }
+    //  Replaces the current data with the text files, then replays the journal
+    public void handleImportText() {
+        accountManager.loadAccounts(StorageFormat.TEXT);
+        transactionManager.loadTransaction(StorageFormat.TEXT);
+        recoverJournal();
+    }
 
+    //  Replays the transaction log against the balances; mismatched balances can be reset to the log's
+    public void handleReconcile() {
+        ReconciliationService reconciliation = new ReconciliationService(accountManager, transactionManager);
+        try {
+            ReconciliationService.Report report = reconciliation.reconcile();
+            System.out.println(report + ".");
+            report.getDiscrepancies().forEach(d -> System.out.println("  " + d));
+            if (report.getCount(ReconciliationService.Kind.BALANCE_MISMATCH) > 0
+                    && validationUtils.getIntInput("Set the mismatched balances from the log? (1 = yes, 2 = no): ", 1, 2) == 1) {
+                int restored = reconciliation.restoreBalances(report);
+                System.out.println(restored + " balances set from the transaction log.");
+            }
+        } catch (IOException e) {
+            System.out.println("Error reconciling: " + e.getMessage());
+        }
+        validationUtils.enterToContinue();
+    }
+
+    //  Saved transaction history goes to rolling, compressed segments instead of one growing file
+    private void openSegmentLog() {
+        if (segmentLog != null) return;
+        try {
+            segmentLog = new TransactionSegmentLog(Paths.get(TransactionSegmentLog.DEFAULT_DIR));
+            transactionManager.setSegmentLog(segmentLog);
+        } catch (IOException e) {
+            System.out.println("Error opening transaction log: " + e.getMessage());
+        }
+    }
+
+    private void recoverJournal() {
+        try {
+            if (journal == null) {
+                journal = new TransactionJournal(Paths.get(TransactionJournal.DEFAULT_PATH),
+                        TransactionJournal.SyncPolicy.always());
+            }
+            int replayed = journal.recover(accountManager, transactionManager);
+            if (replayed > 0) System.out.println("Journal replayed (" + replayed + " records).");
+            accountManager.setJournal(journal);
+            transactionManager.setJournal(journal);
+            persistence.setJournal(journal);
+        } catch (IOException e) {
+            System.out.println("Error opening journal: " + e.getMessage());
+        }
     }
 
 }
@@ -6,6 +6,9 @@ import java.util.InputMismatchException;
 import java.util.Scanner;
 
 public class ValidationUtils {
+    // Account numbers are ACC followed by at least 3 digits (ACC001 ... ACC1000 ...)
+    public static final String ACCOUNT_NUMBER_REGEX = "^ACC\\d{3,}$";
+
     static  Scanner scanner = new Scanner(System.in);
     public  void enterToContinue(){
         System.out.println("\npress enter to continue...\n");
@@ -6,6 +6,9 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import org.junit.jupiter.api.BeforeEach;
 
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 
 
 public class CheckingAccountTest {
@@ -48,4 +51,42 @@ public class CheckingAccountTest {
         assertEquals(100.00, account.getBalance(),  "Balance should restore to positive value.");
     }
 
-}
\ No newline at end of file
+    @Test
+    @DisplayName("ConcurrentDepositsAndWithdrawalsKeepBalance")
+    void testConcurrentDepositsAndWithdrawals() throws InterruptedException {
+        // 8 threads each deposit $10 and withdraw $5, 1000 times: +$40,000 in total
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    account.deposit(10.00);
+                    account.withdraw(5.00);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) thread.join();
+
+        assertEquals(40500.00, account.getBalance(), "No update should be lost under contention.");
+    }
+
+    @Test
+    @DisplayName("EachConcurrentDepositReturnsItsOwnBalance")
+    void testConcurrentDepositBalances() throws InterruptedException {
+        // 8 threads deposit $1 500 times each: every balance from $501 to $4500 is produced exactly once
+        Set<Long> balances = ConcurrentHashMap.newKeySet();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 500; i++) assertTrue(balances.add(account.depositCents(100)));
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) thread.join();
+
+        assertEquals(4000, balances.size(), "No two deposits may report the same balance-after.");
+        assertTrue(balances.contains(501_00L) && balances.contains(4500_00L));
+        assertEquals(-1000_00, account.withdrawCents(5500_00), "A withdrawal returns the balance it produced.");
+    }
+
+}
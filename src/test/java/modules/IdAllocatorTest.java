@@ -0,0 +1,70 @@
+package modules;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IdAllocatorTest {
+
+    @Test
+    @DisplayName("FormatsWithPaddingAndGrowsPastIt")
+    void testFormatGrowsPastMinimumWidth() {
+        IdAllocator ids = new IdAllocator("ACC", 3, 1);
+        assertEquals("ACC001", ids.format(1));
+        assertEquals("ACC999", ids.format(999));
+        assertEquals("ACC1000", ids.format(1000));
+        assertEquals("ACC5000000000", ids.format(5_000_000_000L));
+    }
+
+    @Test
+    @DisplayName("ResumesAfterObservedIds")
+    void testResumesAfterObservedIds() {
+        IdAllocator ids = new IdAllocator("ACC", 3, 1);
+        ids.observe("ACC006");
+        ids.observe("ACC002");
+        ids.observe("CUS900"); // other prefix, ignored
+        assertEquals("ACC007", ids.next(), "Allocation must continue after the highest loaded ID.");
+    }
+
+    @Test
+    @DisplayName("ObservedIdInsideALeaseIsNotHandedOut")
+    void testObserveInsideLease() {
+        IdAllocator ids = new IdAllocator("TXN", 4, 64);
+        assertEquals(1, ids.nextValue(), "This thread now leases 1 to 64.");
+        ids.observe("TXN0010");
+        long next = ids.nextValue();
+        assertNotEquals(10, next);
+        assertEquals(65, next, "The lease is dropped and a new block starts after it.");
+    }
+
+    @Test
+    @DisplayName("BlockLeasedIdsAreUniqueAcrossThreads")
+    void testBlockLeasedIdsAreUnique() throws InterruptedException {
+        IdAllocator ids = new IdAllocator("TXN", 4, 64);
+        Set<String> seen = ConcurrentHashMap.newKeySet();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) seen.add(ids.next());
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) thread.join();
+
+        assertEquals(80_000, seen.size(), "Every allocated ID must be unique.");
+    }
+
+    @Test
+    @DisplayName("SequenceOfOnlyAcceptsTheExactFormat")
+    void testSequenceOf() {
+        IdAllocator ids = new IdAllocator("TXN", 4, 1);
+        assertEquals(42, ids.sequenceOf("TXN0042"));
+        assertEquals(12345, ids.sequenceOf("TXN12345"));
+        assertEquals(-1, ids.sequenceOf("TXN00042"), "Extra leading zeros would not format back the same.");
+        assertEquals(-1, ids.sequenceOf("txn0042"));
+    }
+}
@@ -0,0 +1,38 @@
+package modules;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MoneyTest {
+
+    @Test
+    @DisplayName("ParsesFileAmountsIntoCents")
+    void testParse() {
+        assertEquals(550000, Money.parse("5500.0"));
+        assertEquals(1234, Money.parse("12.34"));
+        assertEquals(-70050, Money.parse("-700.5"));
+        assertEquals(1235, Money.parse("12.345"), "Third decimal should round half-up.");
+        assertEquals(1157000000, Money.parse("1.157E7"), "Double.toString exponent form must still load.");
+        assertThrows(NumberFormatException.class, () -> Money.parse("12a"));
+    }
+
+    @Test
+    @DisplayName("FormatsCentsWithTwoDecimals")
+    void testToString() {
+        assertEquals("5500.00", Money.toString(550000));
+        assertEquals("-0.05", Money.toString(-5));
+        assertEquals("0.50", Money.toString(50));
+    }
+
+    @Test
+    @DisplayName("SumsAreExact")
+    void testSumsAreExact() {
+        // 0.1 added ten times is not 1.0 in double arithmetic, but is exact in cents
+        long total = 0;
+        for (int i = 0; i < 10; i++) total = Money.add(total, Money.ofDouble(0.1));
+        assertEquals(100, total);
+        assertEquals(1.0, Money.toDouble(total));
+    }
+}
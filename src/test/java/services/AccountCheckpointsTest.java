@@ -0,0 +1,123 @@
+package services;
+
+import modules.Account;
+import modules.CheckingAccount;
+import modules.RegularCustomer;
+import modules.SavingsAccount;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AccountCheckpointsTest {
+
+    @TempDir
+    Path dir;
+
+    private AccountManager managerWithAccounts(Path base, int count) {
+        AccountManager manager = new AccountManager(4, base);
+        for (int i = 1; i <= count; i++) {
+            manager.addAccount(new SavingsAccount(String.format("ACC%03d", i), new RegularCustomer("C" + i),
+                    100000, 2.0, 10000, "ACTIVE"));
+        }
+        return manager;
+    }
+
+    @Test
+    @DisplayName("SaveWritesOnlyChangedAccountsAfterTheBase")
+    void testIncrementalSave() throws IOException {
+        Path base = dir.resolve("accounts.bin");
+        AccountManager manager = managerWithAccounts(base, 20);
+        assertTrue(manager.saveAccounts());
+        assertEquals(20, BinaryStorage.readAccounts(base).size(), "The first save writes the full base.");
+
+        manager.findAccount("ACC003").depositCents(500);
+        manager.findAccount("ACC007").withdrawCents(200);
+        assertEquals(2, manager.getCheckpoints().getDirtyCount());
+        assertTrue(manager.saveAccounts());
+        assertEquals(2, BinaryStorage.readAccounts(dir.resolve("accounts.bin.1")).size(),
+                "Only the changed accounts go into the checkpoint.");
+        assertEquals(0, manager.getCheckpoints().getDirtyCount());
+
+        AccountManager reloaded = new AccountManager(4, base);
+        reloaded.loadAccounts(StorageFormat.BINARY);
+        assertEquals(20, reloaded.getTotalAccounts());
+        assertEquals(100500, reloaded.findAccount("ACC003").getBalanceCents());
+        assertEquals(99800, reloaded.findAccount("ACC007").getBalanceCents());
+        assertEquals(manager.recomputeTotalBalanceCents(), reloaded.recomputeTotalBalanceCents());
+    }
+
+    @Test
+    @DisplayName("NewAccountsAndFeesAreCheckpointed")
+    void testNewAccountsAndFees() throws IOException {
+        Path base = dir.resolve("accounts.bin");
+        AccountManager manager = managerWithAccounts(base, 10);
+        CheckingAccount checking = new CheckingAccount("ACC011", new RegularCustomer("Fee"), 50000, 10000, 1500, "ACTIVE");
+        manager.addAccount(checking);
+        manager.saveAccounts();
+
+        checking.applyMonthlyFee();
+        manager.addAccount(new SavingsAccount("ACC012", new RegularCustomer("New"), 7000, 1.0, 1000, "ACTIVE"));
+        manager.saveAccounts();
+
+        List<Account> checkpoint = BinaryStorage.readAccounts(dir.resolve("accounts.bin.1"));
+        assertEquals(2, checkpoint.size());
+        AccountManager reloaded = new AccountManager(4, base);
+        reloaded.loadAccounts(StorageFormat.BINARY);
+        assertEquals(12, reloaded.getTotalAccounts());
+        assertEquals(48500, reloaded.findAccount("ACC011").getBalanceCents());
+        assertEquals(7000, reloaded.findAccount("ACC012").getBalanceCents());
+    }
+
+    @Test
+    @DisplayName("CheckpointsAreCompactedIntoANewBase")
+    void testCompaction() throws IOException {
+        Path base = dir.resolve("accounts.bin");
+        AccountManager manager = managerWithAccounts(base, 20);
+        manager.getCheckpoints().setMaxCheckpoints(2);
+        manager.saveAccounts();
+        for (int round = 1; round <= 2; round++) {
+            manager.findAccount("ACC001").depositCents(round);
+            manager.saveAccounts();
+        }
+        assertTrue(Files.exists(dir.resolve("accounts.bin.2")));
+
+        manager.findAccount("ACC002").depositCents(100);
+        manager.saveAccounts();
+        assertFalse(Files.exists(dir.resolve("accounts.bin.1")), "Compaction deletes the checkpoints.");
+        assertFalse(Files.exists(dir.resolve("accounts.bin.2")));
+        assertEquals(2, BinaryStorage.readAccountsSequence(base), "The base covers both checkpoints.");
+
+        AccountManager reloaded = new AccountManager(4, base);
+        reloaded.loadAccounts(StorageFormat.BINARY);
+        assertEquals(100003, reloaded.findAccount("ACC001").getBalanceCents());
+        assertEquals(100100, reloaded.findAccount("ACC002").getBalanceCents());
+    }
+
+    @Test
+    @DisplayName("CheckpointsCoveredByTheBaseAreIgnored")
+    void testStaleCheckpointIgnored() throws IOException {
+        Path base = dir.resolve("accounts.bin");
+        AccountManager manager = managerWithAccounts(base, 20);
+        manager.saveAccounts();
+        manager.findAccount("ACC001").depositCents(100);
+        manager.saveAccounts();
+        Path checkpoint = dir.resolve("accounts.bin.1");
+        byte[] stale = Files.readAllBytes(checkpoint);
+
+        manager.findAccount("ACC001").depositCents(100);
+        manager.getCheckpoints().compact(List.of(manager.findAccount("ACC001")));
+        // As if the process died after writing the base but before deleting the checkpoint
+        Files.write(checkpoint, stale);
+
+        AccountManager reloaded = new AccountManager(4, base);
+        reloaded.loadAccounts(StorageFormat.BINARY);
+        assertEquals(100200, reloaded.findAccount("ACC001").getBalanceCents());
+    }
+}
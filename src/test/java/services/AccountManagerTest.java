@@ -59,4 +59,17 @@ public class AccountManagerTest {
         assertNotNull(foundAccount, "Search should be case-insensitive.");
         assertEquals(acc2.getAccountNumber(), foundAccount.getAccountNumber(), "Case-insensitive match failed.");
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("TotalBalanceTracksBalanceChanges")
+    void testTotalBalanceTracksBalanceChanges() {
+        assertEquals(5100.00, manager.getTotalBalance(), "Initial total is 5000 + 100.");
+
+        acc1.deposit(250.00);
+        acc2.withdraw(600.00);
+        manager.addAccount(acc1); // re-adding the same account must not count it twice
+
+        assertEquals(4750.00, manager.getTotalBalance(), "Total should follow deposits and withdrawals.");
+        assertTrue(manager.verifyTotalBalance(), "Incremental total must match a full recomputation.");
+    }
+}
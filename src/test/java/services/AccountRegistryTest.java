@@ -0,0 +1,50 @@
+package services;
+
+import modules.Account;
+import modules.Customer;
+import modules.RegularCustomer;
+import modules.SavingsAccount;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AccountRegistryTest {
+    private final Customer customer = new RegularCustomer("Registry", 30, "123", "Address");
+
+    @Test
+    @DisplayName("ShardCountRoundsUpToPowerOfTwo")
+    void testShardCountRoundsUp() {
+        assertEquals(1, new AccountRegistry(1).getShardCount());
+        assertEquals(8, new AccountRegistry(5).getShardCount());
+    }
+
+    @Test
+    @DisplayName("ReaderNeverSeesHalfLoadedGeneration")
+    void testReaderNeverSeesHalfLoadedGeneration() throws InterruptedException {
+        AccountRegistry registry = new AccountRegistry(4);
+        List<Account> accounts = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) accounts.add(new SavingsAccount(customer, 1000.00));
+        registry.replaceAll(accounts);
+        Account probe = accounts.get(accounts.size() - 1);
+
+        AtomicBoolean missed = new AtomicBoolean(false);
+        AtomicBoolean done = new AtomicBoolean(false);
+        Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                if (registry.get(probe.getAccountNumber()) == null) missed.set(true);
+            }
+        });
+        reader.start();
+        for (int i = 0; i < 200; i++) registry.replaceAll(accounts);
+        done.set(true);
+        reader.join();
+
+        assertFalse(missed.get(), "A lookup during reload must find the account.");
+        assertEquals(1000, registry.size());
+    }
+}
@@ -0,0 +1,206 @@
+package services;
+
+import modules.Account;
+import modules.CheckingAccount;
+import modules.RegularCustomer;
+import modules.SavingsAccount;
+import modules.Transaction;
+import modules.TransactionType;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchTransactionServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private static Account checking(int i, long cents) {
+        return new CheckingAccount(String.format("BAT%04d", i), new RegularCustomer("Payee " + i), cents, 100_00, 0,
+                "ACTIVE");
+    }
+
+    @Test
+    @DisplayName("EachOperationGetsItsOwnOutcome")
+    void testPerOperationResults() {
+        AccountManager accounts = new AccountManager(4);
+        accounts.addAccount(checking(1, 50_00));
+        accounts.addAccount(new SavingsAccount("BAT0002", new RegularCustomer("Saver"), 600_00, 3.5, 500_00,
+                "ACTIVE"));
+        TransactionManager transactions = new TransactionManager();
+        BatchTransactionService batch = new BatchTransactionService(accounts, transactions);
+
+        BatchTransactionService.Result result = batch.apply(List.of(
+                BatchTransactionService.Operation.deposit("BAT0001", 25),
+                BatchTransactionService.Operation.withdraw("BAT0002", 150),   // below the minimum balance
+                BatchTransactionService.Operation.withdraw("BAT0001", 150),   // into the overdraft
+                BatchTransactionService.Operation.deposit("BAT9999", 10),
+                BatchTransactionService.Operation.withdraw("BAT0002", 100),
+                BatchTransactionService.Operation.ofCents("BAT0001", TransactionType.DEPOSIT, 0),
+                BatchTransactionService.Operation.withdraw("BAT0001", 100)));  // beyond the overdraft
+
+        assertEquals(BatchTransactionService.Status.APPLIED, result.getStatus(0));
+        assertEquals(BatchTransactionService.Status.REJECTED, result.getStatus(1));
+        assertEquals(BatchTransactionService.Status.APPLIED, result.getStatus(2));
+        assertEquals(BatchTransactionService.Status.UNKNOWN_ACCOUNT, result.getStatus(3));
+        assertEquals(BatchTransactionService.Status.APPLIED, result.getStatus(4));
+        assertEquals(BatchTransactionService.Status.INVALID_AMOUNT, result.getStatus(5));
+        assertEquals(BatchTransactionService.Status.REJECTED, result.getStatus(6));
+        assertEquals(3, result.getCount(BatchTransactionService.Status.APPLIED));
+        assertFalse(result.isFullyApplied());
+
+        assertEquals(75_00, result.getBalanceAfterCents(0));
+        assertEquals(-75_00, result.getBalanceAfterCents(2));
+        assertEquals(500_00, result.getBalanceAfterCents(4));
+        assertNull(result.getTransactionId(1));
+        assertEquals(-75_00, accounts.findAccount("BAT0001").getBalanceCents());
+        assertTrue(accounts.verifyTotalBalance());
+
+        // One account's transactions are consecutive and in batch order
+        assertEquals(3, transactions.getTransactionCount());
+        List<Transaction> first = transactions.getTransactionsByAccount("BAT0001");
+        assertEquals(2, first.size());
+        long a = Transaction.TRANSACTION_IDS.parse(result.getTransactionId(0));
+        long b = Transaction.TRANSACTION_IDS.parse(result.getTransactionId(2));
+        assertEquals(a + 1, b);
+        assertEquals(result.getTransactionId(4), transactions.getTransactionsByAccount("BAT0002").get(0)
+                .getTransactionId());
+    }
+
+    @Test
+    @DisplayName("LargeBatchAppliesInParallelAndReconciles")
+    void testLargeBatch() throws IOException {
+        AccountManager accounts = new AccountManager(4);
+        int accountCount = 100;
+        for (int i = 1; i <= accountCount; i++) accounts.addAccount(checking(i, 0));
+        TransactionManager transactions = new TransactionManager();
+        List<BatchTransactionService.Operation> operations = new ArrayList<>();
+        for (int i = 0; i < 3 * BatchTransactionService.PARALLEL_THRESHOLD; i++) {
+            String number = String.format("BAT%04d", 1 + i % accountCount);
+            operations.add(i % 3 == 2 ? BatchTransactionService.Operation.withdraw(number, 1)
+                    : BatchTransactionService.Operation.deposit(number, 1));
+        }
+
+        BatchTransactionService.Result result = new BatchTransactionService(accounts, transactions).apply(operations);
+        assertTrue(result.isFullyApplied(), result.toString());
+        assertEquals(operations.size(), transactions.getTransactionCount());
+        assertEquals(BatchTransactionService.PARALLEL_THRESHOLD * 100L, accounts.recomputeTotalBalanceCents());
+        assertTrue(accounts.verifyTotalBalance());
+        assertTrue(new ReconciliationService(accounts, transactions).reconcile().isClean());
+    }
+
+    @Test
+    @DisplayName("BatchIsJournaledInOneWrite")
+    void testJournaledBatch() throws IOException {
+        Path file = dir.resolve("journal.log");
+        Account account = checking(1, 0);
+        List<Transaction> recorded;
+        try (TransactionJournal journal = new TransactionJournal(file, TransactionJournal.SyncPolicy.always())) {
+            AccountManager accounts = new AccountManager(4);
+            TransactionManager transactions = new TransactionManager();
+            accounts.setJournal(journal);
+            transactions.setJournal(journal);
+            accounts.addAccount(account);
+            new BatchTransactionService(accounts, transactions).apply(List.of(
+                    BatchTransactionService.Operation.deposit("BAT0001", 40),
+                    BatchTransactionService.Operation.withdraw("BAT0001", 15)));
+            assertEquals(3, journal.getRecordCount());
+            recorded = transactions.getTransactionsByAccount("BAT0001");
+        }
+
+        AccountManager accounts = new AccountManager(4);
+        TransactionManager transactions = new TransactionManager();
+        try (TransactionJournal journal = new TransactionJournal(file, TransactionJournal.SyncPolicy.never())) {
+            assertEquals(3, journal.recover(accounts, transactions));
+        }
+        assertEquals(25_00, accounts.findAccount("BAT0001").getBalanceCents());
+        assertEquals(2, transactions.getTransactionCount());
+        // Journaled from the columns, the records read back as the stored transactions
+        List<Transaction> recovered = transactions.getTransactionsByAccount("BAT0001");
+        for (int i = 0; i < recorded.size(); i++) assertEquals(recorded.get(i).toString(), recovered.get(i).toString());
+    }
+
+    @Test
+    @DisplayName("NumbersDifferingOnlyInCaseAreOneAccountGroup")
+    void testMixedCaseNumbers() {
+        AccountManager accounts = new AccountManager(4);
+        accounts.addAccount(checking(1, 0));
+        TransactionManager transactions = new TransactionManager();
+
+        BatchTransactionService.Result result = new BatchTransactionService(accounts, transactions).apply(List.of(
+                BatchTransactionService.Operation.deposit("bat0001", 10),
+                BatchTransactionService.Operation.deposit("BAT0001", 20),
+                BatchTransactionService.Operation.withdraw("bat0001", 5)));
+
+        assertTrue(result.isFullyApplied(), result.toString());
+        // Applied in batch order, as one group with consecutive IDs
+        assertEquals(10_00, result.getBalanceAfterCents(0));
+        assertEquals(30_00, result.getBalanceAfterCents(1));
+        assertEquals(25_00, result.getBalanceAfterCents(2));
+        long first = Transaction.TRANSACTION_IDS.parse(result.getTransactionId(0));
+        assertEquals(first + 1, Transaction.TRANSACTION_IDS.parse(result.getTransactionId(1)));
+        assertEquals(first + 2, Transaction.TRANSACTION_IDS.parse(result.getTransactionId(2)));
+        assertEquals(3, transactions.getTransactionsByAccount("BAT0001").size());
+    }
+
+    @Test
+    @DisplayName("ConcurrentBatchesJournalInBalanceOrder")
+    void testConcurrentBatchesReplay() throws Exception {
+        Path file = dir.resolve("journal.log");
+        Account[] live = {checking(1, 0), checking(2, 0)};
+        try (TransactionJournal journal = new TransactionJournal(file, TransactionJournal.SyncPolicy.never())) {
+            AccountManager accounts = new AccountManager(4);
+            TransactionManager transactions = new TransactionManager();
+            accounts.setJournal(journal);
+            transactions.setJournal(journal);
+            for (Account account : live) accounts.addAccount(account);
+            BatchTransactionService batch = new BatchTransactionService(accounts, transactions);
+            List<BatchTransactionService.Operation> operations = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                String number = i % 2 == 0 ? "BAT0001" : "BAT0002";
+                operations.add(i % 3 == 2 ? BatchTransactionService.Operation.withdraw(number, 0.02)
+                        : BatchTransactionService.Operation.deposit(number, 0.01 * (1 + i % 5)));
+            }
+            Thread[] writers = new Thread[8];
+            for (int w = 0; w < writers.length; w++) {
+                int seed = w;
+                writers[w] = new Thread(() -> {
+                    for (int i = 0; i < 300; i++) {
+                        if (seed % 2 == 0) {
+                            batch.apply(operations);
+                        } else {
+                            transactions.apply(live[i % 2], TransactionType.DEPOSIT, 1 + seed);
+                        }
+                    }
+                });
+                writers[w].start();
+            }
+            for (Thread writer : writers) writer.join();
+        }
+
+        AccountManager accounts = new AccountManager(4);
+        TransactionManager transactions = new TransactionManager();
+        try (TransactionJournal journal = new TransactionJournal(file, TransactionJournal.SyncPolicy.never())) {
+            journal.recover(accounts, transactions);
+        }
+        for (Account account : live) {
+            // Each account's batch rows are journaled before its lock is released, so no record cuts in
+            long balance = 0;
+            for (Transaction t : transactions.getTransactionsByAccount(account.getAccountNumber())) {
+                long signed = TransactionType.DEPOSIT.name().equals(t.getType()) ? t.getAmountCents()
+                        : -t.getAmountCents();
+                assertEquals(balance + signed, t.getBalanceAfterCents(), t.getTransactionId());
+                balance = t.getBalanceAfterCents();
+            }
+            assertEquals(account.getBalanceCents(), balance);
+            assertEquals(balance, accounts.findAccount(account.getAccountNumber()).getBalanceCents());
+        }
+    }
+}
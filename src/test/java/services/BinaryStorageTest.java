@@ -0,0 +1,74 @@
+package services;
+
+import modules.Account;
+import modules.CheckingAccount;
+import modules.RegularCustomer;
+import modules.SavingsAccount;
+import modules.Transaction;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BinaryStorageTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    @DisplayName("AccountsSurviveABinaryRoundTrip")
+    void testAccountsRoundTrip() throws IOException {
+        List<Account> accounts = List.of(
+                new SavingsAccount("ACC001", new RegularCustomer("Alice"), 550000, 3.5, 50000, "ACTIVE"),
+                new CheckingAccount("ACC0002", new RegularCustomer("Bruce"), -2550, 100000, 1000, "ACTIVE"));
+        Path file = dir.resolve("accounts.bin");
+        BinaryStorage.writeAccounts(file, accounts);
+
+        List<Account> loaded = BinaryStorage.readAccounts(file);
+        assertEquals(2, loaded.size());
+        for (int i = 0; i < accounts.size(); i++) {
+            assertEquals(accounts.get(i).toString(), loaded.get(i).toString(), "Every field must survive the file.");
+        }
+    }
+
+    @Test
+    @DisplayName("TransactionsSurviveABinaryRoundTrip")
+    void testTransactionsRoundTrip() throws IOException {
+        TransactionStore store = new TransactionStore();
+        store.append(Transaction.fromString("TXN0042,ACC004,DEPOSIT,1200.00,5200.00,2025-12-15 10:15:49"));
+        store.append(Transaction.fromString("LEGACY-7,ACC001,WITHDRAW,5.00,95.00,2025-12-15 10:15:50"));
+        store.append(Transaction.fromString("TXN0043,ACC004,WITHDRAW,200.00,5000.00,2025-12-15 10:15:51"));
+        Path file = dir.resolve("transactions.bin");
+        BinaryStorage.writeTransactions(file, store);
+
+        TransactionStore loaded = BinaryStorage.readTransactions(file);
+        assertEquals(store.size(), loaded.size());
+        for (int row = 0; row < store.size(); row++) {
+            assertEquals(store.get(row).toString(), loaded.get(row).toString());
+        }
+        assertEquals(2, loaded.rowsOf(loaded.findHandle("ACC004")).length, "The per-account index is rebuilt.");
+        assertEquals(500000, loaded.statisticsOf(loaded.findHandle("ACC004")).getLastBalanceCents());
+    }
+
+    @Test
+    @DisplayName("NewerVersionsAndOtherFilesAreRejected")
+    void testRejectsUnknownFiles() throws IOException {
+        Path file = dir.resolve("accounts.bin");
+        BinaryStorage.writeAccounts(file, List.of());
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer.wrap(bytes).putShort(4, (short) (BinaryStorage.VERSION + 1));
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> BinaryStorage.readAccounts(file));
+
+        Path transactions = dir.resolve("transactions.bin");
+        BinaryStorage.writeTransactions(transactions, new TransactionStore());
+        assertThrows(IOException.class, () -> BinaryStorage.readAccounts(transactions));
+    }
+}
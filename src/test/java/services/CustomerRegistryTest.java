@@ -0,0 +1,92 @@
+package services;
+
+import modules.Account;
+import modules.CheckingAccount;
+import modules.Customer;
+import modules.PremiumCustomer;
+import modules.SavingsAccount;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CustomerRegistryTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    @DisplayName("PremiumCustomerSurvivesBinaryRoundTrip")
+    void testBinaryRoundTrip() throws IOException {
+        Customer ange = new PremiumCustomer("Ange", 30, "115-511", "334-CANADA");
+        AccountManager accounts = new AccountManager(4, dir.resolve("accounts.bin"));
+        Account checking = new CheckingAccount(ange, 5200);
+        Account savings = new SavingsAccount(ange, 800);
+        accounts.addAccount(checking);
+        accounts.addAccount(savings);
+        assertTrue(accounts.saveAccounts(StorageFormat.BINARY));
+        assertTrue(Files.exists(dir.resolve("customers.txt")));
+
+        AccountManager reloaded = new AccountManager(4, dir.resolve("accounts.bin"));
+        reloaded.loadAccounts(StorageFormat.BINARY);
+        CheckingAccount c = (CheckingAccount) reloaded.findAccount(checking.getAccountNumber());
+        Account s = reloaded.findAccount(savings.getAccountNumber());
+        assertSame(c.getCustomer(), s.getCustomer(), "Accounts of one customer share its instance.");
+        assertTrue(c.getCustomer() instanceof PremiumCustomer);
+        assertEquals("334-CANADA", c.getCustomer().getAddress());
+        c.applyMonthlyFee();
+        assertEquals(5200_00, c.getBalanceCents(), "The Premium fee waiver still applies.");
+    }
+
+    @Test
+    @DisplayName("TextRecordsResolveCustomersAndLegacyNamesAreShared")
+    void testTextRecords() throws IOException {
+        Path file = dir.resolve("customers.txt");
+        Files.write(file, List.of("CUS004,Ange,30,115-511,334-CANADA,Premium"));
+        CustomerRegistry customers = new CustomerRegistry(file);
+        customers.load();
+
+        Account a = Account.fromString("ACC004,Ange,5160.0,CheckingAccount,ACTIVE,1000.0,10.0,CUS004", customers);
+        Account b = Account.fromString("ACC007,Ange,10.0,SavingsAccount,ACTIVE,3.5,500.0,CUS004", customers);
+        assertSame(a.getCustomer(), b.getCustomer());
+        assertTrue(a.getCustomer() instanceof PremiumCustomer);
+        assertTrue(a.toString().endsWith(",CUS004"), "The customer ID is written back.");
+
+        Account legacy1 = Account.fromString("ACC006,alphonse,11570.0,CheckingAccount,ACTIVE,1000.0,10.0", customers);
+        Account legacy2 = Account.fromString("ACC008,alphonse,1.0,SavingsAccount,ACTIVE,3.5,500.0", customers);
+        assertNotNull(legacy1);
+        assertSame(legacy1.getCustomer(), legacy2.getCustomer(), "Records without an ID share a customer by name.");
+        assertEquals("Regular", legacy1.getCustomer().getCustomerType());
+    }
+
+    @Test
+    @DisplayName("JournalReplaysNewCustomersBeforeTheirAccounts")
+    void testJournalRecovery() throws IOException {
+        Path file = dir.resolve("journal.log");
+        Customer peace = new PremiumCustomer("Peace", 54, "235-445", "443-USA");
+        Account first = new CheckingAccount(peace, 100);
+        Account second = new CheckingAccount(peace, 200);
+        try (TransactionJournal journal = new TransactionJournal(file, TransactionJournal.SyncPolicy.always())) {
+            AccountManager accounts = new AccountManager(4, dir.resolve("accounts.bin"));
+            accounts.setJournal(journal);
+            accounts.addAccount(first);
+            accounts.addAccount(second);
+            assertEquals(3, journal.getRecordCount(), "The customer is journaled once.");
+        }
+
+        AccountManager accounts = new AccountManager(4, dir.resolve("accounts.bin"));
+        try (TransactionJournal journal = new TransactionJournal(file, TransactionJournal.SyncPolicy.never())) {
+            assertEquals(3, journal.recover(accounts, new TransactionManager()));
+        }
+        Customer recovered = accounts.findAccount(first.getAccountNumber()).getCustomer();
+        assertTrue(recovered instanceof PremiumCustomer);
+        assertSame(recovered, accounts.findAccount(second.getAccountNumber()).getCustomer());
+        assertSame(recovered, accounts.getCustomers().get(peace.getCustomerId()));
+    }
+}
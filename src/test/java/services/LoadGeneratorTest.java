@@ -0,0 +1,77 @@
+package services;
+
+import modules.Customer;
+import modules.Transaction;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoadGeneratorTest {
+
+    @Test
+    @DisplayName("SkewedLoadOnVirtualThreadsKeepsInvariants")
+    void testVirtualThreadRun() throws InterruptedException, IOException {
+        LoadGenerator generator = new LoadGenerator();
+        generator.setThreads(64);
+        generator.setAccountCount(50);
+        generator.setSkew(1.2);
+        generator.setMix(30, 50, 20);
+        generator.setOperations(20_000);
+
+        LoadGenerator.Report report = generator.run();
+        assertTrue(report.isConsistent(), report.toString());
+        assertEquals(20_000, report.getOperationCount());
+        long done = 0;
+        for (LoadGenerator.Operation operation : LoadGenerator.Operation.values()) {
+            done += report.getCompleted(operation) + report.getRejected(operation);
+        }
+        assertEquals(20_000, done);
+        assertTrue(report.getCompleted(LoadGenerator.Operation.TRANSFER) > 0);
+        LatencyHistogram latencies = report.getLatencies();
+        assertTrue(latencies.getPercentileNanos(50) <= latencies.getPercentileNanos(99));
+        assertTrue(latencies.getPercentileNanos(99.9) <= latencies.getMaxNanos());
+    }
+
+    @Test
+    @DisplayName("PlatformThreadsRunForTheDuration")
+    void testTimedRun() throws InterruptedException, IOException {
+        LoadGenerator generator = new LoadGenerator();
+        generator.setThreads(4);
+        generator.setVirtualThreads(false);
+        generator.setAccountCount(10);
+        generator.setSkew(0);
+        generator.setDurationMillis(200);
+
+        long transactionIds = Transaction.TRANSACTION_IDS.nextValues(1);
+        long customerIds = Customer.CUSTOMER_IDS.nextValues(1);
+        LoadGenerator.Report report = generator.run();
+        assertTrue(report.isConsistent(), report.toString());
+        assertTrue(report.getDurationMillis() >= 200);
+        assertEquals(transactionIds + 1, Transaction.TRANSACTION_IDS.nextValues(1), "The bank's IDs are not used.");
+        assertEquals(customerIds + 1, Customer.CUSTOMER_IDS.nextValues(1));
+        assertTrue(report.getOperationCount() > 0);
+    }
+
+    @Test
+    @DisplayName("HistogramPercentilesAndZipfSkew")
+    void testHistogramAndSampler() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 100_000; micros++) histogram.record(micros * 1000);
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(50_000_000, histogram.getPercentileNanos(50), 50_000_000 / 60.0);
+        assertEquals(99_900_000, histogram.getPercentileNanos(99.9), 99_900_000 / 60.0);
+        assertEquals(100_000_000, histogram.getPercentileNanos(100));
+        assertEquals(1000, histogram.getPercentileNanos(0), 1000 / 60.0, "The smallest value is 1 us.");
+
+        ZipfSampler zipf = new ZipfSampler(1000, 1.0);
+        SplittableRandom random = new SplittableRandom(1);
+        int hot = 0;
+        for (int i = 0; i < 100_000; i++) if (zipf.next(random) < 10) hot++;
+        assertEquals(zipf.share(10), hot / 100_000.0, 0.01, "1% of the accounts get about 39% of the draws.");
+        assertEquals(0.01, new ZipfSampler(1000, 0).share(10), 1e-9);
+    }
+}
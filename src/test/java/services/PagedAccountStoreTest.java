@@ -0,0 +1,139 @@
+package services;
+
+import modules.Account;
+import modules.CheckingAccount;
+import modules.Customer;
+import modules.PremiumCustomer;
+import modules.RegularCustomer;
+import modules.SavingsAccount;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PagedAccountStoreTest {
+
+    @TempDir
+    Path dir;
+
+    private static String number(int i) {
+        return Account.ACCOUNT_IDS.format(i);
+    }
+
+    private static Account checking(int i, long cents) {
+        return new CheckingAccount(number(i), new RegularCustomer("Customer " + i), cents, 50_000, 1_000, "Active");
+    }
+
+    @Test
+    @DisplayName("CacheStaysBoundedAndWritesBackEvictedChanges")
+    void testEvictionWriteBack() throws IOException {
+        Path file = dir.resolve("accounts.paged");
+        try (PagedAccountStore store = new PagedAccountStore(file, 32, 128)) {
+            for (int i = 1; i <= 1000; i++) store.put(checking(i, 100_00));
+            store.flush();
+            for (int i = 1; i <= 1000; i++) store.get(number(i)).depositCents(i);
+            assertTrue(store.getCachedCount() <= 32, "Only the most recently used accounts stay cached.");
+            assertTrue(store.getEvictionCount() > 900);
+            assertTrue(store.getDirtyCount() < 1000, "Evicted changes are written back, not kept.");
+            assertEquals(1000 * 100_00L + 500_500, store.getTotalBalanceCents());
+        }
+
+        try (PagedAccountStore reopened = new PagedAccountStore(file, 32, 128)) {
+            assertEquals(1000, reopened.size());
+            assertEquals(1000 * 100_00L + 500_500, reopened.getTotalBalanceCents());
+            assertEquals(100_00 + 777, reopened.get(number(777)).getBalanceCents());
+            assertNull(reopened.get(number(1001)));
+            assertEquals(0.0, reopened.getHitRate(), "Both lookups read the file.");
+        }
+    }
+
+    @Test
+    @DisplayName("ReferencedAccountIsNeverLoadedTwice")
+    void testSameInstanceAfterEviction() throws IOException {
+        try (PagedAccountStore store = new PagedAccountStore(dir.resolve("accounts.paged"), 16, 128)) {
+            for (int i = 1; i <= 200; i++) store.put(checking(i, 0));
+            Account held = store.get(number(5));
+            for (int i = 1; i <= 200; i++) store.get(number(i));
+            assertSame(held, store.get(number(5)), "An evicted account still in use comes back as itself.");
+
+            for (int i = 6; i <= 200; i++) store.get(number(i));
+            held.depositCents(250); // through a reference to an evicted account
+            assertEquals(1, store.getDirtyCount());
+            store.flush();
+            assertEquals(250, store.get(number(5)).getBalanceCents());
+            assertEquals(250, store.getTotalBalanceCents());
+        }
+    }
+
+    @Test
+    @DisplayName("UncleanStoreRecountsItsSlots")
+    void testRecoveryAfterCrash() throws IOException {
+        Path file = dir.resolve("accounts.paged");
+        PagedAccountStore store = new PagedAccountStore(file, 4, 128);
+        for (int i = 1; i <= 50; i++) store.put(checking(i, 10_00));
+        store.flush();
+        for (int i = 51; i <= 60; i++) store.put(checking(i, 10_00));
+        for (int i = 1; i <= 60; i++) store.get(number(i)); // evictions write the new accounts
+        // Simulated crash: the header was never updated after the writes
+
+        try (PagedAccountStore reopened = new PagedAccountStore(file, 4, 128)) {
+            assertTrue(reopened.size() > 50, "Accounts written back on eviction are counted.");
+            AccountManager manager = new AccountManager(reopened);
+            assertTrue(manager.verifyTotalBalance());
+        }
+    }
+
+    @Test
+    @DisplayName("ManagerInPagedModeImportsSavesAndReopens")
+    void testManagerPagedMode() throws IOException {
+        Path file = dir.resolve("accounts.paged");
+        long total;
+        try (PagedAccountStore store = new PagedAccountStore(file, 64, 128)) {
+            AccountManager manager = new AccountManager(store);
+            for (int i = 1; i <= 300; i++) manager.addAccount(checking(i, 20_00));
+            manager.addAccount(new SavingsAccount("LEGACY-1", new RegularCustomer("Imported"), 5_00, 0.02, 1_00,
+                    "Active"));
+            manager.findAccount(number(10)).withdrawCents(5_00);
+            assertEquals(301, manager.getTotalAccounts());
+            assertTrue(manager.saveAccounts());
+            assertTrue(manager.verifyTotalBalance());
+            total = manager.recomputeTotalBalanceCents();
+        }
+
+        try (PagedAccountStore store = new PagedAccountStore(file, 64, 128)) {
+            AccountManager manager = new AccountManager(store);
+            manager.loadAccounts();
+            assertEquals(301, manager.getTotalAccounts());
+            assertEquals(total, Math.round(manager.getTotalBalance() * 100));
+            assertEquals(15_00, manager.findAccount(number(10)).getBalanceCents());
+            assertEquals(5_00, manager.findAccount("legacy-1").getBalanceCents());
+        }
+    }
+
+    @Test
+    @DisplayName("AccountsWithoutASlotShareTheSavedCustomers")
+    void testOthersShareCustomers() throws IOException {
+        Path file = dir.resolve("accounts.paged");
+        Customer premium = new PremiumCustomer("Imported", 40, "555-0100", "1 Main St");
+        try (PagedAccountStore store = new PagedAccountStore(file, 64, 128)) {
+            AccountManager manager = new AccountManager(store);
+            manager.addAccount(new CheckingAccount(number(1), premium, 10_00, 0, 0, "Active"));
+            manager.addAccount(new SavingsAccount("LEGACY-1", premium, 5_00, 0.02, 1_00, "Active"));
+            assertTrue(manager.saveAccounts());
+        }
+
+        try (PagedAccountStore store = new PagedAccountStore(file, 64, 128)) {
+            assertEquals(2, store.size());
+            assertEquals(15_00, store.getTotalBalanceCents(), "Counted before the records are parsed.");
+            AccountManager manager = new AccountManager(store);
+            manager.loadAccounts();
+            Customer legacy = manager.findAccount("LEGACY-1").getCustomer();
+            assertTrue(legacy instanceof PremiumCustomer, "The saved customer is used, not a Regular copy.");
+            assertSame(manager.findAccount(number(1)).getCustomer(), legacy);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package services;
+
+import modules.Transaction;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelTransactionLoaderTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    @DisplayName("SmallChunksLoadTheSameRowsInFileOrder")
+    void testMatchesSequentialParsing() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 1; i <= 500; i++) {
+            lines.add(String.format("TXN%04d,ACC%03d,%s,%d.%02d,%d.5,2025-12-%02d 10:15:%02d",
+                    i, i % 7, i % 3 == 0 ? "WITHDRAW" : "deposit", i, i % 100, 1000 + i, 1 + i % 28, i % 60));
+        }
+        lines.add("LEGACY-9,acc001,DEPOSIT,1.157E3,-20.125,2024-02-29 23:59:59");
+        Path file = dir.resolve("transactions.txt");
+        Files.write(file, lines);
+
+        TransactionStore store = new ParallelTransactionLoader(new ForkJoinPool(4), 256).load(file);
+
+        assertEquals(lines.size(), store.size());
+        for (int row = 0; row < lines.size(); row++) {
+            Transaction expected = Transaction.fromString(lines.get(row));
+            Transaction actual = store.get(row);
+            assertEquals(expected.getTransactionId(), actual.getTransactionId());
+            assertEquals(expected.getAccountNumber().toUpperCase(), actual.getAccountNumber());
+            assertEquals(expected.getType().toUpperCase(), actual.getType());
+            assertEquals(expected.getAmountCents(), actual.getAmountCents());
+            assertEquals(expected.getBalanceAfterCents(), actual.getBalanceAfterCents());
+            assertEquals(expected.getTimestamp(), actual.getTimestamp());
+        }
+        // 72 generated rows plus the lower-case legacy line
+        assertEquals(73, store.rowsOf(store.findHandle("ACC001")).length, "The per-account index is built while loading.");
+    }
+
+    @Test
+    @DisplayName("WindowsLineEndingsAndBlankLinesAreAccepted")
+    void testLineEndings() throws IOException {
+        Path file = dir.resolve("transactions.txt");
+        Files.write(file, ("TXN0001,ACC001,DEPOSIT,5.00,105.00,2025-12-15 10:15:49\r\n\r\n"
+                + "TXN0002,ACC001,WITHDRAW,5.00,100.00,2025-12-15 10:15:50").getBytes(StandardCharsets.UTF_8));
+
+        TransactionStore store = new ParallelTransactionLoader().load(file);
+        assertEquals(2, store.size());
+        assertEquals("2025-12-15 10:15:50", store.get(1).getTimestamp());
+    }
+
+    @Test
+    @DisplayName("InvalidLineIsReportedWithItsPosition")
+    void testInvalidLine() throws IOException {
+        Path file = dir.resolve("transactions.txt");
+        Files.write(file, List.of("TXN0001,ACC001,DEPOSIT,5.00,105.00,2025-12-15 10:15:49", "TXN0002,ACC001,REFUND,5"));
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> new ParallelTransactionLoader().load(file));
+        assertTrue(e.getMessage().contains("TXN0002"), e.getMessage());
+    }
+
+    @Test
+    @DisplayName("TimestampArithmeticMatchesJavaTime")
+    void testEpochSeconds() {
+        LocalDateTime time = LocalDateTime.of(1969, 12, 31, 0, 0, 1);
+        while (time.getYear() < 2101) {
+            String text = time.format(Transaction.TIMESTAMP_FORMAT);
+            ByteBuffer buf = ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+            assertEquals(time.toEpochSecond(ZoneOffset.UTC),
+                    ParallelTransactionLoader.epochSecond(buf, 0, text.length(), new ParallelTransactionLoader.AsciiView(buf)), text);
+            time = time.plusHours(37).plusSeconds(13);
+        }
+    }
+}
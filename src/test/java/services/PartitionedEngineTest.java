@@ -0,0 +1,217 @@
+package services;
+
+import exceptions.OverdraftExceededException;
+import modules.CheckingAccount;
+import modules.RegularCustomer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PartitionedEngineTest {
+
+    private static String number(int i) {
+        return String.format("PAR%03d", i);
+    }
+
+    private static AccountManager accounts(int count, long cents) {
+        AccountManager accounts = new AccountManager(4);
+        for (int i = 1; i <= count; i++) {
+            accounts.addAccount(new CheckingAccount(number(i), new RegularCustomer("Owner " + i), cents, 0, 0,
+                    "ACTIVE"));
+        }
+        return accounts;
+    }
+
+    @Test
+    @DisplayName("CrossPartitionTransfersConserveMoneyAndReconcile")
+    void testTransfers() throws Exception {
+        AccountManager accounts = accounts(8, 1000_00);
+        TransactionManager transactions = new TransactionManager();
+        List<CompletableFuture<?>> results = new ArrayList<>();
+        PartitionedEngine engine = new PartitionedEngine(accounts, transactions, 4);
+        Thread[] clients = new Thread[4];
+        for (int c = 0; c < clients.length; c++) {
+            clients[c] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 2000; i++) {
+                    int from = 1 + random.nextInt(8);
+                    int to = 1 + (from + random.nextInt(7)) % 8;
+                    CompletableFuture<?> result = engine.transfer(number(from), number(to), 1 + random.nextInt(500));
+                    synchronized (results) {
+                        results.add(result);
+                    }
+                }
+            });
+            clients[c].start();
+        }
+        for (Thread client : clients) client.join();
+        engine.close();
+
+        int transferred = 0;
+        for (CompletableFuture<?> result : results) {
+            assertTrue(result.isDone(), "Closing waits for every accepted transfer.");
+            if (!result.isCompletedExceptionally()) transferred++;
+        }
+        assertTrue(transferred > 0);
+        assertEquals(0, engine.getInFlightCents());
+        assertEquals(8 * 1000_00L, accounts.recomputeTotalBalanceCents());
+        assertTrue(accounts.verifyTotalBalance());
+        assertEquals(2L * transferred, transactions.getTransactionCount());
+        assertTrue(new ReconciliationService(accounts, transactions).reconcile().isClean());
+    }
+
+    @Test
+    @DisplayName("RuleViolationsFailTheFutureOnly")
+    void testFailures() {
+        AccountManager accounts = accounts(2, 10_00);
+        TransactionManager transactions = new TransactionManager();
+        try (PartitionedEngine engine = new PartitionedEngine(accounts, transactions, 2)) {
+            CompletionException e = assertThrows(CompletionException.class,
+                    () -> engine.transfer(number(1), number(2), 50_00).join());
+            assertTrue(e.getCause() instanceof OverdraftExceededException);
+            assertThrows(CompletionException.class, () -> engine.deposit("PAR999", 1_00).join());
+            assertEquals(15_00, engine.deposit(number(2), 5_00).join().getBalanceAfterCents());
+            assertEquals(10_00, engine.balance(number(1)).join());
+            assertEquals(1, transactions.getTransactionCount());
+        }
+    }
+
+    @Test
+    @DisplayName("ErrorsFailTheFutureAndCloseStillReturns")
+    void testErrorInAStep() {
+        AccountManager accounts = accounts(1, 0);
+        accounts.addAccount(new CheckingAccount(number(2), new RegularCustomer("Broken"), 0, 0, 0, "ACTIVE") {
+            @Override
+            public long depositCents(long cents) {
+                throw new AssertionError("Simulated failure");
+            }
+        });
+        PartitionedEngine engine = new PartitionedEngine(accounts, new TransactionManager(), 2);
+        CompletionException e = assertThrows(CompletionException.class, () -> engine.deposit(number(2), 1_00).join());
+        assertTrue(e.getCause() instanceof AssertionError);
+        assertEquals(1_00, engine.deposit(number(1), 1_00).join().getBalanceAfterCents());
+        assertTimeoutPreemptively(Duration.ofSeconds(10), engine::close);
+    }
+
+    @Test
+    @DisplayName("ClosedEngineRejectsNewOperations")
+    void testClosed() {
+        PartitionedEngine engine = new PartitionedEngine(accounts(2, 0), new TransactionManager(), 2);
+        engine.close();
+        CompletionException e = assertThrows(CompletionException.class, () -> engine.deposit(number(1), 1).join());
+        assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+
+    /** Holds the engine's only partition busy until the returned latch is released. */
+    private static CountDownLatch stall(PartitionedEngine engine) throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        while (true) {
+            CountDownLatch running = new CountDownLatch(1);
+            engine.balance(number(1)).thenRun(() -> {
+                // A future already complete runs this on the caller instead; try again then
+                if (!Thread.currentThread().getName().startsWith("partition-")) return;
+                running.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            if (running.await(100, TimeUnit.MILLISECONDS)) return release;
+        }
+    }
+
+    @Test
+    @DisplayName("FullQueueRejectsOrShedsTheOldest")
+    void testRejectAndShed() throws InterruptedException {
+        AccountManager accounts = accounts(1, 0);
+        TransactionManager transactions = new TransactionManager();
+        try (PartitionedEngine engine = new PartitionedEngine(accounts, transactions, 1, 2,
+                PartitionedEngine.Backpressure.REJECT)) {
+            CountDownLatch release = stall(engine);
+            CompletableFuture<?> first = engine.deposit(number(1), 1_00);
+            CompletableFuture<?> second = engine.deposit(number(1), 2_00);
+            assertEquals(2, engine.getQueueDepth(0));
+            CompletionException e = assertThrows(CompletionException.class,
+                    () -> engine.deposit(number(1), 4_00).join());
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+            release.countDown();
+            CompletableFuture.allOf(first, second).join();
+            assertEquals(0, engine.getQueueDepth(0));
+            assertEquals(2, engine.getMaxQueueDepth(0));
+            assertEquals(1, engine.getRejectedCount());
+        }
+        assertEquals(3_00, accounts.findAccount(number(1)).getBalanceCents());
+
+        try (PartitionedEngine engine = new PartitionedEngine(accounts, transactions, 1, 2,
+                PartitionedEngine.Backpressure.SHED)) {
+            CountDownLatch release = stall(engine);
+            CompletableFuture<?> oldest = engine.deposit(number(1), 1_00);
+            CompletableFuture<?> second = engine.deposit(number(1), 2_00);
+            CompletableFuture<?> newest = engine.deposit(number(1), 4_00);
+            CompletionException e = assertThrows(CompletionException.class, oldest::join);
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+            assertEquals(2, engine.getQueueDepth(0));
+            release.countDown();
+            CompletableFuture.allOf(second, newest).join();
+            assertEquals(1, engine.getShedCount());
+            assertEquals(0, engine.getRejectedCount());
+        }
+        assertEquals(9_00, accounts.findAccount(number(1)).getBalanceCents());
+        assertEquals(4, transactions.getTransactionCount());
+        assertTrue(accounts.verifyTotalBalance());
+    }
+
+    @Test
+    @DisplayName("FullQueueBlocksTheCallerUntilThereIsRoom")
+    void testBlock() throws InterruptedException {
+        AccountManager accounts = accounts(1, 0);
+        try (PartitionedEngine engine = new PartitionedEngine(accounts, new TransactionManager(), 1, 1,
+                PartitionedEngine.Backpressure.BLOCK)) {
+            CountDownLatch release = stall(engine);
+            CompletableFuture<?> queued = engine.deposit(number(1), 1_00);
+            List<CompletableFuture<?>> late = new ArrayList<>();
+            Thread caller = new Thread(() -> late.add(engine.deposit(number(1), 2_00)));
+            caller.start();
+            caller.join(200);
+            assertTrue(caller.isAlive(), "The caller waits while the queue is full.");
+            release.countDown();
+            caller.join();
+            queued.join();
+            late.get(0).join();
+            assertEquals(1, engine.getMaxQueueDepth(0));
+        }
+        assertEquals(3_00, accounts.findAccount(number(1)).getBalanceCents());
+    }
+
+    @Test
+    @DisplayName("LoadGeneratorRunsThroughTheEngine")
+    void testLoadGenerator() throws InterruptedException, IOException {
+        LoadGenerator generator = new LoadGenerator();
+        generator.setThreads(32);
+        generator.setAccountCount(20);
+        generator.setPartitions(3);
+        generator.setOperations(5_000);
+        LoadGenerator.Report report = generator.run();
+        assertTrue(report.isConsistent(), report.toString());
+        assertEquals(5_000, report.getOperationCount());
+
+        // Bounded queues smaller than the number of callers: refused requests are rejections, not losses
+        generator.setQueueCapacity(4, PartitionedEngine.Backpressure.SHED);
+        report = generator.run();
+        assertTrue(report.isConsistent(), report.toString());
+        assertEquals(5_000, report.getOperationCount());
+    }
+}
@@ -0,0 +1,163 @@
+package services;
+
+import modules.Account;
+import modules.CheckingAccount;
+import modules.RegularCustomer;
+import modules.Transaction;
+import modules.TransactionType;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PersistenceServiceTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    @DisplayName("BackgroundSaveWritesASnapshotAndReportsMetrics")
+    void testSaveAsync() throws Exception {
+        AccountManager accounts = new AccountManager(4, dir.resolve("accounts.bin"));
+        TransactionManager transactions = new TransactionManager(dir.resolve("transactions.bin"));
+        Account account = new CheckingAccount(new RegularCustomer("Alice"), 1000);
+        accounts.addAccount(account);
+        for (int i = 0; i < 100; i++) {
+            account.deposit(1);
+            transactions.addTransaction(new Transaction(account.getAccountNumber(), "DEPOSIT", 1, account.getBalance()));
+        }
+
+        try (PersistenceService persistence = new PersistenceService(accounts, transactions)) {
+            PersistenceService.SaveResult result = persistence.saveAsync().get();
+            assertEquals(100, result.getTransactionCount());
+            assertEquals(1, result.getAccountCount());
+            assertEquals(1, persistence.getSaveCount());
+            assertEquals(0, persistence.getFailureCount());
+            assertTrue(persistence.getMaxDurationMillis() >= persistence.getLastDurationMillis());
+        }
+        assertFalse(Files.exists(dir.resolve("transactions.bin.tmp")), "The temporary file is renamed away.");
+
+        TransactionManager reloaded = new TransactionManager(dir.resolve("transactions.bin"));
+        reloaded.loadTransaction(StorageFormat.BINARY);
+        assertEquals(100, reloaded.getTransactionCount());
+    }
+
+    @Test
+    @DisplayName("AppendsContinueDuringASaveAndTheJournalKeepsThem")
+    void testAppendsDuringSave() throws Exception {
+        AccountManager accounts = new AccountManager(4, dir.resolve("accounts.bin"));
+        TransactionManager transactions = new TransactionManager(dir.resolve("transactions.bin"));
+        Account account = new CheckingAccount(new RegularCustomer("Bruce"), 0);
+        accounts.addAccount(account);
+        for (int i = 0; i < 200_000; i++) {
+            transactions.addTransaction(new Transaction(account.getAccountNumber(), "DEPOSIT", 1, i + 1));
+        }
+        Path journalFile = dir.resolve("journal.log");
+        int total;
+        try (TransactionJournal journal = new TransactionJournal(journalFile, TransactionJournal.SyncPolicy.never());
+             PersistenceService persistence = new PersistenceService(accounts, transactions)) {
+            transactions.setJournal(journal);
+            persistence.setJournal(journal);
+            CompletableFuture<PersistenceService.SaveResult> save = persistence.saveAsync();
+            int appended = 0;
+            while (!save.isDone() || appended == 0) {
+                account.deposit(1);
+                transactions.addTransaction(new Transaction(account.getAccountNumber(), "DEPOSIT", 1, account.getBalance()));
+                appended++;
+            }
+            assertTrue(save.get().getTransactionCount() >= 200_000);
+            total = transactions.getTransactionCount();
+            assertEquals(200_000 + appended, total, "Appends are never blocked or lost by the save.");
+        }
+
+        // Restart: the snapshot plus the journal tail it did not cover give every transaction
+        AccountManager restartedAccounts = new AccountManager(4, dir.resolve("accounts.bin"));
+        TransactionManager restarted = new TransactionManager(dir.resolve("transactions.bin"));
+        restartedAccounts.loadAccounts(StorageFormat.BINARY);
+        restarted.loadTransaction(StorageFormat.BINARY);
+        try (TransactionJournal journal = new TransactionJournal(journalFile, TransactionJournal.SyncPolicy.never())) {
+            journal.recover(restartedAccounts, restarted);
+        }
+        assertEquals(total, restarted.getTransactionCount());
+        assertEquals(account.getBalanceCents(),
+                restartedAccounts.findAccount(account.getAccountNumber()).getBalanceCents());
+    }
+
+    @Test
+    @DisplayName("ConcurrentWritersLoseNothingAcrossSaves")
+    void testConcurrentWritersAcrossSaves() throws Exception {
+        AccountManager accounts = new AccountManager(4, dir.resolve("accounts.bin"));
+        TransactionManager transactions = new TransactionManager(dir.resolve("transactions.bin"));
+        Path journalFile = dir.resolve("journal.log");
+        Account[] live = new Account[4];
+        try (TransactionJournal journal = new TransactionJournal(journalFile, TransactionJournal.SyncPolicy.never());
+             PersistenceService persistence = new PersistenceService(accounts, transactions)) {
+            accounts.setJournal(journal);
+            transactions.setJournal(journal);
+            persistence.setJournal(journal);
+            Thread[] writers = new Thread[4];
+            for (int w = 0; w < writers.length; w++) {
+                int index = w;
+                writers[w] = new Thread(() -> {
+                    live[index] = new CheckingAccount(new RegularCustomer("Writer " + index), 0);
+                    accounts.addAccount(live[index]);
+                    for (int i = 0; i < 20_000; i++) {
+                        transactions.apply(live[index], TransactionType.DEPOSIT, 1);
+                    }
+                });
+                writers[w].start();
+            }
+            do {
+                persistence.saveAsync().get();
+            } while (anyAlive(writers));
+            for (Thread writer : writers) writer.join();
+            assertTrue(persistence.getSaveCount() > 0);
+        }
+
+        // Every save dropped only the journal records its snapshot already held
+        AccountManager restartedAccounts = new AccountManager(4, dir.resolve("accounts.bin"));
+        TransactionManager restarted = new TransactionManager(dir.resolve("transactions.bin"));
+        restartedAccounts.loadAccounts(StorageFormat.BINARY);
+        restarted.loadTransaction(StorageFormat.BINARY);
+        try (TransactionJournal journal = new TransactionJournal(journalFile, TransactionJournal.SyncPolicy.never())) {
+            journal.recover(restartedAccounts, restarted);
+        }
+        assertEquals(4 * 20_000, restarted.getTransactionCount());
+        for (Account account : live) {
+            assertEquals(20_000, restartedAccounts.findAccount(account.getAccountNumber()).getBalanceCents());
+        }
+    }
+
+    private static boolean anyAlive(Thread[] threads) {
+        for (Thread thread : threads) if (thread.isAlive()) return true;
+        return false;
+    }
+
+    @Test
+    @DisplayName("FailedSaveCompletesExceptionallyAndKeepsTheOldFile")
+    void testFailedSave() throws IOException {
+        Path transactionsFile = dir.resolve("transactions.bin");
+        Files.writeString(transactionsFile, "previous snapshot");
+        // A directory where the temporary file should go makes the write fail
+        Files.createDirectory(dir.resolve("transactions.bin.tmp"));
+        AccountManager accounts = new AccountManager(4, dir.resolve("accounts.bin"));
+        TransactionManager transactions = new TransactionManager(transactionsFile);
+        transactions.addTransaction(new Transaction("ACC001", "DEPOSIT", 5, 5));
+
+        try (PersistenceService persistence = new PersistenceService(accounts, transactions)) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> persistence.saveAsync().get());
+            assertTrue(e.getCause() instanceof IOException);
+            assertTrue(e.getCause().getMessage().contains("transactions.bin.tmp"),
+                    "The future carries the real cause: " + e.getCause());
+            assertEquals(1, persistence.getFailureCount());
+        }
+        assertEquals("previous snapshot", Files.readString(transactionsFile));
+    }
+}
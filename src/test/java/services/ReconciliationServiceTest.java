@@ -0,0 +1,217 @@
+package services;
+
+import modules.CheckingAccount;
+import modules.RegularCustomer;
+import modules.SavingsAccount;
+import modules.Transaction;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReconciliationServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private static Transaction txn(String id, String account, String type, double amount, double balanceAfter) {
+        return Transaction.fromString(String.format("%s,%s,%s,%.2f,%.2f,2025-12-15 10:15:49",
+                id, account, type, amount, balanceAfter));
+    }
+
+    /** The seed data: ACC004 shows 5160.00 but its last transaction says 5200.00. */
+    private static AccountManager seedAccounts() {
+        AccountManager accounts = new AccountManager(4);
+        accounts.addAccount(new SavingsAccount("ACC001", new RegularCustomer("Alice"), 5500_00, 3.5, 500_00, "ACTIVE"));
+        accounts.addAccount(new CheckingAccount("ACC004", new RegularCustomer("Ange"), 5160_00, 1000_00, 10_00, "ACTIVE"));
+        return accounts;
+    }
+
+    @Test
+    @DisplayName("SeedDataMismatchIsReportedAndRebuilt")
+    void testSeedMismatch() throws IOException {
+        AccountManager accounts = seedAccounts();
+        TransactionManager transactions = new TransactionManager();
+        transactions.addTransaction(txn("TXN0001", "ACC001", "DEPOSIT", 500, 5500));
+        transactions.addTransaction(txn("TXN0004", "ACC004", "DEPOSIT", 1200, 5200));
+
+        ReconciliationService reconciliation = new ReconciliationService(accounts, transactions);
+        ReconciliationService.Report report = reconciliation.reconcile();
+        assertEquals(2, report.getAccountCount());
+        assertEquals(1, report.getCount(ReconciliationService.Kind.BALANCE_MISMATCH));
+        ReconciliationService.Discrepancy d = report.getDiscrepancies().get(0);
+        assertEquals("ACC004", d.getAccountNumber());
+        assertEquals(5200_00, d.getExpectedCents());
+        assertEquals(5160_00, d.getActualCents());
+
+        reconciliation.rebuildBalances();
+        assertEquals(5200_00, accounts.findAccount("ACC004").getBalanceCents());
+        assertTrue(accounts.verifyTotalBalance(), "The bank total follows the rebuilt balance.");
+        assertTrue(reconciliation.reconcile().isClean());
+    }
+
+    @Test
+    @DisplayName("BrokenChainsAndUnknownAccountsAreReported")
+    void testBrokenChain() throws IOException {
+        AccountManager accounts = seedAccounts();
+        TransactionManager transactions = new TransactionManager();
+        transactions.addTransaction(txn("TXN0001", "ACC001", "DEPOSIT", 500, 5000));
+        transactions.addTransaction(txn("TXN0002", "ACC001", "WITHDRAW", 100, 4950)); // should be 4900
+        transactions.addTransaction(txn("TXN0003", "ACC001", "DEPOSIT", 550, 5500));
+        transactions.addTransaction(txn("TXN0004", "ACC009", "DEPOSIT", 10, 10));
+
+        ReconciliationService reconciliation = new ReconciliationService(accounts, transactions);
+        reconciliation.setParallelism(4);
+        ReconciliationService.Report report = reconciliation.reconcile();
+        assertEquals(1, report.getCount(ReconciliationService.Kind.BROKEN_CHAIN));
+        assertEquals(1, report.getCount(ReconciliationService.Kind.UNKNOWN_ACCOUNT));
+        assertEquals(0, report.getCount(ReconciliationService.Kind.BALANCE_MISMATCH), "ACC001 ends where the log does.");
+        assertEquals(4, report.getTransactionCount());
+        assertTrue(report.getDiscrepancies().stream().anyMatch(x -> "TXN0002".equals(x.getTransactionId())));
+    }
+
+    @Test
+    @DisplayName("ConcurrentAppendsLoggedOutOfOrderStillChain")
+    void testReorderedRows() throws IOException {
+        AccountManager accounts = new AccountManager(4);
+        accounts.addAccount(new CheckingAccount("ACC001", new RegularCustomer("Alice"), 130_00, 0, 0, "ACTIVE"));
+        TransactionManager transactions = new TransactionManager();
+        transactions.addTransaction(txn("TXN0001", "ACC001", "DEPOSIT", 100, 100));
+        // Two deposits applied as +10 then +20, logged the other way round
+        transactions.addTransaction(txn("TXN0003", "ACC001", "DEPOSIT", 20, 130));
+        transactions.addTransaction(txn("TXN0002", "ACC001", "DEPOSIT", 10, 110));
+
+        ReconciliationService.Report report = new ReconciliationService(accounts, transactions).reconcile();
+        assertTrue(report.isClean(), report.getDiscrepancies().toString());
+    }
+
+    @Test
+    @DisplayName("HistoryOnDiskIsStreamedSegmentBySegment")
+    void testStreamedHistory() throws IOException {
+        AccountManager accounts = new AccountManager(4);
+        accounts.addAccount(new CheckingAccount("ACC001", new RegularCustomer("Alice"), 0, 0, 0, "ACTIVE"));
+        accounts.addAccount(new CheckingAccount("ACC002", new RegularCustomer("Bob"), 0, 0, 0, "ACTIVE"));
+        TransactionManager saved = new TransactionManager(dir.resolve("transactions.bin"));
+        try (TransactionSegmentLog log = new TransactionSegmentLog(dir.resolve("log"), 4096, Duration.ofDays(1),
+                TransactionSegmentLog.RetentionPolicy.keepAll())) {
+            saved.setSegmentLog(log);
+            for (int i = 1; i <= 500; i++) {
+                saved.addTransaction(txn(String.format("TXN%04d", 2 * i - 1), "ACC001", "DEPOSIT", 1, i));
+                saved.addTransaction(txn(String.format("TXN%04d", 2 * i), "ACC002", "DEPOSIT", 2, 2 * i));
+            }
+            // Logged out of order across the end of the saved history
+            saved.addTransaction(txn("TXN1002", "ACC001", "DEPOSIT", 5, 510));
+            assertTrue(saved.saveTransaction());
+            assertTrue(log.segments().size() > 2, "The history spans several segments.");
+        }
+
+        TransactionManager transactions = new TransactionManager(dir.resolve("transactions.bin"));
+        try (TransactionSegmentLog log = new TransactionSegmentLog(dir.resolve("log"), 4096, Duration.ofDays(1),
+                TransactionSegmentLog.RetentionPolicy.keepAll())) {
+            transactions.setSegmentLog(log);
+            transactions.openSavedHistory();
+            transactions.addTransaction(txn("TXN1001", "ACC001", "DEPOSIT", 5, 505));
+            transactions.addTransaction(txn("TXN1003", "ACC002", "WITHDRAW", 100, 950)); // should be 900
+            accounts.findAccount("ACC001").restoreBalanceCents(510_00);
+
+            ReconciliationService reconciliation = new ReconciliationService(accounts, transactions);
+            ReconciliationService.Report report = reconciliation.rebuildBalances();
+            assertEquals(1003, report.getTransactionCount());
+            assertEquals(2, report.getAccountCount());
+            assertEquals(1, report.getCount(ReconciliationService.Kind.BROKEN_CHAIN));
+            assertEquals("TXN1003", report.getDiscrepancies().stream()
+                    .filter(d -> d.getKind() == ReconciliationService.Kind.BROKEN_CHAIN)
+                    .findFirst().orElseThrow().getTransactionId());
+            assertEquals(1, report.getCount(ReconciliationService.Kind.BALANCE_MISMATCH), "ACC002 still holds 0.");
+            assertEquals(950_00, accounts.findAccount("ACC002").getBalanceCents());
+            assertEquals(log.segments().size(), log.getSegmentsRead(), "Each segment is read once.");
+            assertTrue(transactions.hasLazyHistory());
+        }
+    }
+
+    @Test
+    @DisplayName("MismatchesAreRestoredFromTheReportWithoutAnotherReplay")
+    void testRestoreFromReport() throws IOException {
+        AccountManager accounts = new AccountManager(4);
+        TransactionManager transactions = new TransactionManager();
+        for (int a = 1; a <= 5; a++) {
+            String number = String.format("ACC%03d", a);
+            accounts.addAccount(new CheckingAccount(number, new RegularCustomer("C" + a), 0, 0, 0, "ACTIVE"));
+            transactions.addTransaction(txn("TXN000" + a, number, "DEPOSIT", 10 * a, 10 * a));
+        }
+        ReconciliationService reconciliation = new ReconciliationService(accounts, transactions);
+        reconciliation.setMaxDetails(1);
+        ReconciliationService.Report report = reconciliation.reconcile();
+        assertEquals(5, report.getCount(ReconciliationService.Kind.BALANCE_MISMATCH));
+        assertEquals(1, report.getDiscrepancies().size());
+
+        assertEquals(5, reconciliation.restoreBalances(report), "Mismatches past the detail limit are restored too.");
+        assertEquals(30_00, accounts.findAccount("ACC003").getBalanceCents());
+        assertTrue(reconciliation.reconcile().isClean());
+    }
+
+    @Test
+    @DisplayName("StreamedReplaySpreadsAccountsOverWorkersWithoutTheManagerLock")
+    void testStreamedWorkers() throws Exception {
+        AccountManager accounts = new AccountManager(4);
+        TransactionManager saved = new TransactionManager(dir.resolve("transactions.bin"));
+        try (TransactionSegmentLog log = new TransactionSegmentLog(dir.resolve("log"), 4096, Duration.ofDays(1),
+                TransactionSegmentLog.RetentionPolicy.keepAll())) {
+            saved.setSegmentLog(log);
+            int id = 1;
+            for (int i = 1; i <= 20; i++) {
+                for (int a = 1; a <= 50; a++, id++) {
+                    saved.addTransaction(txn(String.format("TXN%05d", id), String.format("acc%03d", a), "DEPOSIT",
+                            1, i == 20 && a == 17 ? 99 : i));
+                }
+            }
+            assertTrue(saved.saveTransaction());
+        }
+        for (int a = 1; a <= 50; a++) {
+            accounts.addAccount(new CheckingAccount(String.format("ACC%03d", a), new RegularCustomer("C" + a),
+                    a == 17 ? 99_00 : 20_00, 0, 0, "ACTIVE"));
+        }
+
+        TransactionManager transactions = new TransactionManager(dir.resolve("transactions.bin"));
+        try (TransactionSegmentLog log = new TransactionSegmentLog(dir.resolve("log"), 4096, Duration.ofDays(1),
+                TransactionSegmentLog.RetentionPolicy.keepAll())) {
+            transactions.setSegmentLog(log);
+            transactions.openSavedHistory();
+            ReconciliationService reconciliation = new ReconciliationService(accounts, transactions);
+            reconciliation.setParallelism(3);
+
+            CountDownLatch held = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            Thread holder = new Thread(() -> {
+                synchronized (transactions) {
+                    held.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            holder.start();
+            held.await();
+            ReconciliationService.Report report;
+            try {
+                report = assertTimeoutPreemptively(Duration.ofSeconds(10), reconciliation::reconcile);
+            } finally {
+                release.countDown();
+                holder.join();
+            }
+            assertEquals(1000, report.getTransactionCount());
+            assertEquals(50, report.getAccountCount(), "Account numbers are matched case-insensitively.");
+            assertEquals(1, report.getCount(ReconciliationService.Kind.BROKEN_CHAIN));
+            assertEquals("ACC017", report.getDiscrepancies().get(0).getAccountNumber());
+            assertEquals(0, report.getCount(ReconciliationService.Kind.BALANCE_MISMATCH));
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package services;
+
+import modules.Account;
+import modules.CheckingAccount;
+import modules.RegularCustomer;
+import modules.Transaction;
+import modules.TransactionType;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransactionJournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    @DisplayName("RecoveryReplaysJournalOnTopOfSnapshot")
+    void testRecoveryReplaysJournal() throws IOException {
+        Path file = dir.resolve("journal.log");
+        Account account = new CheckingAccount(new RegularCustomer("Alice"), 1000);
+        try (TransactionJournal journal = new TransactionJournal(file, TransactionJournal.SyncPolicy.always())) {
+            AccountManager accounts = new AccountManager();
+            TransactionManager transactions = new TransactionManager();
+            accounts.setJournal(journal);
+            transactions.setJournal(journal);
+
+            accounts.addAccount(account);
+            account.deposit(250);
+            transactions.addTransaction(new Transaction(account.getAccountNumber(), "DEPOSIT", 250, account.getBalance()));
+            assertEquals(2, journal.getRecordCount());
+        }
+
+        // Restart with an empty snapshot: everything comes back from the journal
+        AccountManager accounts = new AccountManager();
+        TransactionManager transactions = new TransactionManager();
+        try (TransactionJournal journal = new TransactionJournal(file, TransactionJournal.SyncPolicy.never())) {
+            assertEquals(2, journal.recover(accounts, transactions));
+        }
+        Account recovered = accounts.findAccount(account.getAccountNumber());
+        assertNotNull(recovered, "The journaled account must be recreated.");
+        assertEquals(1250.0, recovered.getBalance(), 0.001, "The balance follows the journaled transactions.");
+        assertEquals(1, transactions.getTransactionCount());
+        assertEquals(1250.0, accounts.getTotalBalance(), 0.001);
+    }
+
+    @Test
+    @DisplayName("ConcurrentWritersReplayToTheLiveBalances")
+    void testConcurrentReplay() throws Exception {
+        Path file = dir.resolve("journal.log");
+        Account[] live = new Account[2];
+        try (TransactionJournal journal = new TransactionJournal(file, TransactionJournal.SyncPolicy.never())) {
+            AccountManager accounts = new AccountManager();
+            TransactionManager transactions = new TransactionManager();
+            accounts.setJournal(journal);
+            transactions.setJournal(journal);
+            for (int i = 0; i < live.length; i++) {
+                live[i] = new CheckingAccount(new RegularCustomer("Writer " + i), 0);
+                accounts.addAccount(live[i]);
+            }
+            Thread[] writers = new Thread[8];
+            for (int w = 0; w < writers.length; w++) {
+                int seed = w;
+                writers[w] = new Thread(() -> {
+                    for (int i = 0; i < 2000; i++) {
+                        Account account = live[(seed + i) % live.length];
+                        if (i % 3 == 2) transactions.apply(account, TransactionType.WITHDRAW, 1 + seed);
+                        else transactions.apply(account, TransactionType.DEPOSIT, 1 + i % 7);
+                    }
+                });
+                writers[w].start();
+            }
+            for (Thread writer : writers) writer.join();
+        }
+
+        AccountManager accounts = new AccountManager();
+        try (TransactionJournal journal = new TransactionJournal(file, TransactionJournal.SyncPolicy.never())) {
+            journal.recover(accounts, new TransactionManager());
+        }
+        for (Account account : live) {
+            assertEquals(account.getBalanceCents(), accounts.findAccount(account.getAccountNumber()).getBalanceCents(),
+                    "The last journaled record of each account carries its final balance.");
+        }
+    }
+
+    @Test
+    @DisplayName("SnapshottedTransactionsAreNotReplayedTwice")
+    void testNoDuplicates() throws IOException {
+        Path file = dir.resolve("journal.log");
+        TransactionManager transactions = new TransactionManager();
+        Transaction t = Transaction.fromString("TXN0900,ACC001,DEPOSIT,10.00,110.00,2025-12-15 10:15:49");
+        try (TransactionJournal journal = new TransactionJournal(file, TransactionJournal.SyncPolicy.never())) {
+            transactions.setJournal(journal);
+            transactions.addTransaction(t);
+            assertEquals(0, journal.recover(new AccountManager(), transactions));
+        }
+        assertEquals(1, transactions.getTransactionCount());
+    }
+
+    @Test
+    @DisplayName("TruncateKeepsRecordsWrittenAfterTheSnapshotStarted")
+    void testTruncateBefore() throws IOException {
+        Path file = dir.resolve("journal.log");
+        try (TransactionJournal journal = new TransactionJournal(file, TransactionJournal.SyncPolicy.batched(10, 0))) {
+            journal.appendTransaction(Transaction.fromString("TXN0901,ACC001,DEPOSIT,10.00,110.00,2025-12-15 10:15:49"));
+            long covered = journal.position();
+            journal.appendTransaction(Transaction.fromString("TXN0902,ACC001,DEPOSIT,10.00,120.00,2025-12-15 10:15:50"));
+            journal.truncateBefore(covered);
+
+            TransactionManager transactions = new TransactionManager();
+            assertEquals(1, journal.recover(new AccountManager(), transactions));
+            assertEquals("TXN0902", transactions.getTransactionsByAccount("ACC001").get(0).getTransactionId());
+        }
+    }
+
+    @Test
+    @DisplayName("MalformedTransactionRecordsAreSkipped")
+    void testMalformedRecords() throws IOException {
+        Path file = dir.resolve("journal.log");
+        Files.write(file, String.join("\n",
+                "T,TXN0905,ACC001,DEPOSIT,10.00,110.00,2025-12-15 10:15:49",
+                "T,TXN0906,ACC001,DEPOSIT,ten,120.00,2025-12-15 10:15:50",
+                "T,TXN0907,ACC001",
+                "T,TXN0908,ACC001,REFUND,10.00,120.00,2025-12-15 10:15:51",
+                "T,TXN0909,ACC001,DEPOSIT,10.00,120.00,yesterday",
+                "T,TXN0910,ACC001,DEPOSIT,10.00,120.00,2025-12-15 10:15:52", "").getBytes(StandardCharsets.UTF_8));
+
+        TransactionManager transactions = new TransactionManager();
+        try (TransactionJournal journal = new TransactionJournal(file, TransactionJournal.SyncPolicy.never())) {
+            assertEquals(2, journal.recover(new AccountManager(), transactions));
+        }
+        assertEquals(2, transactions.getTransactionCount());
+        assertEquals("TXN0910", transactions.getTransactionsByAccount("ACC001").get(1).getTransactionId());
+    }
+
+    @Test
+    @DisplayName("TornLastRecordIsIgnored")
+    void testTornTail() throws IOException {
+        Path file = dir.resolve("journal.log");
+        try (TransactionJournal journal = new TransactionJournal(file, TransactionJournal.SyncPolicy.never())) {
+            journal.appendTransaction(Transaction.fromString("TXN0903,ACC001,DEPOSIT,10.00,110.00,2025-12-15 10:15:49"));
+        }
+        Files.write(file, "T,TXN0904,ACC001,DEP".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        TransactionManager transactions = new TransactionManager();
+        try (TransactionJournal journal = new TransactionJournal(file, TransactionJournal.SyncPolicy.never())) {
+            assertEquals(1, journal.recover(new AccountManager(), transactions));
+        }
+        assertEquals(1, transactions.getTransactionCount());
+    }
+
+    @Test
+    @DisplayName("BatchedPolicySyncsEveryNRecords")
+    void testBatchedSync() throws IOException {
+        Path file = dir.resolve("journal.log");
+        try (TransactionJournal journal = new TransactionJournal(file, TransactionJournal.SyncPolicy.batched(5, 0))) {
+            for (int i = 0; i < 20; i++) {
+                journal.appendTransaction(Transaction.ofCents("ACC001", "DEPOSIT", 100, 100L * i));
+            }
+            assertEquals(4, journal.getSyncCount());
+        }
+    }
+}
@@ -6,6 +6,8 @@ import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.BeforeEach;
 import modules.Transaction;
 
+import java.util.List;
+
 public class TransactionManagerTest {
     private TransactionManager manager;
     private final String ACC_ID = "TSTMGR01"; // Fixed ID for testing
@@ -55,6 +57,23 @@ public class TransactionManagerTest {
         assertEquals(850.00, netChange, 0.001, "Net change should be 850.00.");
     }
 
+    @Test
+    void testHistoryIsIndexedPerAccount() {
+        // Only ACC_ID's three transactions, in insertion order, regardless of case
+        List<Transaction> history = manager.getTransactionsByAccount(ACC_ID.toLowerCase());
+        assertEquals(3, history.size(), "History should only contain the account's transactions.");
+        assertEquals(850.00, history.get(2).getBalanceAfter(), "History should keep insertion order.");
+        assertTrue(manager.getTransactionsByAccount("UNKNOWN").isEmpty(), "Unknown account has no history.");
+    }
+
+    @Test
+    void testRunningStatistics() {
+        AccountStatistics stats = manager.getAccountStatistics(ACC_ID);
+        assertEquals(3, stats.getTransactionCount(), "Three transactions for ACC_ID.");
+        assertEquals(850.00, stats.getLastBalance(), "Last balance should follow the latest transaction.");
+        assertEquals(850.00, stats.getNetChange(), 0.001, "Net change should be 1050.00 - 200.00.");
+    }
+
     // Note: Testing the console output for viewTransactionsByAccount()
     // requires advanced techniques (like output stream capture) and is often
     // skipped in basic unit tests, as long as the underlying calculation methods pass.
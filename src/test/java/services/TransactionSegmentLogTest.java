@@ -0,0 +1,287 @@
+package services;
+
+import modules.Transaction;
+import modules.TransactionType;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransactionSegmentLogTest {
+
+    @TempDir
+    Path dir;
+
+    /** Ten transactions per account, accounts in order, one minute apart. */
+    private static TransactionStore history(String... accounts) {
+        TransactionStore store = new TransactionStore();
+        int n = 0;
+        for (String account : accounts) {
+            for (int i = 0; i < 10; i++, n++) {
+                store.append(Transaction.fromString(String.format("TXN%04d,%s,DEPOSIT,1.00,%d.00,2025-12-15 %02d:%02d:00",
+                        n + 1, account, i + 1, 10 + n / 60, n % 60)));
+            }
+        }
+        return store;
+    }
+
+    private TransactionSegmentLog open(long segmentBytes, TransactionSegmentLog.RetentionPolicy retention)
+            throws IOException {
+        return new TransactionSegmentLog(dir.resolve("log"), segmentBytes, Duration.ofDays(1), retention);
+    }
+
+    @Test
+    @DisplayName("SegmentsRollSealAndLoadInOrder")
+    void testRollAndLoad() throws IOException {
+        TransactionStore store = history("ACC001", "ACC002", "ACC003", "ACC004");
+        // About 50 bytes per line, so a segment holds roughly 20 transactions
+        try (TransactionSegmentLog log = open(1000, TransactionSegmentLog.RetentionPolicy.keepAll())) {
+            log.append(store, 0, store.size());
+            List<TransactionSegmentLog.SegmentInfo> segments = log.segments();
+            assertTrue(segments.size() >= 2);
+            assertTrue(segments.get(0).isSealed());
+            assertEquals(store.size(), segments.stream().mapToLong(TransactionSegmentLog.SegmentInfo::getCount).sum());
+        }
+
+        try (TransactionSegmentLog reopened = open(1000, TransactionSegmentLog.RetentionPolicy.keepAll())) {
+            TransactionStore loaded = reopened.load();
+            assertEquals(store.size(), loaded.size());
+            for (int row = 0; row < store.size(); row++) {
+                assertEquals(store.get(row).toString(), loaded.get(row).toString());
+            }
+            TransactionSegmentLog.SegmentInfo first = reopened.segments().get(0);
+            assertEquals("ACC001", first.getMinAccount(), "The footer survives a restart.");
+        }
+    }
+
+    @Test
+    @DisplayName("QueriesSkipSegmentsOutsideTheirRange")
+    void testQueriesSkipSegments() throws IOException {
+        TransactionStore store = history("ACC001", "ACC002", "ACC007", "ACC008");
+        try (TransactionSegmentLog log = open(1 << 20, TransactionSegmentLog.RetentionPolicy.keepAll())) {
+            log.append(store, 0, 20);
+            log.roll();
+            log.append(store, 20, 40);
+            log.roll();
+
+            long before = log.getSegmentsRead();
+            List<Transaction> found = log.findByAccount("acc008");
+            assertEquals(10, found.size());
+            assertEquals(1, log.getSegmentsRead() - before, "The first segment only covers ACC001-ACC002.");
+
+            before = log.getSegmentsRead();
+            long from = TransactionStore.epochSecondOf("2025-12-15 10:05:00");
+            long to = TransactionStore.epochSecondOf("2025-12-15 10:14:00");
+            assertEquals(10, log.findBetween(from, to).size());
+            assertEquals(1, log.getSegmentsRead() - before);
+        }
+    }
+
+    @Test
+    @DisplayName("RetentionArchivesTheOldestSegments")
+    void testRetention() throws IOException {
+        TransactionStore store = history("ACC001", "ACC002", "ACC003", "ACC004");
+        Path archive = dir.resolve("archive");
+        try (TransactionSegmentLog log = open(1 << 20,
+                TransactionSegmentLog.RetentionPolicy.keepSegments(2).archiveTo(archive))) {
+            for (int from = 0; from < store.size(); from += 10) {
+                log.append(store, from, from + 10);
+                log.roll();
+            }
+            assertEquals(2, log.segments().size());
+            assertEquals(3, log.segments().get(0).getSequence(), "Only the two newest segments are kept.");
+            assertTrue(Files.exists(archive.resolve("000001.seg")));
+            assertTrue(Files.exists(archive.resolve("000002.seg")));
+            assertEquals(20, log.load().size());
+        }
+    }
+
+    @Test
+    @DisplayName("TornActiveLineIsDroppedOnReopen")
+    void testTornTail() throws IOException {
+        TransactionStore store = history("ACC001");
+        try (TransactionSegmentLog log = open(1 << 20, TransactionSegmentLog.RetentionPolicy.keepAll())) {
+            log.append(store, 0, store.size());
+        }
+        Files.write(dir.resolve("log").resolve("000001.log"), "TXN9999,ACC0".getBytes(StandardCharsets.US_ASCII),
+                StandardOpenOption.APPEND);
+
+        try (TransactionSegmentLog reopened = open(1 << 20, TransactionSegmentLog.RetentionPolicy.keepAll())) {
+            assertEquals(10, reopened.load().size());
+            reopened.append(store, 0, 1);
+            assertEquals(11, reopened.load().size(), "Appends continue after the last complete line.");
+        }
+    }
+
+    @Test
+    @DisplayName("ManagerSavesOnlyNewTransactionsToTheLog")
+    void testIncrementalManagerSave() throws IOException {
+        TransactionManager manager = new TransactionManager(dir.resolve("transactions.bin"));
+        try (TransactionSegmentLog log = open(1 << 20, TransactionSegmentLog.RetentionPolicy.keepAll())) {
+            manager.setSegmentLog(log);
+            manager.addTransaction(new Transaction("ACC001", "DEPOSIT", 10, 10));
+            manager.addTransaction(new Transaction("ACC001", "DEPOSIT", 10, 20));
+            assertTrue(manager.saveTransaction());
+            manager.addTransaction(new Transaction("ACC001", "WITHDRAW", 5, 15));
+            assertTrue(manager.saveTransaction());
+            assertEquals(3, log.segments().get(0).getCount(), "Saved rows are not written again.");
+            assertFalse(Files.exists(dir.resolve("transactions.bin")));
+        }
+
+        TransactionManager reloaded = new TransactionManager(dir.resolve("transactions.bin"));
+        try (TransactionSegmentLog log = open(1 << 20, TransactionSegmentLog.RetentionPolicy.keepAll())) {
+            reloaded.setSegmentLog(log);
+            reloaded.loadTransaction();
+            assertEquals(3, reloaded.getTransactionCount());
+            assertEquals(15.0, reloaded.getAccountStatistics("ACC001").getLastBalance(), 0.001);
+        }
+    }
+
+    @Test
+    @DisplayName("AccountQueryDecompressesOnlyItsBlocks")
+    void testAccountIndex() throws IOException {
+        // 20 accounts with 500 transactions each: about 0.5 MB of text, several 64 KB blocks
+        TransactionStore store = new TransactionStore();
+        long id = 1;
+        for (int a = 1; a <= 20; a++) {
+            int handle = store.handleFor(String.format("ACC%03d", a));
+            for (int i = 1; i <= 500; i++, id++) {
+                store.append(id, handle, TransactionType.DEPOSIT, 100, 100L * i, 1_765_793_749L + id);
+            }
+        }
+        try (TransactionSegmentLog log = open(1 << 30, TransactionSegmentLog.RetentionPolicy.keepAll())) {
+            log.append(store, 0, store.size());
+            log.roll();
+            int extra = store.handleFor("ACC007");
+            store.append(id, extra, TransactionType.WITHDRAW, 50, 49_950, 1_765_793_749L + id);
+            log.append(store, store.size() - 1, store.size());
+
+            List<Transaction> found = log.findByAccount("ACC007");
+            assertEquals(501, found.size(), "The unsealed record is read from the active segment.");
+            assertEquals(store.get(3000).toString(), found.get(0).toString());
+            assertEquals("WITHDRAW", found.get(500).getType());
+            assertTrue(log.getBlocksRead() <= 2, "Only the blocks holding ACC007 are decompressed.");
+            assertEquals(store.size(), log.getTransactionCount());
+            assertEquals(id, log.getMaxIdSequence());
+            assertEquals(store.size(), log.load().size(), "A full scan reads every block in order.");
+        }
+    }
+
+    @Test
+    @DisplayName("SealedIndexFindsEveryAccountAndNoOther")
+    void testIndexSearch() throws IOException {
+        // Every other account number, so misses fall between entries of the index
+        String[] accounts = new String[40];
+        for (int a = 0; a < accounts.length; a++) accounts[a] = String.format("ACC%03d", 2 * a + 1);
+        TransactionStore store = history(accounts);
+        try (TransactionSegmentLog log = open(1 << 20, TransactionSegmentLog.RetentionPolicy.keepAll())) {
+            log.append(store, 0, store.size());
+            log.roll();
+            for (int n = 1; n <= 2 * accounts.length; n++) {
+                String number = String.format("acc%03d", n);
+                int expected = n % 2 == 1 ? 10 : 0;
+                assertEquals(expected, log.findByAccount(number).size(), number);
+                assertEquals(expected, log.statisticsOf(number).getTransactionCount(), number);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("AccountTotalsComeFromTheFootersWithoutReadingRecords")
+    void testAccountTotals() throws IOException {
+        TransactionStore store = history("ACC001", "ACC002", "ACC003");
+        int handle = store.handleFor("ACC002");
+        store.append(31, handle, TransactionType.WITHDRAW, 250, 750, 1_765_800_000L);
+        try (TransactionSegmentLog log = open(1 << 20, TransactionSegmentLog.RetentionPolicy.keepAll())) {
+            log.append(store, 0, 15);
+            log.roll();
+            log.append(store, 15, store.size());
+
+            long blocks = log.getBlocksRead();
+            AccountStatistics stats = log.statisticsOf("acc002");
+            assertEquals(blocks, log.getBlocksRead(), "No block is decompressed for the totals.");
+            assertEquals(1000, stats.getTotalDepositCents());
+            assertEquals(250, stats.getTotalWithdrawCents());
+            assertEquals(11, stats.getTransactionCount());
+            assertEquals(750, stats.getLastBalanceCents(), "The active segment's totals come last.");
+            assertEquals(store.statisticsOf(handle).getLastBalanceCents(), stats.getLastBalanceCents());
+        }
+        try (TransactionSegmentLog reopened = open(1 << 20, TransactionSegmentLog.RetentionPolicy.keepAll())) {
+            assertEquals(11, reopened.statisticsOf("ACC002").getTransactionCount(), "The totals survive a restart.");
+            assertSame(AccountStatistics.EMPTY, reopened.statisticsOf("ACC009"));
+        }
+    }
+
+    @Test
+    @DisplayName("SegmentsSealedWithoutTotalsAreResealedOnOpen")
+    void testResealOldFooters() throws IOException {
+        TransactionStore store = history("ACC001", "ACC002");
+        try (TransactionSegmentLog log = open(1 << 20, TransactionSegmentLog.RetentionPolicy.keepAll())) {
+            log.append(store, 0, store.size());
+            log.roll();
+        }
+        // Mark the footer as the earlier format, whose magic was "TSEG"
+        Path segment = dir.resolve("log").resolve("000001.seg");
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap("TSEG".getBytes(StandardCharsets.US_ASCII)), channel.size() - 4);
+        }
+
+        try (TransactionSegmentLog reopened = open(1 << 20, TransactionSegmentLog.RetentionPolicy.keepAll())) {
+            assertEquals(10, reopened.statisticsOf("ACC002").getTransactionCount());
+            assertEquals(store.size(), reopened.load().size());
+            assertFalse(Files.exists(dir.resolve("log").resolve("000001.log")));
+        }
+        byte[] bytes = Files.readAllBytes(segment);
+        assertEquals("TSG2", new String(bytes, bytes.length - 4, 4, StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    @DisplayName("OpenedHistoryServesStatementsFromDisk")
+    void testOpenSavedHistory() throws IOException {
+        TransactionManager manager = new TransactionManager(dir.resolve("transactions.bin"));
+        try (TransactionSegmentLog log = open(1 << 20, TransactionSegmentLog.RetentionPolicy.keepAll())) {
+            manager.setSegmentLog(log);
+            for (int i = 1; i <= 30; i++) {
+                manager.addTransaction(new Transaction(i % 3 == 0 ? "ACC002" : "ACC001", "DEPOSIT", 1, i));
+            }
+            assertTrue(manager.saveTransaction());
+        }
+        List<Transaction> expected = manager.getTransactionsByAccount("ACC002");
+
+        TransactionManager reopened = new TransactionManager(dir.resolve("transactions.bin"));
+        try (TransactionSegmentLog log = open(1 << 20, TransactionSegmentLog.RetentionPolicy.keepAll())) {
+            reopened.setSegmentLog(log);
+            reopened.openSavedHistory();
+            assertEquals(30, reopened.getTransactionCount());
+            assertEquals(expected.toString(), reopened.getTransactionsByAccount("ACC002").toString());
+
+            Transaction added = new Transaction("ACC002", "WITHDRAW", 2, 28);
+            reopened.addTransaction(added);
+            assertTrue(Transaction.TRANSACTION_IDS.parse(added.getTransactionId())
+                    > Transaction.TRANSACTION_IDS.parse(expected.get(9).getTransactionId()), "IDs continue after the saved ones.");
+            assertEquals(11, reopened.getTransactionsByAccount("ACC002").size());
+            long blocks = log.getBlocksRead();
+            AccountStatistics stats = reopened.getAccountStatistics("ACC002");
+            assertEquals(28.0, stats.getLastBalance(), 0.001);
+            assertEquals(11, stats.getTransactionCount());
+            assertEquals(8.0, stats.getNetChange(), 0.001);
+            assertEquals(blocks, log.getBlocksRead(), "The totals of saved records come from the footers.");
+
+            assertTrue(reopened.saveTransaction());
+            assertEquals(31, reopened.getTransactionCount(), "Saved rows are counted once.");
+            assertEquals(11, reopened.getTransactionsByAccount("ACC002").size());
+            assertEquals(31, log.load().size());
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package services;
+
+import modules.Transaction;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransactionStoreTest {
+
+    @Test
+    @DisplayName("RowsMaterializeBackToTheSameTransaction")
+    void testRoundTrip() {
+        TransactionStore store = new TransactionStore();
+        Transaction original = Transaction.fromString("TXN0042,ACC004,DEPOSIT,1200.00,5200.00,2025-12-15 10:15:49");
+        int row = store.append(original);
+
+        assertEquals(original.toString(), store.get(row).toString(), "Every field must survive the columns.");
+    }
+
+    @Test
+    @DisplayName("IrregularIdsAreKept")
+    void testIrregularIdsAreKept() {
+        TransactionStore store = new TransactionStore();
+        int row = store.append(Transaction.fromString("LEGACY-7,ACC001,WITHDRAW,5.00,95.00,2025-12-15 10:15:49"));
+        assertEquals("LEGACY-7", store.get(row).getTransactionId());
+    }
+
+    @Test
+    @DisplayName("RowsAreIndexedPerAccountAcrossChunks")
+    void testRowsAcrossChunks() {
+        TransactionStore store = new TransactionStore();
+        int total = TransactionStore.CHUNK_SIZE + 10;
+        for (int i = 0; i < total; i++) {
+            store.append(Transaction.ofCents(i % 2 == 0 ? "ACC001" : "ACC002", "DEPOSIT", 100, 100L * i));
+        }
+        assertEquals(total, store.size());
+        int[] rows = store.rowsOf(store.findHandle("acc002"));
+        assertEquals(total / 2, rows.length, "Half of the rows belong to ACC002.");
+        assertEquals(100L * (total - 1), store.balanceAfterCents(rows[rows.length - 1]));
+    }
+
+    @Test
+    @DisplayName("ConcurrentAppendsAreAllPublishedInOrderPerAccount")
+    void testConcurrentAppends() throws InterruptedException {
+        TransactionStore store = new TransactionStore();
+        int threads = 8;
+        int perThread = 20_000;
+        List<Thread> workers = new ArrayList<>();
+        for (int w = 0; w < threads; w++) {
+            String acc = String.format("ACC%03d", w);
+            Thread worker = new Thread(() -> {
+                for (int i = 1; i <= perThread; i++) store.append(Transaction.ofCents(acc, "DEPOSIT", 100, 100L * i));
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers) worker.join();
+
+        assertEquals(threads * perThread, store.size(), "No append may be lost.");
+        for (int w = 0; w < threads; w++) {
+            int handle = store.findHandle(String.format("ACC%03d", w));
+            int[] rows = store.rowsOf(handle);
+            assertEquals(perThread, rows.length);
+            for (int i = 1; i < rows.length; i++) {
+                assertTrue(store.balanceAfterCents(rows[i]) > store.balanceAfterCents(rows[i - 1]),
+                        "Rows of one account must stay in append order.");
+            }
+            AccountStatistics stats = store.statisticsOf(handle);
+            assertEquals(100L * perThread, stats.getTotalDepositCents());
+            assertEquals(100L * perThread, stats.getLastBalanceCents());
+        }
+    }
+
+    @Test
+    @DisplayName("AwaitedWatermarkCoversEveryReturnedAppend")
+    void testAwaitClaimed() throws InterruptedException {
+        TransactionStore store = new TransactionStore();
+        int threads = 8;
+        AtomicIntegerArray lastRow = new AtomicIntegerArray(threads);
+        for (int w = 0; w < threads; w++) lastRow.set(w, -1);
+        List<Thread> workers = new ArrayList<>();
+        for (int w = 0; w < threads; w++) {
+            int worker = w;
+            String acc = String.format("ACC%03d", w);
+            Thread thread = new Thread(() -> {
+                for (int i = 1; i <= 50_000; i++) {
+                    lastRow.set(worker, store.append(Transaction.ofCents(acc, "DEPOSIT", 100, 100L * i)));
+                }
+            });
+            thread.start();
+            workers.add(thread);
+        }
+        for (int check = 0; check < 1000; check++) {
+            // A returned row may already be journaled, so a snapshot taken next must hold it
+            int highest = -1;
+            for (int w = 0; w < threads; w++) highest = Math.max(highest, lastRow.get(w));
+            assertTrue(store.awaitClaimed() > highest);
+        }
+        for (Thread worker : workers) worker.join();
+        assertEquals(threads * 50_000, store.awaitClaimed());
+    }
+}
@@ -0,0 +1,117 @@
+package services;
+
+import exceptions.InsufficientFundException;
+import modules.Account;
+import modules.CheckingAccount;
+import modules.Customer;
+import modules.RegularCustomer;
+import modules.SavingsAccount;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import modules.TransactionType;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransferServiceTest {
+    private TransactionManager transactionManager;
+    private TransferService transferService;
+    private Account savings;
+    private Account checking;
+
+    @BeforeEach
+    void setUp() {
+        transactionManager = new TransactionManager();
+        transferService = new TransferService(transactionManager);
+
+        Customer customer = new RegularCustomer("Transfer", 30, "123", "TestAddress");
+        savings = new SavingsAccount(customer, 1000.00);
+        checking = new CheckingAccount(customer, 50.00);
+    }
+
+    @Test
+    @DisplayName("TransferMovesFundsAndRecordsBothLegs")
+    void testTransferMovesFundsAndRecordsBothLegs() {
+        transferService.transfer(savings, checking, 100.00);
+
+        assertEquals(900.00, savings.getBalance(), "Source balance should decrease.");
+        assertEquals(150.00, checking.getBalance(), "Target balance should increase.");
+        assertEquals(2, transactionManager.getTransactionCount(), "Both legs must be recorded.");
+    }
+
+    @Test
+    @DisplayName("RejectedTransferChangesNothing")
+    void testRejectedTransferChangesNothing() {
+        assertThrows(InsufficientFundException.class, () -> transferService.transfer(savings, checking, 500.01));
+
+        assertEquals(1000.00, savings.getBalance(), "Source balance should be unchanged.");
+        assertEquals(50.00, checking.getBalance(), "Target balance should be unchanged.");
+        assertEquals(0, transactionManager.getTransactionCount(), "Nothing should be recorded.");
+    }
+
+    @Test
+    @DisplayName("OppositeTransfersDoNotDeadlockAndConserveTotal")
+    void testOppositeTransfersConserveTotal() throws InterruptedException {
+        Customer customer = new RegularCustomer("Stress", 30, "123", "TestAddress");
+        Account a = new CheckingAccount(customer, 10000.00);
+        Account b = new CheckingAccount(customer, 10000.00);
+
+        Thread ab = new Thread(() -> {
+            for (int i = 0; i < 5000; i++) transferService.transfer(a, b, 1.00);
+        });
+        Thread ba = new Thread(() -> {
+            for (int i = 0; i < 5000; i++) transferService.transfer(b, a, 1.00);
+        });
+        ab.start();
+        ba.start();
+        ab.join(10000);
+        ba.join(10000);
+
+        assertFalse(ab.isAlive() || ba.isAlive(), "Transfers should not deadlock.");
+        assertEquals(20000.00, a.getBalance() + b.getBalance(), "Total balance must be conserved.");
+        assertEquals(20000, transactionManager.getTransactionCount(), "Every transfer records two legs.");
+    }
+
+    @Test
+    @DisplayName("MonitorHoldersNeverSeeAHalfDoneTransfer")
+    void testTransfersAtomicForMonitorHolders() throws Exception {
+        Customer customer = new RegularCustomer("Stress", 30, "123", "TestAddress");
+        AccountManager accounts = new AccountManager();
+        Account a = new CheckingAccount(customer, 10000.00);
+        Account b = new CheckingAccount(customer, 10000.00);
+        accounts.addAccount(a);
+        accounts.addAccount(b);
+        Account first = a.getAccountNumber().compareTo(b.getAccountNumber()) < 0 ? a : b;
+        Account second = first == a ? b : a;
+
+        AtomicBoolean halfDone = new AtomicBoolean();
+        Thread transfers = new Thread(() -> {
+            for (int i = 0; i < 5000; i++) transferService.transfer(i % 2 == 0 ? a : b, i % 2 == 0 ? b : a, 3.00);
+        });
+        Thread deposits = new Thread(() -> {
+            for (int i = 0; i < 5000; i++) transactionManager.apply(i % 2 == 0 ? a : b, TransactionType.DEPOSIT, 1);
+        });
+        transfers.start();
+        deposits.start();
+        while (transfers.isAlive() || deposits.isAlive()) {
+            synchronized (first) {
+                synchronized (second) {
+                    // Each deposit adds one cent and one record, each transfer two records and no money
+                    long deposited = a.getBalanceCents() + b.getBalanceCents() - 20000_00;
+                    long legs = transactionManager.getTransactionCount() - deposited;
+                    if (deposited < 0 || legs < 0 || legs % 2 != 0) halfDone.set(true);
+                }
+            }
+        }
+        transfers.join();
+        deposits.join();
+
+        assertFalse(halfDone.get(), "A monitor holder saw one leg of a transfer without the other.");
+        assertEquals(20000_00 + 5000, a.getBalanceCents() + b.getBalanceCents());
+        assertTrue(new ReconciliationService(accounts, transactionManager).reconcile().isClean(),
+                "Each account's log follows its balance, deposits and transfer legs in order.");
+    }
+}